@@ -0,0 +1,47 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.benchmark.embedded.keycloak;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.liquibase.LiquibaseAutoConfiguration;
+import org.springframework.context.annotation.Bean;
+import pl.grizzlysoftware.service.adapter.embedded.config.EnableEmbeddedKeycloakAutoConfiguration;
+
+/**
+ * application started by benchmarks - keycloak database url can be changed with benchmark.datasource.url property
+ * so that each benchmark may start keycloak on fresh or already initialized database
+ */
+@SpringBootApplication(exclude = LiquibaseAutoConfiguration.class)
+@EnableEmbeddedKeycloakAutoConfiguration
+public class BenchmarkApplication {
+    public static final String DATASOURCE_URL = "benchmark.datasource.url";
+
+    @Bean(destroyMethod = "close")
+    HikariDataSource benchmarkDataSource(@Value("${" + DATASOURCE_URL + ":jdbc:h2:mem:keycloak-benchmark;DB_CLOSE_DELAY=-1}") String url) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName("embedded-keycloak-benchmark");
+        dataSource.setJdbcUrl(url);
+        dataSource.setUsername("sa");
+        dataSource.setPassword("");
+        dataSource.setMaximumPoolSize(20);
+        return dataSource;
+    }
+}
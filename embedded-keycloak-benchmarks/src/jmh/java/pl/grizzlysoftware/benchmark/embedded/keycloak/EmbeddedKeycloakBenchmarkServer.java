@@ -0,0 +1,96 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.benchmark.embedded.keycloak;
+
+import org.keycloak.models.KeycloakSessionFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.web.client.RestTemplate;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakServerProperties;
+import pl.grizzlysoftware.service.embedded.keycloak.token.EmbeddedKeycloakTokens;
+
+import javax.servlet.ServletContext;
+
+/**
+ * embedded keycloak started on random port for the time of a benchmark
+ */
+public class EmbeddedKeycloakBenchmarkServer implements AutoCloseable {
+    public static final String REALM = "internal";
+    public static final String CLIENT_ID = "example-client-frontend";
+    public static final String USERNAME = "admin";
+    public static final String PASSWORD = "a";
+
+    private final ServletWebServerApplicationContext context;
+    private final RestTemplate client;
+
+    private EmbeddedKeycloakBenchmarkServer(ServletWebServerApplicationContext context) {
+        this.context = context;
+        this.client = new RestTemplate();
+    }
+
+    public static EmbeddedKeycloakBenchmarkServer start() {
+        return start("jdbc:h2:mem:keycloak-benchmark;DB_CLOSE_DELAY=-1");
+    }
+
+    public static EmbeddedKeycloakBenchmarkServer start(String datasourceUrl) {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        SpringApplication application = new SpringApplication(BenchmarkApplication.class);
+        application.setLogStartupInfo(false);
+        ServletWebServerApplicationContext context = (ServletWebServerApplicationContext) application.run(
+                "--server.port=0",
+                "--" + BenchmarkApplication.DATASOURCE_URL + "=" + datasourceUrl
+        );
+        return new EmbeddedKeycloakBenchmarkServer(context);
+    }
+
+    public RestTemplate client() {
+        return client;
+    }
+
+    public String keycloakUrl() {
+        EmbeddedKeycloakServerProperties properties = context.getBean(EmbeddedKeycloakServerProperties.class);
+        return "http://localhost:" + context.getWebServer().getPort() + context.getServletContext().getContextPath() + properties.serverContextPath;
+    }
+
+    public String realmUrl() {
+        return keycloakUrl() + "/realms/" + REALM;
+    }
+
+    public String tokenUrl() {
+        return realmUrl() + "/protocol/openid-connect/token";
+    }
+
+    public String certsUrl() {
+        return realmUrl() + "/protocol/openid-connect/certs";
+    }
+
+    public KeycloakSessionFactory sessionFactory() {
+        ServletContext servletContext = context.getServletContext();
+        return (KeycloakSessionFactory) servletContext.getAttribute(KeycloakSessionFactory.class.getName());
+    }
+
+    public EmbeddedKeycloakTokens tokens() {
+        return context.getBean(EmbeddedKeycloakTokens.class);
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+}
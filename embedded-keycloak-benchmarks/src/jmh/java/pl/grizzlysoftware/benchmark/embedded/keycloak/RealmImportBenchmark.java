@@ -0,0 +1,127 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.benchmark.embedded.keycloak;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.keycloak.exportimport.Strategy;
+import org.keycloak.exportimport.singlefile.SingleFileImportProvider;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.util.JsonSerialization;
+import org.openjdk.jmh.annotations.*;
+import pl.grizzlysoftware.service.embedded.keycloak.realm.RealmConfigurationResource;
+import pl.grizzlysoftware.service.embedded.keycloak.realm.StreamingRealmImporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * realm configuration import time depending on number of users in realm configuration file
+ * every invocation overwrites realm imported by previous one
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RealmImportBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int users;
+
+    @Param({"false", "true"})
+    public boolean streaming;
+
+    @Param({"1000"})
+    public int batchSize;
+
+    private EmbeddedKeycloakBenchmarkServer server;
+    private KeycloakSessionFactory sessionFactory;
+    private Path realmConfiguration;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = EmbeddedKeycloakBenchmarkServer.start("jdbc:h2:mem:keycloak-import-" + users + "-" + streaming + ";DB_CLOSE_DELAY=-1");
+        sessionFactory = server.sessionFactory();
+        realmConfiguration = Files.createTempFile("keycloak-benchmark-realm-" + users + "-", ".json");
+        writeRealmConfiguration(realmConfiguration.toFile(), "benchmark-" + users, users);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.close();
+        Files.deleteIfExists(realmConfiguration);
+    }
+
+    @Benchmark
+    public Object importRealm() throws IOException {
+        if (streaming) {
+            StreamingRealmImporter importer = new StreamingRealmImporter(sessionFactory, JsonSerialization.mapper, batchSize);
+            List<String> realms = importer.importRealms(RealmConfigurationResource.file(realmConfiguration), Strategy.OVERWRITE_EXISTING);
+            return realms;
+        }
+        SingleFileImportProvider importer = new SingleFileImportProvider(realmConfiguration.toFile());
+        importer.importModel(sessionFactory, Strategy.OVERWRITE_EXISTING);
+        return importer;
+    }
+
+    /**
+     * users have no credentials - password hashing would dominate the import time and hide the cost of import itself
+     */
+    static void writeRealmConfiguration(File file, String realm, int users) throws IOException {
+        try (JsonGenerator json = new JsonFactory().createGenerator(file, JsonEncoding.UTF8)) {
+            json.writeStartObject();
+            json.writeStringField("realm", realm);
+            json.writeBooleanField("enabled", true);
+            json.writeArrayFieldStart("clients");
+            json.writeStartObject();
+            json.writeStringField("clientId", "benchmark-client");
+            json.writeBooleanField("enabled", true);
+            json.writeBooleanField("publicClient", true);
+            json.writeBooleanField("directAccessGrantsEnabled", true);
+            json.writeEndObject();
+            json.writeEndArray();
+            json.writeArrayFieldStart("users");
+            for (int i = 0; i < users; i++) {
+                json.writeStartObject();
+                json.writeStringField("username", "user-" + i);
+                json.writeStringField("email", "user-" + i + "@benchmark.local");
+                json.writeStringField("firstName", "User");
+                json.writeStringField("lastName", String.valueOf(i));
+                json.writeBooleanField("enabled", true);
+                json.writeObjectFieldStart("attributes");
+                json.writeArrayFieldStart("department");
+                json.writeString("department-" + (i % 10));
+                json.writeEndArray();
+                json.writeEndObject();
+                json.writeArrayFieldStart("realmRoles");
+                json.writeString("offline_access");
+                json.writeEndArray();
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+    }
+}
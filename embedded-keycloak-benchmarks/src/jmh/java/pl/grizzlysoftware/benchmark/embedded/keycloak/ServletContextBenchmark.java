@@ -0,0 +1,94 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.benchmark.embedded.keycloak;
+
+import org.keycloak.models.KeycloakSessionFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockServletContext;
+import pl.grizzlysoftware.service.embedded.keycloak.web.EmbeddedKeycloakServletContext;
+
+import javax.servlet.ServletContext;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * cost of servlet context calls made by keycloak - delegating servlet context compared with reflective proxy used before
+ * run with -prof gc to compare allocation rate
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServletContextBenchmark {
+    private static final String SERVER_CONTEXT_PATH = "keycloak.embedded.server.context-path";
+
+    private ServletContext proxy;
+    private ServletContext delegating;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MockServletContext context = new MockServletContext();
+        context.setContextPath("/app");
+        context.setInitParameter(SERVER_CONTEXT_PATH, "/auth");
+        context.setAttribute(KeycloakSessionFactory.class.getName(), new Object());
+
+        proxy = reflectiveProxy(context);
+        delegating = new EmbeddedKeycloakServletContext(context, context.getInitParameter(SERVER_CONTEXT_PATH));
+    }
+
+    @Benchmark
+    public String proxyGetContextPath() {
+        return proxy.getContextPath();
+    }
+
+    @Benchmark
+    public String delegatingGetContextPath() {
+        return delegating.getContextPath();
+    }
+
+    @Benchmark
+    public Object proxyGetAttribute() {
+        return proxy.getAttribute(KeycloakSessionFactory.class.getName());
+    }
+
+    @Benchmark
+    public Object delegatingGetAttribute() {
+        return delegating.getAttribute(KeycloakSessionFactory.class.getName());
+    }
+
+    /**
+     * servlet context wrapper replaced by {@link EmbeddedKeycloakServletContext} - without per call logging,
+     * which would make the comparison depend on logging configuration
+     */
+    private static ServletContext reflectiveProxy(ServletContext context) {
+        InvocationHandler invocationHandler = (proxy, method, args) -> {
+            if ("getContextPath".equals(method.getName())) {
+                String kcContextPath = context.getInitParameter(SERVER_CONTEXT_PATH);
+                String appContextPath = context.getContextPath();
+
+                return appContextPath + kcContextPath;
+            }
+            return method.invoke(context, args);
+        };
+        return (ServletContext) Proxy.newProxyInstance(context.getClassLoader(), new Class[]{ServletContext.class}, invocationHandler);
+    }
+}
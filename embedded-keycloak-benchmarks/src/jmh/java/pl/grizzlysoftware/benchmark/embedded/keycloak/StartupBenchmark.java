@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.benchmark.embedded.keycloak;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * time from application start until keycloak is ready to serve requests
+ * cold - every start gets fresh database(schema migration, master realm and admin creation, realm import)
+ * warm - every start reuses database initialized by previous start
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StartupBenchmark {
+    private static final AtomicInteger DATABASE_SEQUENCE = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class Cold {
+        String datasourceUrl;
+        EmbeddedKeycloakBenchmarkServer server;
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            datasourceUrl = "jdbc:h2:mem:keycloak-cold-" + DATABASE_SEQUENCE.incrementAndGet() + ";DB_CLOSE_DELAY=-1";
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            server.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Warm {
+        String datasourceUrl;
+        EmbeddedKeycloakBenchmarkServer server;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            datasourceUrl = "jdbc:h2:mem:keycloak-warm-" + DATABASE_SEQUENCE.incrementAndGet() + ";DB_CLOSE_DELAY=-1";
+            EmbeddedKeycloakBenchmarkServer.start(datasourceUrl).close();
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            server.close();
+        }
+    }
+
+    @Benchmark
+    public EmbeddedKeycloakBenchmarkServer coldStart(Cold state) {
+        state.server = EmbeddedKeycloakBenchmarkServer.start(state.datasourceUrl);
+        return state.server;
+    }
+
+    @Benchmark
+    public EmbeddedKeycloakBenchmarkServer warmStart(Warm state) {
+        state.server = EmbeddedKeycloakBenchmarkServer.start(state.datasourceUrl);
+        return state.server;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.benchmark.embedded.keycloak;
+
+import org.keycloak.representations.AccessTokenResponse;
+import org.openjdk.jmh.annotations.*;
+import pl.grizzlysoftware.service.adapter.embedded.util.AuthenticationToken;
+import pl.grizzlysoftware.service.adapter.embedded.util.AuthenticationTokenRequester;
+import pl.grizzlysoftware.service.embedded.keycloak.token.EmbeddedKeycloakTokens;
+
+import java.util.concurrent.TimeUnit;
+
+import static pl.grizzlysoftware.benchmark.embedded.keycloak.EmbeddedKeycloakBenchmarkServer.*;
+
+/**
+ * token endpoint throughput over http - password grant and refresh token grant, compared with tokens issued in process
+ * run with -t to measure concurrent clients
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class TokenEndpointBenchmark {
+    private EmbeddedKeycloakBenchmarkServer server;
+    private AuthenticationTokenRequester requester;
+    private EmbeddedKeycloakTokens tokens;
+    private String tokenUrl;
+    private String refreshToken;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        server = EmbeddedKeycloakBenchmarkServer.start();
+        requester = new AuthenticationTokenRequester(server.client());
+        tokens = server.tokens();
+        tokenUrl = server.tokenUrl();
+        refreshToken = requester.getToken(tokenUrl, CLIENT_ID, USERNAME, PASSWORD, "password").getRefreshToken();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public AuthenticationToken passwordGrant() {
+        return requester.getToken(tokenUrl, CLIENT_ID, USERNAME, PASSWORD, "password");
+    }
+
+    @Benchmark
+    public AuthenticationToken refreshTokenGrant() {
+        return requester.refreshToken(tokenUrl, CLIENT_ID, refreshToken);
+    }
+
+    @Benchmark
+    public AccessTokenResponse inProcessPasswordGrant() {
+        return tokens.password(REALM, CLIENT_ID, USERNAME, PASSWORD);
+    }
+
+    @Benchmark
+    public AccessTokenResponse inProcessUserTokens() {
+        return tokens.user(REALM, CLIENT_ID, USERNAME);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.benchmark.embedded.keycloak;
+
+import org.keycloak.TokenVerifier;
+import org.keycloak.common.VerificationException;
+import org.keycloak.jose.jwk.JSONWebKeySet;
+import org.keycloak.jose.jwk.JWK;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.util.JWKSUtils;
+import org.openjdk.jmh.annotations.*;
+import pl.grizzlysoftware.service.adapter.embedded.util.AuthenticationTokenRequester;
+
+import java.security.PublicKey;
+import java.util.concurrent.TimeUnit;
+
+import static pl.grizzlysoftware.benchmark.embedded.keycloak.EmbeddedKeycloakBenchmarkServer.*;
+
+/**
+ * in-process access token verification - signature and claims checks with realm's public key, no http round trip
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TokenVerificationBenchmark {
+    private EmbeddedKeycloakBenchmarkServer server;
+    private PublicKey publicKey;
+    private String accessToken;
+    private String realmUrl;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        server = EmbeddedKeycloakBenchmarkServer.start();
+        realmUrl = server.realmUrl();
+        accessToken = new AuthenticationTokenRequester(server.client())
+                .getToken(server.tokenUrl(), CLIENT_ID, USERNAME, PASSWORD, "password")
+                .getAccessToken();
+        JSONWebKeySet keys = server.client().getForObject(server.certsUrl(), JSONWebKeySet.class);
+        publicKey = JWKSUtils.getKeysForUse(keys, JWK.Use.SIG).values().iterator().next();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public AccessToken verifySignature() throws VerificationException {
+        return TokenVerifier.create(accessToken, AccessToken.class)
+                .publicKey(publicKey)
+                .verify()
+                .getToken();
+    }
+
+    @Benchmark
+    public AccessToken verifySignatureAndClaims() throws VerificationException {
+        return TokenVerifier.create(accessToken, AccessToken.class)
+                .withDefaultChecks()
+                .realmUrl(realmUrl)
+                .publicKey(publicKey)
+                .verify()
+                .getToken();
+    }
+}
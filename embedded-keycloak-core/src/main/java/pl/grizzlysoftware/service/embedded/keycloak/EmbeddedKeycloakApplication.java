@@ -19,24 +19,45 @@
 package pl.grizzlysoftware.service.embedded.keycloak;
 
 import org.jboss.resteasy.core.Dispatcher;
+import org.keycloak.events.EventStoreProvider;
+import org.keycloak.exportimport.ExportImportManager;
 import org.keycloak.exportimport.Strategy;
 import org.keycloak.exportimport.singlefile.SingleFileImportProvider;
 import org.keycloak.exportimport.util.ImportUtils;
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.provider.ProviderFactory;
 import org.keycloak.services.managers.ApplianceBootstrap;
 import org.keycloak.services.resources.KeycloakApplication;
 import org.keycloak.util.JsonSerialization;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pl.grizzlysoftware.service.embedded.keycloak.events.EmbeddedKeycloakEventStoreProviderFactory;
+import pl.grizzlysoftware.service.embedded.keycloak.instrumentation.EmbeddedKeycloakInstrumentation;
+import pl.grizzlysoftware.service.embedded.keycloak.instrumentation.EmbeddedKeycloakStartupReport;
+import pl.grizzlysoftware.service.embedded.keycloak.instrumentation.InstrumentedKeycloakSessionFactory;
+import pl.grizzlysoftware.service.embedded.keycloak.realm.RealmConfigurationFingerprint;
+import pl.grizzlysoftware.service.embedded.keycloak.realm.RealmConfigurationResource;
+import pl.grizzlysoftware.service.embedded.keycloak.realm.RealmConfigurationStrategy;
+import pl.grizzlysoftware.service.embedded.keycloak.realm.StreamingRealmImporter;
+import pl.grizzlysoftware.service.embedded.keycloak.warmup.EmbeddedKeycloakWarmUp;
+import pl.grizzlysoftware.service.embedded.keycloak.web.EmbeddedKeycloakServletContext;
 
 import javax.servlet.ServletContext;
 import javax.ws.rs.core.Context;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Proxy;
-import java.util.Arrays;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by Bartosz Pawlowski
@@ -47,8 +68,18 @@ public class EmbeddedKeycloakApplication extends KeycloakApplication {
 //    public static final String DEFAULT_REALM = "keycloak.embedded.realm.default.name";
     public static final String REALM_CONFIGURATION_PATH = "keycloak.embedded.realm.configuration.path";
     public static final String REALM_CONFIGURATION_STRATEGY = "keycloak.embedded.realm.configuration.strategy";
+    public static final String REALM_CONFIGURATION_STREAMING = "keycloak.embedded.realm.configuration.streaming";
+    public static final String REALM_CONFIGURATION_BATCH_SIZE = "keycloak.embedded.realm.configuration.batch-size";
+    public static final String REALM_CONFIGURATION_PARALLELISM = "keycloak.embedded.realm.configuration.parallelism";
     public static final String ADMIN_USERNAME = "keycloak.embedded.security.admin.username";
     public static final String ADMIN_PASSWORD = "keycloak.embedded.security.admin.password";
+    public static final String WARM_UP_ENABLED = "keycloak.embedded.server.warm-up.enabled";
+    public static final String WARM_UP_REALMS = "keycloak.embedded.server.warm-up.realms";
+    public static final String WARM_UP_LOCALES = "keycloak.embedded.server.warm-up.locales";
+    public static final String WARM_UP_CLIENT = "keycloak.embedded.server.warm-up.client";
+    public static final String WARM_UP_USERNAME = "keycloak.embedded.server.warm-up.username";
+    public static final String WARM_UP_TOKEN_ISSUANCES = "keycloak.embedded.server.warm-up.token-issuances";
+    public static final String STARTUP_REPORT_LOG = "keycloak.embedded.server.startup-report.log";
 
     private static final Logger LOG = LoggerFactory.getLogger(EmbeddedKeycloakApplication.class);
 
@@ -58,53 +89,245 @@ public class EmbeddedKeycloakApplication extends KeycloakApplication {
 //    private String serverConfigPath;
     private String realmConfigPath;
     private String realmConfigStrategy;
+    private boolean realmConfigStreaming;
+    private int realmConfigBatchSize;
+    private int realmConfigParallelism;
+
+    private EmbeddedKeycloakInstrumentation instrumentation;
+    private EmbeddedKeycloakStartupReport startupReport;
 
     public EmbeddedKeycloakApplication(@Context ServletContext context, @Context Dispatcher dispatcher) {
+        this(context, dispatcher, EmbeddedKeycloakStartupReport.start("providers"));
+    }
+
+    /**
+     * @param startupReport started before keycloak's own bootstrap(configuration, providers, database migration) runs in super constructor
+     */
+    private EmbeddedKeycloakApplication(ServletContext context, Dispatcher dispatcher, EmbeddedKeycloakStartupReport startupReport) {
         super(augmentToRedirectContextPath(context), dispatcher);
+        this.startupReport = startupReport;
+        instrumentation = resolveInstrumentation(context);
+        instrumentEventQueue();
 
         //        serverConfigPath = context.getInitParameter(SERVER_CONFIGURATION_PATH);
         realmConfigPath = context.getInitParameter(REALM_CONFIGURATION_PATH);
         realmConfigStrategy = context.getInitParameter(REALM_CONFIGURATION_STRATEGY);
+        realmConfigStreaming = Boolean.parseBoolean(context.getInitParameter(REALM_CONFIGURATION_STREAMING));
+        realmConfigBatchSize = resolveRealmConfigurationBatchSize(context.getInitParameter(REALM_CONFIGURATION_BATCH_SIZE));
+        realmConfigParallelism = resolveRealmConfigurationParallelism(context.getInitParameter(REALM_CONFIGURATION_PARALLELISM));
 
 //        defaultRealm = context.getInitParameter(DEFAULT_REALM);
         adminUser = context.getInitParameter(ADMIN_USERNAME);
         adminPassword = context.getInitParameter(ADMIN_PASSWORD);
 
+        startupReport.phase("admin-user");
         createAdminUser();
+
+        startupReport.phase("realm-import");
         loadKeycloakRealmConfiguration(realmConfigPath);
+
+        if (Boolean.parseBoolean(context.getInitParameter(WARM_UP_ENABLED))) {
+            startupReport.phase("warm-up");
+            warmUp(context);
+        }
+
+        finishStartupReport(context);
+    }
+
+    /**
+     * runs in super constructor - splits keycloak's own bootstrap into database migration(liquibase and model migration run by the first session touching database),
+     * master realm bootstrap and the rest of keycloak's setup(export, welcome resource, scheduled tasks)
+     */
+    @Override
+    protected ExportImportManager migrateAndBootstrap() {
+        startupPhase("database-migration");
+        ExportImportManager exportImportManager = super.migrateAndBootstrap();
+        startupPhase("keycloak-setup");
+        return exportImportManager;
+    }
+
+    @Override
+    protected void migrateModel() {
+        super.migrateModel();
+        startupPhase("master-realm");
+    }
+
+    /**
+     * report is exposed as servlet context attribute named after {@link EmbeddedKeycloakStartupReport} class
+     */
+    protected void finishStartupReport(ServletContext context) {
+        startupReport.finish();
+        startupReport.getPhases().forEach(phase -> instrumentation.bootstrapPhase(phase.name, phase.durationNanos, phase.allocatedBytes));
+        context.setAttribute(EmbeddedKeycloakStartupReport.class.getName(), startupReport);
+        if (Boolean.parseBoolean(context.getInitParameter(STARTUP_REPORT_LOG))) {
+            LOG.info(startupReport.format());
+        }
+    }
+
+    public EmbeddedKeycloakStartupReport getStartupReport() {
+        return startupReport;
+    }
+
+    /**
+     * instrumentation is optional - when it's registered, session factory is replaced with instrumented one everywhere it is looked up from
+     */
+    protected EmbeddedKeycloakInstrumentation resolveInstrumentation(ServletContext context) {
+        Object instrumentation = context.getAttribute(EmbeddedKeycloakInstrumentation.class.getName());
+        if (!(instrumentation instanceof EmbeddedKeycloakInstrumentation)) {
+            return EmbeddedKeycloakInstrumentation.NOOP;
+        }
+
+        sessionFactory = new InstrumentedKeycloakSessionFactory(sessionFactory, (EmbeddedKeycloakInstrumentation) instrumentation);
+        context.setAttribute(KeycloakSessionFactory.class.getName(), sessionFactory);
+        return (EmbeddedKeycloakInstrumentation) instrumentation;
+    }
+
+    protected void instrumentEventQueue() {
+        ProviderFactory<EventStoreProvider> factory = sessionFactory.getProviderFactory(EventStoreProvider.class, EmbeddedKeycloakEventStoreProviderFactory.PROVIDER_ID);
+        if (factory instanceof EmbeddedKeycloakEventStoreProviderFactory) {
+            instrumentation.eventQueue(((EmbeddedKeycloakEventStoreProviderFactory) factory).getQueue());
+        }
+    }
+
+    /**
+     * runs before keycloak is reported ready - servlet initialization does not finish until warm-up does
+     */
+    protected void warmUp(ServletContext context) {
+        String client = context.getInitParameter(WARM_UP_CLIENT);
+        String username = context.getInitParameter(WARM_UP_USERNAME);
+        int tokenIssuances = resolveWarmUpTokenIssuances(context.getInitParameter(WARM_UP_TOKEN_ISSUANCES));
+        URI baseUri = URI.create("http://localhost" + context.getContextPath() + context.getInitParameter(SERVER_CONTEXT_PATH));
+        new EmbeddedKeycloakWarmUp(sessionFactory, baseUri,
+                EmbeddedKeycloakWarmUp.split(context.getInitParameter(WARM_UP_REALMS)),
+                EmbeddedKeycloakWarmUp.split(context.getInitParameter(WARM_UP_LOCALES)),
+                client == null || client.isEmpty() ? null : client,
+                username == null || username.isEmpty() ? null : username,
+                tokenIssuances).run();
+    }
+
+    protected int resolveWarmUpTokenIssuances(String tokenIssuances) {
+        try {
+            return Integer.parseInt(tokenIssuances);
+        } catch (Exception e) {
+            return 100;
+        }
     }
 
-    protected Strategy resolveRealmConfigurationStrategy(String strategyName) {
+    protected RealmConfigurationStrategy resolveRealmConfigurationStrategy(String strategyName) {
         try {
-            Strategy strategy = Strategy.valueOf(strategyName);
+            RealmConfigurationStrategy strategy = RealmConfigurationStrategy.valueOf(strategyName);
             return strategy;
         } catch (Exception e) {
-            LOG.warn("Unable to resolve realm configuration strategy: {}, applying default strategy: {}", strategyName, Strategy.OVERWRITE_EXISTING.name());
-            return Strategy.OVERWRITE_EXISTING;
+            LOG.warn("Unable to resolve realm configuration strategy: {}, applying default strategy: {}", strategyName, RealmConfigurationStrategy.OVERWRITE_EXISTING.name());
+            return RealmConfigurationStrategy.OVERWRITE_EXISTING;
+        }
+    }
+
+    protected int resolveRealmConfigurationBatchSize(String batchSize) {
+        try {
+            return Integer.parseInt(batchSize);
+        } catch (Exception e) {
+            return 1000;
+        }
+    }
+
+    protected int resolveRealmConfigurationParallelism(String parallelism) {
+        try {
+            return Math.max(1, Integer.parseInt(parallelism));
+        } catch (Exception e) {
+            return 1;
+        }
+    }
+
+    /**
+     * @param locations comma separated list of realm configuration files - see {@link RealmConfigurationResource#resolve}
+     */
+    protected void loadKeycloakRealmConfiguration(String locations) {
+        List<RealmConfigurationResource> resources;
+        try {
+            resources = RealmConfigurationResource.resolve(getClass().getClassLoader(), locations);
+        } catch (Exception e) {
+            LOG.error("Unable to resolve keycloak realm configuration files: {}", locations, e);
+            return;
+        }
+
+        long start = System.nanoTime();
+        int parallelism = Math.min(realmConfigParallelism, resources.size());
+        if (parallelism <= 1) {
+            resources.forEach(this::loadKeycloakRealmConfiguration);
+        } else {
+            AtomicInteger threadCount = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> new Thread(r, "keycloak-realm-import-" + threadCount.incrementAndGet()));
+            try {
+                List<Future<?>> imports = new ArrayList<>();
+                for (RealmConfigurationResource resource : resources) {
+                    imports.add(executor.submit(() -> loadKeycloakRealmConfiguration(resource)));
+                }
+                for (Future<?> realmImport : imports) {
+                    realmImport.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOG.error("Interrupted while loading keycloak realm configuration");
+            } catch (ExecutionException e) {
+                LOG.error("Unable to load keycloak realm configuration", e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        if (resources.size() > 1) {
+            LOG.info("Loaded {} keycloak realm configuration files in {} ms using {} threads", resources.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), Math.max(parallelism, 1));
         }
     }
 
-    protected void loadKeycloakRealmConfiguration(String path) {
+    protected void loadKeycloakRealmConfiguration(RealmConfigurationResource resource) {
         try {
-            LOG.info("Loading keycloak realm configuration from resource: {}", path);
-            InputStream stream = getClass().getClassLoader().getResourceAsStream(path);
-            if (stream == null) {
-                LOG.error("Unable to find keycloak realm  in file: {}", path);
+            if (!resource.exists()) {
+                LOG.error("Unable to find keycloak realm  in file: {}", resource);
+                return;
+            }
+
+            long start = System.nanoTime();
+            RealmConfigurationStrategy strategy = resolveRealmConfigurationStrategy(realmConfigStrategy);
+            RealmConfigurationFingerprint fingerprint = RealmConfigurationFingerprint.of(resource);
+            if (strategy == RealmConfigurationStrategy.IF_CHANGED && fingerprint.isImported(sessionFactory)) {
+                LOG.info("Keycloak realm configuration: {} has not changed since last import, skipping", resource);
                 return;
             }
 
+            Collection<String> realms = importRealmConfiguration(resource, strategy.importStrategy);
+            fingerprint.store(sessionFactory, strategy, realms);
+            LOG.info("Keycloak realm configuration: {} with realms: {} loaded successfully in {} ms", resource, realms, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (Exception e) {
+            LOG.error("Unable to load keycloak realm configuration: {}", resource, e);
+        }
+    }
+
+    /**
+     * @return names of realms defined in realm configuration
+     */
+    protected Collection<String> importRealmConfiguration(RealmConfigurationResource resource, Strategy strategy) throws IOException {
+        if (realmConfigStreaming) {
+            LOG.info("Streaming keycloak realm configuration from resource: {} in batches of {}", resource, realmConfigBatchSize);
+            StreamingRealmImporter importer = new StreamingRealmImporter(sessionFactory, JsonSerialization.mapper, realmConfigBatchSize);
+            return importer.importRealms(resource, strategy);
+        }
+
+        LOG.info("Loading keycloak realm configuration from resource: {}", resource);
+        List<String> realms = new ArrayList<>();
+        try (InputStream stream = resource.open()) {
             //constructor parameter is fake and unused as checkRealmReps uses preinitialized stream resource from above
-            SingleFileImportProvider importProvider = new SingleFileImportProvider(new File(path)) {
+            SingleFileImportProvider importProvider = new SingleFileImportProvider(new File(resource.getName())) {
                 @Override
                 protected void checkRealmReps() throws IOException {
                     realmReps = ImportUtils.getRealmsFromStream(JsonSerialization.mapper, stream);
+                    realms.addAll(realmReps.keySet());
                 }
             };
-            importProvider.importModel(sessionFactory, resolveRealmConfigurationStrategy(realmConfigStrategy));
-            LOG.error("Keycloak realm configuration loaded successfully");
-        } catch (Exception e) {
-            LOG.error("Unable to load keycloak realm configuration", e);
+            importProvider.importModel(sessionFactory, strategy);
         }
+        return realms;
     }
 
     protected void createAdminUser() {
@@ -124,25 +347,23 @@ public class EmbeddedKeycloakApplication extends KeycloakApplication {
         session.close();
     }
 
-    private static ServletContext augmentToRedirectContextPath(ServletContext context) {
-
-        ClassLoader classLoader = context.getClassLoader();
-        Class[] interfaces = {ServletContext.class};
-
-        InvocationHandler invocationHandler = (proxy, method, args) -> {
-
-            if ("getContextPath".equals(method.getName())) {
-                String kcContextPath = context.getInitParameter(SERVER_CONTEXT_PATH);
-                String appContextPath = context.getContextPath();
-
-                return appContextPath + kcContextPath;
-            }
-
-            LOG.info("Invoke on ServletContext: method=[{}] args=[{}]", method.getName(), Arrays.toString(args));
+    /**
+     * fields of this class are not initialized yet while super constructor runs, so report is looked up from bootstrapping thread
+     */
+    private static void startupPhase(String phase) {
+        EmbeddedKeycloakStartupReport report = EmbeddedKeycloakStartupReport.current();
+        if (report != null) {
+            report.phase(phase);
+        }
+    }
 
-            return method.invoke(context, args);
-        };
+    /**
+     * keycloak resolves its urls against servlet context path, so it has to include keycloak's context path
+     */
+    private static ServletContext augmentToRedirectContextPath(ServletContext context) {
+        EmbeddedKeycloakServletContext keycloakContext = new EmbeddedKeycloakServletContext(context, context.getInitParameter(SERVER_CONTEXT_PATH));
+        LOG.debug("Keycloak servlet context path: {}", keycloakContext.getContextPath());
 
-        return ServletContext.class.cast(Proxy.newProxyInstance(classLoader, interfaces, invocationHandler));
+        return keycloakContext;
     }
 }
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.events;
+
+import org.keycloak.events.Event;
+import org.keycloak.events.EventListenerProvider;
+import org.keycloak.events.EventType;
+import org.keycloak.events.admin.AdminEvent;
+
+import java.util.Set;
+
+/**
+ * queues events for event log, events are dropped when queue is full - see {@link EmbeddedKeycloakEventQueue#getDropped()}
+ */
+public class EmbeddedKeycloakEventLogListenerProvider implements EventListenerProvider {
+    private final EmbeddedKeycloakEventQueue queue;
+    private final Set<EventType> excludedEvents;
+
+    public EmbeddedKeycloakEventLogListenerProvider(EmbeddedKeycloakEventQueue queue, Set<EventType> excludedEvents) {
+        this.queue = queue;
+        this.excludedEvents = excludedEvents;
+    }
+
+    @Override
+    public void onEvent(Event event) {
+        if (!excludedEvents.contains(event.getType())) {
+            queue.add(event);
+        }
+    }
+
+    @Override
+    public void onEvent(AdminEvent event, boolean includeRepresentation) {
+        queue.add(event, includeRepresentation);
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.events;
+
+import org.keycloak.Config;
+import org.keycloak.events.EventListenerProvider;
+import org.keycloak.events.EventListenerProviderFactory;
+import org.keycloak.events.EventType;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Event listener appending login and admin events to memory-mapped, segmented event log, which can be replayed with {@link EmbeddedKeycloakEventLogReader}.
+ * <p>
+ * Events are queued and written by a background thread, so login threads never wait for disk.
+ * Enabled per realm by adding {@value #PROVIDER_ID} to realm's events listeners, provider settings in keycloak-server.conf:
+ * dir, segment-size, max-segments(16 by default), sync, exclude-events, queue-size, batch-size, flush-interval, overflow-policy, shutdown-timeout
+ * <p>
+ * Log is opened when first realm uses the listener, so no directory or writer thread exists until then. Every keycloak running in the JVM
+ * gets its own directory - the first one the configured one, next ones have -2, -3... suffix.
+ */
+public class EmbeddedKeycloakEventLogListenerProviderFactory implements EventListenerProviderFactory {
+    public static final String PROVIDER_ID = "embedded-event-log";
+
+    /**
+     * directories of event logs open in this JVM
+     */
+    private static final Set<Path> DIRECTORIES = ConcurrentHashMap.newKeySet();
+
+    private Set<EventType> excludedEvents = Collections.emptySet();
+    private Path directory;
+    private int segmentSize;
+    private int maxSegments;
+    private boolean sync;
+    private int queueSize;
+    private int batchSize;
+    private long flushInterval;
+    private long shutdownTimeout;
+    private EventOverflowPolicy overflowPolicy;
+    private volatile EmbeddedKeycloakEventQueue queue;
+    private Path instanceDirectory;
+    private boolean closed;
+
+    @Override
+    public EventListenerProvider create(KeycloakSession session) {
+        return new EmbeddedKeycloakEventLogListenerProvider(open(), excludedEvents);
+    }
+
+    @Override
+    public void init(Config.Scope config) {
+        String[] excludes = config.getArray("exclude-events");
+        if (excludes != null) {
+            excludedEvents = EnumSet.noneOf(EventType.class);
+            for (String exclude : excludes) {
+                excludedEvents.add(EventType.valueOf(exclude));
+            }
+        }
+        directory = Paths.get(config.get("dir", "./data/events"));
+        segmentSize = config.getInt("segment-size", 64 * 1024 * 1024);
+        maxSegments = config.getInt("max-segments", 16);
+        sync = config.getBoolean("sync", false);
+        queueSize = config.getInt("queue-size", 100000);
+        batchSize = config.getInt("batch-size", 1000);
+        flushInterval = config.getLong("flush-interval", 200L);
+        shutdownTimeout = config.getLong("shutdown-timeout", 30000L);
+        overflowPolicy = EventOverflowPolicy.valueOf(config.get("overflow-policy", EventOverflowPolicy.DROP.name()));
+        if (overflowPolicy == EventOverflowPolicy.SYNCHRONOUS) {
+            throw new IllegalArgumentException("Event log does not support overflow policy: " + overflowPolicy);
+        }
+    }
+
+    @Override
+    public void postInit(KeycloakSessionFactory factory) {
+        //NOOP - log is opened on first use
+    }
+
+    /**
+     * listener is created only for realms which enabled it
+     */
+    private EmbeddedKeycloakEventQueue open() {
+        EmbeddedKeycloakEventQueue current = queue;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (queue == null) {
+                Path claimed = claim(directory);
+                try {
+                    EventLogWriter writer = new EventLogWriter(claimed, segmentSize, maxSegments, sync);
+                    EmbeddedKeycloakEventQueue opened = new EmbeddedKeycloakEventQueue(writer, "embedded-keycloak-event-log", queueSize, batchSize, flushInterval, shutdownTimeout, overflowPolicy);
+                    opened.start();
+                    instanceDirectory = claimed;
+                    queue = opened;
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Unable to open event log: " + claimed, e);
+                } finally {
+                    if (queue == null) {
+                        DIRECTORIES.remove(claimed);
+                    }
+                }
+            }
+            return queue;
+        }
+    }
+
+    /**
+     * @return configured directory or, when another keycloak in this JVM logs there, the first free one with -2, -3... suffix
+     */
+    private static Path claim(Path directory) {
+        Path normalized = directory.toAbsolutePath().normalize();
+        Path candidate = normalized;
+        for (int i = 2; !DIRECTORIES.add(candidate); i++) {
+            candidate = normalized.resolveSibling(normalized.getFileName() + "-" + i);
+        }
+        return candidate;
+    }
+
+    /**
+     * called when session factory is closed - on servlet context destruction, writes all queued events before returning
+     */
+    @Override
+    public synchronized void close() {
+        if (queue != null && !closed) {
+            closed = true;
+            queue.close();
+            DIRECTORIES.remove(instanceDirectory);
+        }
+    }
+
+    @Override
+    public String getId() {
+        return PROVIDER_ID;
+    }
+
+    /**
+     * @return directory this keycloak's events are logged to, null until log is opened
+     */
+    public synchronized Path getDirectory() {
+        return instanceDirectory;
+    }
+
+    public EmbeddedKeycloakEventQueue getQueue() {
+        return queue;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.events;
+
+import org.keycloak.events.Event;
+import org.keycloak.events.EventListenerProvider;
+import org.keycloak.events.EventType;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.AuthDetails;
+import org.keycloak.events.admin.OperationType;
+import org.keycloak.events.admin.ResourceType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+
+/**
+ * Reads events written by {@link EmbeddedKeycloakEventLogListenerProviderFactory} in order they were logged.
+ * <p>
+ * Segments are memory-mapped one at a time while iterating. Reading stops at the first incomplete or corrupted record of a segment
+ * and continues with the next segment, so log of a crashed process can be replayed as well as the one still being written.
+ * <pre>
+ * new EmbeddedKeycloakEventLogReader(Paths.get("data/events")).replay(listener);
+ * </pre>
+ */
+public class EmbeddedKeycloakEventLogReader implements Iterable<EventLogRecord> {
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddedKeycloakEventLogReader.class);
+
+    private final Path directory;
+
+    public EmbeddedKeycloakEventLogReader(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return segment files in order they were written
+     */
+    public List<Path> getSegments() {
+        return EventLogSegments.list(directory);
+    }
+
+    /**
+     * @throws UncheckedIOException when segment can't be read
+     */
+    @Override
+    public Iterator<EventLogRecord> iterator() {
+        return new RecordIterator(getSegments().iterator());
+    }
+
+    /**
+     * passes every logged event to listener
+     *
+     * @return number of replayed events
+     */
+    public long replay(EventListenerProvider listener) {
+        long count = 0;
+        for (EventLogRecord record : this) {
+            record.replay(listener);
+            count++;
+        }
+        return count;
+    }
+
+    private static class RecordIterator implements Iterator<EventLogRecord> {
+        private final Iterator<Path> segments;
+        private final CRC32 crc = new CRC32();
+        private Path path;
+        private ByteBuffer segment;
+        private EventLogRecord next;
+
+        RecordIterator(Iterator<Path> segments) {
+            this.segments = segments;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (segment != null) {
+                    next = read();
+                }
+                if (next == null) {
+                    if (!segments.hasNext()) {
+                        return false;
+                    }
+                    open(segments.next());
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public EventLogRecord next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            EventLogRecord record = next;
+            next = null;
+            return record;
+        }
+
+        private void open(Path path) {
+            this.path = path;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read event log segment: " + path, e);
+            }
+            if (segment.remaining() < EventLogSegments.HEADER_SIZE || segment.getInt() != EventLogSegments.MAGIC) {
+                LOG.warn("Skipping {} - it's not an event log segment", path);
+                segment = null;
+                return;
+            }
+            int version = segment.getInt();
+            if (version != EventLogSegments.VERSION) {
+                LOG.warn("Skipping {} - unsupported event log version: {}", path, version);
+                segment = null;
+            }
+        }
+
+        private EventLogRecord read() {
+            int offset = segment.position();
+            if (segment.remaining() < EventLogSegments.RECORD_HEADER_SIZE) {
+                segment = null;
+                return null;
+            }
+            int length = segment.getInt();
+            int checksum = segment.getInt();
+            if (length <= 0 || length > segment.remaining()) {
+                segment = null;
+                return null;
+            }
+
+            ByteBuffer body = segment.slice();
+            body.limit(length);
+            crc.reset();
+            crc.update(body);
+            if ((int) crc.getValue() != checksum) {
+                LOG.warn("Corrupted event log record at {} of {}, skipping rest of segment", offset, path);
+                segment = null;
+                return null;
+            }
+            body.rewind();
+            segment.position(segment.position() + length);
+
+            byte kind = body.get();
+            if (kind == EventLogSegments.KIND_EVENT) {
+                return new EventLogRecord(path, offset, readEvent(body), null);
+            }
+            if (kind == EventLogSegments.KIND_ADMIN_EVENT) {
+                return new EventLogRecord(path, offset, null, readAdminEvent(body));
+            }
+            LOG.warn("Unknown event log record kind {} at {} of {}, skipping rest of segment", kind, offset, path);
+            segment = null;
+            return null;
+        }
+
+        private static Event readEvent(ByteBuffer body) {
+            Event event = new Event();
+            event.setTime(body.getLong());
+            String type = readString(body);
+            event.setType(type == null ? null : EventType.valueOf(type));
+            event.setRealmId(readString(body));
+            event.setClientId(readString(body));
+            event.setUserId(readString(body));
+            event.setSessionId(readString(body));
+            event.setIpAddress(readString(body));
+            event.setError(readString(body));
+            int details = body.getInt();
+            if (details >= 0) {
+                Map<String, String> map = new HashMap<>();
+                for (int i = 0; i < details; i++) {
+                    map.put(readString(body), readString(body));
+                }
+                event.setDetails(map);
+            }
+            return event;
+        }
+
+        private static AdminEvent readAdminEvent(ByteBuffer body) {
+            AdminEvent event = new AdminEvent();
+            event.setTime(body.getLong());
+            event.setRealmId(readString(body));
+            String operationType = readString(body);
+            event.setOperationType(operationType == null ? null : OperationType.valueOf(operationType));
+            String resourceType = readString(body);
+            event.setResourceType(resourceType == null ? null : ResourceType.valueOf(resourceType));
+            AuthDetails authDetails = new AuthDetails();
+            authDetails.setRealmId(readString(body));
+            authDetails.setClientId(readString(body));
+            authDetails.setUserId(readString(body));
+            authDetails.setIpAddress(readString(body));
+            event.setAuthDetails(authDetails);
+            event.setResourcePath(readString(body));
+            event.setRepresentation(readString(body));
+            event.setError(readString(body));
+            return event;
+        }
+
+        private static String readString(ByteBuffer body) {
+            int length = body.getInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            body.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
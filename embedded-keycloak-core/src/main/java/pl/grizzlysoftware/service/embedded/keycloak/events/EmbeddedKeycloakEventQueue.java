@@ -0,0 +1,244 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.events;
+
+import org.keycloak.events.Event;
+import org.keycloak.events.admin.AdminEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded queue of keycloak events written in batches by a background thread - to keycloak's event tables unless other writer is given.
+ * <p>
+ * Adding an event never blocks - capacity is reserved with compare-and-set and the writer is woken up only once a full batch is waiting,
+ * otherwise it flushes whatever is queued every flush interval. Queue is drained when it's closed.
+ */
+public class EmbeddedKeycloakEventQueue implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddedKeycloakEventQueue.class);
+
+    private final ConcurrentLinkedQueue<QueuedEvent> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final EventBatchWriter writer;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long shutdownTimeout;
+    private final EventOverflowPolicy overflowPolicy;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+    private volatile long lag;
+
+    /**
+     * @param schema          schema of keycloak's tables, null for default one
+     * @param flushInterval   milliseconds queued events wait at most for a batch to fill up
+     * @param shutdownTimeout milliseconds close waits for queued events to be written
+     */
+    public EmbeddedKeycloakEventQueue(DataSource dataSource, String schema, int capacity, int batchSize, long flushInterval, long shutdownTimeout, EventOverflowPolicy overflowPolicy) {
+        this(new JdbcEventBatchWriter(dataSource, schema), "embedded-keycloak-events", capacity, batchSize, flushInterval, shutdownTimeout, overflowPolicy);
+    }
+
+    EmbeddedKeycloakEventQueue(EventBatchWriter writer, String threadName, int capacity, int batchSize, long flushInterval, long shutdownTimeout, EventOverflowPolicy overflowPolicy) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size has to be positive, was: " + batchSize);
+        }
+        this.writer = writer;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+        this.shutdownTimeout = shutdownTimeout;
+        this.overflowPolicy = overflowPolicy;
+        this.writerThread = new Thread(this::run, threadName);
+        this.writerThread.setDaemon(true);
+    }
+
+    public void start() {
+        writerThread.start();
+    }
+
+    /**
+     * @return false when queue is full and the event has to be written synchronously by caller - see {@link EventOverflowPolicy#SYNCHRONOUS}
+     */
+    public boolean add(Event event) {
+        return add(QueuedEvent.of(event));
+    }
+
+    /**
+     * @return false when queue is full and the event has to be written synchronously by caller - see {@link EventOverflowPolicy#SYNCHRONOUS}
+     */
+    public boolean add(AdminEvent event, boolean includeRepresentation) {
+        return add(QueuedEvent.of(event, includeRepresentation));
+    }
+
+    private boolean add(QueuedEvent event) {
+        if (!running) {
+            dropped.incrementAndGet();
+            return true;
+        }
+        if (reserve()) {
+            enqueue(event);
+            return true;
+        }
+
+        switch (overflowPolicy) {
+            case SYNCHRONOUS:
+                return false;
+            case DROP_OLDEST:
+                if (poll() != null) {
+                    dropped.incrementAndGet();
+                }
+                if (reserve()) {
+                    enqueue(event);
+                    return true;
+                }
+                dropped.incrementAndGet();
+                return true;
+            default:
+                dropped.incrementAndGet();
+                return true;
+        }
+    }
+
+    private boolean reserve() {
+        int current;
+        do {
+            current = size.get();
+            if (current >= capacity) {
+                return false;
+            }
+        } while (!size.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    private void enqueue(QueuedEvent event) {
+        queue.offer(event);
+        if (size.get() == batchSize) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    private QueuedEvent poll() {
+        QueuedEvent event = queue.poll();
+        if (event != null) {
+            size.decrementAndGet();
+        }
+        return event;
+    }
+
+    private void run() {
+        while (running) {
+            if (size.get() < batchSize) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+            flush();
+        }
+        flush();
+    }
+
+    /**
+     * writes queued events in batches until queue is empty
+     */
+    void flush() {
+        List<QueuedEvent> batch = new ArrayList<>(batchSize);
+        do {
+            batch.clear();
+            QueuedEvent event;
+            while (batch.size() < batchSize && (event = poll()) != null) {
+                batch.add(event);
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+            }
+        } while (batch.size() == batchSize);
+    }
+
+    private void write(List<QueuedEvent> batch) {
+        try {
+            writer.write(batch);
+            written.addAndGet(batch.size());
+            lag = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - batch.get(0).enqueuedAt);
+        } catch (Exception e) {
+            failed.addAndGet(batch.size());
+            LOG.warn("Unable to write {} keycloak events", batch.size(), e);
+        }
+    }
+
+    /**
+     * stops accepting events and waits until queued ones are written
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(shutdownTimeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (size.get() > 0) {
+            LOG.warn("{} keycloak events were not written before shutdown", size.get());
+        }
+        if (!writerThread.isAlive()) {
+            writer.close();
+        }
+    }
+
+    /**
+     * @return number of events waiting for being written
+     */
+    public int getQueued() {
+        return size.get();
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    /**
+     * @return number of events dropped because queue was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return number of events lost because writing them failed
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return milliseconds the oldest event of last written batch waited in queue
+     */
+    public long getLag() {
+        return lag;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.events;
+
+import org.keycloak.events.Event;
+import org.keycloak.events.EventQuery;
+import org.keycloak.events.EventStoreProvider;
+import org.keycloak.events.EventType;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.AdminEventQuery;
+import org.keycloak.models.KeycloakSession;
+
+import java.util.Set;
+
+/**
+ * queues events for {@link EmbeddedKeycloakEventQueue}, queries and clearing go to keycloak's jpa events store -
+ * events which are still queued are not returned by queries
+ */
+public class EmbeddedKeycloakEventStoreProvider implements EventStoreProvider {
+    private final KeycloakSession session;
+    private final EmbeddedKeycloakEventQueue queue;
+    private final Set<EventType> excludedEvents;
+
+    public EmbeddedKeycloakEventStoreProvider(KeycloakSession session, EmbeddedKeycloakEventQueue queue, Set<EventType> excludedEvents) {
+        this.session = session;
+        this.queue = queue;
+        this.excludedEvents = excludedEvents;
+    }
+
+    @Override
+    public void onEvent(Event event) {
+        if (excludedEvents.contains(event.getType())) {
+            return;
+        }
+        if (!queue.add(event)) {
+            delegate().onEvent(event);
+        }
+    }
+
+    @Override
+    public void onEvent(AdminEvent event, boolean includeRepresentation) {
+        if (!queue.add(event, includeRepresentation)) {
+            delegate().onEvent(event, includeRepresentation);
+        }
+    }
+
+    @Override
+    public EventQuery createQuery() {
+        return delegate().createQuery();
+    }
+
+    @Override
+    public AdminEventQuery createAdminQuery() {
+        return delegate().createAdminQuery();
+    }
+
+    @Override
+    public void clear() {
+        delegate().clear();
+    }
+
+    @Override
+    public void clear(String realmId) {
+        delegate().clear(realmId);
+    }
+
+    @Override
+    public void clear(String realmId, long olderThan) {
+        delegate().clear(realmId, olderThan);
+    }
+
+    @Override
+    public void clearAdmin() {
+        delegate().clearAdmin();
+    }
+
+    @Override
+    public void clearAdmin(String realmId) {
+        delegate().clearAdmin(realmId);
+    }
+
+    @Override
+    public void clearAdmin(String realmId, long olderThan) {
+        delegate().clearAdmin(realmId, olderThan);
+    }
+
+    private EventStoreProvider delegate() {
+        EventStoreProvider delegate = session.getProvider(EventStoreProvider.class, EmbeddedKeycloakEventStoreProviderFactory.DELEGATE_PROVIDER_ID);
+        if (delegate == null) {
+            throw new IllegalStateException("Keycloak's jpa events store is not available");
+        }
+        return delegate;
+    }
+
+    @Override
+    public void close() {
+    }
+}
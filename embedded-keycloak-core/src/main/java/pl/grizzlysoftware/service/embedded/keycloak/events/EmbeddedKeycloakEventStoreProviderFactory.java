@@ -0,0 +1,111 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.events;
+
+import org.keycloak.Config;
+import org.keycloak.events.EventStoreProvider;
+import org.keycloak.events.EventStoreProviderFactory;
+import org.keycloak.events.EventType;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Events store writing events asynchronously in jdbc batches, events are queried and cleared through keycloak's jpa events store.
+ * Events are not part of request's transaction - event of rolled back request may still be stored, queued events are lost when JVM crashes.
+ * <p>
+ * Enabled with {@code "eventsStore" => {"provider" => "embedded-async"}} in keycloak-server.conf, provider settings:
+ * dataSource(jndi name), schema, exclude-events, queue-size, batch-size, flush-interval, overflow-policy(SYNCHRONOUS by default), shutdown-timeout
+ */
+public class EmbeddedKeycloakEventStoreProviderFactory implements EventStoreProviderFactory {
+    public static final String PROVIDER_ID = "embedded-async";
+    public static final String DELEGATE_PROVIDER_ID = "jpa";
+
+    private Set<EventType> excludedEvents = Collections.emptySet();
+    private String dataSourceName;
+    private String schema;
+    private int queueSize;
+    private int batchSize;
+    private long flushInterval;
+    private long shutdownTimeout;
+    private EventOverflowPolicy overflowPolicy;
+    private EmbeddedKeycloakEventQueue queue;
+
+    @Override
+    public EventStoreProvider create(KeycloakSession session) {
+        return new EmbeddedKeycloakEventStoreProvider(session, queue, excludedEvents);
+    }
+
+    @Override
+    public void init(Config.Scope config) {
+        String[] excludes = config.getArray("exclude-events");
+        if (excludes != null) {
+            excludedEvents = EnumSet.noneOf(EventType.class);
+            for (String exclude : excludes) {
+                excludedEvents.add(EventType.valueOf(exclude));
+            }
+        }
+        dataSourceName = config.get("dataSource", "spring/datasource");
+        schema = config.get("schema");
+        queueSize = config.getInt("queue-size", 10000);
+        batchSize = config.getInt("batch-size", 500);
+        flushInterval = config.getLong("flush-interval", 1000L);
+        shutdownTimeout = config.getLong("shutdown-timeout", 30000L);
+        overflowPolicy = EventOverflowPolicy.valueOf(config.get("overflow-policy", EventOverflowPolicy.SYNCHRONOUS.name()));
+    }
+
+    @Override
+    public void postInit(KeycloakSessionFactory factory) {
+        queue = new EmbeddedKeycloakEventQueue(lookupDataSource(), schema, queueSize, batchSize, flushInterval, shutdownTimeout, overflowPolicy);
+        queue.start();
+    }
+
+    protected DataSource lookupDataSource() {
+        try {
+            return (DataSource) new InitialContext().lookup(dataSourceName);
+        } catch (NamingException e) {
+            throw new IllegalStateException("Unable to find events store datasource: " + dataSourceName, e);
+        }
+    }
+
+    /**
+     * called when session factory is closed - on servlet context destruction, writes all queued events before returning
+     */
+    @Override
+    public void close() {
+        if (queue != null) {
+            queue.close();
+        }
+    }
+
+    @Override
+    public String getId() {
+        return PROVIDER_ID;
+    }
+
+    public EmbeddedKeycloakEventQueue getQueue() {
+        return queue;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.events;
+
+import org.keycloak.events.Event;
+import org.keycloak.events.EventListenerProvider;
+import org.keycloak.events.admin.AdminEvent;
+
+import java.nio.file.Path;
+
+/**
+ * event read from event log - either {@link Event} or {@link AdminEvent}
+ */
+public final class EventLogRecord {
+    private final Path segment;
+    private final int offset;
+    private final Event event;
+    private final AdminEvent adminEvent;
+
+    EventLogRecord(Path segment, int offset, Event event, AdminEvent adminEvent) {
+        this.segment = segment;
+        this.offset = offset;
+        this.event = event;
+        this.adminEvent = adminEvent;
+    }
+
+    public boolean isAdminEvent() {
+        return adminEvent != null;
+    }
+
+    /**
+     * @return login event or null for admin event
+     */
+    public Event getEvent() {
+        return event;
+    }
+
+    /**
+     * @return admin event or null for login event
+     */
+    public AdminEvent getAdminEvent() {
+        return adminEvent;
+    }
+
+    public long getTime() {
+        return isAdminEvent() ? adminEvent.getTime() : event.getTime();
+    }
+
+    /**
+     * @return segment file the record was read from
+     */
+    public Path getSegment() {
+        return segment;
+    }
+
+    /**
+     * @return position of the record in its segment
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * passes the event to listener, admin event's representation is included when it was logged
+     */
+    public void replay(EventListenerProvider listener) {
+        if (isAdminEvent()) {
+            listener.onEvent(adminEvent, adminEvent.getRepresentation() != null);
+        } else {
+            listener.onEvent(event);
+        }
+    }
+}
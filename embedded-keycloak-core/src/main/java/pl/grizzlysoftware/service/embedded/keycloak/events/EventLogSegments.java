@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.events;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * layout of event log segment files:
+ * segment header - int magic, int version
+ * record - int body length, int crc32 of body, body
+ * body - byte kind, long time, event's fields as strings(int length of utf-8 bytes or -1 for null, bytes) in order of {@link EventLogRecord} getters
+ * <p>
+ * unused tail of a segment is zero-filled, so record with length 0 ends the segment
+ */
+final class EventLogSegments {
+    static final int MAGIC = 0x4B43454C;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_HEADER_SIZE = 8;
+    static final byte KIND_EVENT = 1;
+    static final byte KIND_ADMIN_EVENT = 2;
+
+    private static final String PREFIX = "events-";
+    private static final String SUFFIX = ".log";
+
+    private EventLogSegments() {
+    }
+
+    static String name(long index) {
+        return String.format("%s%019d%s", PREFIX, index, SUFFIX);
+    }
+
+    static long index(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * @return segments of event log in order they were written
+     */
+    static List<Path> list(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            return Collections.emptyList();
+        }
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            files.forEach(segments::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to list event log segments of: " + directory, e);
+        }
+        segments.sort((left, right) -> Long.compare(index(left), index(right)));
+        return segments;
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.events;
+
+import org.keycloak.events.Event;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.AuthDetails;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * appends events to memory-mapped segment files, see {@link EventLogSegments} for the layout
+ * <p>
+ * every run starts a new segment, segment is rolled over once next record does not fit in it.
+ * Records are encoded into a reused buffer, so writing allocates next to nothing besides new segments.
+ */
+class EventLogWriter implements EventBatchWriter {
+    private static final Logger LOG = LoggerFactory.getLogger(EventLogWriter.class);
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final boolean sync;
+    private final Deque<Path> segments;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer scratch = ByteBuffer.allocate(4096);
+    private long nextIndex;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+
+    /**
+     * @param maxSegments number of newest segments kept, older ones are deleted on rollover, 0 keeps all
+     * @param sync        whether segment is forced to disk after every batch
+     */
+    EventLogWriter(Path directory, int segmentSize, int maxSegments, boolean sync) throws IOException {
+        if (segmentSize <= EventLogSegments.HEADER_SIZE + EventLogSegments.RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("Event log segment size is too small: " + segmentSize);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.sync = sync;
+        this.segments = new ArrayDeque<>(EventLogSegments.list(directory));
+        this.nextIndex = segments.isEmpty() ? 1 : EventLogSegments.index(segments.getLast()) + 1;
+    }
+
+    @Override
+    public void write(List<QueuedEvent> batch) throws IOException {
+        for (QueuedEvent event : batch) {
+            scratch.clear();
+            if (event.isAdminEvent()) {
+                encode(event.adminEvent);
+            } else {
+                encode(event.event);
+            }
+            scratch.flip();
+            append(scratch);
+        }
+        if (sync && segment != null) {
+            segment.force();
+        }
+    }
+
+    private void append(ByteBuffer body) throws IOException {
+        int length = body.remaining();
+        if (segment == null || segment.remaining() < EventLogSegments.RECORD_HEADER_SIZE + length) {
+            roll(EventLogSegments.RECORD_HEADER_SIZE + length);
+        }
+        crc.reset();
+        crc.update(body);
+        body.rewind();
+
+        int start = segment.position();
+        segment.position(start + 4);
+        segment.putInt((int) crc.getValue());
+        segment.put(body);
+        // length goes last, reader never sees a record which is not fully written
+        segment.putInt(start, length);
+    }
+
+    private void roll(int recordSize) throws IOException {
+        closeSegment();
+        Path path = directory.resolve(EventLogSegments.name(nextIndex++));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segmentSize, EventLogSegments.HEADER_SIZE + recordSize));
+        segment.putInt(EventLogSegments.MAGIC);
+        segment.putInt(EventLogSegments.VERSION);
+        segments.addLast(path);
+
+        while (maxSegments > 0 && segments.size() > maxSegments) {
+            Files.deleteIfExists(segments.removeFirst());
+        }
+        LOG.debug("Keycloak events are written to: {}", path);
+    }
+
+    private void closeSegment() throws IOException {
+        if (segment != null) {
+            segment.force();
+            channel.close();
+            segment = null;
+            channel = null;
+        }
+    }
+
+    private void encode(Event event) {
+        ensureCapacity(9);
+        scratch.put(EventLogSegments.KIND_EVENT);
+        scratch.putLong(event.getTime());
+        putString(event.getType() == null ? null : event.getType().name());
+        putString(event.getRealmId());
+        putString(event.getClientId());
+        putString(event.getUserId());
+        putString(event.getSessionId());
+        putString(event.getIpAddress());
+        putString(event.getError());
+        Map<String, String> details = event.getDetails();
+        ensureCapacity(4);
+        if (details == null) {
+            scratch.putInt(-1);
+            return;
+        }
+        scratch.putInt(details.size());
+        for (Map.Entry<String, String> detail : details.entrySet()) {
+            putString(detail.getKey());
+            putString(detail.getValue());
+        }
+    }
+
+    private void encode(AdminEvent event) {
+        AuthDetails authDetails = event.getAuthDetails() == null ? new AuthDetails() : event.getAuthDetails();
+        ensureCapacity(9);
+        scratch.put(EventLogSegments.KIND_ADMIN_EVENT);
+        scratch.putLong(event.getTime());
+        putString(event.getRealmId());
+        putString(event.getOperationType() == null ? null : event.getOperationType().name());
+        putString(event.getResourceType() == null ? null : event.getResourceType().name());
+        putString(authDetails.getRealmId());
+        putString(authDetails.getClientId());
+        putString(authDetails.getUserId());
+        putString(authDetails.getIpAddress());
+        putString(event.getResourcePath());
+        putString(event.getRepresentation());
+        putString(event.getError());
+    }
+
+    private void putString(String value) {
+        if (value == null) {
+            ensureCapacity(4);
+            scratch.putInt(-1);
+            return;
+        }
+        // utf-8 never takes more than 3 bytes per java char
+        ensureCapacity(4 + 3 * value.length());
+        int lengthPosition = scratch.position();
+        scratch.position(lengthPosition + 4);
+        encoder.reset();
+        encoder.encode(CharBuffer.wrap(value), scratch, true);
+        encoder.flush(scratch);
+        scratch.putInt(lengthPosition, scratch.position() - lengthPosition - 4);
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (scratch.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(scratch.capacity() * 2, scratch.position() + bytes));
+            scratch.flip();
+            larger.put(scratch);
+            scratch = larger;
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            closeSegment();
+        } catch (IOException e) {
+            LOG.warn("Unable to close event log segment", e);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.events;
+
+import org.keycloak.events.Event;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.util.JsonSerialization;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * inserts events into keycloak's EVENT_ENTITY and ADMIN_EVENT_ENTITY tables, one transaction per batch
+ */
+class JdbcEventBatchWriter implements EventBatchWriter {
+    private static final Logger LOG = LoggerFactory.getLogger(JdbcEventBatchWriter.class);
+    private static final String INSERT_EVENT = "insert into %sEVENT_ENTITY (ID, EVENT_TIME, TYPE, REALM_ID, CLIENT_ID, USER_ID, SESSION_ID, IP_ADDRESS, ERROR, DETAILS_JSON)"
+            + " values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_ADMIN_EVENT = "insert into %sADMIN_EVENT_ENTITY (ID, ADMIN_EVENT_TIME, REALM_ID, OPERATION_TYPE, RESOURCE_TYPE, AUTH_REALM_ID, AUTH_CLIENT_ID, AUTH_USER_ID, IP_ADDRESS, RESOURCE_PATH, REPRESENTATION, ERROR)"
+            + " values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final DataSource dataSource;
+    private final String insertEvent;
+    private final String insertAdminEvent;
+
+    /**
+     * @param schema schema of keycloak's tables, null for default one
+     */
+    JdbcEventBatchWriter(DataSource dataSource, String schema) {
+        String prefix = schema == null || schema.isEmpty() ? "" : schema + ".";
+        this.dataSource = dataSource;
+        this.insertEvent = String.format(INSERT_EVENT, prefix);
+        this.insertAdminEvent = String.format(INSERT_ADMIN_EVENT, prefix);
+    }
+
+    @Override
+    public void write(List<QueuedEvent> batch) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement events = connection.prepareStatement(insertEvent);
+                 PreparedStatement adminEvents = connection.prepareStatement(insertAdminEvent)) {
+                int eventCount = 0;
+                for (QueuedEvent event : batch) {
+                    if (event.isAdminEvent()) {
+                        bind(adminEvents, event.adminEvent);
+                        adminEvents.addBatch();
+                    } else {
+                        bind(events, event.event);
+                        events.addBatch();
+                        eventCount++;
+                    }
+                }
+                if (eventCount > 0) {
+                    events.executeBatch();
+                }
+                if (eventCount < batch.size()) {
+                    adminEvents.executeBatch();
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    private static void bind(PreparedStatement statement, Event event) throws SQLException {
+        statement.setString(1, UUID.randomUUID().toString());
+        statement.setLong(2, event.getTime());
+        statement.setString(3, event.getType() == null ? null : event.getType().toString());
+        statement.setString(4, event.getRealmId());
+        statement.setString(5, event.getClientId());
+        statement.setString(6, event.getUserId());
+        statement.setString(7, event.getSessionId());
+        statement.setString(8, event.getIpAddress());
+        statement.setString(9, event.getError());
+        statement.setString(10, details(event));
+    }
+
+    private static void bind(PreparedStatement statement, AdminEvent event) throws SQLException {
+        statement.setString(1, UUID.randomUUID().toString());
+        statement.setLong(2, event.getTime());
+        statement.setString(3, event.getRealmId());
+        statement.setString(4, event.getOperationType() == null ? null : event.getOperationType().toString());
+        statement.setString(5, event.getResourceType() == null ? null : event.getResourceType().toString());
+        statement.setString(6, event.getAuthDetails() == null ? null : event.getAuthDetails().getRealmId());
+        statement.setString(7, event.getAuthDetails() == null ? null : event.getAuthDetails().getClientId());
+        statement.setString(8, event.getAuthDetails() == null ? null : event.getAuthDetails().getUserId());
+        statement.setString(9, event.getAuthDetails() == null ? null : event.getAuthDetails().getIpAddress());
+        statement.setString(10, event.getResourcePath());
+        statement.setString(11, event.getRepresentation());
+        statement.setString(12, event.getError());
+    }
+
+    private static String details(Event event) {
+        if (event.getDetails() == null) {
+            return null;
+        }
+        try {
+            return JsonSerialization.writeValueAsString(event.getDetails());
+        } catch (IOException e) {
+            LOG.warn("Unable to write details of keycloak event: {}", event.getType(), e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.events;
+
+import org.keycloak.events.Event;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.AuthDetails;
+
+/**
+ * Snapshot of an event waiting for being written - keycloak reuses event objects once they are sent, so they are copied
+ */
+final class QueuedEvent {
+    final Event event;
+    final AdminEvent adminEvent;
+    final boolean includeRepresentation;
+    final long enqueuedAt;
+
+    private QueuedEvent(Event event, AdminEvent adminEvent, boolean includeRepresentation) {
+        this.event = event;
+        this.adminEvent = adminEvent;
+        this.includeRepresentation = includeRepresentation;
+        this.enqueuedAt = System.nanoTime();
+    }
+
+    static QueuedEvent of(Event event) {
+        return new QueuedEvent(event.clone(), null, false);
+    }
+
+    static QueuedEvent of(AdminEvent event, boolean includeRepresentation) {
+        AdminEvent copy = new AdminEvent();
+        copy.setTime(event.getTime());
+        copy.setRealmId(event.getRealmId());
+        copy.setOperationType(event.getOperationType());
+        copy.setResourceType(event.getResourceType());
+        copy.setResourcePath(event.getResourcePath());
+        copy.setRepresentation(includeRepresentation ? event.getRepresentation() : null);
+        copy.setError(event.getError());
+        if (event.getAuthDetails() != null) {
+            AuthDetails authDetails = new AuthDetails();
+            authDetails.setRealmId(event.getAuthDetails().getRealmId());
+            authDetails.setClientId(event.getAuthDetails().getClientId());
+            authDetails.setUserId(event.getAuthDetails().getUserId());
+            authDetails.setIpAddress(event.getAuthDetails().getIpAddress());
+            copy.setAuthDetails(authDetails);
+        }
+        return new QueuedEvent(null, copy, includeRepresentation);
+    }
+
+    boolean isAdminEvent() {
+        return adminEvent != null;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.infinispan;
+
+import org.infinispan.configuration.cache.CacheMode;
+import org.infinispan.configuration.cache.Configuration;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.cache.StorageType;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.eviction.EvictionType;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.remoting.transport.jgroups.JGroupsTransport;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakCacheProperties;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakClusterProperties;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates infinispan cache container with all caches keycloak needs - the same ones as keycloak's standalone(-ha) server defines.
+ * Keycloak uses it instead of its own local caches when connectionsInfinispan provider's cacheContainer points to it,
+ * revision caches(realmRevisions, userRevisions, authorizationRevisions) are defined by keycloak itself - twice as big as corresponding cache
+ */
+public final class EmbeddedKeycloakCacheContainer {
+    public static final String REALM_CACHE = "realms";
+    public static final String USER_CACHE = "users";
+    public static final String AUTHORIZATION_CACHE = "authorization";
+    public static final String SESSION_CACHE = "sessions";
+    public static final String AUTHENTICATION_SESSIONS_CACHE = "authenticationSessions";
+    public static final String OFFLINE_SESSION_CACHE = "offlineSessions";
+    public static final String CLIENT_SESSION_CACHE = "clientSessions";
+    public static final String OFFLINE_CLIENT_SESSION_CACHE = "offlineClientSessions";
+    public static final String LOGIN_FAILURE_CACHE = "loginFailures";
+    public static final String WORK_CACHE = "work";
+    public static final String KEYS_CACHE = "keys";
+    public static final String ACTION_TOKEN_CACHE = "actionTokens";
+
+    public static final List<String> CONFIGURABLE_CACHES = Collections.unmodifiableList(Arrays.asList(REALM_CACHE, USER_CACHE, AUTHORIZATION_CACHE, SESSION_CACHE));
+
+    private EmbeddedKeycloakCacheContainer() {
+        //NOOP
+    }
+
+    public static EmbeddedCacheManager create(EmbeddedKeycloakCacheProperties properties) {
+        return create(properties, new EmbeddedKeycloakClusterProperties());
+    }
+
+    /**
+     * in clustered mode caches are clustered like in keycloak's standalone-ha server:
+     * realms, users, authorization and keys are invalidated on all nodes, sessions are distributed to sessions owners, work is replicated
+     */
+    public static EmbeddedCacheManager create(EmbeddedKeycloakCacheProperties properties, EmbeddedKeycloakClusterProperties cluster) {
+        GlobalConfigurationBuilder global = new GlobalConfigurationBuilder();
+        global.globalJmxStatistics()
+                .enabled(properties.statistics)
+                .jmxDomain("embedded-keycloak")
+                .allowDuplicateDomains(true);
+        if (cluster.enabled) {
+            global.transport()
+                    .transport(new JGroupsTransport(EmbeddedKeycloakClusterChannel.create(cluster)))
+                    .clusterName(cluster.name);
+            if (cluster.nodeName != null) {
+                global.transport().nodeName(cluster.nodeName);
+            }
+        }
+
+        CacheMode invalidation = !cluster.enabled ? CacheMode.LOCAL : cluster.async ? CacheMode.INVALIDATION_ASYNC : CacheMode.INVALIDATION_SYNC;
+        CacheMode distribution = !cluster.enabled ? CacheMode.LOCAL : cluster.async ? CacheMode.DIST_ASYNC : CacheMode.DIST_SYNC;
+        CacheMode replication = !cluster.enabled ? CacheMode.LOCAL : cluster.async ? CacheMode.REPL_ASYNC : CacheMode.REPL_SYNC;
+        int owners = Math.max(1, cluster.sessionsOwners);
+        EmbeddedKeycloakCacheProperties.Cache unbounded = new EmbeddedKeycloakCacheProperties.Cache(-1, -1, -1, -1);
+
+        DefaultCacheManager cacheManager = new DefaultCacheManager(global.build(), false);
+        cacheManager.defineConfiguration(REALM_CACHE, cache(properties.realms, properties.statistics, invalidation, owners));
+        cacheManager.defineConfiguration(USER_CACHE, cache(properties.users, properties.statistics, invalidation, owners));
+        cacheManager.defineConfiguration(AUTHORIZATION_CACHE, cache(properties.authorization, properties.statistics, invalidation, owners));
+        cacheManager.defineConfiguration(SESSION_CACHE, cache(properties.sessions, properties.statistics, distribution, owners));
+        for (String name : Arrays.asList(AUTHENTICATION_SESSIONS_CACHE, OFFLINE_SESSION_CACHE, CLIENT_SESSION_CACHE, OFFLINE_CLIENT_SESSION_CACHE, LOGIN_FAILURE_CACHE)) {
+            cacheManager.defineConfiguration(name, cache(unbounded, properties.statistics, distribution, owners));
+        }
+        cacheManager.defineConfiguration(WORK_CACHE, cache(unbounded, properties.statistics, replication, owners));
+        cacheManager.defineConfiguration(KEYS_CACHE, cache(new EmbeddedKeycloakCacheProperties.Cache(1000, -1, -1, TimeUnit.HOURS.toMillis(1)), properties.statistics, invalidation, owners));
+
+        ConfigurationBuilder actionTokens = new ConfigurationBuilder();
+        actionTokens.jmxStatistics().enabled(properties.statistics);
+        actionTokens.expiration().maxIdle(-1).wakeUpInterval(5, TimeUnit.MINUTES);
+        if (cluster.enabled) {
+            actionTokens.clustering().cacheMode(distribution).hash().numOwners(Math.max(2, owners));
+        }
+        cacheManager.defineConfiguration(ACTION_TOKEN_CACHE, actionTokens.build());
+
+        cacheManager.start();
+        return cacheManager;
+    }
+
+    static Configuration cache(EmbeddedKeycloakCacheProperties.Cache cache, boolean statistics, CacheMode mode, int owners) {
+        ConfigurationBuilder builder = new ConfigurationBuilder();
+        builder.jmxStatistics().enabled(statistics);
+        builder.clustering().cacheMode(mode);
+        if (mode.isDistributed()) {
+            builder.clustering().hash().numOwners(owners);
+        }
+        if (cache.maxMemory > 0) {
+            builder.memory().storageType(StorageType.BINARY).evictionType(EvictionType.MEMORY).size(cache.maxMemory);
+        } else if (cache.maxEntries > 0) {
+            builder.memory().evictionType(EvictionType.COUNT).size(cache.maxEntries);
+        }
+        builder.expiration().lifespan(cache.lifespan).maxIdle(cache.maxIdle);
+        return builder.build();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.infinispan;
+
+import org.jgroups.JChannel;
+import org.jgroups.protocols.FD_ALL;
+import org.jgroups.protocols.FD_SOCK;
+import org.jgroups.protocols.FRAG3;
+import org.jgroups.protocols.MERGE3;
+import org.jgroups.protocols.MFC;
+import org.jgroups.protocols.TCP;
+import org.jgroups.protocols.TCPPING;
+import org.jgroups.protocols.UNICAST3;
+import org.jgroups.protocols.VERIFY_SUSPECT;
+import org.jgroups.protocols.pbcast.GMS;
+import org.jgroups.protocols.pbcast.NAKACK2;
+import org.jgroups.protocols.pbcast.STABLE;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakClusterProperties;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JGroups TCP channel of embedded keycloak cluster - the same protocol stack as infinispan's default-jgroups-tcp.xml,
+ * with multicast discovery replaced by static list of members(TCPPING)
+ */
+public final class EmbeddedKeycloakClusterChannel {
+
+    private EmbeddedKeycloakClusterChannel() {
+        //NOOP
+    }
+
+    public static JChannel create(EmbeddedKeycloakClusterProperties properties) {
+        try {
+            TCP tcp = new TCP();
+            tcp.setBindAddress(InetAddress.getByName(properties.bindAddress));
+            tcp.setBindPort(properties.bindPort);
+            tcp.setPortRange(properties.portRange);
+            tcp.setValue("enable_diagnostics", false);
+            tcp.setValue("sock_conn_timeout", 300);
+
+            TCPPING discovery = new TCPPING();
+            discovery.setInitialHosts(members(properties));
+            discovery.setPortRange(properties.portRange);
+
+            FD_ALL failureDetection = new FD_ALL();
+            failureDetection.setTimeout(10000);
+            failureDetection.setInterval(2000);
+            failureDetection.setTimeoutCheckInterval(1000);
+
+            GMS membership = new GMS();
+            membership.setJoinTimeout(5000);
+            membership.setPrintLocalAddr(false);
+
+            return new JChannel(
+                    tcp,
+                    discovery,
+                    new MERGE3(),
+                    new FD_SOCK(),
+                    failureDetection,
+                    new VERIFY_SUSPECT(),
+                    new NAKACK2().setUseMcastXmit(false),
+                    new UNICAST3(),
+                    new STABLE(),
+                    membership,
+                    new MFC(),
+                    new FRAG3()
+            );
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to create keycloak cluster channel", e);
+        }
+    }
+
+    /**
+     * @return members from both static list and members file
+     */
+    public static List<InetSocketAddress> members(EmbeddedKeycloakClusterProperties properties) {
+        List<InetSocketAddress> members = new ArrayList<>();
+        if (properties.members != null) {
+            for (String member : properties.members.split(",")) {
+                addMember(members, member, properties.bindPort);
+            }
+        }
+        if (properties.membersFile != null) {
+            try {
+                for (String member : Files.readAllLines(Paths.get(properties.membersFile), StandardCharsets.UTF_8)) {
+                    if (!member.trim().startsWith("#")) {
+                        addMember(members, member, properties.bindPort);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read keycloak cluster members file: " + properties.membersFile, e);
+            }
+        }
+        return members;
+    }
+
+    private static void addMember(List<InetSocketAddress> members, String member, int defaultPort) {
+        String address = member.trim();
+        if (address.isEmpty()) {
+            return;
+        }
+
+        String host = address;
+        int port = defaultPort;
+        int bracket = address.indexOf('[');
+        int colon = address.lastIndexOf(':');
+        if (bracket > 0 && address.endsWith("]")) {
+            host = address.substring(0, bracket);
+            port = Integer.parseInt(address.substring(bracket + 1, address.length() - 1));
+        } else if (colon > 0 && address.indexOf(':') == colon) {
+            host = address.substring(0, colon);
+            port = Integer.parseInt(address.substring(colon + 1));
+        }
+        members.add(new InetSocketAddress(host, port));
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.instrumentation;
+
+import pl.grizzlysoftware.service.embedded.keycloak.events.EmbeddedKeycloakEventQueue;
+
+/**
+ * receives notifications about embedded keycloak's internals - bootstrap, sessions, transactions and events
+ * <p>
+ * instance registered as servlet context attribute named after this interface is picked up by {@link pl.grizzlysoftware.service.embedded.keycloak.EmbeddedKeycloakApplication},
+ * implementations have to be thread safe and cheap - they are called on request threads
+ */
+public interface EmbeddedKeycloakInstrumentation {
+    EmbeddedKeycloakInstrumentation NOOP = new EmbeddedKeycloakInstrumentation() {
+    };
+
+    /**
+     * @param phase         name of bootstrap phase, i.e. providers, database-migration, admin-user, realm-import
+     * @param durationNanos phase duration
+     */
+    default void bootstrapPhase(String phase, long durationNanos) {
+    }
+
+    /**
+     * @param allocatedBytes bytes allocated by bootstrapping thread during phase, -1 when they are not measured
+     * @see EmbeddedKeycloakStartupReport
+     */
+    default void bootstrapPhase(String phase, long durationNanos, long allocatedBytes) {
+        bootstrapPhase(phase, durationNanos);
+    }
+
+    default void sessionOpened() {
+    }
+
+    default void sessionClosed() {
+    }
+
+    default void transactionCommitted() {
+    }
+
+    default void transactionRolledBack() {
+    }
+
+    /**
+     * called once during bootstrap when keycloak's events are stored through {@link EmbeddedKeycloakEventQueue}
+     */
+    default void eventQueue(EmbeddedKeycloakEventQueue queue) {
+    }
+}
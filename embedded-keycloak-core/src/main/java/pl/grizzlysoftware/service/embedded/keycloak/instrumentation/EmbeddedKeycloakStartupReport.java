@@ -0,0 +1,205 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.grizzlysoftware.service.embedded.keycloak.instrumentation;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * timings and allocations of consecutive bootstrap phases - a phase lasts until the next one starts
+ * <p>
+ * allocations are counted on the bootstrapping thread only(i.e. parallel realm import's threads are not included) and are -1 when jvm can't measure them,
+ * garbage collections are counted jvm wide
+ */
+public class EmbeddedKeycloakStartupReport {
+    /**
+     * report of bootstrap running on current thread - keycloak's bootstrap phases run in its constructor, before subclass' state is initialized
+     */
+    private static final ThreadLocal<EmbeddedKeycloakStartupReport> CURRENT = new ThreadLocal<>();
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    private final List<Phase> phases = new ArrayList<>();
+    private final long startedAt;
+    private final long startAllocatedBytes;
+    private volatile boolean finished;
+
+    private String phase;
+    private long phaseStartedAt;
+    private long phaseAllocatedBytes;
+    private long phaseCollections;
+    private long phaseCollectionTime;
+
+    public EmbeddedKeycloakStartupReport(String firstPhase) {
+        startedAt = System.nanoTime();
+        startAllocatedBytes = allocatedBytes();
+        begin(firstPhase, startedAt, startAllocatedBytes);
+    }
+
+    /**
+     * starts report of bootstrap running on current thread, see {@link #current()}
+     */
+    public static EmbeddedKeycloakStartupReport start(String firstPhase) {
+        EmbeddedKeycloakStartupReport report = new EmbeddedKeycloakStartupReport(firstPhase);
+        CURRENT.set(report);
+        return report;
+    }
+
+    /**
+     * @return report of bootstrap running on current thread or null when there's none
+     */
+    public static EmbeddedKeycloakStartupReport current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * detaches report of bootstrap which failed before finishing it from current thread - bootstrap's thread may be container's
+     * own startup thread, which outlives the report
+     */
+    public static void detach() {
+        CURRENT.remove();
+    }
+
+    /**
+     * finishes running phase and starts the next one
+     */
+    public synchronized void phase(String name) {
+        if (finished) {
+            throw new IllegalStateException("Startup report is already finished");
+        }
+        long now = System.nanoTime();
+        long allocated = allocatedBytes();
+        end(now, allocated);
+        begin(name, now, allocated);
+    }
+
+    /**
+     * finishes running phase and detaches report from current thread
+     */
+    public synchronized void finish() {
+        if (finished) {
+            return;
+        }
+        end(System.nanoTime(), allocatedBytes());
+        finished = true;
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public synchronized List<Phase> getPhases() {
+        return Collections.unmodifiableList(new ArrayList<>(phases));
+    }
+
+    public synchronized long getDurationNanos() {
+        return phases.stream().mapToLong(p -> p.durationNanos).sum();
+    }
+
+    /**
+     * @return -1 when allocations are not measured
+     */
+    public synchronized long getAllocatedBytes() {
+        return startAllocatedBytes < 0 ? -1 : phases.stream().mapToLong(p -> p.allocatedBytes).sum();
+    }
+
+    /**
+     * @return report as log friendly table, one phase per line
+     */
+    public synchronized String format() {
+        StringBuilder report = new StringBuilder("Embedded Keycloak startup report:");
+        report.append(String.format(Locale.ROOT, "%n  %-20s %10s %10s %12s %6s %8s", "phase", "start ms", "time ms", "alloc MB", "gc", "gc ms"));
+        for (Phase phase : phases) {
+            report.append(String.format(Locale.ROOT, "%n  %-20s %10d %10d %12s %6d %8d", phase.name,
+                    TimeUnit.NANOSECONDS.toMillis(phase.startNanos), TimeUnit.NANOSECONDS.toMillis(phase.durationNanos), megabytes(phase.allocatedBytes),
+                    phase.collections, phase.collectionMillis));
+        }
+        report.append(String.format(Locale.ROOT, "%n  %-20s %10s %10d %12s", "total", "", TimeUnit.NANOSECONDS.toMillis(getDurationNanos()), megabytes(getAllocatedBytes())));
+        return report.toString();
+    }
+
+    private void begin(String name, long now, long allocated) {
+        phase = name;
+        phaseStartedAt = now;
+        phaseAllocatedBytes = allocated;
+        phaseCollections = collections();
+        phaseCollectionTime = collectionTime();
+    }
+
+    private void end(long now, long allocated) {
+        phases.add(new Phase(phase, phaseStartedAt - startedAt, now - phaseStartedAt,
+                allocated < 0 || phaseAllocatedBytes < 0 ? -1 : allocated - phaseAllocatedBytes,
+                collections() - phaseCollections, collectionTime() - phaseCollectionTime));
+    }
+
+    private long allocatedBytes() {
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        if (!allocations.isThreadAllocatedMemorySupported() || !allocations.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        return allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private long collections() {
+        return collectors.stream().mapToLong(c -> Math.max(0, c.getCollectionCount())).sum();
+    }
+
+    private long collectionTime() {
+        return collectors.stream().mapToLong(c -> Math.max(0, c.getCollectionTime())).sum();
+    }
+
+    private static String megabytes(long bytes) {
+        return bytes < 0 ? "n/a" : String.format(Locale.ROOT, "%.1f", bytes / (1024.0 * 1024.0));
+    }
+
+    public static class Phase {
+        public final String name;
+        /**
+         * since start of bootstrap
+         */
+        public final long startNanos;
+        public final long durationNanos;
+        /**
+         * -1 when not measured
+         */
+        public final long allocatedBytes;
+        public final long collections;
+        public final long collectionMillis;
+
+        public Phase(String name, long startNanos, long durationNanos, long allocatedBytes, long collections, long collectionMillis) {
+            this.name = name;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+            this.allocatedBytes = allocatedBytes;
+            this.collections = collections;
+            this.collectionMillis = collectionMillis;
+        }
+    }
+}
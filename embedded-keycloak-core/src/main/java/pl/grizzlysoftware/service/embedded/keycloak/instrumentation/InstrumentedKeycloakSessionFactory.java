@@ -0,0 +1,156 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.instrumentation;
+
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakTransaction;
+import org.keycloak.provider.Provider;
+import org.keycloak.provider.ProviderEvent;
+import org.keycloak.provider.ProviderEventListener;
+import org.keycloak.provider.ProviderFactory;
+import org.keycloak.provider.Spi;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * session factory reporting opened and closed sessions and outcome of their transactions to {@link EmbeddedKeycloakInstrumentation}
+ * <p>
+ * sessions created by keycloak through {@link KeycloakSession#getKeycloakSessionFactory()} come from the delegate, so they are not reported
+ */
+public class InstrumentedKeycloakSessionFactory implements KeycloakSessionFactory {
+    private final KeycloakSessionFactory delegate;
+    private final EmbeddedKeycloakInstrumentation instrumentation;
+
+    public InstrumentedKeycloakSessionFactory(KeycloakSessionFactory delegate, EmbeddedKeycloakInstrumentation instrumentation) {
+        this.delegate = Objects.requireNonNull(delegate);
+        this.instrumentation = Objects.requireNonNull(instrumentation);
+    }
+
+    public KeycloakSessionFactory getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public KeycloakSession create() {
+        KeycloakSession session = delegate.create();
+        instrumentation.sessionOpened();
+        session.enlistForClose(new SessionCloseListener());
+        session.getTransactionManager().enlistAfterCompletion(new TransactionOutcomeListener());
+        return session;
+    }
+
+    @Override
+    public Set<Spi> getSpis() {
+        return delegate.getSpis();
+    }
+
+    @Override
+    public Spi getSpi(Class<? extends Provider> providerClass) {
+        return delegate.getSpi(providerClass);
+    }
+
+    @Override
+    public <T extends Provider> ProviderFactory<T> getProviderFactory(Class<T> clazz) {
+        return delegate.getProviderFactory(clazz);
+    }
+
+    @Override
+    public <T extends Provider> ProviderFactory<T> getProviderFactory(Class<T> clazz, String id) {
+        return delegate.getProviderFactory(clazz, id);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public List<ProviderFactory> getProviderFactories(Class<? extends Provider> clazz) {
+        return delegate.getProviderFactories(clazz);
+    }
+
+    @Override
+    public long getServerStartupTimestamp() {
+        return delegate.getServerStartupTimestamp();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public void register(ProviderEventListener listener) {
+        delegate.register(listener);
+    }
+
+    @Override
+    public void unregister(ProviderEventListener listener) {
+        delegate.unregister(listener);
+    }
+
+    @Override
+    public void publish(ProviderEvent event) {
+        delegate.publish(event);
+    }
+
+    private class SessionCloseListener implements Provider {
+        @Override
+        public void close() {
+            instrumentation.sessionClosed();
+        }
+    }
+
+    /**
+     * enlisted after completion - it is committed only when all of session's transactions are committed
+     */
+    private class TransactionOutcomeListener implements KeycloakTransaction {
+        private boolean active;
+
+        @Override
+        public void begin() {
+            active = true;
+        }
+
+        @Override
+        public void commit() {
+            active = false;
+            instrumentation.transactionCommitted();
+        }
+
+        @Override
+        public void rollback() {
+            active = false;
+            instrumentation.transactionRolledBack();
+        }
+
+        @Override
+        public void setRollbackOnly() {
+        }
+
+        @Override
+        public boolean getRollbackOnly() {
+            return false;
+        }
+
+        @Override
+        public boolean isActive() {
+            return active;
+        }
+    }
+}
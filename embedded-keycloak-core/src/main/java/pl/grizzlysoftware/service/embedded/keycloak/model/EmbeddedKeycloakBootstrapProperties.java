@@ -0,0 +1,54 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.model;
+
+import java.util.Properties;
+
+/**
+ * Settings of embedded keycloak server bootstrap
+ */
+public class EmbeddedKeycloakBootstrapProperties {
+    public static final String BOOTSTRAP_ASYNC = "keycloak.embedded.server.bootstrap.async";
+    public static final String BOOTSTRAP_RETRY_AFTER = "keycloak.embedded.server.bootstrap.retry-after";
+
+    /**
+     * when true keycloak boots on a background thread and application starts without waiting for it
+     */
+    public final boolean async;
+    /**
+     * value of Retry-After header(in seconds) sent with 503 responses while keycloak is starting
+     */
+    public final int retryAfter;
+
+    public EmbeddedKeycloakBootstrapProperties() {
+        async = false;
+        retryAfter = 5;
+    }
+
+    public EmbeddedKeycloakBootstrapProperties(boolean async, int retryAfter) {
+        this.async = async;
+        this.retryAfter = retryAfter;
+    }
+
+    public EmbeddedKeycloakBootstrapProperties(Properties props) {
+        EmbeddedKeycloakBootstrapProperties defaults = new EmbeddedKeycloakBootstrapProperties();
+        this.async = PropertiesReader.getBoolean(props, BOOTSTRAP_ASYNC, defaults.async);
+        this.retryAfter = PropertiesReader.getInt(props, BOOTSTRAP_RETRY_AFTER, defaults.retryAfter);
+    }
+}
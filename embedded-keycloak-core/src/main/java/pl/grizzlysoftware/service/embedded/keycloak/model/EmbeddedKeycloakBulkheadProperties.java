@@ -0,0 +1,112 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.grizzlysoftware.service.embedded.keycloak.model;
+
+import java.util.Properties;
+
+/**
+ * Settings of bounded executors keycloak requests run on instead of servlet container's worker threads - token, login, admin
+ * and discovery endpoints get separate executors, so traffic of one of them can't take threads of others
+ */
+public class EmbeddedKeycloakBulkheadProperties {
+    public static final String BULKHEAD_PREFIX = "keycloak.embedded.server.bulkhead.";
+    public static final String BULKHEAD_ENABLED = "keycloak.embedded.server.bulkhead.enabled";
+    public static final String BULKHEAD_QUEUE_TIMEOUT = "keycloak.embedded.server.bulkhead.queue-timeout";
+    public static final String BULKHEAD_RETRY_AFTER = "keycloak.embedded.server.bulkhead.retry-after";
+
+    public final boolean enabled;
+    /**
+     * time(in milliseconds) request may wait in queue, it's rejected with 503 when it waited longer
+     */
+    public final long queueTimeout;
+    /**
+     * value of Retry-After header(in seconds) sent with 503 responses to rejected requests
+     */
+    public final int retryAfter;
+    /**
+     * token, token introspection and userinfo endpoints
+     */
+    public final Pool token;
+    /**
+     * login pages, login actions, brokering and account console
+     */
+    public final Pool login;
+    /**
+     * admin console and admin REST API
+     */
+    public final Pool admin;
+    /**
+     * .well-known and certs endpoints
+     */
+    public final Pool discovery;
+
+    public EmbeddedKeycloakBulkheadProperties() {
+        enabled = false;
+        queueTimeout = 10000;
+        retryAfter = 1;
+        token = new Pool(16, 200);
+        login = new Pool(8, 100);
+        admin = new Pool(4, 50);
+        discovery = new Pool(4, 100);
+    }
+
+    public EmbeddedKeycloakBulkheadProperties(boolean enabled, long queueTimeout, int retryAfter, Pool token, Pool login, Pool admin, Pool discovery) {
+        this.enabled = enabled;
+        this.queueTimeout = queueTimeout;
+        this.retryAfter = retryAfter;
+        this.token = token;
+        this.login = login;
+        this.admin = admin;
+        this.discovery = discovery;
+    }
+
+    public EmbeddedKeycloakBulkheadProperties(Properties props) {
+        EmbeddedKeycloakBulkheadProperties defaults = new EmbeddedKeycloakBulkheadProperties();
+        this.enabled = PropertiesReader.getBoolean(props, BULKHEAD_ENABLED, defaults.enabled);
+        this.queueTimeout = PropertiesReader.getLong(props, BULKHEAD_QUEUE_TIMEOUT, defaults.queueTimeout);
+        this.retryAfter = PropertiesReader.getInt(props, BULKHEAD_RETRY_AFTER, defaults.retryAfter);
+        this.token = new Pool(props, "token", defaults.token);
+        this.login = new Pool(props, "login", defaults.login);
+        this.admin = new Pool(props, "admin", defaults.admin);
+        this.discovery = new Pool(props, "discovery", defaults.discovery);
+    }
+
+    /**
+     * keycloak.embedded.server.bulkhead.[token|login|admin|discovery].[threads|queue]
+     */
+    public static class Pool {
+        /**
+         * maximum number of requests processed at once
+         */
+        public final int threads;
+        /**
+         * maximum number of requests waiting for a thread, requests beyond it are rejected with 503
+         */
+        public final int queue;
+
+        public Pool(int threads, int queue) {
+            this.threads = threads;
+            this.queue = queue;
+        }
+
+        public Pool(Properties props, String name, Pool defaults) {
+            this.threads = PropertiesReader.getInt(props, BULKHEAD_PREFIX + name + ".threads", defaults.threads);
+            this.queue = PropertiesReader.getInt(props, BULKHEAD_PREFIX + name + ".queue", defaults.queue);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.model;
+
+import java.util.Properties;
+
+/**
+ * Settings of keycloak's infinispan caches
+ */
+public class EmbeddedKeycloakCacheProperties {
+    public static final String CACHE_PREFIX = "keycloak.embedded.cache.";
+    public static final String CACHE_STATISTICS = "keycloak.embedded.cache.statistics";
+
+    /**
+     * when true caches collect hit, miss and eviction statistics
+     */
+    public final boolean statistics;
+    public final Cache realms;
+    public final Cache users;
+    public final Cache authorization;
+    public final Cache sessions;
+
+    public EmbeddedKeycloakCacheProperties() {
+        statistics = true;
+        realms = new Cache(10000, -1, -1, -1);
+        users = new Cache(10000, -1, -1, -1);
+        authorization = new Cache(10000, -1, -1, -1);
+        sessions = new Cache(-1, -1, -1, -1);
+    }
+
+    public EmbeddedKeycloakCacheProperties(boolean statistics, Cache realms, Cache users, Cache authorization, Cache sessions) {
+        this.statistics = statistics;
+        this.realms = realms;
+        this.users = users;
+        this.authorization = authorization;
+        this.sessions = sessions;
+    }
+
+    public EmbeddedKeycloakCacheProperties(Properties props) {
+        EmbeddedKeycloakCacheProperties defaults = new EmbeddedKeycloakCacheProperties();
+        this.statistics = PropertiesReader.getBoolean(props, CACHE_STATISTICS, defaults.statistics);
+        this.realms = new Cache(props, "realms", defaults.realms);
+        this.users = new Cache(props, "users", defaults.users);
+        this.authorization = new Cache(props, "authorization", defaults.authorization);
+        this.sessions = new Cache(props, "sessions", defaults.sessions);
+    }
+
+    /**
+     * keycloak.embedded.cache.[cache name].[max-entries|max-memory|lifespan|max-idle], negative value means no limit
+     */
+    public static class Cache {
+        /**
+         * maximum number of entries, ignored when max memory is set
+         */
+        public final long maxEntries;
+        /**
+         * maximum amount of memory(in bytes) taken by entries, entries are stored in binary form when set
+         */
+        public final long maxMemory;
+        /**
+         * time(in milliseconds) after which entry expires
+         */
+        public final long lifespan;
+        /**
+         * time(in milliseconds) after which entry expires when it's not accessed
+         */
+        public final long maxIdle;
+
+        public Cache(long maxEntries, long maxMemory, long lifespan, long maxIdle) {
+            this.maxEntries = maxEntries;
+            this.maxMemory = maxMemory;
+            this.lifespan = lifespan;
+            this.maxIdle = maxIdle;
+        }
+
+        public Cache(Properties props, String name, Cache defaults) {
+            this.maxEntries = PropertiesReader.getLong(props, CACHE_PREFIX + name + ".max-entries", defaults.maxEntries);
+            this.maxMemory = PropertiesReader.getLong(props, CACHE_PREFIX + name + ".max-memory", defaults.maxMemory);
+            this.lifespan = PropertiesReader.getLong(props, CACHE_PREFIX + name + ".lifespan", defaults.lifespan);
+            this.maxIdle = PropertiesReader.getLong(props, CACHE_PREFIX + name + ".max-idle", defaults.maxIdle);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.model;
+
+import java.util.Properties;
+
+/**
+ * Settings of embedded keycloak cluster - nodes discover each other with JGroups TCP and static list of members
+ */
+public class EmbeddedKeycloakClusterProperties {
+    public static final String CLUSTER_ENABLED = "keycloak.embedded.cluster.enabled";
+    public static final String CLUSTER_NAME = "keycloak.embedded.cluster.name";
+    public static final String CLUSTER_NODE_NAME = "keycloak.embedded.cluster.node-name";
+    public static final String CLUSTER_BIND_ADDRESS = "keycloak.embedded.cluster.bind-address";
+    public static final String CLUSTER_BIND_PORT = "keycloak.embedded.cluster.bind-port";
+    public static final String CLUSTER_PORT_RANGE = "keycloak.embedded.cluster.port-range";
+    public static final String CLUSTER_MEMBERS = "keycloak.embedded.cluster.members";
+    public static final String CLUSTER_MEMBERS_FILE = "keycloak.embedded.cluster.members-file";
+    public static final String CLUSTER_SESSIONS_OWNERS = "keycloak.embedded.cluster.sessions-owners";
+    public static final String CLUSTER_ASYNC = "keycloak.embedded.cluster.async";
+
+    /**
+     * when false keycloak runs with local caches
+     */
+    public final boolean enabled;
+    /**
+     * nodes join only cluster of the same name
+     */
+    public final String name;
+    /**
+     * unique name of this node, generated when not set
+     */
+    public final String nodeName;
+    public final String bindAddress;
+    /**
+     * first port this node tries to listen on
+     */
+    public final int bindPort;
+    /**
+     * number of ports after bind port this node tries to listen on when bind port is taken(i.e. several nodes on one host),
+     * the same range is probed on every member
+     */
+    public final int portRange;
+    /**
+     * comma separated list of members: host[port] or host:port, port defaults to bind port
+     */
+    public final String members;
+    /**
+     * file with members - one per line, in the same format as members, lines starting with # are ignored
+     */
+    public final String membersFile;
+    /**
+     * number of nodes holding a copy of each user and authentication session
+     */
+    public final int sessionsOwners;
+    /**
+     * when true caches are replicated and invalidated asynchronously
+     */
+    public final boolean async;
+
+    public EmbeddedKeycloakClusterProperties() {
+        enabled = false;
+        name = "embedded-keycloak";
+        nodeName = null;
+        bindAddress = "127.0.0.1";
+        bindPort = 7800;
+        portRange = 10;
+        members = "127.0.0.1[7800]";
+        membersFile = null;
+        sessionsOwners = 2;
+        async = false;
+    }
+
+    public EmbeddedKeycloakClusterProperties(boolean enabled, String name, String nodeName, String bindAddress, int bindPort, int portRange, String members, String membersFile, int sessionsOwners, boolean async) {
+        this.enabled = enabled;
+        this.name = name;
+        this.nodeName = nodeName;
+        this.bindAddress = bindAddress;
+        this.bindPort = bindPort;
+        this.portRange = portRange;
+        this.members = members;
+        this.membersFile = membersFile;
+        this.sessionsOwners = sessionsOwners;
+        this.async = async;
+    }
+
+    public EmbeddedKeycloakClusterProperties(Properties props) {
+        EmbeddedKeycloakClusterProperties defaults = new EmbeddedKeycloakClusterProperties();
+        this.enabled = PropertiesReader.getBoolean(props, CLUSTER_ENABLED, defaults.enabled);
+        this.name = PropertiesReader.getString(props, CLUSTER_NAME, defaults.name);
+        this.nodeName = PropertiesReader.getString(props, CLUSTER_NODE_NAME, defaults.nodeName);
+        this.bindAddress = PropertiesReader.getString(props, CLUSTER_BIND_ADDRESS, defaults.bindAddress);
+        this.bindPort = PropertiesReader.getInt(props, CLUSTER_BIND_PORT, defaults.bindPort);
+        this.portRange = PropertiesReader.getInt(props, CLUSTER_PORT_RANGE, defaults.portRange);
+        this.members = PropertiesReader.getString(props, CLUSTER_MEMBERS, defaults.members);
+        this.membersFile = PropertiesReader.getString(props, CLUSTER_MEMBERS_FILE, defaults.membersFile);
+        this.sessionsOwners = PropertiesReader.getInt(props, CLUSTER_SESSIONS_OWNERS, defaults.sessionsOwners);
+        this.async = PropertiesReader.getBoolean(props, CLUSTER_ASYNC, defaults.async);
+    }
+}
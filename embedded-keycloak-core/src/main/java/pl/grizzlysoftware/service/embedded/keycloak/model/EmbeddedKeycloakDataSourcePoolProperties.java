@@ -0,0 +1,69 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.model;
+
+import java.util.Properties;
+
+/**
+ * Connection pool settings of the datasource used by embedded keycloak.
+ * Ignored when keycloak uses an already existing datasource(see {@link EmbeddedKeycloakServerProperties#DATASOURCE_BEAN_NAME})
+ */
+public class EmbeddedKeycloakDataSourcePoolProperties {
+    public static final String POOL_MAXIMUM_SIZE = "keycloak.embedded.datasource.pool.maximum-size";
+    public static final String POOL_MINIMUM_IDLE = "keycloak.embedded.datasource.pool.minimum-idle";
+    public static final String POOL_CONNECTION_TIMEOUT = "keycloak.embedded.datasource.pool.connection-timeout";
+    public static final String POOL_IDLE_TIMEOUT = "keycloak.embedded.datasource.pool.idle-timeout";
+    public static final String POOL_MAX_LIFETIME = "keycloak.embedded.datasource.pool.max-lifetime";
+    public static final String POOL_STATEMENT_CACHE_SIZE = "keycloak.embedded.datasource.pool.statement-cache-size";
+
+    public final int maximumSize;
+    public final int minimumIdle;
+    public final long connectionTimeout;
+    public final long idleTimeout;
+    public final long maxLifetime;
+    public final int statementCacheSize;
+
+    public EmbeddedKeycloakDataSourcePoolProperties() {
+        maximumSize = 10;
+        minimumIdle = 2;
+        connectionTimeout = 30000;
+        idleTimeout = 600000;
+        maxLifetime = 1800000;
+        statementCacheSize = 250;
+    }
+
+    public EmbeddedKeycloakDataSourcePoolProperties(int maximumSize, int minimumIdle, long connectionTimeout, long idleTimeout, long maxLifetime, int statementCacheSize) {
+        this.maximumSize = maximumSize;
+        this.minimumIdle = minimumIdle;
+        this.connectionTimeout = connectionTimeout;
+        this.idleTimeout = idleTimeout;
+        this.maxLifetime = maxLifetime;
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    public EmbeddedKeycloakDataSourcePoolProperties(Properties props) {
+        EmbeddedKeycloakDataSourcePoolProperties defaults = new EmbeddedKeycloakDataSourcePoolProperties();
+        this.maximumSize = PropertiesReader.getInt(props, POOL_MAXIMUM_SIZE, defaults.maximumSize);
+        this.minimumIdle = PropertiesReader.getInt(props, POOL_MINIMUM_IDLE, defaults.minimumIdle);
+        this.connectionTimeout = PropertiesReader.getLong(props, POOL_CONNECTION_TIMEOUT, defaults.connectionTimeout);
+        this.idleTimeout = PropertiesReader.getLong(props, POOL_IDLE_TIMEOUT, defaults.idleTimeout);
+        this.maxLifetime = PropertiesReader.getLong(props, POOL_MAX_LIFETIME, defaults.maxLifetime);
+        this.statementCacheSize = PropertiesReader.getInt(props, POOL_STATEMENT_CACHE_SIZE, defaults.statementCacheSize);
+    }
+}
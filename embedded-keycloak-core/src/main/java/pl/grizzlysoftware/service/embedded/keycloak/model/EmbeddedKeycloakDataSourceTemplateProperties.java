@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.grizzlysoftware.service.embedded.keycloak.model;
+
+import java.util.Properties;
+
+/**
+ * Settings of H2 database template - snapshot of fully bootstrapped keycloak database restored into a fresh database on every run.
+ * Ignored when keycloak uses an already existing datasource(see {@link EmbeddedKeycloakServerProperties#DATASOURCE_BEAN_NAME}) or other database than H2
+ */
+public class EmbeddedKeycloakDataSourceTemplateProperties {
+    public static final String MODE_MEMORY = "memory";
+    public static final String MODE_FILE = "file";
+
+    public static final String TEMPLATE_ENABLED = "keycloak.embedded.datasource.template.enabled";
+    public static final String TEMPLATE_MODE = "keycloak.embedded.datasource.template.mode";
+    public static final String TEMPLATE_DIRECTORY = "keycloak.embedded.datasource.template.directory";
+    public static final String TEMPLATE_RUN_DIRECTORY = "keycloak.embedded.datasource.template.run-directory";
+
+    public final boolean enabled;
+    /**
+     * memory - every run gets its own in-memory database, file - every run gets its own database file in run directory
+     */
+    public final String mode;
+    /**
+     * where templates are kept, one per keycloak version and realm configuration
+     */
+    public final String directory;
+    /**
+     * where databases of runs are created in file mode, they are deleted once keycloak stops
+     */
+    public final String runDirectory;
+
+    public EmbeddedKeycloakDataSourceTemplateProperties() {
+        enabled = false;
+        mode = MODE_MEMORY;
+        directory = "./data/templates";
+        runDirectory = "./data/runs";
+    }
+
+    public EmbeddedKeycloakDataSourceTemplateProperties(boolean enabled, String mode, String directory, String runDirectory) {
+        this.enabled = enabled;
+        this.mode = mode;
+        this.directory = directory;
+        this.runDirectory = runDirectory;
+    }
+
+    public EmbeddedKeycloakDataSourceTemplateProperties(Properties props) {
+        EmbeddedKeycloakDataSourceTemplateProperties defaults = new EmbeddedKeycloakDataSourceTemplateProperties();
+        this.enabled = PropertiesReader.getBoolean(props, TEMPLATE_ENABLED, defaults.enabled);
+        this.mode = PropertiesReader.getString(props, TEMPLATE_MODE, defaults.mode);
+        this.directory = PropertiesReader.getString(props, TEMPLATE_DIRECTORY, defaults.directory);
+        this.runDirectory = PropertiesReader.getString(props, TEMPLATE_RUN_DIRECTORY, defaults.runDirectory);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.model;
+
+import java.util.Properties;
+
+/**
+ * Settings of in-process bearer token validation
+ */
+public class EmbeddedKeycloakJwtProperties {
+    public static final String JWT_ENABLED = "keycloak.embedded.security.jwt.enabled";
+    public static final String JWT_REALM = "keycloak.embedded.security.jwt.realm";
+    public static final String JWT_MAX_ENTRIES = "keycloak.embedded.security.jwt.max-entries";
+    public static final String JWT_KEY_REFRESH_INTERVAL = "keycloak.embedded.security.jwt.key-refresh-interval";
+
+    /**
+     * registers the decoder as application's JwtDecoder bean - off by default, so it doesn't replace one configured by spring boot
+     */
+    public final boolean enabled;
+    /**
+     * only tokens issued by this realm are accepted, required when decoder is enabled
+     */
+    public final String realm;
+    /**
+     * expired verified tokens are purged once cache grows beyond that, cache is cleared when it's still too big
+     */
+    public final int maxEntries;
+    /**
+     * how often(in milliseconds) realm keys are re-read from keycloak, so rotated and removed keys are noticed
+     */
+    public final long keyRefreshInterval;
+
+    public EmbeddedKeycloakJwtProperties() {
+        enabled = false;
+        realm = null;
+        maxEntries = 10000;
+        keyRefreshInterval = 30000;
+    }
+
+    public EmbeddedKeycloakJwtProperties(boolean enabled, String realm, int maxEntries, long keyRefreshInterval) {
+        this.enabled = enabled;
+        this.realm = realm;
+        this.maxEntries = maxEntries;
+        this.keyRefreshInterval = keyRefreshInterval;
+    }
+
+    public EmbeddedKeycloakJwtProperties(Properties props) {
+        EmbeddedKeycloakJwtProperties defaults = new EmbeddedKeycloakJwtProperties();
+        this.enabled = PropertiesReader.getBoolean(props, JWT_ENABLED, defaults.enabled);
+        this.realm = PropertiesReader.getString(props, JWT_REALM, defaults.realm);
+        this.maxEntries = PropertiesReader.getInt(props, JWT_MAX_ENTRIES, defaults.maxEntries);
+        this.keyRefreshInterval = PropertiesReader.getLong(props, JWT_KEY_REFRESH_INTERVAL, defaults.keyRefreshInterval);
+    }
+}
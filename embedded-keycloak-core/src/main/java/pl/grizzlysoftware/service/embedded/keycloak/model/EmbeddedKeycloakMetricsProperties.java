@@ -0,0 +1,54 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.model;
+
+import java.util.Properties;
+
+/**
+ * Settings of embedded keycloak metrics
+ */
+public class EmbeddedKeycloakMetricsProperties {
+    public static final String METRICS_ENABLED = "keycloak.embedded.metrics.enabled";
+    public static final String METRICS_PERCENTILE_HISTOGRAM = "keycloak.embedded.metrics.percentile-histogram";
+
+    /**
+     * when true keycloak requests, sessions, transactions and bootstrap phases are measured
+     */
+    public final boolean enabled;
+    /**
+     * when true request timers publish histogram buckets, so latency percentiles can be aggregated by monitoring system
+     */
+    public final boolean percentileHistogram;
+
+    public EmbeddedKeycloakMetricsProperties() {
+        enabled = true;
+        percentileHistogram = true;
+    }
+
+    public EmbeddedKeycloakMetricsProperties(boolean enabled, boolean percentileHistogram) {
+        this.enabled = enabled;
+        this.percentileHistogram = percentileHistogram;
+    }
+
+    public EmbeddedKeycloakMetricsProperties(Properties props) {
+        EmbeddedKeycloakMetricsProperties defaults = new EmbeddedKeycloakMetricsProperties();
+        this.enabled = PropertiesReader.getBoolean(props, METRICS_ENABLED, defaults.enabled);
+        this.percentileHistogram = PropertiesReader.getBoolean(props, METRICS_PERCENTILE_HISTOGRAM, defaults.percentileHistogram);
+    }
+}
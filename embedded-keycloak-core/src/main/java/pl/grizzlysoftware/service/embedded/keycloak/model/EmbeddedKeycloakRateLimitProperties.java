@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.grizzlysoftware.service.embedded.keycloak.model;
+
+import java.util.Properties;
+
+/**
+ * Settings of token endpoint's rate limiting - requests are limited per client(client_id) and per remote address separately
+ */
+public class EmbeddedKeycloakRateLimitProperties {
+    public static final String RATE_LIMIT_PREFIX = "keycloak.embedded.server.rate-limit.";
+    public static final String RATE_LIMIT_ENABLED = "keycloak.embedded.server.rate-limit.enabled";
+    public static final String RATE_LIMIT_MAX_BUCKETS = "keycloak.embedded.server.rate-limit.max-buckets";
+    public static final String RATE_LIMIT_IDLE_TIMEOUT = "keycloak.embedded.server.rate-limit.idle-timeout";
+
+    public final boolean enabled;
+    /**
+     * maximum number of buckets of each limit, clients or addresses beyond it share one bucket
+     */
+    public final int maxBuckets;
+    /**
+     * time(in milliseconds) after which bucket that has been refilled completely is evicted
+     */
+    public final long idleTimeout;
+    public final Limit client;
+    public final Limit address;
+
+    public EmbeddedKeycloakRateLimitProperties() {
+        enabled = false;
+        maxBuckets = 100000;
+        idleTimeout = 60000;
+        client = new Limit(100, 1200);
+        address = new Limit(20, 300);
+    }
+
+    public EmbeddedKeycloakRateLimitProperties(boolean enabled, int maxBuckets, long idleTimeout, Limit client, Limit address) {
+        this.enabled = enabled;
+        this.maxBuckets = maxBuckets;
+        this.idleTimeout = idleTimeout;
+        this.client = client;
+        this.address = address;
+    }
+
+    public EmbeddedKeycloakRateLimitProperties(Properties props) {
+        EmbeddedKeycloakRateLimitProperties defaults = new EmbeddedKeycloakRateLimitProperties();
+        this.enabled = PropertiesReader.getBoolean(props, RATE_LIMIT_ENABLED, defaults.enabled);
+        this.maxBuckets = PropertiesReader.getInt(props, RATE_LIMIT_MAX_BUCKETS, defaults.maxBuckets);
+        this.idleTimeout = PropertiesReader.getLong(props, RATE_LIMIT_IDLE_TIMEOUT, defaults.idleTimeout);
+        this.client = new Limit(props, "client", defaults.client);
+        this.address = new Limit(props, "address", defaults.address);
+    }
+
+    /**
+     * keycloak.embedded.server.rate-limit.[client|address].[capacity|refill-per-minute], limit is disabled when capacity is not positive
+     */
+    public static class Limit {
+        /**
+         * maximum number of requests admitted at once
+         */
+        public final int capacity;
+        /**
+         * number of requests bucket is refilled with every minute
+         */
+        public final int refillPerMinute;
+
+        public Limit(int capacity, int refillPerMinute) {
+            this.capacity = capacity;
+            this.refillPerMinute = refillPerMinute;
+        }
+
+        public Limit(Properties props, String name, Limit defaults) {
+            this.capacity = PropertiesReader.getInt(props, RATE_LIMIT_PREFIX + name + ".capacity", defaults.capacity);
+            this.refillPerMinute = PropertiesReader.getInt(props, RATE_LIMIT_PREFIX + name + ".refill-per-minute", defaults.refillPerMinute);
+        }
+
+        public boolean isEnabled() {
+            return capacity > 0 && refillPerMinute > 0;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.model;
+
+import java.util.Properties;
+
+/**
+ * Settings of realm configuration import performed during embedded keycloak startup
+ */
+public class EmbeddedKeycloakRealmImportProperties {
+    public static final String REALM_CONFIGURATION_STRATEGY = "keycloak.embedded.realm.configuration.strategy";
+    public static final String REALM_CONFIGURATION_STREAMING = "keycloak.embedded.realm.configuration.streaming";
+    public static final String REALM_CONFIGURATION_BATCH_SIZE = "keycloak.embedded.realm.configuration.batch-size";
+    public static final String REALM_CONFIGURATION_PARALLELISM = "keycloak.embedded.realm.configuration.parallelism";
+
+    public final String strategy;
+    public final boolean streaming;
+    public final int batchSize;
+    public final int parallelism;
+
+    public EmbeddedKeycloakRealmImportProperties() {
+        strategy = "OVERWRITE_EXISTING";
+        streaming = false;
+        batchSize = 1000;
+        parallelism = 1;
+    }
+
+    public EmbeddedKeycloakRealmImportProperties(String strategy, boolean streaming, int batchSize, int parallelism) {
+        this.strategy = strategy;
+        this.streaming = streaming;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+    }
+
+    public EmbeddedKeycloakRealmImportProperties(Properties props) {
+        EmbeddedKeycloakRealmImportProperties defaults = new EmbeddedKeycloakRealmImportProperties();
+        this.strategy = PropertiesReader.getString(props, REALM_CONFIGURATION_STRATEGY, defaults.strategy);
+        this.streaming = PropertiesReader.getBoolean(props, REALM_CONFIGURATION_STREAMING, defaults.streaming);
+        this.batchSize = PropertiesReader.getInt(props, REALM_CONFIGURATION_BATCH_SIZE, defaults.batchSize);
+        this.parallelism = PropertiesReader.getInt(props, REALM_CONFIGURATION_PARALLELISM, defaults.parallelism);
+    }
+}
@@ -31,6 +31,7 @@ public class EmbeddedKeycloakServerProperties {
     public static final String DATASOURCE_URL = "keycloak.embedded.datasource.url";
     public static final String DATASOURCE_USERNAME = "keycloak.embedded.datasource.username";
     public static final String DATASOURCE_PASSWORD = "keycloak.embedded.datasource.password";
+    public static final String DATASOURCE_BEAN_NAME = "keycloak.embedded.datasource.bean-name";
 
     public final String serverContextPath;
     public final String serverConfigPath;
@@ -41,6 +42,21 @@ public class EmbeddedKeycloakServerProperties {
     public final String datasourceUrl;
     public final String datasourceUsername;
     public final String datasourcePassword;
+    public final String datasourceBeanName;
+    public final EmbeddedKeycloakDataSourcePoolProperties datasourcePool;
+    public final EmbeddedKeycloakRealmImportProperties realmImport;
+    public final EmbeddedKeycloakBootstrapProperties bootstrap;
+    public final EmbeddedKeycloakMetricsProperties metrics;
+    public final EmbeddedKeycloakCacheProperties cache;
+    public final EmbeddedKeycloakClusterProperties cluster;
+    public final EmbeddedKeycloakJwtProperties jwt;
+    public final EmbeddedKeycloakStaticResourcesProperties staticResources;
+    public final EmbeddedKeycloakWarmUpProperties warmUp;
+    public final EmbeddedKeycloakStartupReportProperties startupReport;
+    public final EmbeddedKeycloakDataSourceTemplateProperties datasourceTemplate;
+    public final EmbeddedKeycloakBulkheadProperties bulkhead;
+    public final EmbeddedKeycloakRateLimitProperties rateLimit;
+    public final EmbeddedKeycloakTokensProperties tokens;
 
     public EmbeddedKeycloakServerProperties() {
         serverContextPath = "/auth";
@@ -52,9 +68,43 @@ public class EmbeddedKeycloakServerProperties {
         datasourceUrl = "jdbc:h2:./data/keycloak;DB_CLOSE_ON_EXIT=FALSE";
         datasourceUsername = "sa";
         datasourcePassword = null;
+        datasourceBeanName = null;
+        datasourcePool = new EmbeddedKeycloakDataSourcePoolProperties();
+        realmImport = new EmbeddedKeycloakRealmImportProperties();
+        bootstrap = new EmbeddedKeycloakBootstrapProperties();
+        metrics = new EmbeddedKeycloakMetricsProperties();
+        cache = new EmbeddedKeycloakCacheProperties();
+        cluster = new EmbeddedKeycloakClusterProperties();
+        jwt = new EmbeddedKeycloakJwtProperties();
+        staticResources = new EmbeddedKeycloakStaticResourcesProperties();
+        warmUp = new EmbeddedKeycloakWarmUpProperties();
+        startupReport = new EmbeddedKeycloakStartupReportProperties();
+        datasourceTemplate = new EmbeddedKeycloakDataSourceTemplateProperties();
+        bulkhead = new EmbeddedKeycloakBulkheadProperties();
+        rateLimit = new EmbeddedKeycloakRateLimitProperties();
+        tokens = new EmbeddedKeycloakTokensProperties();
     }
 
     public EmbeddedKeycloakServerProperties(String serverContextPath, String serverConfigPath, String realmConfigPath, String defaultRealm, String adminUser, String adminPassword, String datasourceUrl, String datasourceUsername, String datasourcePassword) {
+        this(serverContextPath, serverConfigPath, realmConfigPath, defaultRealm, adminUser, adminPassword, datasourceUrl, datasourceUsername, datasourcePassword,
+                null, new EmbeddedKeycloakDataSourcePoolProperties(), new EmbeddedKeycloakRealmImportProperties(),
+                new EmbeddedKeycloakBootstrapProperties(), new EmbeddedKeycloakMetricsProperties(),
+                new EmbeddedKeycloakCacheProperties(), new EmbeddedKeycloakClusterProperties(),
+                new EmbeddedKeycloakJwtProperties(), new EmbeddedKeycloakStaticResourcesProperties(),
+                new EmbeddedKeycloakWarmUpProperties(), new EmbeddedKeycloakStartupReportProperties(),
+                new EmbeddedKeycloakDataSourceTemplateProperties(), new EmbeddedKeycloakBulkheadProperties(),
+                new EmbeddedKeycloakRateLimitProperties(), new EmbeddedKeycloakTokensProperties());
+    }
+
+    public EmbeddedKeycloakServerProperties(String serverContextPath, String serverConfigPath, String realmConfigPath, String defaultRealm, String adminUser, String adminPassword, String datasourceUrl, String datasourceUsername, String datasourcePassword,
+                                            String datasourceBeanName, EmbeddedKeycloakDataSourcePoolProperties datasourcePool,
+                                            EmbeddedKeycloakRealmImportProperties realmImport, EmbeddedKeycloakBootstrapProperties bootstrap,
+                                            EmbeddedKeycloakMetricsProperties metrics, EmbeddedKeycloakCacheProperties cache,
+                                            EmbeddedKeycloakClusterProperties cluster, EmbeddedKeycloakJwtProperties jwt,
+                                            EmbeddedKeycloakStaticResourcesProperties staticResources, EmbeddedKeycloakWarmUpProperties warmUp,
+                                            EmbeddedKeycloakStartupReportProperties startupReport, EmbeddedKeycloakDataSourceTemplateProperties datasourceTemplate,
+                                            EmbeddedKeycloakBulkheadProperties bulkhead, EmbeddedKeycloakRateLimitProperties rateLimit,
+                                            EmbeddedKeycloakTokensProperties tokens) {
         this.serverContextPath = serverContextPath;
         this.serverConfigPath = serverConfigPath;
         this.realmConfigPath = realmConfigPath;
@@ -64,5 +114,20 @@ public class EmbeddedKeycloakServerProperties {
         this.datasourceUrl = datasourceUrl;
         this.datasourceUsername = datasourceUsername;
         this.datasourcePassword = datasourcePassword;
+        this.datasourceBeanName = datasourceBeanName;
+        this.datasourcePool = datasourcePool;
+        this.realmImport = realmImport;
+        this.bootstrap = bootstrap;
+        this.metrics = metrics;
+        this.cache = cache;
+        this.cluster = cluster;
+        this.jwt = jwt;
+        this.staticResources = staticResources;
+        this.warmUp = warmUp;
+        this.startupReport = startupReport;
+        this.datasourceTemplate = datasourceTemplate;
+        this.bulkhead = bulkhead;
+        this.rateLimit = rateLimit;
+        this.tokens = tokens;
     }
 }
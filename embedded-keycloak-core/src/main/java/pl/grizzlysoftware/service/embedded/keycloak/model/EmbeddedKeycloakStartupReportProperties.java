@@ -0,0 +1,61 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.grizzlysoftware.service.embedded.keycloak.model;
+
+import java.util.Properties;
+
+/**
+ * Settings of keycloak's startup report - timings and allocations of bootstrap phases
+ */
+public class EmbeddedKeycloakStartupReportProperties {
+    public static final String STARTUP_REPORT_LOG = "keycloak.embedded.server.startup-report.log";
+    public static final String STARTUP_REPORT_ENDPOINT_ENABLED = "keycloak.embedded.server.startup-report.endpoint.enabled";
+    public static final String STARTUP_REPORT_ENDPOINT_PATH = "keycloak.embedded.server.startup-report.endpoint.path";
+
+    /**
+     * whether report is logged once keycloak is bootstrapped
+     */
+    public final boolean log;
+    /**
+     * whether report is served as json
+     */
+    public final boolean endpointEnabled;
+    /**
+     * path of json report relative to application's context path - it should be outside of keycloak's context path
+     */
+    public final String endpointPath;
+
+    public EmbeddedKeycloakStartupReportProperties() {
+        log = true;
+        endpointEnabled = false;
+        endpointPath = "/keycloak-startup-report";
+    }
+
+    public EmbeddedKeycloakStartupReportProperties(boolean log, boolean endpointEnabled, String endpointPath) {
+        this.log = log;
+        this.endpointEnabled = endpointEnabled;
+        this.endpointPath = endpointPath;
+    }
+
+    public EmbeddedKeycloakStartupReportProperties(Properties props) {
+        EmbeddedKeycloakStartupReportProperties defaults = new EmbeddedKeycloakStartupReportProperties();
+        this.log = PropertiesReader.getBoolean(props, STARTUP_REPORT_LOG, defaults.log);
+        this.endpointEnabled = PropertiesReader.getBoolean(props, STARTUP_REPORT_ENDPOINT_ENABLED, defaults.endpointEnabled);
+        this.endpointPath = PropertiesReader.getString(props, STARTUP_REPORT_ENDPOINT_PATH, defaults.endpointPath);
+    }
+}
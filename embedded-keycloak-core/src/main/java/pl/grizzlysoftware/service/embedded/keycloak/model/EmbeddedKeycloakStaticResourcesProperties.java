@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.model;
+
+import java.util.Properties;
+
+/**
+ * Settings of in-memory cache of keycloak's static resources(themes, keycloak.js, welcome page)
+ */
+public class EmbeddedKeycloakStaticResourcesProperties {
+    public static final String STATIC_RESOURCES_ENABLED = "keycloak.embedded.server.static-resources.enabled";
+    public static final String STATIC_RESOURCES_MAX_SIZE = "keycloak.embedded.server.static-resources.max-size";
+    public static final String STATIC_RESOURCES_MAX_ENTRY_SIZE = "keycloak.embedded.server.static-resources.max-entry-size";
+    public static final String STATIC_RESOURCES_COMPRESSION_MIN_SIZE = "keycloak.embedded.server.static-resources.compression-min-size";
+
+    public final boolean enabled;
+    /**
+     * total bytes of cached resources(all variants), resources are not cached once it's reached
+     */
+    public final long maxSize;
+    /**
+     * bytes of the largest resource which is cached, larger ones are always served by keycloak
+     */
+    public final int maxEntrySize;
+    /**
+     * bytes of the smallest resource which is compressed
+     */
+    public final int compressionMinSize;
+
+    public EmbeddedKeycloakStaticResourcesProperties() {
+        enabled = true;
+        maxSize = 64 * 1024 * 1024;
+        maxEntrySize = 4 * 1024 * 1024;
+        compressionMinSize = 1024;
+    }
+
+    public EmbeddedKeycloakStaticResourcesProperties(boolean enabled, long maxSize, int maxEntrySize, int compressionMinSize) {
+        this.enabled = enabled;
+        this.maxSize = maxSize;
+        this.maxEntrySize = maxEntrySize;
+        this.compressionMinSize = compressionMinSize;
+    }
+
+    public EmbeddedKeycloakStaticResourcesProperties(Properties props) {
+        EmbeddedKeycloakStaticResourcesProperties defaults = new EmbeddedKeycloakStaticResourcesProperties();
+        this.enabled = PropertiesReader.getBoolean(props, STATIC_RESOURCES_ENABLED, defaults.enabled);
+        this.maxSize = PropertiesReader.getLong(props, STATIC_RESOURCES_MAX_SIZE, defaults.maxSize);
+        this.maxEntrySize = PropertiesReader.getInt(props, STATIC_RESOURCES_MAX_ENTRY_SIZE, defaults.maxEntrySize);
+        this.compressionMinSize = PropertiesReader.getInt(props, STATIC_RESOURCES_COMPRESSION_MIN_SIZE, defaults.compressionMinSize);
+    }
+}
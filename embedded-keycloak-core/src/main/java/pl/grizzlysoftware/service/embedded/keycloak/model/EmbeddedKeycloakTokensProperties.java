@@ -0,0 +1,47 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.model;
+
+import java.util.Properties;
+
+/**
+ * Settings of tokens issued in process
+ */
+public class EmbeddedKeycloakTokensProperties {
+    public static final String TOKENS_BASE_URI = "keycloak.embedded.server.tokens.base-uri";
+
+    /**
+     * keycloak's base uri issuer of tokens is derived from, i.e. https://sso.example.com/auth - it should be the url clients reach keycloak at.
+     * null means application's local url: http://localhost:{local.server.port}{context path}{keycloak's context path}
+     */
+    public final String baseUri;
+
+    public EmbeddedKeycloakTokensProperties() {
+        baseUri = null;
+    }
+
+    public EmbeddedKeycloakTokensProperties(String baseUri) {
+        this.baseUri = baseUri;
+    }
+
+    public EmbeddedKeycloakTokensProperties(Properties props) {
+        EmbeddedKeycloakTokensProperties defaults = new EmbeddedKeycloakTokensProperties();
+        this.baseUri = PropertiesReader.getString(props, TOKENS_BASE_URI, defaults.baseUri);
+    }
+}
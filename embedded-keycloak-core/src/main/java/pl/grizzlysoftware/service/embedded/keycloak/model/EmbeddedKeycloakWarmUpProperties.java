@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.model;
+
+import java.util.Properties;
+
+/**
+ * Settings of warm-up performed after realm import, before embedded keycloak is reported ready
+ */
+public class EmbeddedKeycloakWarmUpProperties {
+    public static final String WARM_UP_ENABLED = "keycloak.embedded.server.warm-up.enabled";
+    public static final String WARM_UP_REALMS = "keycloak.embedded.server.warm-up.realms";
+    public static final String WARM_UP_LOCALES = "keycloak.embedded.server.warm-up.locales";
+    public static final String WARM_UP_CLIENT = "keycloak.embedded.server.warm-up.client";
+    public static final String WARM_UP_USERNAME = "keycloak.embedded.server.warm-up.username";
+    public static final String WARM_UP_TOKEN_ISSUANCES = "keycloak.embedded.server.warm-up.token-issuances";
+
+    public final boolean enabled;
+    /**
+     * comma separated names of warmed up realms, null means all realms
+     */
+    public final String realms;
+    /**
+     * comma separated locales templates are rendered in, null means realm's supported locales
+     */
+    public final String locales;
+    /**
+     * client synthetic tokens are issued for, null means no tokens are issued
+     */
+    public final String client;
+    /**
+     * user synthetic tokens are issued for, null means client's service account
+     */
+    public final String username;
+    public final int tokenIssuances;
+
+    public EmbeddedKeycloakWarmUpProperties() {
+        enabled = false;
+        realms = null;
+        locales = null;
+        client = null;
+        username = null;
+        tokenIssuances = 100;
+    }
+
+    public EmbeddedKeycloakWarmUpProperties(boolean enabled, String realms, String locales, String client, String username, int tokenIssuances) {
+        this.enabled = enabled;
+        this.realms = realms;
+        this.locales = locales;
+        this.client = client;
+        this.username = username;
+        this.tokenIssuances = tokenIssuances;
+    }
+
+    public EmbeddedKeycloakWarmUpProperties(Properties props) {
+        EmbeddedKeycloakWarmUpProperties defaults = new EmbeddedKeycloakWarmUpProperties();
+        this.enabled = PropertiesReader.getBoolean(props, WARM_UP_ENABLED, defaults.enabled);
+        this.realms = PropertiesReader.getString(props, WARM_UP_REALMS, defaults.realms);
+        this.locales = PropertiesReader.getString(props, WARM_UP_LOCALES, defaults.locales);
+        this.client = PropertiesReader.getString(props, WARM_UP_CLIENT, defaults.client);
+        this.username = PropertiesReader.getString(props, WARM_UP_USERNAME, defaults.username);
+        this.tokenIssuances = PropertiesReader.getInt(props, WARM_UP_TOKEN_ISSUANCES, defaults.tokenIssuances);
+    }
+}
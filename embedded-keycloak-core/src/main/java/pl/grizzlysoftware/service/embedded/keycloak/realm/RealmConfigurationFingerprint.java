@@ -0,0 +1,154 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.realm;
+
+import org.keycloak.Config;
+import org.keycloak.exportimport.Strategy;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RealmProvider;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+
+/**
+ * SHA-256 digest of realm configuration file persisted in keycloak's database as master realm attributes,
+ * together with the strategy used and names of imported realms.
+ * Attribute names are keyed by digest of resource location, so they fit keycloak's attribute name column regardless of location length.
+ * Imported realms are stored one per attribute next to their count, as attribute values are limited to 255 characters.
+ * <p>
+ * Realm configuration counts as already imported when stored digest matches, it was imported with a strategy overwriting existing realms
+ * and all realms it had imported still exist.
+ */
+public class RealmConfigurationFingerprint {
+    static final String ATTRIBUTE_PREFIX = "embedded.realm.configuration.";
+
+    public final String resourceName;
+    public final String digest;
+    private final String attributeKey;
+
+    public RealmConfigurationFingerprint(String resourceName, String digest) {
+        this.resourceName = resourceName;
+        this.digest = digest;
+        MessageDigest sha256 = sha256();
+        sha256.update(resourceName.getBytes(StandardCharsets.UTF_8));
+        this.attributeKey = hex(sha256.digest());
+    }
+
+    public static RealmConfigurationFingerprint of(RealmConfigurationResource resource) throws IOException {
+        MessageDigest sha256 = sha256();
+        byte[] buffer = new byte[8192];
+        try (InputStream stream = resource.open()) {
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                sha256.update(buffer, 0, read);
+            }
+        }
+        return new RealmConfigurationFingerprint(resource.getName(), hex(sha256.digest()));
+    }
+
+    public boolean isImported(KeycloakSessionFactory sessionFactory) {
+        boolean[] imported = new boolean[1];
+        KeycloakModelUtils.runJobInTransaction(sessionFactory, session -> {
+            RealmProvider realms = session.realms();
+            RealmModel master = realms.getRealmByName(Config.getAdminRealm());
+            if (master == null || !digest.equals(master.getAttribute(digestAttribute())) || !overwroteExisting(master.getAttribute(strategyAttribute()))) {
+                return;
+            }
+
+            Integer count = master.getAttribute(realmsAttribute(), (Integer) null);
+            if (count == null) {
+                return;
+            }
+            for (int i = 0; i < count; i++) {
+                String name = master.getAttribute(realmAttribute(i));
+                if (name == null || realms.getRealmByName(name) == null) {
+                    return;
+                }
+            }
+            imported[0] = true;
+        });
+        return imported[0];
+    }
+
+    public void store(KeycloakSessionFactory sessionFactory, RealmConfigurationStrategy strategy, Collection<String> realmNames) {
+        KeycloakModelUtils.runJobInTransaction(sessionFactory, session -> {
+            RealmModel master = session.realms().getRealmByName(Config.getAdminRealm());
+            master.setAttribute(digestAttribute(), digest);
+            master.setAttribute(strategyAttribute(), strategy.name());
+            master.setAttribute(realmsAttribute(), realmNames.size());
+            int i = 0;
+            for (String name : realmNames) {
+                master.setAttribute(realmAttribute(i++), name);
+            }
+            for (; master.getAttribute(realmAttribute(i)) != null; i++) {
+                master.removeAttribute(realmAttribute(i));
+            }
+        });
+    }
+
+    String digestAttribute() {
+        return ATTRIBUTE_PREFIX + attributeKey + ".digest";
+    }
+
+    String strategyAttribute() {
+        return ATTRIBUTE_PREFIX + attributeKey + ".strategy";
+    }
+
+    String realmsAttribute() {
+        return ATTRIBUTE_PREFIX + attributeKey + ".realms";
+    }
+
+    String realmAttribute(int index) {
+        return ATTRIBUTE_PREFIX + attributeKey + ".realm." + index;
+    }
+
+    /**
+     * Realms left in place by {@link RealmConfigurationStrategy#IGNORE_EXISTING} may differ from the file, so such import does not count
+     */
+    static boolean overwroteExisting(String strategy) {
+        for (RealmConfigurationStrategy value : RealmConfigurationStrategy.values()) {
+            if (value.name().equals(strategy)) {
+                return value.importStrategy == Strategy.OVERWRITE_EXISTING;
+            }
+        }
+        return false;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.realm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Realm configuration file which can be opened more than once - i.e. streaming import reads it in several passes
+ */
+public abstract class RealmConfigurationResource {
+    public static final String CLASSPATH_PREFIX = "classpath:";
+    public static final String FILE_PREFIX = "file:";
+
+    protected final String name;
+
+    protected RealmConfigurationResource(String name) {
+        this.name = name;
+    }
+
+    public static RealmConfigurationResource classpath(ClassLoader classLoader, String path) {
+        return new RealmConfigurationResource(path) {
+            @Override
+            public boolean exists() {
+                return classLoader.getResource(path) != null;
+            }
+
+            @Override
+            public InputStream open() throws IOException {
+                InputStream stream = classLoader.getResourceAsStream(path);
+                if (stream == null) {
+                    throw new IOException("Unable to find realm configuration resource: " + path);
+                }
+                return stream;
+            }
+        };
+    }
+
+    public static RealmConfigurationResource file(Path path) {
+        return new RealmConfigurationResource(FILE_PREFIX + path.toAbsolutePath().normalize()) {
+            @Override
+            public boolean exists() {
+                return Files.isRegularFile(path);
+            }
+
+            @Override
+            public InputStream open() throws IOException {
+                return Files.newInputStream(path);
+            }
+        };
+    }
+
+    /**
+     * Resolves comma separated list of realm configuration locations.
+     * Location is a classpath resource(optionally prefixed with {@value #CLASSPATH_PREFIX}) or a file prefixed with {@value #FILE_PREFIX}.
+     * File name part of a location may be a glob pattern, i.e. {@code file:/etc/keycloak/realms/*.json} or {@code realms/tenant-*.json}
+     */
+    public static List<RealmConfigurationResource> resolve(ClassLoader classLoader, String locations) throws IOException {
+        List<RealmConfigurationResource> resources = new ArrayList<>();
+        if (locations == null) {
+            return resources;
+        }
+
+        for (String location : locations.split(",")) {
+            location = location.trim();
+            if (location.isEmpty()) {
+                continue;
+            }
+            if (location.startsWith(FILE_PREFIX)) {
+                resources.addAll(resolveFiles(location.substring(FILE_PREFIX.length())));
+            } else if (location.startsWith(CLASSPATH_PREFIX)) {
+                resources.addAll(resolveClasspath(classLoader, location.substring(CLASSPATH_PREFIX.length())));
+            } else {
+                resources.addAll(resolveClasspath(classLoader, location));
+            }
+        }
+        return resources;
+    }
+
+    private static boolean isPattern(String location) {
+        return location.indexOf('*') >= 0 || location.indexOf('?') >= 0 || location.indexOf('[') >= 0 || location.indexOf('{') >= 0;
+    }
+
+    private static List<RealmConfigurationResource> resolveFiles(String location) throws IOException {
+        Path path = Paths.get(location);
+        if (!isPattern(location)) {
+            return Collections.singletonList(file(path));
+        }
+
+        Path directory = path.getParent() == null ? Paths.get(".") : path.getParent();
+        List<RealmConfigurationResource> resources = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return resources;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, path.getFileName().toString())) {
+            TreeSet<Path> sorted = new TreeSet<>();
+            files.forEach(sorted::add);
+            sorted.forEach(file -> resources.add(file(file)));
+        }
+        return resources;
+    }
+
+    private static List<RealmConfigurationResource> resolveClasspath(ClassLoader classLoader, String location) throws IOException {
+        if (!isPattern(location)) {
+            return Collections.singletonList(classpath(classLoader, location));
+        }
+
+        int slash = location.lastIndexOf('/');
+        String directory = slash < 0 ? "" : location.substring(0, slash);
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + location.substring(slash + 1));
+
+        TreeSet<String> names = new TreeSet<>();
+        Enumeration<URL> urls = classLoader.getResources(directory);
+        while (urls.hasMoreElements()) {
+            URL url = urls.nextElement();
+            if ("file".equals(url.getProtocol())) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(url.toURI()))) {
+                    for (Path file : files) {
+                        if (Files.isRegularFile(file) && matcher.matches(file.getFileName())) {
+                            names.add(file.getFileName().toString());
+                        }
+                    }
+                } catch (URISyntaxException e) {
+                    throw new IOException(e);
+                }
+            } else if ("jar".equals(url.getProtocol())) {
+                JarURLConnection connection = (JarURLConnection) url.openConnection();
+                connection.setUseCaches(false);
+                try (JarFile jar = connection.getJarFile()) {
+                    String prefix = directory.isEmpty() ? "" : directory + "/";
+                    Enumeration<JarEntry> entries = jar.entries();
+                    while (entries.hasMoreElements()) {
+                        String entry = entries.nextElement().getName();
+                        String name = entry.startsWith(prefix) ? entry.substring(prefix.length()) : null;
+                        if (name != null && !name.isEmpty() && name.indexOf('/') < 0 && matcher.matches(Paths.get(name))) {
+                            names.add(name);
+                        }
+                    }
+                }
+            }
+        }
+
+        List<RealmConfigurationResource> resources = new ArrayList<>();
+        for (String name : names) {
+            resources.add(classpath(classLoader, directory.isEmpty() ? name : directory + "/" + name));
+        }
+        return resources;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public abstract boolean exists();
+
+    public abstract InputStream open() throws IOException;
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
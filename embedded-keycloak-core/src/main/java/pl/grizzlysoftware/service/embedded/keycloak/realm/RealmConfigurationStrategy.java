@@ -0,0 +1,37 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.realm;
+
+import org.keycloak.exportimport.Strategy;
+
+/**
+ * Behaviour of realm configuration import when keycloak finds existing configuration.
+ * Extends {@link Strategy} with {@link #IF_CHANGED} which skips the import when realm configuration file has not changed since last import
+ */
+public enum RealmConfigurationStrategy {
+    IGNORE_EXISTING(Strategy.IGNORE_EXISTING),
+    OVERWRITE_EXISTING(Strategy.OVERWRITE_EXISTING),
+    IF_CHANGED(Strategy.OVERWRITE_EXISTING);
+
+    public final Strategy importStrategy;
+
+    RealmConfigurationStrategy(Strategy importStrategy) {
+        this.importStrategy = importStrategy;
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.realm;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.keycloak.Config;
+import org.keycloak.exportimport.Strategy;
+import org.keycloak.exportimport.util.ImportUtils;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.models.utils.RepresentationToModel;
+import org.keycloak.representations.idm.RealmRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.keycloak.services.managers.RealmManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Imports realm configuration without loading whole file into memory.
+ * <p>
+ * Realm configuration is read in three passes:
+ * <ol>
+ * <li>realm "skeleton" - everything except users - is imported in a single transaction per realm</li>
+ * <li>users and federated users are parsed one by one with jackson streaming api and committed in batches</li>
+ * <li>authorization settings, which may refer to users, are imported last</li>
+ * </ol>
+ * Clients stay in realm skeleton as roles, scope mappings and default roles refer to them.
+ */
+public class StreamingRealmImporter {
+    private static final Logger LOG = LoggerFactory.getLogger(StreamingRealmImporter.class);
+    private static final String USERS = "users";
+    private static final String FEDERATED_USERS = "federatedUsers";
+    private static final Set<String> STREAMED_FIELDS = new HashSet<>(Arrays.asList(USERS, FEDERATED_USERS));
+
+    private final KeycloakSessionFactory sessionFactory;
+    private final ObjectMapper mapper;
+    private final int batchSize;
+
+    public StreamingRealmImporter(KeycloakSessionFactory sessionFactory, ObjectMapper mapper, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size has to be positive, was: " + batchSize);
+        }
+        this.sessionFactory = sessionFactory;
+        this.mapper = mapper;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return names of realms that were actually imported(i.e. not skipped due to {@link Strategy#IGNORE_EXISTING})
+     */
+    public List<String> importRealms(RealmConfigurationResource resource, Strategy strategy) throws IOException {
+        List<RealmRepresentation> skeletons = readSkeletons(resource);
+        List<String> imported = importSkeletons(skeletons, strategy);
+        importUsers(resource, skeletons, imported);
+
+        for (RealmRepresentation skeleton : skeletons) {
+            if (imported.contains(skeleton.getRealm())) {
+                KeycloakModelUtils.runJobInTransaction(sessionFactory, session -> {
+                    RealmModel realm = session.realms().getRealmByName(skeleton.getRealm());
+                    RepresentationToModel.importRealmAuthorizationSettings(skeleton, realm, session);
+                });
+            }
+        }
+        return imported;
+    }
+
+    protected List<RealmRepresentation> readSkeletons(RealmConfigurationResource resource) throws IOException {
+        List<RealmRepresentation> skeletons = new ArrayList<>();
+        try (InputStream stream = resource.open(); JsonParser parser = mapper.getFactory().createParser(stream)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    skeletons.add(readSkeleton(parser));
+                }
+            } else if (token == JsonToken.START_OBJECT) {
+                skeletons.add(readSkeleton(parser));
+            } else {
+                throw new IOException("Realm configuration has to be a realm object or an array of realms: " + resource);
+            }
+        }
+        return skeletons;
+    }
+
+    private RealmRepresentation readSkeleton(JsonParser parser) throws IOException {
+        ObjectNode node = mapper.createObjectNode();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (STREAMED_FIELDS.contains(field)) {
+                parser.skipChildren();
+            } else {
+                node.set(field, mapper.readTree(parser));
+            }
+        }
+        return mapper.treeToValue(node, RealmRepresentation.class);
+    }
+
+    /**
+     * master realm goes first - same as {@link ImportUtils#importRealms}
+     */
+    protected List<String> importSkeletons(List<RealmRepresentation> skeletons, Strategy strategy) {
+        List<String> imported = new ArrayList<>();
+        boolean masterImported = false;
+        for (RealmRepresentation skeleton : skeletons) {
+            if (Config.getAdminRealm().equals(skeleton.getRealm())) {
+                masterImported = importSkeleton(skeleton, strategy, imported);
+            }
+        }
+        for (RealmRepresentation skeleton : skeletons) {
+            if (!Config.getAdminRealm().equals(skeleton.getRealm())) {
+                importSkeleton(skeleton, strategy, imported);
+            }
+        }
+
+        if (masterImported) {
+            KeycloakModelUtils.runJobInTransaction(sessionFactory, session -> {
+                for (RealmModel realm : session.realms().getRealms()) {
+                    if (realm.getMasterAdminClient() == null) {
+                        new RealmManager(session).setupMasterAdminManagement(realm);
+                    }
+                }
+            });
+        }
+        return imported;
+    }
+
+    private boolean importSkeleton(RealmRepresentation skeleton, Strategy strategy, List<String> imported) {
+        boolean[] result = new boolean[1];
+        KeycloakModelUtils.runJobInTransaction(sessionFactory, session -> result[0] = ImportUtils.importRealm(session, skeleton, strategy, true));
+        if (result[0]) {
+            imported.add(skeleton.getRealm());
+        }
+        return result[0];
+    }
+
+    protected void importUsers(RealmConfigurationResource resource, List<RealmRepresentation> skeletons, List<String> imported) throws IOException {
+        try (InputStream stream = resource.open(); JsonParser parser = mapper.getFactory().createParser(stream)) {
+            JsonToken token = parser.nextToken();
+            int index = 0;
+            if (token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    importUsers(parser, skeletons.get(index++).getRealm(), imported);
+                }
+            } else {
+                importUsers(parser, skeletons.get(index).getRealm(), imported);
+            }
+        }
+    }
+
+    private void importUsers(JsonParser parser, String realmName, List<String> imported) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (STREAMED_FIELDS.contains(field) && token == JsonToken.START_ARRAY && imported.contains(realmName)) {
+                importUsers(parser, realmName, FEDERATED_USERS.equals(field));
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void importUsers(JsonParser parser, String realmName, boolean federated) throws IOException {
+        long start = System.nanoTime();
+        long count = 0;
+        List<UserRepresentation> batch = new ArrayList<>(batchSize);
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            batch.add(mapper.readValue(parser, UserRepresentation.class));
+            if (batch.size() >= batchSize) {
+                count += commit(realmName, batch, federated);
+                logProgress(realmName, federated, count, start, false);
+            }
+        }
+        if (!batch.isEmpty()) {
+            count += commit(realmName, batch, federated);
+        }
+        logProgress(realmName, federated, count, start, true);
+    }
+
+    private int commit(String realmName, List<UserRepresentation> batch, boolean federated) {
+        KeycloakModelUtils.runJobInTransaction(sessionFactory, session -> {
+            RealmModel realm = session.realms().getRealmByName(realmName);
+            for (UserRepresentation user : batch) {
+                if (federated) {
+                    RepresentationToModel.importFederatedUser(session, realm, user);
+                } else {
+                    RepresentationToModel.createUser(session, realm, user);
+                }
+            }
+        });
+        int size = batch.size();
+        batch.clear();
+        return size;
+    }
+
+    private void logProgress(String realmName, boolean federated, long count, long start, boolean done) {
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1_000_000_000d;
+        long throughput = Math.round(count / seconds);
+        String kind = federated ? "federated users" : USERS;
+        if (done) {
+            LOG.info("Imported {} {} of realm: {} in {} ms ({} per second)", count, kind, realmName, Math.round(seconds * 1000), throughput);
+        } else {
+            LOG.info("Importing realm: {} - {} {} committed so far ({} per second)", realmName, count, kind, throughput);
+        }
+    }
+}
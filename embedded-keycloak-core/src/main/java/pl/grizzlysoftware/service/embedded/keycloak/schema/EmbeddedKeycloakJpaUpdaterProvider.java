@@ -0,0 +1,123 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.grizzlysoftware.service.embedded.keycloak.schema;
+
+import org.keycloak.common.Version;
+import org.keycloak.connections.jpa.entityprovider.JpaEntityProvider;
+import org.keycloak.connections.jpa.updater.JpaUpdaterProvider;
+import org.keycloak.models.KeycloakSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * see {@link EmbeddedKeycloakJpaUpdaterProviderFactory}
+ */
+public class EmbeddedKeycloakJpaUpdaterProvider implements JpaUpdaterProvider {
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddedKeycloakJpaUpdaterProvider.class);
+
+    private final KeycloakSession session;
+    private final String delegateProviderId;
+    private final boolean forceValidate;
+
+    public EmbeddedKeycloakJpaUpdaterProvider(KeycloakSession session, String delegateProviderId, boolean forceValidate) {
+        this.session = session;
+        this.delegateProviderId = delegateProviderId;
+        this.forceValidate = forceValidate;
+    }
+
+    @Override
+    public Status validate(Connection connection, String defaultSchema) {
+        KeycloakSchemaFingerprint fingerprint = fingerprint();
+        if (!forceValidate && fingerprint != null && fingerprint.matches(connection, defaultSchema)) {
+            LOG.info("Keycloak database schema fingerprint matches, skipping liquibase validation");
+            return Status.VALID;
+        }
+
+        long start = System.nanoTime();
+        Status status = delegate().validate(connection, defaultSchema);
+        LOG.info("Keycloak database schema validated by liquibase in {} ms, status: {}", (System.nanoTime() - start) / 1_000_000, status);
+        if (status == Status.VALID) {
+            store(fingerprint, connection, defaultSchema);
+        }
+        return status;
+    }
+
+    @Override
+    public void update(Connection connection, String defaultSchema) {
+        delegate().update(connection, defaultSchema);
+        store(fingerprint(), connection, defaultSchema);
+    }
+
+    @Override
+    public void export(Connection connection, String defaultSchema, File file) {
+        delegate().export(connection, defaultSchema, file);
+    }
+
+    @Override
+    public void close() {
+        //NOOP - delegate is closed by session
+    }
+
+    /**
+     * @return null when any of changelogs can't be read - liquibase always runs then
+     */
+    protected KeycloakSchemaFingerprint fingerprint() {
+        Map<String, URL> changelogs = new HashMap<>();
+        changelogs.put(KeycloakSchemaFingerprint.MASTER_CHANGELOG, JpaUpdaterProvider.class.getClassLoader().getResource(KeycloakSchemaFingerprint.MASTER_CHANGELOG));
+        for (JpaEntityProvider entityProvider : session.getAllProviders(JpaEntityProvider.class)) {
+            String changelog = entityProvider.getChangelogLocation();
+            if (changelog != null) {
+                changelogs.put(changelog, entityProvider.getClass().getClassLoader().getResource(changelog));
+            }
+        }
+        if (changelogs.containsValue(null)) {
+            LOG.warn("Unable to find keycloak database changelogs: {}", changelogs);
+            return null;
+        }
+
+        try {
+            return KeycloakSchemaFingerprint.of(Version.VERSION, changelogs);
+        } catch (IOException e) {
+            LOG.warn("Unable to read keycloak database changelogs: {}", changelogs.keySet(), e);
+            return null;
+        }
+    }
+
+    private void store(KeycloakSchemaFingerprint fingerprint, Connection connection, String defaultSchema) {
+        if (fingerprint == null) {
+            return;
+        }
+        try {
+            fingerprint.store(connection, defaultSchema);
+        } catch (SQLException e) {
+            LOG.warn("Unable to store keycloak database schema fingerprint, liquibase will run on next startup as well", e);
+        }
+    }
+
+    private JpaUpdaterProvider delegate() {
+        return session.getProvider(JpaUpdaterProvider.class, delegateProviderId);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.grizzlysoftware.service.embedded.keycloak.schema;
+
+import org.keycloak.Config;
+import org.keycloak.connections.jpa.updater.JpaUpdaterProvider;
+import org.keycloak.connections.jpa.updater.JpaUpdaterProviderFactory;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+
+/**
+ * Schema updater skipping keycloak's liquibase run when schema fingerprint stored after last migration matches - see {@link KeycloakSchemaFingerprint}.
+ * Otherwise, or when force-validate is set, schema is validated and updated by keycloak's liquibase updater and fingerprint is stored afterwards.
+ * <p>
+ * Enabled with {@code "connectionsJpaUpdater" => {"provider" => "embedded-fingerprint"}} in keycloak-server.conf, provider settings:
+ * force-validate, delegate(id of liquibase updater)
+ */
+public class EmbeddedKeycloakJpaUpdaterProviderFactory implements JpaUpdaterProviderFactory {
+    public static final String PROVIDER_ID = "embedded-fingerprint";
+    public static final String DELEGATE_PROVIDER_ID = "liquibase";
+
+    private boolean forceValidate;
+    private String delegateProviderId;
+
+    @Override
+    public JpaUpdaterProvider create(KeycloakSession session) {
+        return new EmbeddedKeycloakJpaUpdaterProvider(session, delegateProviderId, forceValidate);
+    }
+
+    @Override
+    public void init(Config.Scope config) {
+        forceValidate = config.getBoolean("force-validate", false);
+        delegateProviderId = config.get("delegate", DELEGATE_PROVIDER_ID);
+    }
+
+    @Override
+    public void postInit(KeycloakSessionFactory factory) {
+        //NOOP
+    }
+
+    @Override
+    public void close() {
+        //NOOP
+    }
+
+    @Override
+    public String getId() {
+        return PROVIDER_ID;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.grizzlysoftware.service.embedded.keycloak.schema;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * SHA-256 digest of keycloak version and liquibase changelogs of keycloak's schema, persisted in EMBEDDED_SCHEMA_FINGERPRINT table
+ * together with number of changesets liquibase has applied so far.
+ * <p>
+ * Schema counts as migrated when stored digest matches and DATABASECHANGELOG still holds the same number of changesets.
+ * Changelogs included by the ones digested are covered by keycloak version only.
+ */
+public class KeycloakSchemaFingerprint {
+    public static final String MASTER_CHANGELOG = "META-INF/jpa-changelog-master.xml";
+    static final String TABLE = "EMBEDDED_SCHEMA_FINGERPRINT";
+    static final String CHANGELOG_TABLE = "DATABASECHANGELOG";
+    static final String ID = "keycloak";
+
+    public final String digest;
+
+    public KeycloakSchemaFingerprint(String digest) {
+        this.digest = digest;
+    }
+
+    /**
+     * @param changelogs changelog locations with resources they are read from
+     */
+    public static KeycloakSchemaFingerprint of(String keycloakVersion, Map<String, URL> changelogs) throws IOException {
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        sha256.update(keycloakVersion.getBytes(StandardCharsets.UTF_8));
+        byte[] buffer = new byte[8192];
+        for (Map.Entry<String, URL> changelog : new TreeMap<>(changelogs).entrySet()) {
+            sha256.update((byte) 0);
+            sha256.update(changelog.getKey().getBytes(StandardCharsets.UTF_8));
+            sha256.update((byte) 0);
+            try (InputStream stream = changelog.getValue().openStream()) {
+                int read;
+                while ((read = stream.read(buffer)) != -1) {
+                    sha256.update(buffer, 0, read);
+                }
+            }
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : sha256.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return new KeycloakSchemaFingerprint(hex.toString());
+    }
+
+    /**
+     * @param schema schema of keycloak's tables, null for default one
+     * @return false as well when fingerprint can't be read, i.e. it has never been stored
+     */
+    public boolean matches(Connection connection, String schema) {
+        String prefix = prefix(schema);
+        try (PreparedStatement select = connection.prepareStatement("select FINGERPRINT, CHANGESETS from " + prefix + TABLE + " where ID = ?")) {
+            select.setString(1, ID);
+            try (ResultSet result = select.executeQuery()) {
+                if (!result.next() || !digest.equals(result.getString(1))) {
+                    return false;
+                }
+                return result.getInt(2) == changesets(connection, prefix);
+            }
+        } catch (SQLException e) {
+            rollback(connection);
+            return false;
+        }
+    }
+
+    /**
+     * to be called once schema is migrated - number of changesets applied is stored along with digest
+     */
+    public void store(Connection connection, String schema) throws SQLException {
+        String prefix = prefix(schema);
+        if (!tableExists(connection, prefix)) {
+            try (Statement create = connection.createStatement()) {
+                create.executeUpdate("create table " + prefix + TABLE
+                        + " (ID varchar(36) not null, FINGERPRINT varchar(64) not null, CHANGESETS integer not null, UPDATED bigint not null, primary key (ID))");
+            }
+        }
+
+        int changesets = changesets(connection, prefix);
+        try (PreparedStatement delete = connection.prepareStatement("delete from " + prefix + TABLE + " where ID = ?");
+             PreparedStatement insert = connection.prepareStatement("insert into " + prefix + TABLE + " (ID, FINGERPRINT, CHANGESETS, UPDATED) values (?, ?, ?, ?)")) {
+            delete.setString(1, ID);
+            delete.executeUpdate();
+            insert.setString(1, ID);
+            insert.setString(2, digest);
+            insert.setInt(3, changesets);
+            insert.setLong(4, System.currentTimeMillis());
+            insert.executeUpdate();
+        }
+        if (!connection.getAutoCommit()) {
+            connection.commit();
+        }
+    }
+
+    private static boolean tableExists(Connection connection, String prefix) {
+        try (Statement select = connection.createStatement()) {
+            select.executeQuery("select ID from " + prefix + TABLE + " where 1 = 0").close();
+            return true;
+        } catch (SQLException e) {
+            rollback(connection);
+            return false;
+        }
+    }
+
+    private static int changesets(Connection connection, String prefix) throws SQLException {
+        try (Statement select = connection.createStatement();
+             ResultSet result = select.executeQuery("select count(*) from " + prefix + CHANGELOG_TABLE)) {
+            result.next();
+            return result.getInt(1);
+        }
+    }
+
+    /**
+     * some databases(i.e. postgres) refuse further statements of transaction once one of them failed
+     */
+    private static void rollback(Connection connection) {
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+            }
+        } catch (SQLException e) {
+            //NOOP - connection is unusable anyway
+        }
+    }
+
+    private static String prefix(String schema) {
+        return schema == null || schema.isEmpty() ? "" : schema + ".";
+    }
+}
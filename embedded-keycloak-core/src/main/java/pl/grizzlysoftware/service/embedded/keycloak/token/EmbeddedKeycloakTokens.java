@@ -0,0 +1,280 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.token;
+
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
+import org.jboss.resteasy.spi.ResteasyUriInfo;
+import org.keycloak.OAuth2Constants;
+import org.keycloak.authentication.AuthenticationProcessor;
+import org.keycloak.common.ClientConnection;
+import org.keycloak.common.constants.ServiceAccountConstants;
+import org.keycloak.events.Details;
+import org.keycloak.events.EventBuilder;
+import org.keycloak.events.EventType;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.ClientSessionContext;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserCredentialModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.UserSessionModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.protocol.oidc.OIDCLoginProtocol;
+import org.keycloak.protocol.oidc.TokenManager;
+import org.keycloak.representations.AccessTokenResponse;
+import org.keycloak.services.Urls;
+import org.keycloak.services.managers.AuthenticationManager;
+import org.keycloak.services.managers.AuthenticationSessionManager;
+import org.keycloak.sessions.AuthenticationSessionModel;
+import org.keycloak.sessions.CommonClientSessionModel;
+import org.keycloak.util.TokenUtil;
+
+import javax.ws.rs.core.UriInfo;
+import java.net.URI;
+import java.util.function.Supplier;
+
+/**
+ * Issues tokens directly through embedded keycloak's {@link KeycloakSessionFactory} - no http request, form parsing or servlet filters involved.
+ * <p>
+ * Tokens are created the same way token endpoint creates them for password and client_credentials grants - user session is created,
+ * client scopes and protocol mappers are applied, LOGIN/CLIENT_LOGIN events are fired(unless disabled), so issued tokens can be refreshed,
+ * introspected and revoked through keycloak's endpoints like any other token.
+ * Caller is trusted - client secret is not checked and user's password is checked only when given.
+ */
+public class EmbeddedKeycloakTokens {
+    private static final String TOKEN_PATH = "/realms/%s/protocol/openid-connect/token";
+    private static final String AUTH_METHOD = "oauth_credentials";
+    private static final ClientConnection LOCAL_CONNECTION = new LocalClientConnection();
+
+    private final TokenManager tokenManager = new TokenManager();
+    private final Supplier<KeycloakSessionFactory> sessionFactory;
+    private final Supplier<URI> baseUri;
+    private final boolean events;
+
+    /**
+     * @param sessionFactory supplies keycloak's session factory, may supply null while keycloak is starting
+     * @param baseUri        supplies keycloak's base uri(i.e. http://localhost:8080/auth) tokens' issuer is derived from
+     */
+    public EmbeddedKeycloakTokens(Supplier<KeycloakSessionFactory> sessionFactory, Supplier<URI> baseUri) {
+        this(sessionFactory, baseUri, true);
+    }
+
+    /**
+     * @param events false when no LOGIN/CLIENT_LOGIN events are sent to realm's events listeners and store, i.e. for synthetic tokens
+     */
+    public EmbeddedKeycloakTokens(Supplier<KeycloakSessionFactory> sessionFactory, Supplier<URI> baseUri, boolean events) {
+        this.sessionFactory = sessionFactory;
+        this.baseUri = baseUri;
+        this.events = events;
+    }
+
+    /**
+     * issues tokens of given user without checking user's credentials
+     */
+    public AccessTokenResponse user(String realm, String clientId, String username) {
+        return user(realm, clientId, username, null, null);
+    }
+
+    /**
+     * issues tokens of given user like password grant does
+     */
+    public AccessTokenResponse password(String realm, String clientId, String username, String password) {
+        return user(realm, clientId, username, password, null);
+    }
+
+    /**
+     * @param password checked when not null
+     * @param scope    requested scope, i.e. openid - id token is issued as well then
+     */
+    public AccessTokenResponse user(String realm, String clientId, String username, String password, String scope) {
+        return issue(realm, clientId, (session, realmModel, client) -> {
+            EventBuilder event = new EventBuilder(realmModel, session, LOCAL_CONNECTION)
+                    .event(EventType.LOGIN)
+                    .client(client)
+                    .detail(Details.AUTH_METHOD, AUTH_METHOD)
+                    .detail(Details.GRANT_TYPE, OAuth2Constants.PASSWORD);
+            if (client.isConsentRequired()) {
+                throw new IllegalArgumentException("Client requires user consent: " + clientId);
+            }
+            UserModel user = KeycloakModelUtils.findUserByNameOrEmail(session, realmModel, username);
+            if (user == null) {
+                throw new IllegalArgumentException("User not found: " + username);
+            }
+            if (!user.isEnabled()) {
+                throw new IllegalStateException("User is disabled: " + username);
+            }
+            if (password != null && !session.userCredentialManager().isValid(realmModel, user, UserCredentialModel.password(password))) {
+                throw new IllegalArgumentException("Invalid user credentials: " + username);
+            }
+            if (!user.getRequiredActions().isEmpty()) {
+                throw new IllegalStateException("Account is not fully set up: " + username);
+            }
+
+            AuthenticationSessionModel authSession = authenticationSession(session, realmModel, client, user, scope);
+            authSession.setAction(CommonClientSessionModel.Action.AUTHENTICATE.name());
+            AuthenticationManager.setClientScopesInSession(authSession);
+            ClientSessionContext clientSessionContext = AuthenticationProcessor.attachSession(authSession, null, session, realmModel, LOCAL_CONNECTION, event);
+            return response(session, realmModel, client, event, clientSessionContext);
+        });
+    }
+
+    public AccessTokenResponse clientCredentials(String realm, String clientId) {
+        return clientCredentials(realm, clientId, null);
+    }
+
+    /**
+     * issues tokens of client's service account like client_credentials grant does
+     */
+    public AccessTokenResponse clientCredentials(String realm, String clientId, String scope) {
+        return issue(realm, clientId, (session, realmModel, client) -> {
+            EventBuilder event = new EventBuilder(realmModel, session, LOCAL_CONNECTION)
+                    .event(EventType.CLIENT_LOGIN)
+                    .client(client)
+                    .detail(Details.AUTH_METHOD, AUTH_METHOD)
+                    .detail(Details.GRANT_TYPE, OAuth2Constants.CLIENT_CREDENTIALS);
+            if (client.isPublicClient() || !client.isServiceAccountsEnabled()) {
+                throw new IllegalArgumentException("Client not enabled to retrieve service account: " + clientId);
+            }
+            UserModel user = session.users().getServiceAccount(client);
+            if (user == null) {
+                throw new IllegalStateException("Service account of client not found: " + clientId);
+            }
+            if (!user.isEnabled()) {
+                throw new IllegalStateException("Service account is disabled: " + user.getUsername());
+            }
+            event.user(user).detail(Details.USERNAME, user.getUsername());
+
+            AuthenticationSessionModel authSession = authenticationSession(session, realmModel, client, user, scope);
+            UserSessionModel userSession = session.sessions().createUserSession(authSession.getParentSession().getId(), realmModel, user, user.getUsername(),
+                    LOCAL_CONNECTION.getRemoteAddr(), ServiceAccountConstants.CLIENT_AUTH, false, null, null);
+            event.session(userSession);
+            AuthenticationManager.setClientScopesInSession(authSession);
+            ClientSessionContext clientSessionContext = TokenManager.attachAuthenticationSession(session, userSession, authSession);
+            userSession.setNote(ServiceAccountConstants.CLIENT_ID, client.getClientId());
+            userSession.setNote(ServiceAccountConstants.CLIENT_HOST, LOCAL_CONNECTION.getRemoteHost());
+            userSession.setNote(ServiceAccountConstants.CLIENT_ADDRESS, LOCAL_CONNECTION.getRemoteAddr());
+            return response(session, realmModel, client, event, clientSessionContext);
+        });
+    }
+
+    /**
+     * runs token request in its own keycloak session and transaction, with request uri keycloak derives issuer and other urls from
+     */
+    private AccessTokenResponse issue(String realm, String clientId, TokenRequest request) {
+        KeycloakSessionFactory factory = sessionFactory.get();
+        if (factory == null) {
+            throw new IllegalStateException("Embedded Keycloak is not ready");
+        }
+
+        String base = baseUri.get().toString();
+        AccessTokenResponse[] result = new AccessTokenResponse[1];
+        ResteasyProviderFactory.addContextDataLevel();
+        try {
+            ResteasyProviderFactory.pushContext(UriInfo.class, new ResteasyUriInfo(base + String.format(TOKEN_PATH, realm), "", URI.create(base).getRawPath()));
+            ResteasyProviderFactory.pushContext(ClientConnection.class, LOCAL_CONNECTION);
+            KeycloakModelUtils.runJobInTransaction(factory, session -> {
+                ResteasyProviderFactory.pushContext(KeycloakSession.class, session);
+                session.getContext().setConnection(LOCAL_CONNECTION);
+
+                RealmModel realmModel = session.realms().getRealmByName(realm);
+                if (realmModel == null) {
+                    throw new IllegalArgumentException("Realm not found: " + realm);
+                }
+                if (!realmModel.isEnabled()) {
+                    throw new IllegalStateException("Realm is disabled: " + realm);
+                }
+                session.getContext().setRealm(realmModel);
+
+                ClientModel client = realmModel.getClientByClientId(clientId);
+                if (client == null) {
+                    throw new IllegalArgumentException("Client not found: " + clientId);
+                }
+                if (!client.isEnabled()) {
+                    throw new IllegalStateException("Client is disabled: " + clientId);
+                }
+                if (client.isBearerOnly()) {
+                    throw new IllegalArgumentException("Bearer-only client is not allowed to obtain tokens: " + clientId);
+                }
+                session.getContext().setClient(client);
+
+                result[0] = request.issue(session, realmModel, client);
+            });
+            return result[0];
+        } finally {
+            ResteasyProviderFactory.removeContextDataLevel();
+        }
+    }
+
+    private AuthenticationSessionModel authenticationSession(KeycloakSession session, RealmModel realm, ClientModel client, UserModel user, String scope) {
+        AuthenticationSessionModel authSession = new AuthenticationSessionManager(session).createAuthenticationSession(realm, false).createAuthenticationSession(client);
+        authSession.setAuthenticatedUser(user);
+        authSession.setProtocol(OIDCLoginProtocol.LOGIN_PROTOCOL);
+        authSession.setClientNote(OIDCLoginProtocol.ISSUER, Urls.realmIssuer(session.getContext().getUri().getBaseUri(), realm.getName()));
+        authSession.setClientNote(OIDCLoginProtocol.SCOPE_PARAM, scope);
+        return authSession;
+    }
+
+    private AccessTokenResponse response(KeycloakSession session, RealmModel realm, ClientModel client, EventBuilder event, ClientSessionContext clientSessionContext) {
+        TokenManager.AccessTokenResponseBuilder response = tokenManager.responseBuilder(realm, client, event, session, clientSessionContext.getClientSession().getUserSession(), clientSessionContext)
+                .generateAccessToken()
+                .generateRefreshToken();
+        if (TokenUtil.isOIDCRequest(clientSessionContext.getClientSession().getNote(OAuth2Constants.SCOPE))) {
+            response.generateIDToken();
+        }
+        AccessTokenResponse tokens = response.build();
+        if (events) {
+            event.success();
+        }
+        return tokens;
+    }
+
+    private interface TokenRequest {
+        AccessTokenResponse issue(KeycloakSession session, RealmModel realm, ClientModel client);
+    }
+
+    private static final class LocalClientConnection implements ClientConnection {
+        private static final String LOCAL_ADDRESS = "127.0.0.1";
+
+        @Override
+        public String getRemoteAddr() {
+            return LOCAL_ADDRESS;
+        }
+
+        @Override
+        public String getRemoteHost() {
+            return LOCAL_ADDRESS;
+        }
+
+        @Override
+        public int getRemotePort() {
+            return 0;
+        }
+
+        @Override
+        public String getLocalAddr() {
+            return LOCAL_ADDRESS;
+        }
+
+        @Override
+        public int getLocalPort() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.warmup;
+
+import org.jboss.resteasy.specimpl.MultivaluedMapImpl;
+import org.jboss.resteasy.specimpl.ResteasyHttpHeaders;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
+import org.jboss.resteasy.spi.ResteasyUriInfo;
+import org.keycloak.forms.account.AccountPages;
+import org.keycloak.forms.account.AccountProvider;
+import org.keycloak.forms.login.LoginFormsProvider;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserSessionModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.representations.AccessTokenResponse;
+import org.keycloak.storage.adapter.InMemoryUserAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.grizzlysoftware.service.embedded.keycloak.token.EmbeddedKeycloakTokens;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.UriInfo;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Warms up embedded keycloak before it's reported ready, so the first users do not pay for lazily filled caches and cold code paths:
+ * <ul>
+ * <li>realm, client, role and client scope caches are loaded</li>
+ * <li>login and account templates are rendered in every locale, which parses and caches templates, theme properties and messages</li>
+ * <li>synthetic tokens are issued for warm-up client without sending events, user sessions created this way are removed afterwards</li>
+ * </ul>
+ * Warm-up never fails bootstrap - failures are logged and the step is skipped.
+ */
+public class EmbeddedKeycloakWarmUp {
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddedKeycloakWarmUp.class);
+    private static final String LOGIN_PATH = "/realms/%s/login-actions/authenticate";
+    private static final String ACCOUNT_PATH = "/realms/%s/account";
+    private static final String WARM_UP_USER = "embedded-keycloak-warm-up";
+
+    private final KeycloakSessionFactory sessionFactory;
+    private final URI baseUri;
+    private final EmbeddedKeycloakTokens tokens;
+    private final Set<String> realms;
+    private final List<String> locales;
+    private final String client;
+    private final String username;
+    private final int tokenIssuances;
+
+    /**
+     * @param baseUri        keycloak's base uri(i.e. http://localhost/auth) pages are rendered for
+     * @param realms         names of warmed up realms, empty means all realms
+     * @param locales        locales templates are rendered in, empty means realm's supported locales
+     * @param client         client synthetic tokens are issued for, null means no tokens are issued
+     * @param username       user synthetic tokens are issued for, null means client's service account
+     * @param tokenIssuances number of synthetic tokens issued per realm
+     */
+    public EmbeddedKeycloakWarmUp(KeycloakSessionFactory sessionFactory, URI baseUri, Collection<String> realms, Collection<String> locales, String client, String username, int tokenIssuances) {
+        this.sessionFactory = sessionFactory;
+        this.baseUri = baseUri;
+        this.tokens = new EmbeddedKeycloakTokens(() -> sessionFactory, () -> baseUri, false);
+        this.realms = new LinkedHashSet<>(realms);
+        this.locales = new ArrayList<>(locales);
+        this.client = client;
+        this.username = username;
+        this.tokenIssuances = tokenIssuances;
+    }
+
+    /**
+     * @param values comma separated values, may be null
+     */
+    public static List<String> split(String values) {
+        if (values == null || values.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Arrays.stream(values.split(",")).map(String::trim).filter(value -> !value.isEmpty()).collect(Collectors.toList());
+    }
+
+    public void run() {
+        for (String realm : realmNames()) {
+            long start = System.nanoTime();
+            try {
+                List<String> realmLocales = loadCaches(realm);
+                RenderedPages pages = new RenderedPages();
+                for (String locale : realmLocales) {
+                    renderTemplates(realm, locale, pages);
+                }
+                int issued = issueTokens(realm);
+                LOG.info("Keycloak realm: {} warmed up in {} ms - {} pages rendered, {} failed, in locales: {}, {} synthetic tokens issued",
+                        realm, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), pages.rendered, pages.failed, realmLocales, issued);
+            } catch (Exception e) {
+                LOG.warn("Unable to warm up keycloak realm: {}", realm, e);
+            }
+        }
+    }
+
+    private List<String> realmNames() {
+        List<String> names = new ArrayList<>();
+        KeycloakModelUtils.runJobInTransaction(sessionFactory, session -> session.realms().getRealms().stream()
+                .map(RealmModel::getName)
+                .filter(name -> realms.isEmpty() || realms.contains(name))
+                .forEach(names::add));
+        return names;
+    }
+
+    /**
+     * @return locales realm's templates are rendered in
+     */
+    private List<String> loadCaches(String realm) {
+        List<String> realmLocales = new ArrayList<>();
+        KeycloakModelUtils.runJobInTransaction(sessionFactory, session -> {
+            RealmModel realmModel = session.realms().getRealmByName(realm);
+            for (ClientModel clientModel : realmModel.getClients()) {
+                clientModel.getProtocolMappers();
+                clientModel.getClientScopes(true, true);
+                clientModel.getClientScopes(false, true);
+                clientModel.getRoles();
+            }
+            realmModel.getRoles();
+            realmModel.getClientScopes();
+            realmModel.getDefaultGroups();
+            session.keys().getKeys(realmModel);
+
+            if (!locales.isEmpty()) {
+                realmLocales.addAll(locales);
+            } else if (realmModel.isInternationalizationEnabled() && !realmModel.getSupportedLocales().isEmpty()) {
+                realmLocales.addAll(realmModel.getSupportedLocales());
+            } else {
+                realmLocales.add(realmModel.getDefaultLocale() == null ? "en" : realmModel.getDefaultLocale());
+            }
+        });
+        return realmLocales;
+    }
+
+    /**
+     * renders pages the way keycloak's endpoints do - locale is picked from Accept-Language header
+     */
+    private void renderTemplates(String realm, String locale, RenderedPages pages) {
+        inRequestContext(realm, String.format(LOGIN_PATH, realm), locale, (session, realmModel) -> {
+            pages.render(realm, "login", locale, () -> session.getProvider(LoginFormsProvider.class).createLogin());
+            pages.render(realm, "login-reset-password", locale, () -> session.getProvider(LoginFormsProvider.class).createPasswordReset());
+            if (realmModel.isRegistrationAllowed()) {
+                pages.render(realm, "register", locale, () -> session.getProvider(LoginFormsProvider.class).createRegistration());
+            }
+        });
+        inRequestContext(realm, String.format(ACCOUNT_PATH, realm), locale, (session, realmModel) -> {
+            InMemoryUserAdapter user = new InMemoryUserAdapter(session, realmModel, WARM_UP_USER);
+            user.setUsername(WARM_UP_USER);
+            for (AccountPages page : Arrays.asList(AccountPages.ACCOUNT, AccountPages.PASSWORD)) {
+                pages.render(realm, "account " + page, locale, () -> session.getProvider(AccountProvider.class)
+                        .setRealm(realmModel)
+                        .setUriInfo(session.getContext().getUri())
+                        .setHttpHeaders(session.getContext().getRequestHeaders())
+                        .setUser(user)
+                        .setStateChecker(WARM_UP_USER)
+                        .setFeatures(false, false, false, false)
+                        .createResponse(page));
+            }
+        });
+    }
+
+    /**
+     * @return number of issued tokens
+     */
+    private int issueTokens(String realm) {
+        if (client == null || tokenIssuances <= 0 || !hasClient(realm)) {
+            return 0;
+        }
+
+        List<String> userSessions = new ArrayList<>(tokenIssuances);
+        try {
+            for (int i = 0; i < tokenIssuances; i++) {
+                AccessTokenResponse response = username == null ? tokens.clientCredentials(realm, client) : tokens.user(realm, client, username);
+                userSessions.add(response.getSessionState());
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Unable to issue synthetic tokens of realm: {} for client: {}", realm, client, e);
+        } finally {
+            removeUserSessions(realm, userSessions);
+        }
+        return userSessions.size();
+    }
+
+    private boolean hasClient(String realm) {
+        boolean[] result = new boolean[1];
+        KeycloakModelUtils.runJobInTransaction(sessionFactory, session -> result[0] = session.realms().getRealmByName(realm).getClientByClientId(client) != null);
+        return result[0];
+    }
+
+    private void removeUserSessions(String realm, List<String> userSessions) {
+        KeycloakModelUtils.runJobInTransaction(sessionFactory, session -> {
+            RealmModel realmModel = session.realms().getRealmByName(realm);
+            for (String id : userSessions) {
+                UserSessionModel userSession = session.sessions().getUserSession(realmModel, id);
+                if (userSession != null) {
+                    session.sessions().removeUserSession(realmModel, userSession);
+                }
+            }
+        });
+    }
+
+    /**
+     * runs job in its own keycloak session with request data keycloak's providers look up from resteasy context
+     */
+    private void inRequestContext(String realm, String path, String locale, RequestJob job) {
+        String base = baseUri.toString();
+        MultivaluedMap<String, String> headers = new MultivaluedMapImpl<>();
+        headers.add(HttpHeaders.ACCEPT_LANGUAGE, locale);
+
+        ResteasyProviderFactory.addContextDataLevel();
+        try {
+            ResteasyProviderFactory.pushContext(UriInfo.class, new ResteasyUriInfo(base + path, "", baseUri.getRawPath()));
+            ResteasyProviderFactory.pushContext(HttpHeaders.class, new ResteasyHttpHeaders(headers, new HashMap<>()));
+            KeycloakModelUtils.runJobInTransaction(sessionFactory, session -> {
+                ResteasyProviderFactory.pushContext(KeycloakSession.class, session);
+                RealmModel realmModel = session.realms().getRealmByName(realm);
+                session.getContext().setRealm(realmModel);
+                job.run(session, realmModel);
+            });
+        } finally {
+            ResteasyProviderFactory.removeContextDataLevel();
+        }
+    }
+
+    private interface RequestJob {
+        void run(KeycloakSession session, RealmModel realm);
+    }
+
+    /**
+     * counts pages of a realm, so warm-up which rendered nothing is not reported as a successful one
+     */
+    private static final class RenderedPages {
+        private int rendered;
+        private int failed;
+
+        void render(String realm, String page, String locale, Runnable renderer) {
+            try {
+                renderer.run();
+                rendered++;
+            } catch (RuntimeException e) {
+                failed++;
+                LOG.warn("Unable to render {} page of realm: {} in locale: {}", page, realm, locale, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.embedded.keycloak.web;
+
+/**
+ * groups keycloak endpoints by their purpose, so they can be measured or limited separately
+ */
+public enum KeycloakEndpointFamily {
+    TOKEN("token"),
+    USERINFO("userinfo"),
+    CERTS("certs"),
+    DISCOVERY("discovery"),
+    ADMIN("admin"),
+    LOGIN("login"),
+    ACCOUNT("account"),
+    RESOURCES("resources"),
+    OTHER("other");
+
+    private static final String OPENID_CONNECT = "/protocol/openid-connect/";
+
+    public final String tag;
+
+    KeycloakEndpointFamily(String tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * @param path request path relative to keycloak's context path, i.e. /realms/master/protocol/openid-connect/token
+     */
+    public static KeycloakEndpointFamily of(String path) {
+        if (path == null) {
+            return OTHER;
+        }
+        if (path.startsWith("/admin")) {
+            return ADMIN;
+        }
+        if (path.startsWith("/resources")) {
+            return RESOURCES;
+        }
+        if (!path.startsWith("/realms/")) {
+            return OTHER;
+        }
+
+        int realmEnd = path.indexOf('/', "/realms/".length());
+        if (realmEnd < 0) {
+            return OTHER;
+        }
+        if (path.startsWith(OPENID_CONNECT, realmEnd)) {
+            int endpoint = realmEnd + OPENID_CONNECT.length();
+            if (path.startsWith("token", endpoint)) {
+                return TOKEN;
+            }
+            if (path.startsWith("userinfo", endpoint)) {
+                return USERINFO;
+            }
+            if (path.startsWith("certs", endpoint)) {
+                return CERTS;
+            }
+            return LOGIN;
+        }
+        if (path.startsWith("/.well-known/", realmEnd)) {
+            return DISCOVERY;
+        }
+        if (path.startsWith("/login-actions/", realmEnd) || path.startsWith("/protocol/", realmEnd) || path.startsWith("/broker/", realmEnd)) {
+            return LOGIN;
+        }
+        if (path.startsWith("/account", realmEnd)) {
+            return ACCOUNT;
+        }
+        return OTHER;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.grizzlysoftware.service.adapter.embedded.test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * In memory snapshot of rows of H2 keycloak database, kept as statements of H2 SCRIPT command.
+ * Restoring it truncates tables the snapshot has been taken of and inserts their rows back - schema is left intact and no keycloak
+ * code is involved, so it takes a fraction of time of keycloak's realm import.
+ */
+public class EmbeddedKeycloakDatabaseSnapshot {
+    private static final String H2 = "H2";
+
+    private final List<String> tables;
+    private final List<String> statements;
+
+    private EmbeddedKeycloakDatabaseSnapshot(List<String> tables, List<String> statements) {
+        this.tables = tables;
+        this.statements = statements;
+    }
+
+    public static EmbeddedKeycloakDatabaseSnapshot take(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            String database = connection.getMetaData().getDatabaseProductName();
+            if (!H2.equals(database)) {
+                throw new IllegalStateException("Database snapshot requires H2 database, database: " + database);
+            }
+
+            List<String> tables = new ArrayList<>();
+            try (ResultSet rs = statement.executeQuery("SELECT TABLE_SCHEMA, TABLE_NAME FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_TYPE = 'TABLE'")) {
+                while (rs.next()) {
+                    tables.add(quote(rs.getString(1)) + "." + quote(rs.getString(2)));
+                }
+            }
+
+            List<String> statements = new ArrayList<>();
+            try (ResultSet rs = statement.executeQuery("SCRIPT NOPASSWORDS NOSETTINGS")) {
+                while (rs.next()) {
+                    String sql = rs.getString(1);
+                    if (isData(sql)) {
+                        statements.add(sql);
+                    }
+                }
+            }
+            return new EmbeddedKeycloakDatabaseSnapshot(Collections.unmodifiableList(tables), Collections.unmodifiableList(statements));
+        }
+    }
+
+    /**
+     * @return quoted names of tables the snapshot has been taken of
+     */
+    public List<String> getTables() {
+        return tables;
+    }
+
+    /**
+     * brings rows of all snapshot's tables back - it must not run concurrently with anything using the database
+     */
+    public void restore(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("SET REFERENTIAL_INTEGRITY FALSE");
+            try {
+                for (String table : tables) {
+                    statement.execute("TRUNCATE TABLE " + table);
+                }
+                for (String sql : statements) {
+                    statement.execute(sql);
+                }
+            } finally {
+                statement.execute("SET REFERENTIAL_INTEGRITY TRUE");
+            }
+        }
+    }
+
+    /**
+     * rows are scripted as inserts, large lobs are scripted through temporary SYSTEM_LOB_STREAM table and SYSTEM_COMBINE_* functions
+     */
+    private static boolean isData(String sql) {
+        return sql.startsWith("INSERT INTO ") || sql.contains("SYSTEM_LOB_STREAM") || sql.contains("SYSTEM_COMBINE_");
+    }
+
+    private static String quote(String name) {
+        return '"' + name.replace("\"", "\"\"") + '"';
+    }
+}
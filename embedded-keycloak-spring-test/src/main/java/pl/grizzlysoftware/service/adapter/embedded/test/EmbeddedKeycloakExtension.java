@@ -0,0 +1,93 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.grizzlysoftware.service.adapter.embedded.test;
+
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeAllCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ParameterContext;
+import org.junit.jupiter.api.extension.ParameterResolver;
+import org.junit.platform.commons.support.AnnotationSupport;
+import pl.grizzlysoftware.service.embedded.keycloak.token.EmbeddedKeycloakTokens;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * JUnit 5 extension of {@link EmbeddedKeycloakTest} - servers are kept in root extension context, so they're started once per
+ * configuration and closed when the whole test run finishes.
+ */
+public class EmbeddedKeycloakExtension implements BeforeAllCallback, AfterEachCallback, ParameterResolver {
+    private static final ExtensionContext.Namespace NAMESPACE = ExtensionContext.Namespace.create(EmbeddedKeycloakExtension.class);
+
+    @Override
+    public void beforeAll(ExtensionContext context) {
+        server(context);
+    }
+
+    @Override
+    public void afterEach(ExtensionContext context) {
+        if (settings(context).resetRealms()) {
+            server(context).resetRealms();
+        }
+    }
+
+    @Override
+    public boolean supportsParameter(ParameterContext parameterContext, ExtensionContext extensionContext) {
+        Class<?> type = parameterContext.getParameter().getType();
+        return type == EmbeddedKeycloakTestServer.class || type == EmbeddedKeycloakTokens.class;
+    }
+
+    @Override
+    public Object resolveParameter(ParameterContext parameterContext, ExtensionContext extensionContext) {
+        EmbeddedKeycloakTestServer server = server(extensionContext);
+        if (parameterContext.getParameter().getType() == EmbeddedKeycloakTokens.class) {
+            return server.getTokens();
+        }
+        return server;
+    }
+
+    public static EmbeddedKeycloakTestServer server(ExtensionContext context) {
+        EmbeddedKeycloakTest settings = settings(context);
+        List<Object> key = Arrays.asList(Arrays.asList(settings.classes()), Arrays.asList(settings.properties()));
+        return context.getRoot().getStore(NAMESPACE).getOrComputeIfAbsent(key,
+                k -> EmbeddedKeycloakTestServer.start(settings.classes(), settings.properties()), EmbeddedKeycloakTestServer.class);
+    }
+
+    /**
+     * nested test classes use settings of their enclosing class
+     */
+    private static EmbeddedKeycloakTest settings(ExtensionContext context) {
+        for (Class<?> testClass = context.getRequiredTestClass(); testClass != null; testClass = testClass.getEnclosingClass()) {
+            Optional<EmbeddedKeycloakTest> settings = AnnotationSupport.findAnnotation(testClass, EmbeddedKeycloakTest.class);
+            if (settings.isPresent()) {
+                return settings.get();
+            }
+        }
+        return Defaults.class.getAnnotation(EmbeddedKeycloakTest.class);
+    }
+
+    /**
+     * settings of test classes extended with {@link EmbeddedKeycloakExtension} directly
+     */
+    @EmbeddedKeycloakTest
+    private static class Defaults {
+
+    }
+}
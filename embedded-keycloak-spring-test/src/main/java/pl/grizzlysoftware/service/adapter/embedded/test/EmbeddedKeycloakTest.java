@@ -0,0 +1,53 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.grizzlysoftware.service.adapter.embedded.test;
+
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.parallel.ResourceLock;
+
+import java.lang.annotation.*;
+
+/**
+ * Runs test class against embedded keycloak booted once per JVM - every test class of the same configuration uses the same
+ * {@link EmbeddedKeycloakTestServer}, which can be injected into test's constructor and methods along with {@link pl.grizzlysoftware.service.embedded.keycloak.token.EmbeddedKeycloakTokens}.
+ * Realms are reset after every test, see {@link EmbeddedKeycloakTestServer#resetRealms()}, so tests of such classes never run in parallel.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Inherited
+@ExtendWith(EmbeddedKeycloakExtension.class)
+@ResourceLock(EmbeddedKeycloakTest.RESOURCE)
+public @interface EmbeddedKeycloakTest {
+    String RESOURCE = "embedded-keycloak";
+
+    /**
+     * spring configuration classes of application keycloak is embedded in
+     */
+    Class<?>[] classes() default EmbeddedKeycloakTestConfiguration.class;
+
+    /**
+     * spring boot properties, i.e. spring.main.banner-mode=off - classes and properties identify shared server
+     */
+    String[] properties() default {};
+
+    /**
+     * whether realms are reset after every test
+     */
+    boolean resetRealms() default true;
+}
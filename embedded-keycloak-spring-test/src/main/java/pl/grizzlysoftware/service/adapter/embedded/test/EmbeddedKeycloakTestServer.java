@@ -0,0 +1,158 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.grizzlysoftware.service.adapter.embedded.test;
+
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.context.WebApplicationContext;
+import pl.grizzlysoftware.service.adapter.embedded.util.AuthenticationTokenRequester;
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakBootstrap;
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakDataSourcePool;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakServerProperties;
+import pl.grizzlysoftware.service.embedded.keycloak.token.EmbeddedKeycloakTokens;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Embedded keycloak shared by many tests - spring boot application of given configuration classes listening on random port.
+ * Database is snapshotted once keycloak is ready, {@link #resetRealms()} restores the snapshot and clears keycloak's caches,
+ * so every test can start with realms as they've been imported.
+ */
+public class EmbeddedKeycloakTestServer implements ExtensionContext.Store.CloseableResource {
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddedKeycloakTestServer.class);
+    private static final String TOKEN_URL_TEMPLATE = "%s/realms/%s/protocol/openid-connect/token";
+
+    private final ConfigurableApplicationContext applicationContext;
+    private final DataSource dataSource;
+    private final EmbeddedCacheManager cacheManager;
+    private final EmbeddedKeycloakTokens tokens;
+    private final AuthenticationTokenRequester tokenRequester;
+    private final String keycloakUrl;
+    private final int port;
+    private EmbeddedKeycloakDatabaseSnapshot snapshot;
+
+    private EmbeddedKeycloakTestServer(ConfigurableApplicationContext applicationContext) {
+        this.applicationContext = applicationContext;
+        this.dataSource = applicationContext.getBean(EmbeddedKeycloakDataSourcePool.class).getDataSource();
+        this.cacheManager = applicationContext.getBean("keycloakCacheManager", EmbeddedCacheManager.class);
+        this.tokens = applicationContext.getBean(EmbeddedKeycloakTokens.class);
+        this.tokenRequester = new AuthenticationTokenRequester(new RestTemplate());
+        this.port = applicationContext.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+        this.keycloakUrl = "http://localhost:" + port + ((WebApplicationContext) applicationContext).getServletContext().getContextPath()
+                + applicationContext.getBean(EmbeddedKeycloakServerProperties.class).serverContextPath;
+    }
+
+    /**
+     * starts application and waits until keycloak is ready
+     *
+     * @param properties spring boot properties, i.e. spring.main.banner-mode=off
+     */
+    public static EmbeddedKeycloakTestServer start(Class<?>[] classes, String[] properties) {
+        long start = System.nanoTime();
+        ConfigurableApplicationContext applicationContext = new SpringApplicationBuilder(classes)
+                .properties("server.port=0")
+                .properties(properties)
+                .run();
+        try {
+            applicationContext.getBean(EmbeddedKeycloakBootstrap.class).readiness().get();
+            EmbeddedKeycloakTestServer server = new EmbeddedKeycloakTestServer(applicationContext);
+            server.snapshot = EmbeddedKeycloakDatabaseSnapshot.take(server.dataSource);
+            LOG.info("Embedded Keycloak test server started: {} in {} ms", server.keycloakUrl, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return server;
+        } catch (Exception e) {
+            applicationContext.close();
+            throw new IllegalStateException("Embedded Keycloak test server failed to start", e);
+        }
+    }
+
+    public ConfigurableApplicationContext getApplicationContext() {
+        return applicationContext;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @return keycloak's base url, i.e. http://localhost:34567/embedded-keycloak
+     */
+    public String getKeycloakUrl() {
+        return keycloakUrl;
+    }
+
+    public String getTokenUrl(String realm) {
+        return String.format(TOKEN_URL_TEMPLATE, keycloakUrl, realm);
+    }
+
+    public EmbeddedKeycloakTokens getTokens() {
+        return tokens;
+    }
+
+    /**
+     * gives tests direct access to keycloak's model, i.e. KeycloakModelUtils.runJobInTransaction(server.getSessionFactory(), session -> ...)
+     */
+    public KeycloakSessionFactory getSessionFactory() {
+        return (KeycloakSessionFactory) ((WebApplicationContext) applicationContext).getServletContext().getAttribute(KeycloakSessionFactory.class.getName());
+    }
+
+    /**
+     * issues token in process - no token endpoint call, user's password is not checked
+     */
+    public String issueToken(String realm, String clientId, String username) {
+        return tokens.user(realm, clientId, username).getToken();
+    }
+
+    /**
+     * requests token from token endpoint with password grant
+     */
+    public String getToken(String realm, String clientId, String username, String password) {
+        return tokenRequester.get(getTokenUrl(realm), clientId, username, password);
+    }
+
+    /**
+     * restores database snapshot taken once keycloak has been started and clears all keycloak's caches, the same way keycloak's
+     * clear cache admin endpoints do - users, sessions, events and any realm changes made since are gone
+     */
+    public synchronized void resetRealms() {
+        long start = System.nanoTime();
+        try {
+            snapshot.restore(dataSource);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to restore keycloak database snapshot", e);
+        }
+        for (String cacheName : cacheManager.getCacheNames()) {
+            if (cacheManager.isRunning(cacheName)) {
+                cacheManager.getCache(cacheName).clear();
+            }
+        }
+        LOG.debug("Embedded Keycloak realms reset in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    @Override
+    public void close() {
+        applicationContext.close();
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.grizzlysoftware.service.adapter.embedded.test;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public class EmbeddedKeycloakDatabaseSnapshotTest {
+
+    @Test
+    public void restoresRowsOfSnapshotTables() throws Exception {
+        JdbcDataSource dataSource = dataSource("snapshot-rows");
+        execute(dataSource, "CREATE TABLE REALM(ID VARCHAR(36) PRIMARY KEY, NAME VARCHAR(255))",
+                "CREATE TABLE USER_ENTITY(ID VARCHAR(36) PRIMARY KEY, REALM_ID VARCHAR(36), USERNAME VARCHAR(255), FOREIGN KEY(REALM_ID) REFERENCES REALM(ID))",
+                "INSERT INTO REALM VALUES('internal', 'internal')",
+                "INSERT INTO USER_ENTITY VALUES('1', 'internal', 'admin')");
+        EmbeddedKeycloakDatabaseSnapshot snapshot = EmbeddedKeycloakDatabaseSnapshot.take(dataSource);
+
+        execute(dataSource, "INSERT INTO USER_ENTITY VALUES('2', 'internal', 'test-user')",
+                "UPDATE USER_ENTITY SET USERNAME = 'renamed' WHERE ID = '1'");
+        snapshot.restore(dataSource);
+
+        Assert.assertEquals(2, snapshot.getTables().size());
+        Assert.assertEquals("admin", query(dataSource, "SELECT GROUP_CONCAT(USERNAME) FROM USER_ENTITY"));
+        Assert.assertEquals("internal", query(dataSource, "SELECT GROUP_CONCAT(NAME) FROM REALM"));
+    }
+
+    @Test
+    public void restoresLargeLobs() throws Exception {
+        JdbcDataSource dataSource = dataSource("snapshot-lobs");
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            value.append(i % 10);
+        }
+        execute(dataSource, "CREATE TABLE COMPONENT_CONFIG(ID VARCHAR(36) PRIMARY KEY, VALUE CLOB)",
+                "INSERT INTO COMPONENT_CONFIG VALUES('1', '" + value + "')");
+        EmbeddedKeycloakDatabaseSnapshot snapshot = EmbeddedKeycloakDatabaseSnapshot.take(dataSource);
+
+        execute(dataSource, "DELETE FROM COMPONENT_CONFIG");
+        snapshot.restore(dataSource);
+
+        Assert.assertEquals(value.toString(), query(dataSource, "SELECT VALUE FROM COMPONENT_CONFIG"));
+        Assert.assertEquals("0", query(dataSource, "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'SYSTEM_LOB_STREAM'"));
+    }
+
+    private static JdbcDataSource dataSource(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        return dataSource;
+    }
+
+    private static void execute(JdbcDataSource dataSource, String... statements) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            for (String sql : statements) {
+                statement.execute(sql);
+            }
+        }
+    }
+
+    private static String query(JdbcDataSource dataSource, String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+}
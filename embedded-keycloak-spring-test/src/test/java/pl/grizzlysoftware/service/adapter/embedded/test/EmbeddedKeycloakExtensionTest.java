@@ -0,0 +1,60 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.grizzlysoftware.service.adapter.embedded.test;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import pl.grizzlysoftware.service.embedded.keycloak.token.EmbeddedKeycloakTokens;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@EmbeddedKeycloakTest
+public class EmbeddedKeycloakExtensionTest {
+    private static final String REALM = "internal";
+    private static final String CLIENT_ID = "example-client-frontend";
+
+    @Test
+    public void issuesTokensOfImportedUsers(EmbeddedKeycloakTestServer server) {
+        Assert.assertNotNull(server.getToken(REALM, CLIENT_ID, "admin", "a"));
+        Assert.assertNotNull(server.issueToken(REALM, CLIENT_ID, "admin"));
+    }
+
+    @Test
+    public void injectsServerSharedByTests(EmbeddedKeycloakTestServer server, EmbeddedKeycloakTokens tokens) {
+        Assert.assertSame(server.getTokens(), tokens);
+    }
+
+    @Test
+    public void resetRealmsRemovesUsersCreatedSinceStartup(EmbeddedKeycloakTestServer server) {
+        KeycloakModelUtils.runJobInTransaction(server.getSessionFactory(), session -> {
+            RealmModel realm = session.realms().getRealmByName(REALM);
+            session.users().addUser(realm, "reset-user");
+        });
+
+        server.resetRealms();
+
+        AtomicBoolean exists = new AtomicBoolean(true);
+        KeycloakModelUtils.runJobInTransaction(server.getSessionFactory(), session -> {
+            RealmModel realm = session.realms().getRealmByName(REALM);
+            exists.set(session.users().getUserByUsername("reset-user", realm) != null);
+        });
+        Assert.assertFalse(exists.get());
+    }
+}
@@ -18,36 +18,92 @@
 
 package pl.grizzlysoftware.service.adapter.embedded.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import org.apache.commons.io.IOUtils;
-import org.h2.jdbcx.JdbcDataSource;
+import org.infinispan.manager.EmbeddedCacheManager;
 import org.jboss.resteasy.plugins.server.servlet.HttpServlet30Dispatcher;
 import org.jboss.resteasy.plugins.server.servlet.ResteasyContextParameters;
+import org.keycloak.common.Version;
+import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.services.filters.KeycloakSessionServletFilter;
 import org.keycloak.services.listeners.KeycloakSessionDestroyListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.web.context.WebServerInitializedEvent;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.boot.web.servlet.ServletListenerRegistrationBean;
 import org.springframework.boot.web.servlet.ServletRegistrationBean;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+import pl.grizzlysoftware.service.adapter.embedded.security.EmbeddedKeycloakJwtDecoder;
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakBootstrap;
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakBulkhead;
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakCacheMetrics;
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakDatabaseTemplate;
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakDataSourcePool;
 import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakInitialContext;
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakMetrics;
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakRateLimiter;
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakReadyEvent;
+import pl.grizzlysoftware.service.adapter.embedded.web.EmbeddedKeycloakBootstrapServlet;
+import pl.grizzlysoftware.service.adapter.embedded.web.EmbeddedKeycloakBulkheadFilter;
+import pl.grizzlysoftware.service.adapter.embedded.web.EmbeddedKeycloakMetricsFilter;
+import pl.grizzlysoftware.service.adapter.embedded.web.EmbeddedKeycloakRateLimitFilter;
+import pl.grizzlysoftware.service.adapter.embedded.web.EmbeddedKeycloakReadinessFilter;
+import pl.grizzlysoftware.service.adapter.embedded.web.EmbeddedKeycloakStaticResourceCache;
+import pl.grizzlysoftware.service.adapter.embedded.web.EmbeddedKeycloakStaticResourceFilter;
+import pl.grizzlysoftware.service.adapter.embedded.web.EmbeddedKeycloakStartupReportServlet;
 import pl.grizzlysoftware.service.embedded.keycloak.EmbeddedKeycloakApplication;
+import pl.grizzlysoftware.service.embedded.keycloak.infinispan.EmbeddedKeycloakCacheContainer;
+import pl.grizzlysoftware.service.embedded.keycloak.infinispan.EmbeddedKeycloakClusterChannel;
+import pl.grizzlysoftware.service.embedded.keycloak.instrumentation.EmbeddedKeycloakInstrumentation;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakBootstrapProperties;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakBulkheadProperties;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakCacheProperties;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakClusterProperties;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakDataSourceTemplateProperties;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakDataSourcePoolProperties;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakJwtProperties;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakMetricsProperties;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakRateLimitProperties;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakRealmImportProperties;
 import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakServerProperties;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakStartupReportProperties;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakStaticResourcesProperties;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakTokensProperties;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakWarmUpProperties;
+import pl.grizzlysoftware.service.embedded.keycloak.model.PropertiesReader;
+import pl.grizzlysoftware.service.embedded.keycloak.realm.RealmConfigurationFingerprint;
+import pl.grizzlysoftware.service.embedded.keycloak.realm.RealmConfigurationResource;
+import pl.grizzlysoftware.service.embedded.keycloak.realm.RealmConfigurationStrategy;
+import pl.grizzlysoftware.service.embedded.keycloak.token.EmbeddedKeycloakTokens;
 
 import javax.naming.*;
-import javax.naming.spi.NamingManager;
 import javax.servlet.ServletContext;
 import javax.sql.DataSource;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.function.Supplier;
 
 import static org.keycloak.services.resources.KeycloakApplication.KEYCLOAK_CONFIG_PARAM_NAME;
 import static org.keycloak.services.resources.KeycloakApplication.KEYCLOAK_EMBEDDED;
@@ -76,7 +132,22 @@ public class EmbeddedKeycloakConfig {
                         props.getProperty(EmbeddedKeycloakServerProperties.ADMIN_PASSWORD),
                         props.getProperty(EmbeddedKeycloakServerProperties.DATASOURCE_URL),
                         props.getProperty(EmbeddedKeycloakServerProperties.DATASOURCE_USERNAME),
-                        props.getProperty(EmbeddedKeycloakServerProperties.DATASOURCE_PASSWORD)
+                        props.getProperty(EmbeddedKeycloakServerProperties.DATASOURCE_PASSWORD),
+                        PropertiesReader.getString(props, EmbeddedKeycloakServerProperties.DATASOURCE_BEAN_NAME, null),
+                        new EmbeddedKeycloakDataSourcePoolProperties(props),
+                        new EmbeddedKeycloakRealmImportProperties(props),
+                        new EmbeddedKeycloakBootstrapProperties(props),
+                        new EmbeddedKeycloakMetricsProperties(props),
+                        new EmbeddedKeycloakCacheProperties(props),
+                        new EmbeddedKeycloakClusterProperties(props),
+                        new EmbeddedKeycloakJwtProperties(props),
+                        new EmbeddedKeycloakStaticResourcesProperties(props),
+                        new EmbeddedKeycloakWarmUpProperties(props),
+                        new EmbeddedKeycloakStartupReportProperties(props),
+                        new EmbeddedKeycloakDataSourceTemplateProperties(props),
+                        new EmbeddedKeycloakBulkheadProperties(props),
+                        new EmbeddedKeycloakRateLimitProperties(props),
+                        new EmbeddedKeycloakTokensProperties(props)
                 );
             } catch (IOException e) {
                 LOG.debug("exception while loading keycloak configuration, loading default configuration");
@@ -85,15 +156,122 @@ public class EmbeddedKeycloakConfig {
         }
     }
 
+    /**
+     * keycloak uses either a datasource bean from application context(when its name is configured) or its own hikari connection pool
+     */
     @Bean
-    ServletRegistrationBean<HttpServlet30Dispatcher> keycloakJaxRsApplication(ServletContext servletContext, EmbeddedKeycloakServerProperties properties) throws Exception {
-        JdbcDataSource dataSource = new JdbcDataSource();
-        dataSource.setUrl(properties.datasourceUrl);
-        dataSource.setUser(properties.datasourceUsername);
-        dataSource.setPassword(properties.datasourcePassword);
-        mockJndiEnvironment(dataSource);
+    EmbeddedKeycloakDataSourcePool keycloakDataSourcePool(EmbeddedKeycloakServerProperties properties, ApplicationContext applicationContext, EmbeddedKeycloakDatabaseTemplate keycloakDatabaseTemplate) {
+        if (properties.datasourceBeanName != null) {
+            LOG.info("Embedded Keycloak uses datasource bean: {}", properties.datasourceBeanName);
+            return EmbeddedKeycloakDataSourcePool.of(applicationContext.getBean(properties.datasourceBeanName, DataSource.class));
+        }
+
+        return EmbeddedKeycloakDataSourcePool.create(keycloakDatabaseTemplate.getUrl(), properties.datasourceUsername, properties.datasourcePassword, properties.datasourcePool);
+    }
+
+    /**
+     * every run gets its own H2 database restored from template of bootstrapped database - template is keyed by keycloak version,
+     * realm configuration files and admin credentials, so any change of them creates a new one
+     * it's closed after keycloak's connection pool, which depends on it
+     */
+    @Bean(destroyMethod = "close")
+    EmbeddedKeycloakDatabaseTemplate keycloakDatabaseTemplate(EmbeddedKeycloakServerProperties properties) throws Exception {
+        if (!properties.datasourceTemplate.enabled) {
+            return EmbeddedKeycloakDatabaseTemplate.disabled(properties.datasourceUrl);
+        }
+        if (properties.datasourceBeanName != null || !EmbeddedKeycloakDatabaseTemplate.supports(properties.datasourceUrl)) {
+            LOG.warn("Keycloak database template requires keycloak's own H2 database, template is disabled");
+            return EmbeddedKeycloakDatabaseTemplate.disabled(properties.datasourceUrl);
+        }
+
+        List<String> parts = new ArrayList<>();
+        for (RealmConfigurationResource resource : RealmConfigurationResource.resolve(getClass().getClassLoader(), properties.realmConfigPath)) {
+            parts.add(resource.getName() + ":" + (resource.exists() ? RealmConfigurationFingerprint.of(resource).digest : ""));
+        }
+        parts.add(properties.adminUser);
+        parts.add(properties.adminPassword);
+
+        EmbeddedKeycloakDatabaseTemplate template = EmbeddedKeycloakDatabaseTemplate.of(properties.datasourceTemplate, properties.datasourceUrl, EmbeddedKeycloakDatabaseTemplate.key(Version.VERSION, parts));
+        if (!template.restore(properties.datasourceUsername, properties.datasourcePassword)) {
+            LOG.info("Keycloak database template: {} not found, it will be created once keycloak is bootstrapped", template.getTemplate());
+        }
+        return template;
+    }
+
+    @Bean
+    ApplicationListener<EmbeddedKeycloakReadyEvent> keycloakDatabaseTemplateWriter(EmbeddedKeycloakDatabaseTemplate keycloakDatabaseTemplate, EmbeddedKeycloakDataSourcePool dataSourcePool) {
+        return (evt) -> {
+            try {
+                keycloakDatabaseTemplate.store(dataSourcePool.getDataSource());
+            } catch (Exception e) {
+                LOG.warn("Unable to create keycloak database template: {}", keycloakDatabaseTemplate.getTemplate(), e);
+            }
+        };
+    }
+
+    /**
+     * keycloak uses this cache container instead of creating its own - it's looked up through jndi, see keycloak-server.conf
+     * in clustered mode container joins other nodes before keycloak starts
+     */
+    @Bean(destroyMethod = "stop")
+    EmbeddedCacheManager keycloakCacheManager(EmbeddedKeycloakServerProperties properties) {
+        if (properties.cluster.enabled) {
+            LOG.info("Embedded Keycloak joins cluster: {} as node: {}, members: {}", properties.cluster.name, properties.cluster.nodeName, EmbeddedKeycloakClusterChannel.members(properties.cluster));
+        }
+        return EmbeddedKeycloakCacheContainer.create(properties.cache, properties.cluster);
+    }
+
+    @Bean
+    EmbeddedKeycloakBootstrap keycloakBootstrap(ApplicationEventPublisher eventPublisher) {
+        return new EmbeddedKeycloakBootstrap(eventPublisher);
+    }
+
+    /**
+     * meters are registered in application's meter registry(i.e. provided by spring boot actuator) or in global registry when there's none
+     * cache meters are bound here rather than exposed as a MeterBinder bean - actuator binds those while creating the registry itself
+     * nothing is registered when metrics are disabled
+     */
+    @Bean
+    EmbeddedKeycloakMetrics keycloakMetrics(EmbeddedKeycloakServerProperties properties, ObjectProvider<MeterRegistry> meterRegistry, EmbeddedCacheManager keycloakCacheManager) {
+        EmbeddedKeycloakMetrics metrics = new EmbeddedKeycloakMetrics(meterRegistry.getIfAvailable(() -> Metrics.globalRegistry), properties.metrics.percentileHistogram);
+        if (properties.metrics.enabled) {
+            metrics.bind();
+            new EmbeddedKeycloakCacheMetrics(keycloakCacheManager, EmbeddedKeycloakCacheContainer.CONFIGURABLE_CACHES).bindTo(metrics.getRegistry());
+        }
+        return metrics;
+    }
+
+    /**
+     * verifies bearer tokens with realm keys read directly from keycloak - used by spring security's resource server, i.e. http.oauth2ResourceServer().jwt()
+     * registered only when keycloak.embedded.security.jwt.enabled=true, otherwise spring boot's decoder(if any) is used
+     */
+    @Bean
+    @Conditional(JwtDecoderEnabled.class)
+    EmbeddedKeycloakJwtDecoder keycloakJwtDecoder(ServletContext servletContext, EmbeddedKeycloakServerProperties properties) {
+        return new EmbeddedKeycloakJwtDecoder(keycloakSessionFactory(servletContext), properties.jwt);
+    }
+
+    /**
+     * issues tokens in process - issuer is derived from configured base uri or application's local url, so tokens are the same as issued by token endpoint
+     * reached at that url
+     */
+    @Bean
+    EmbeddedKeycloakTokens keycloakTokens(ServletContext servletContext, EmbeddedKeycloakServerProperties properties, Environment environment) {
+        if (properties.tokens.baseUri != null) {
+            URI baseUri = URI.create(properties.tokens.baseUri.replaceAll("/+$", ""));
+            return new EmbeddedKeycloakTokens(keycloakSessionFactory(servletContext), () -> baseUri);
+        }
+        return new EmbeddedKeycloakTokens(keycloakSessionFactory(servletContext),
+                () -> URI.create("http://localhost:" + environment.getProperty("local.server.port", "8080") + servletContext.getContextPath() + properties.serverContextPath));
+    }
 
-        ServletRegistrationBean registration = new ServletRegistrationBean<>(new HttpServlet30Dispatcher());
+    @Bean
+    ServletRegistrationBean<EmbeddedKeycloakBootstrapServlet> keycloakJaxRsApplication(ServletContext servletContext, EmbeddedKeycloakServerProperties properties, EmbeddedKeycloakDataSourcePool dataSourcePool, EmbeddedKeycloakBootstrap bootstrap, EmbeddedKeycloakMetrics metrics, EmbeddedCacheManager keycloakCacheManager, EmbeddedKeycloakDatabaseTemplate keycloakDatabaseTemplate) throws Exception {
+        EmbeddedKeycloakInitialContext initialContext = mockJndiEnvironment(dataSourcePool.getDataSource(), keycloakCacheManager);
+
+        EmbeddedKeycloakBootstrapServlet servlet = new EmbeddedKeycloakBootstrapServlet(new HttpServlet30Dispatcher(), bootstrap, properties.bootstrap.async,
+                () -> initialContext.bind(dataSourcePool.getDataSource(), keycloakCacheManager));
+        ServletRegistrationBean registration = new ServletRegistrationBean<>(servlet);
         registration.addInitParameter("javax.ws.rs.Application", EmbeddedKeycloakApplication.class.getName());
         registration.addInitParameter(ResteasyContextParameters.RESTEASY_SERVLET_MAPPING_PREFIX, properties.serverContextPath);
         registration.addInitParameter(ResteasyContextParameters.RESTEASY_USE_CONTAINER_FORM_PARAMS, "false");
@@ -113,9 +291,38 @@ public class EmbeddedKeycloakConfig {
         servletContext.setInitParameter(EmbeddedKeycloakApplication.SERVER_CONTEXT_PATH, properties.serverContextPath);
 //        servletContext.setInitParameter(EmbeddedKeycloakApplication.SERVER_CONFIGURATION_PATH, properties.serverConfigPath);
         servletContext.setInitParameter(EmbeddedKeycloakApplication.REALM_CONFIGURATION_PATH, properties.realmConfigPath);
+        //database restored from template already holds realms of unchanged realm configuration files
+        servletContext.setInitParameter(EmbeddedKeycloakApplication.REALM_CONFIGURATION_STRATEGY,
+                keycloakDatabaseTemplate.isRestored() ? RealmConfigurationStrategy.IF_CHANGED.name() : properties.realmImport.strategy);
+        servletContext.setInitParameter(EmbeddedKeycloakApplication.REALM_CONFIGURATION_STREAMING, String.valueOf(properties.realmImport.streaming));
+        servletContext.setInitParameter(EmbeddedKeycloakApplication.REALM_CONFIGURATION_BATCH_SIZE, String.valueOf(properties.realmImport.batchSize));
+        servletContext.setInitParameter(EmbeddedKeycloakApplication.REALM_CONFIGURATION_PARALLELISM, String.valueOf(properties.realmImport.parallelism));
 //        servletContext.setInitParameter(EmbeddedKeycloakApplication.DEFAULT_REALM, properties.defaultRealm);
         servletContext.setInitParameter(EmbeddedKeycloakApplication.ADMIN_USERNAME, properties.adminUser);
         servletContext.setInitParameter(EmbeddedKeycloakApplication.ADMIN_PASSWORD, properties.adminPassword);
+        servletContext.setInitParameter(EmbeddedKeycloakApplication.WARM_UP_ENABLED, String.valueOf(properties.warmUp.enabled));
+        servletContext.setInitParameter(EmbeddedKeycloakApplication.WARM_UP_REALMS, Objects.toString(properties.warmUp.realms, ""));
+        servletContext.setInitParameter(EmbeddedKeycloakApplication.WARM_UP_LOCALES, Objects.toString(properties.warmUp.locales, ""));
+        servletContext.setInitParameter(EmbeddedKeycloakApplication.WARM_UP_CLIENT, Objects.toString(properties.warmUp.client, ""));
+        servletContext.setInitParameter(EmbeddedKeycloakApplication.WARM_UP_USERNAME, Objects.toString(properties.warmUp.username, ""));
+        servletContext.setInitParameter(EmbeddedKeycloakApplication.WARM_UP_TOKEN_ISSUANCES, String.valueOf(properties.warmUp.tokenIssuances));
+        servletContext.setInitParameter(EmbeddedKeycloakApplication.STARTUP_REPORT_LOG, String.valueOf(properties.startupReport.log));
+        if (properties.metrics.enabled) {
+            servletContext.setAttribute(EmbeddedKeycloakInstrumentation.class.getName(), metrics);
+        }
+
+        return registration;
+    }
+
+    /**
+     * keycloak's startup report as json - it's mapped outside of keycloak's context path, so it's available before keycloak is ready
+     */
+    @Bean
+    ServletRegistrationBean<EmbeddedKeycloakStartupReportServlet> keycloakStartupReport(EmbeddedKeycloakServerProperties properties, EmbeddedKeycloakBootstrap bootstrap, ObjectProvider<ObjectMapper> objectMapper) {
+        ServletRegistrationBean<EmbeddedKeycloakStartupReportServlet> registration = new ServletRegistrationBean<>(
+                new EmbeddedKeycloakStartupReportServlet(bootstrap, objectMapper.getIfAvailable(ObjectMapper::new)), properties.startupReport.endpointPath);
+        registration.setName("Keycloak Startup Report");
+        registration.setEnabled(properties.startupReport.endpointEnabled);
 
         return registration;
     }
@@ -126,15 +333,127 @@ public class EmbeddedKeycloakConfig {
     }
 
     @Bean
-    ApplicationListener<WebServerInitializedEvent> onApplicationReadyEventListener(ServletContext servletContext, EmbeddedKeycloakServerProperties keycloakServerProperties) {
+    ApplicationListener<WebServerInitializedEvent> onApplicationReadyEventListener(ServletContext servletContext, EmbeddedKeycloakServerProperties keycloakServerProperties, EmbeddedKeycloakBootstrap bootstrap) {
         return (evt) -> {
             int port = evt.getWebServer().getPort();
             String keycloakContextPath = servletContext.getContextPath() + keycloakServerProperties.serverContextPath;
 
-            LOG.info("Embedded Keycloak started: http://localhost:{}{} to use keycloak", port, keycloakContextPath);
+            if (bootstrap.isReady()) {
+                LOG.info("Embedded Keycloak started: http://localhost:{}{} to use keycloak", port, keycloakContextPath);
+            } else {
+                LOG.info("Embedded Keycloak is starting in background: http://localhost:{}{} will be available once it is ready", port, keycloakContextPath);
+            }
         };
     }
 
+    /**
+     * holds off keycloak requests with 503 while keycloak boots in background - enabled in async bootstrap mode only
+     */
+    @Bean
+    FilterRegistrationBean<EmbeddedKeycloakReadinessFilter> keycloakReadiness(EmbeddedKeycloakServerProperties keycloakServerProperties, EmbeddedKeycloakBootstrap bootstrap) {
+        FilterRegistrationBean<EmbeddedKeycloakReadinessFilter> filter = new FilterRegistrationBean<>();
+        filter.setName("Keycloak Readiness");
+        filter.setFilter(new EmbeddedKeycloakReadinessFilter(bootstrap, keycloakServerProperties.bootstrap.retryAfter));
+        filter.addUrlPatterns(keycloakServerProperties.serverContextPath + "/*");
+        filter.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        filter.setEnabled(keycloakServerProperties.bootstrap.async);
+
+        return filter;
+    }
+
+    @Bean
+    FilterRegistrationBean<EmbeddedKeycloakMetricsFilter> keycloakMetricsFilter(EmbeddedKeycloakServerProperties keycloakServerProperties, EmbeddedKeycloakMetrics metrics) {
+        FilterRegistrationBean<EmbeddedKeycloakMetricsFilter> filter = new FilterRegistrationBean<>();
+        filter.setName("Keycloak Metrics");
+        filter.setFilter(new EmbeddedKeycloakMetricsFilter(metrics));
+        filter.addUrlPatterns(keycloakServerProperties.serverContextPath + "/*");
+        filter.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+        filter.setAsyncSupported(true);
+        filter.setEnabled(keycloakServerProperties.metrics.enabled);
+
+        return filter;
+    }
+
+    @Bean
+    EmbeddedKeycloakStaticResourceCache keycloakStaticResourceCache(EmbeddedKeycloakServerProperties keycloakServerProperties) {
+        return new EmbeddedKeycloakStaticResourceCache(keycloakServerProperties.staticResources);
+    }
+
+    /**
+     * serves themes' resources, keycloak.js and welcome page resources from memory - it runs before keycloak's session filter,
+     * so cached resources never open keycloak session
+     */
+    @Bean
+    FilterRegistrationBean<EmbeddedKeycloakStaticResourceFilter> keycloakStaticResources(EmbeddedKeycloakServerProperties keycloakServerProperties, EmbeddedKeycloakStaticResourceCache keycloakStaticResourceCache) {
+        String contextPath = keycloakServerProperties.serverContextPath;
+        FilterRegistrationBean<EmbeddedKeycloakStaticResourceFilter> filter = new FilterRegistrationBean<>();
+        filter.setName("Keycloak Static Resources");
+        filter.setFilter(new EmbeddedKeycloakStaticResourceFilter(keycloakStaticResourceCache));
+        filter.addUrlPatterns(contextPath + "/resources/*", contextPath + "/js/*", contextPath + "/welcome-content/*");
+        filter.setOrder(Ordered.HIGHEST_PRECEDENCE + 2);
+        filter.setEnabled(keycloakServerProperties.staticResources.enabled);
+
+        return filter;
+    }
+
+    @Bean
+    EmbeddedKeycloakRateLimiter keycloakRateLimiter(EmbeddedKeycloakServerProperties keycloakServerProperties, EmbeddedKeycloakMetrics metrics) {
+        EmbeddedKeycloakRateLimiter rateLimiter = new EmbeddedKeycloakRateLimiter(keycloakServerProperties.rateLimit);
+        if (keycloakServerProperties.rateLimit.enabled && keycloakServerProperties.metrics.enabled) {
+            rateLimiter.bindTo(metrics.getRegistry());
+        }
+        return rateLimiter;
+    }
+
+    /**
+     * rejects token requests beyond rate limits before they take bulkhead's thread or open keycloak session - it runs after metrics filter,
+     * so rejected requests are measured as well
+     */
+    @Bean
+    FilterRegistrationBean<EmbeddedKeycloakRateLimitFilter> keycloakRateLimit(EmbeddedKeycloakServerProperties keycloakServerProperties, EmbeddedKeycloakRateLimiter keycloakRateLimiter) {
+        FilterRegistrationBean<EmbeddedKeycloakRateLimitFilter> filter = new FilterRegistrationBean<>();
+        filter.setName("Keycloak Rate Limit");
+        filter.setFilter(new EmbeddedKeycloakRateLimitFilter(keycloakRateLimiter));
+        filter.addUrlPatterns(keycloakServerProperties.serverContextPath + "/realms/*");
+        filter.setOrder(Ordered.HIGHEST_PRECEDENCE + 3);
+        filter.setAsyncSupported(true);
+        filter.setEnabled(keycloakServerProperties.rateLimit.enabled);
+
+        return filter;
+    }
+
+    /**
+     * executors keycloak requests run on when bulkhead is enabled - their meters are registered along with other keycloak's meters
+     */
+    @Bean(destroyMethod = "close")
+    EmbeddedKeycloakBulkhead keycloakBulkhead(EmbeddedKeycloakServerProperties keycloakServerProperties, EmbeddedKeycloakMetrics metrics) {
+        EmbeddedKeycloakBulkhead bulkhead = new EmbeddedKeycloakBulkhead(keycloakServerProperties.bulkhead);
+        if (keycloakServerProperties.bulkhead.enabled && keycloakServerProperties.metrics.enabled) {
+            bulkhead.bindTo(metrics.getRegistry());
+        }
+        return bulkhead;
+    }
+
+    /**
+     * it runs right before keycloak's session filter - other filters run on container's thread, keycloak's session filter and servlet
+     * on bulkhead's executor
+     */
+    @Bean
+    FilterRegistrationBean<EmbeddedKeycloakBulkheadFilter> keycloakBulkheadFilter(EmbeddedKeycloakServerProperties keycloakServerProperties, EmbeddedKeycloakBulkhead keycloakBulkhead,
+                                                                                   ServletRegistrationBean<EmbeddedKeycloakBootstrapServlet> keycloakJaxRsApplication,
+                                                                                   FilterRegistrationBean<KeycloakSessionServletFilter> keycloakSessionManagement) {
+        FilterRegistrationBean<EmbeddedKeycloakBulkheadFilter> filter = new FilterRegistrationBean<>();
+        filter.setName("Keycloak Bulkhead");
+        filter.setFilter(new EmbeddedKeycloakBulkheadFilter(keycloakBulkhead, keycloakSessionManagement.getFilter(), keycloakJaxRsApplication.getServlet(),
+                keycloakServerProperties.bulkhead.queueTimeout, keycloakServerProperties.bulkhead.retryAfter));
+        filter.addUrlPatterns(keycloakServerProperties.serverContextPath + "/*");
+        filter.setOrder(Ordered.LOWEST_PRECEDENCE - 1);
+        filter.setAsyncSupported(true);
+        filter.setEnabled(keycloakServerProperties.bulkhead.enabled);
+
+        return filter;
+    }
+
     @Bean
     FilterRegistrationBean<KeycloakSessionServletFilter> keycloakSessionManagement(EmbeddedKeycloakServerProperties keycloakServerProperties) {
         FilterRegistrationBean<KeycloakSessionServletFilter> filter = new FilterRegistrationBean<>();
@@ -145,13 +464,39 @@ public class EmbeddedKeycloakConfig {
         return filter;
     }
 
-    private void mockJndiEnvironment(DataSource dataSource) throws NamingException {
-        if (NamingManager.hasInitialContextFactoryBuilder()) {
-            EmbeddedKeycloakInitialContext initialContext = (EmbeddedKeycloakInitialContext) NamingManager.getInitialContext(null);
-            initialContext.setDataSource(dataSource);
-            return;
-        }
+    /**
+     * keycloak registers its session factory in servlet context once it's started
+     */
+    private static Supplier<KeycloakSessionFactory> keycloakSessionFactory(ServletContext servletContext) {
+        return () -> (KeycloakSessionFactory) servletContext.getAttribute(KeycloakSessionFactory.class.getName());
+    }
+
+    /**
+     * initial context factory builder can be set only once per JVM, so every keycloak started later(i.e. after application context restart
+     * or in another application context) uses the same initial context instance - its own resources are bound to thread bootstrapping it
+     */
+    private EmbeddedKeycloakInitialContext mockJndiEnvironment(DataSource dataSource, EmbeddedCacheManager cacheManager) throws NamingException {
+        return EmbeddedKeycloakInitialContext.install(dataSource, cacheManager);
+    }
 
-        NamingManager.setInitialContextFactoryBuilder((env) -> environment -> new EmbeddedKeycloakInitialContext(dataSource));
+    /**
+     * matches when keycloak.properties enables in-process jwt decoder - it's evaluated before keycloakServerProperties bean exists
+     */
+    static class JwtDecoderEnabled implements Condition {
+        @Override
+        public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+            Resource resource = context.getResourceLoader().getResource("classpath:keycloak.properties");
+            if (!resource.exists()) {
+                return new EmbeddedKeycloakJwtProperties().enabled;
+            }
+            try (InputStream stream = resource.getInputStream()) {
+                Properties props = new Properties();
+                props.load(stream);
+                return new EmbeddedKeycloakJwtProperties(props).enabled;
+            } catch (IOException e) {
+                LOG.debug("exception while loading keycloak configuration, in-process jwt decoder is not registered");
+                return false;
+            }
+        }
     }
 }
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.adapter.embedded.security;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.keycloak.TokenVerifier;
+import org.keycloak.common.VerificationException;
+import org.keycloak.crypto.KeyUse;
+import org.keycloak.crypto.KeyWrapper;
+import org.keycloak.jose.jws.JWSHeader;
+import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.jose.jws.JWSInputException;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.representations.JsonWebToken;
+import org.keycloak.util.JsonSerialization;
+import org.keycloak.util.TokenUtil;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.MappedJwtClaimSetConverter;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakJwtProperties;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.security.Key;
+import java.security.PublicKey;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * {@link JwtDecoder} verifying bearer tokens with signing keys read directly from embedded keycloak's {@link KeycloakSessionFactory},
+ * so token validation never calls realm's certs or introspection endpoint.
+ * <p>
+ * Verification keys are cached per realm and re-read every key refresh interval or as soon as token signed with unknown key arrives,
+ * so rotated keys are picked up and removed or disabled keys stop being accepted. Verified tokens are cached until they expire,
+ * cached token is accepted only as long as the key it was verified with is still one of realm's keys.
+ * Realm's not-before policy is honoured as well - it's re-read together with keys and checked for cached tokens too.
+ * Only tokens issued by configured realm are accepted - decoder can't be created without it, so tokens of master or any other realm
+ * users may register in never pass. Audience is not checked. Tokens of realm that doesn't exist(anymore) are rejected without caching anything.
+ */
+public class EmbeddedKeycloakJwtDecoder implements JwtDecoder {
+    private static final String REALMS_PATH = "/realms/";
+    private static final long UNKNOWN_KEY_RELOAD_INTERVAL = 1000;
+    private static final Converter<Map<String, Object>, Map<String, Object>> CLAIMS = MappedJwtClaimSetConverter.withDefaults(Collections.emptyMap());
+    private static final TokenVerifier.Predicate<JsonWebToken> BEARER = new TokenVerifier.TokenTypeCheck(TokenUtil.TOKEN_TYPE_BEARER);
+    private static final TypeReference<Map<String, Object>> CLAIMS_TYPE = new TypeReference<Map<String, Object>>() {
+    };
+
+    private final ConcurrentMap<String, RealmKeys> keys = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, VerifiedToken> tokens = new ConcurrentHashMap<>();
+    private final Supplier<KeycloakSessionFactory> sessionFactory;
+    private final String realm;
+    private final int maxEntries;
+    private final long keyRefreshInterval;
+    private final Clock clock;
+
+    public EmbeddedKeycloakJwtDecoder(Supplier<KeycloakSessionFactory> sessionFactory, EmbeddedKeycloakJwtProperties properties) {
+        this(sessionFactory, properties, Clock.systemUTC());
+    }
+
+    /**
+     * @param sessionFactory supplies keycloak's session factory, may supply null while keycloak is starting
+     * @throws IllegalArgumentException when realm is not configured
+     */
+    public EmbeddedKeycloakJwtDecoder(Supplier<KeycloakSessionFactory> sessionFactory, EmbeddedKeycloakJwtProperties properties, Clock clock) {
+        if (properties.realm == null || properties.realm.trim().isEmpty()) {
+            throw new IllegalArgumentException(EmbeddedKeycloakJwtProperties.JWT_REALM + " has to be set, tokens of any realm would be accepted otherwise");
+        }
+        this.sessionFactory = sessionFactory;
+        this.realm = properties.realm.trim();
+        this.maxEntries = properties.maxEntries;
+        this.keyRefreshInterval = properties.keyRefreshInterval;
+        this.clock = clock;
+    }
+
+    @Override
+    public Jwt decode(String token) throws JwtException {
+        long now = clock.millis();
+        VerifiedToken verified = tokens.get(token);
+        if (verified != null) {
+            RealmKeys realmKeys = verified.expiresAt > now ? realmKeys(verified.realm, now) : null;
+            if (realmKeys != null && verified.key == realmKeys.keys.get(verified.kid) && verified.issuedAt >= realmKeys.notBefore) {
+                return verified.jwt;
+            }
+            tokens.remove(token, verified);
+        }
+
+        verified = verify(token, now);
+        if (verified.expiresAt > 0) {
+            tokens.put(token, verified);
+            purgeExpired(now);
+        }
+        return verified.jwt;
+    }
+
+    private VerifiedToken verify(String token, long now) {
+        try {
+            TokenVerifier<AccessToken> verifier = TokenVerifier.create(token, AccessToken.class);
+            JWSHeader header = verifier.getHeader();
+            AccessToken accessToken = verifier.getToken();
+
+            String realmName = realmName(accessToken.getIssuer());
+            RealmKeys realmKeys = realmKeys(realmName, now);
+            Key key = realmKeys.keys.get(header.getKeyId());
+            if (key == null && now - realmKeys.loadedAt >= UNKNOWN_KEY_RELOAD_INTERVAL && realmKeys.reloading.compareAndSet(false, true)) {
+                realmKeys = load(realmName, realmKeys, now);
+                key = realmKeys.keys.get(header.getKeyId());
+            }
+            if (key == null) {
+                throw new JwtException("Token is signed with unknown key: " + header.getKeyId());
+            }
+
+            if (key instanceof PublicKey) {
+                verifier.publicKey((PublicKey) key);
+            } else {
+                verifier.secretKey((SecretKey) key);
+            }
+            //checks are run directly, verifier's withChecks takes generic varargs
+            verifier.verify();
+            TokenVerifier.IS_ACTIVE.test(accessToken);
+            BEARER.test(accessToken);
+            if (accessToken.getIssuedAt() < realmKeys.notBefore) {
+                throw new JwtException("Token was issued before realm's not-before policy");
+            }
+
+            long expiresAt = accessToken.getExpiration() * 1000L;
+            return new VerifiedToken(realmName, header.getKeyId(), key, accessToken.getIssuedAt(), expiresAt, jwt(token, header));
+        } catch (VerificationException e) {
+            throw new JwtException("Token verification failed: " + e.getMessage(), e);
+        }
+    }
+
+    private String realmName(String issuer) {
+        int index = issuer == null ? -1 : issuer.lastIndexOf(REALMS_PATH);
+        if (index < 0) {
+            throw new JwtException("Token is not issued by keycloak realm: " + issuer);
+        }
+        String realmName = issuer.substring(index + REALMS_PATH.length());
+        if (!realm.equals(realmName)) {
+            throw new JwtException("Token issued by realm: " + realmName + " is not accepted");
+        }
+        return realmName;
+    }
+
+    /**
+     * returns cached realm keys, stale keys are reloaded by one thread while others keep using them
+     */
+    private RealmKeys realmKeys(String realmName, long now) {
+        RealmKeys current = keys.get(realmName);
+        if (current == null) {
+            return load(realmName, null, now);
+        }
+        if (now - current.loadedAt >= keyRefreshInterval && current.reloading.compareAndSet(false, true)) {
+            return load(realmName, current, now);
+        }
+        return current;
+    }
+
+    private RealmKeys load(String realmName, RealmKeys previous, long now) {
+        KeycloakSessionFactory factory = sessionFactory.get();
+        if (factory == null) {
+            if (previous != null) {
+                previous.reloading.set(false);
+            }
+            throw new JwtException("Embedded Keycloak is not ready");
+        }
+
+        RealmKeys[] result = new RealmKeys[1];
+        try {
+            KeycloakModelUtils.runJobInTransaction(factory, session -> {
+                RealmModel realmModel = session.realms().getRealmByName(realmName);
+                if (realmModel == null) {
+                    return;
+                }
+                Map<String, Key> realmKeys = new HashMap<>();
+                for (KeyWrapper key : session.keys().getKeys(realmModel)) {
+                    if (key.getUse() != KeyUse.SIG || key.getStatus() == null || !key.getStatus().isEnabled() || key.getVerifyKey() == null) {
+                        continue;
+                    }
+                    Key known = previous == null ? null : previous.keys.get(key.getKid());
+                    //keeping the same instance, so tokens verified with unchanged key stay cached
+                    realmKeys.put(key.getKid(), key.getVerifyKey().equals(known) ? known : key.getVerifyKey());
+                }
+                result[0] = new RealmKeys(realmKeys, realmModel.getNotBefore(), now);
+            });
+        } catch (RuntimeException e) {
+            if (previous != null) {
+                previous.reloading.set(false);
+            }
+            throw new JwtException("Loading keys of realm: " + realmName + " failed", e);
+        }
+
+        if (result[0] == null) {
+            //realm was removed or issuer is made up - nothing is cached for it
+            keys.remove(realmName);
+            throw new JwtException("Realm: " + realmName + " does not exist");
+        }
+
+        keys.put(realmName, result[0]);
+        return result[0];
+    }
+
+    private Jwt jwt(String token, JWSHeader header) {
+        Map<String, Object> headers = new LinkedHashMap<>();
+        headers.put("alg", header.getAlgorithm().name());
+        if (header.getKeyId() != null) {
+            headers.put("kid", header.getKeyId());
+        }
+        if (header.getType() != null) {
+            headers.put("typ", header.getType());
+        }
+
+        Map<String, Object> claims;
+        try {
+            claims = CLAIMS.convert(JsonSerialization.readValue(new JWSInput(token).readContentAsString(), CLAIMS_TYPE));
+        } catch (JWSInputException | IOException e) {
+            throw new JwtException("Reading token claims failed", e);
+        }
+        return new Jwt(token, (Instant) claims.get("iat"), (Instant) claims.get("exp"), headers, claims);
+    }
+
+    private void purgeExpired(long now) {
+        if (tokens.size() <= maxEntries) {
+            return;
+        }
+        tokens.values().removeIf(token -> token.expiresAt <= now);
+        if (tokens.size() > maxEntries) {
+            tokens.clear();
+        }
+    }
+
+    /**
+     * drops cached keys and verified tokens, i.e. right after keys were rotated
+     */
+    public void invalidateAll() {
+        keys.clear();
+        tokens.clear();
+    }
+
+    public int size() {
+        return tokens.size();
+    }
+
+    private static final class RealmKeys {
+        final Map<String, Key> keys;
+        final int notBefore;
+        final long loadedAt;
+        final AtomicBoolean reloading = new AtomicBoolean();
+
+        RealmKeys(Map<String, Key> keys, int notBefore, long loadedAt) {
+            this.keys = keys;
+            this.notBefore = notBefore;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private static final class VerifiedToken {
+        final String realm;
+        final String kid;
+        final Key key;
+        final int issuedAt;
+        final long expiresAt;
+        final Jwt jwt;
+
+        VerifiedToken(String realm, String kid, Key key, int issuedAt, long expiresAt, Jwt jwt) {
+            this.realm = realm;
+            this.kid = kid;
+            this.key = key;
+            this.issuedAt = issuedAt;
+            this.expiresAt = expiresAt;
+            this.jwt = jwt;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.adapter.embedded.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous facade of {@link AuthenticationTokenRequester} - token requests run on a dedicated pool of
+ * {@code maxConcurrency} threads, so at most that many requests hit token endpoint at once while callers never block.
+ * <p>
+ * Wrap {@link CachingAuthenticationTokenRequester} to get cached and single-flight tokens asynchronously.
+ */
+public class AsyncAuthenticationTokenRequester implements AutoCloseable {
+    private final AuthenticationTokenRequester requester;
+    private final ExecutorService executor;
+
+    public AsyncAuthenticationTokenRequester(AuthenticationTokenRequester requester, int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Max concurrency has to be positive, was: " + maxConcurrency);
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        this.requester = requester;
+        this.executor = Executors.newFixedThreadPool(maxConcurrency, r -> {
+            Thread thread = new Thread(r, "keycloak-token-requester-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public CompletableFuture<AuthenticationToken> get(String url, String clientId, String username, String password) {
+        return get(url, clientId, username, password, "password");
+    }
+
+    public CompletableFuture<AuthenticationToken> get(String url, String clientId, String username, String password, String grantType) {
+        return CompletableFuture.supplyAsync(() -> requester.getToken(url, clientId, username, password, grantType), executor);
+    }
+
+    public CompletableFuture<AuthenticationToken> refresh(String url, String clientId, String refreshToken) {
+        return CompletableFuture.supplyAsync(() -> requester.refreshToken(url, clientId, refreshToken), executor);
+    }
+
+    /**
+     * requests tokens for all given users - requests are queued at once and processed with bounded concurrency
+     *
+     * @return tokens in order of given credentials, completed exceptionally when any of requests failed
+     */
+    public CompletableFuture<List<AuthenticationToken>> getAll(String url, String clientId, Collection<UserCredentials> credentials) {
+        List<CompletableFuture<AuthenticationToken>> requests = new ArrayList<>(credentials.size());
+        for (UserCredentials user : credentials) {
+            requests.add(get(url, clientId, user.getUsername(), user.getPassword()));
+        }
+
+        return CompletableFuture.allOf(requests.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            List<AuthenticationToken> tokens = new ArrayList<>(requests.size());
+            for (CompletableFuture<AuthenticationToken> request : requests) {
+                tokens.add(request.join());
+            }
+            return tokens;
+        });
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
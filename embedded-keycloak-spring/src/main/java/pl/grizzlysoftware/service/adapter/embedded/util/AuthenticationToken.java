@@ -0,0 +1,157 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.adapter.embedded.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token endpoint response
+ */
+public class AuthenticationToken {
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final String accessToken;
+    private final String refreshToken;
+    private final String tokenType;
+    private final String scope;
+    private final long expiresIn;
+    private final long refreshExpiresIn;
+    private final long issuedAt;
+
+    public AuthenticationToken(String accessToken, String refreshToken, String tokenType, String scope, long expiresIn, long refreshExpiresIn, long issuedAt) {
+        this.accessToken = accessToken;
+        this.refreshToken = refreshToken;
+        this.tokenType = tokenType;
+        this.scope = scope;
+        this.expiresIn = expiresIn;
+        this.refreshExpiresIn = refreshExpiresIn;
+        this.issuedAt = issuedAt;
+    }
+
+    /**
+     * parses token endpoint response with jackson streaming api - no intermediate json tree is built
+     *
+     * @param issuedAt time in millis the response was received at, expiration times are relative to it
+     */
+    public static AuthenticationToken parse(String json, long issuedAt) {
+        String accessToken = null;
+        String refreshToken = null;
+        String tokenType = null;
+        String scope = null;
+        long expiresIn = 0;
+        long refreshExpiresIn = 0;
+
+        try (JsonParser parser = JSON.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Token response is not a json object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "access_token":
+                        accessToken = parser.getValueAsString();
+                        break;
+                    case "refresh_token":
+                        refreshToken = parser.getValueAsString();
+                        break;
+                    case "token_type":
+                        tokenType = parser.getValueAsString();
+                        break;
+                    case "scope":
+                        scope = parser.getValueAsString();
+                        break;
+                    case "expires_in":
+                        expiresIn = parser.getValueAsLong();
+                        break;
+                    case "refresh_expires_in":
+                        refreshExpiresIn = parser.getValueAsLong();
+                        break;
+                    default:
+                        if (value.isStructStart()) {
+                            parser.skipChildren();
+                        }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return new AuthenticationToken(accessToken, refreshToken, tokenType, scope, expiresIn, refreshExpiresIn, issuedAt);
+    }
+
+    public String getAccessToken() {
+        return accessToken;
+    }
+
+    public String getRefreshToken() {
+        return refreshToken;
+    }
+
+    public String getTokenType() {
+        return tokenType;
+    }
+
+    public String getScope() {
+        return scope;
+    }
+
+    /**
+     * @return access token lifetime in seconds
+     */
+    public long getExpiresIn() {
+        return expiresIn;
+    }
+
+    /**
+     * @return refresh token lifetime in seconds, 0 when refresh token does not expire(i.e. offline token)
+     */
+    public long getRefreshExpiresIn() {
+        return refreshExpiresIn;
+    }
+
+    public long getIssuedAt() {
+        return issuedAt;
+    }
+
+    public long getExpiresAt() {
+        return issuedAt + TimeUnit.SECONDS.toMillis(expiresIn);
+    }
+
+    /**
+     * @return true when access token is still valid for at least given time
+     */
+    public boolean isAccessTokenValid(long now, long minTimeToLive) {
+        return accessToken != null && getExpiresAt() - minTimeToLive > now;
+    }
+
+    /**
+     * @return true when refresh token is still valid for at least given time
+     */
+    public boolean isRefreshTokenValid(long now, long minTimeToLive) {
+        if (refreshToken == null) {
+            return false;
+        }
+        return refreshExpiresIn == 0 || issuedAt + TimeUnit.SECONDS.toMillis(refreshExpiresIn) - minTimeToLive > now;
+    }
+}
@@ -18,13 +18,10 @@
 
 package pl.grizzlysoftware.service.adapter.embedded.util;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.http.*;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.web.client.RestTemplate;
 
-import java.io.IOException;
 import java.util.function.Function;
 
 public class AuthenticationTokenRequester {
@@ -45,19 +42,7 @@ public class AuthenticationTokenRequester {
     }
 
     static Function<HttpEntity<String>, String> defaultTokenExtractor() {
-        ObjectMapper m = new ObjectMapper();
-        return e -> {
-            try {
-                JsonNode json = m.readTree(e.getBody());
-                JsonNode accessTokenNode = json.get("access_token");
-                if (accessTokenNode != null) {
-                    return accessTokenNode.asText();
-                }
-                return null;
-            } catch (IOException ex) {
-                throw new RuntimeException(ex);
-            }
-        };
+        return e -> AuthenticationToken.parse(e.getBody(), System.currentTimeMillis()).getAccessToken();
     }
 
     public String get(String url, String clientId, String username, String password) {
@@ -65,18 +50,52 @@ public class AuthenticationTokenRequester {
     }
 
     public String get(String url, String clientId, String username, String password, String grantType) {
-        LinkedMultiValueMap params = new LinkedMultiValueMap<>();
+        ResponseEntity<String> response = exchange(url, credentials(clientId, username, password, grantType), username, password);
+
+        if (tokenExtractor == null) {
+            tokenExtractor = defaultTokenExtractor();
+        }
+
+        return tokenExtractor.apply(response);
+    }
+
+    /**
+     * same as {@link #get(String, String, String, String, String)} but returns whole token endpoint response
+     */
+    public AuthenticationToken getToken(String url, String clientId, String username, String password, String grantType) {
+        ResponseEntity<String> response = exchange(url, credentials(clientId, username, password, grantType), username, password);
+        return AuthenticationToken.parse(response.getBody(), System.currentTimeMillis());
+    }
+
+    /**
+     * renews tokens with refresh_token grant
+     */
+    public AuthenticationToken refreshToken(String url, String clientId, String refreshToken) {
+        LinkedMultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        params.add("client_id", clientId);
+        params.add("refresh_token", refreshToken);
+        params.add("grant_type", "refresh_token");
+
+        ResponseEntity<String> response = exchange(url, params, clientId, "[refresh token]");
+        return AuthenticationToken.parse(response.getBody(), System.currentTimeMillis());
+    }
+
+    private static LinkedMultiValueMap<String, String> credentials(String clientId, String username, String password, String grantType) {
+        LinkedMultiValueMap<String, String> params = new LinkedMultiValueMap<>();
         params.add("client_id", clientId);
         params.add("username", username);
         params.add("password", password);
         params.add("grant_type", grantType);
+        return params;
+    }
 
+    private ResponseEntity<String> exchange(String url, LinkedMultiValueMap<String, String> params, String username, String password) {
         HttpHeaders headers = new HttpHeaders();
         headers.set("Content-Type", MediaType.APPLICATION_FORM_URLENCODED_VALUE);
 
-        HttpEntity entity = new HttpEntity<>(params, headers);
+        HttpEntity<LinkedMultiValueMap<String, String>> entity = new HttpEntity<>(params, headers);
 
-        ResponseEntity response = client.exchange(
+        ResponseEntity<String> response = client.exchange(
                 url,
                 HttpMethod.POST,
                 entity,
@@ -87,11 +106,6 @@ public class AuthenticationTokenRequester {
                     url, username, password, response.getHeaders().toString(), response.getStatusCodeValue(), response.getBody());
             throw new RuntimeException(message);
         }
-
-        if (tokenExtractor == null) {
-            tokenExtractor = defaultTokenExtractor();
-        }
-
-        return tokenExtractor.apply(response);
+        return response;
     }
 }
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.adapter.embedded.util;
+
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link AuthenticationTokenRequester} which reuses tokens until shortly before they expire.
+ * <p>
+ * Tokens are cached per url, client and user credentials. Expiring tokens are renewed with refresh_token grant while
+ * refresh token is valid, password is re-sent only when refresh fails. Concurrent requests for the same key
+ * wait for a single in-flight token request instead of hitting token endpoint on their own.
+ * <p>
+ * Custom token extractor is not supported - cached access token is returned as is.
+ */
+public class CachingAuthenticationTokenRequester extends AuthenticationTokenRequester {
+    public static final Duration DEFAULT_MIN_TIME_TO_LIVE = Duration.ofSeconds(30);
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private final ConcurrentMap<Key, AuthenticationToken> tokens = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Key, CompletableFuture<AuthenticationToken>> inFlight = new ConcurrentHashMap<>();
+    private final long minTimeToLive;
+    private final int maxEntries;
+    private final Clock clock;
+
+    public CachingAuthenticationTokenRequester(RestTemplate client) {
+        this(client, DEFAULT_MIN_TIME_TO_LIVE, DEFAULT_MAX_ENTRIES, Clock.systemUTC());
+    }
+
+    /**
+     * @param minTimeToLive token is renewed when it expires sooner than that
+     * @param maxEntries    expired entries are purged once cache grows beyond that, cache is cleared when it is still too big afterwards
+     */
+    public CachingAuthenticationTokenRequester(RestTemplate client, Duration minTimeToLive, int maxEntries, Clock clock) {
+        super(client);
+        this.minTimeToLive = minTimeToLive.toMillis();
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+    }
+
+    @Override
+    public String get(String url, String clientId, String username, String password, String grantType) {
+        return getToken(url, clientId, username, password, grantType).getAccessToken();
+    }
+
+    @Override
+    public AuthenticationToken getToken(String url, String clientId, String username, String password, String grantType) {
+        Key key = new Key(url, clientId, username, password, grantType);
+        AuthenticationToken token = tokens.get(key);
+        if (token != null && token.isAccessTokenValid(clock.millis(), minTimeToLive)) {
+            return token;
+        }
+
+        CompletableFuture<AuthenticationToken> request = new CompletableFuture<>();
+        CompletableFuture<AuthenticationToken> pending = inFlight.putIfAbsent(key, request);
+        if (pending != null) {
+            try {
+                return pending.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+
+        try {
+            AuthenticationToken renewed = renew(key, tokens.get(key));
+            tokens.put(key, renewed);
+            purgeExpired();
+            request.complete(renewed);
+            return renewed;
+        } catch (RuntimeException e) {
+            request.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, request);
+        }
+    }
+
+    private AuthenticationToken renew(Key key, AuthenticationToken current) {
+        long now = clock.millis();
+        if (current != null && current.isAccessTokenValid(now, minTimeToLive)) {
+            //renewed by another thread in the meantime
+            return current;
+        }
+        if (current != null && current.isRefreshTokenValid(now, minTimeToLive)) {
+            try {
+                return refreshToken(key.url, key.clientId, current.getRefreshToken());
+            } catch (RuntimeException e) {
+                //refresh token revoked or session expired - falling back to credentials
+            }
+        }
+        return super.getToken(key.url, key.clientId, key.username, key.password, key.grantType);
+    }
+
+    private void purgeExpired() {
+        if (tokens.size() <= maxEntries) {
+            return;
+        }
+        long now = clock.millis();
+        tokens.values().removeIf(token -> !token.isAccessTokenValid(now, minTimeToLive) && !token.isRefreshTokenValid(now, minTimeToLive));
+        if (tokens.size() > maxEntries) {
+            tokens.clear();
+        }
+    }
+
+    public void invalidate(String url, String clientId, String username, String password, String grantType) {
+        tokens.remove(new Key(url, clientId, username, password, grantType));
+    }
+
+    public void invalidateAll() {
+        tokens.clear();
+    }
+
+    public int size() {
+        return tokens.size();
+    }
+
+    private static final class Key {
+        final String url;
+        final String clientId;
+        final String username;
+        final String password;
+        final String grantType;
+        final int hash;
+
+        Key(String url, String clientId, String username, String password, String grantType) {
+            this.url = url;
+            this.clientId = clientId;
+            this.username = username;
+            this.password = password;
+            this.grantType = grantType;
+            this.hash = Objects.hash(url, clientId, username, password, grantType);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return Objects.equals(url, key.url)
+                    && Objects.equals(clientId, key.clientId)
+                    && Objects.equals(username, key.username)
+                    && Objects.equals(password, key.password)
+                    && Objects.equals(grantType, key.grantType);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
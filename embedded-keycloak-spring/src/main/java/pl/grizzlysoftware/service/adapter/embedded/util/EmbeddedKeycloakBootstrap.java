@@ -0,0 +1,89 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.adapter.embedded.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import pl.grizzlysoftware.service.embedded.keycloak.instrumentation.EmbeddedKeycloakStartupReport;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks bootstrap of embedded keycloak. Once keycloak is ready {@link EmbeddedKeycloakReadyEvent} is published.
+ */
+public class EmbeddedKeycloakBootstrap {
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddedKeycloakBootstrap.class);
+
+    public enum State {
+        STARTING, READY, FAILED
+    }
+
+    private final ApplicationEventPublisher eventPublisher;
+    private final CompletableFuture<Void> readiness = new CompletableFuture<>();
+    private final long startedAt = System.nanoTime();
+    private volatile State state = State.STARTING;
+    private volatile EmbeddedKeycloakStartupReport startupReport;
+
+    public EmbeddedKeycloakBootstrap(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isReady() {
+        return state == State.READY;
+    }
+
+    /**
+     * @return future completed when keycloak is ready or completed exceptionally when its bootstrap failed
+     */
+    public CompletableFuture<Void> readiness() {
+        return readiness;
+    }
+
+    /**
+     * @return report of keycloak's bootstrap phases, null until keycloak is ready
+     */
+    public EmbeddedKeycloakStartupReport getStartupReport() {
+        return startupReport;
+    }
+
+    public void ready() {
+        ready(null);
+    }
+
+    public void ready(EmbeddedKeycloakStartupReport startupReport) {
+        long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        this.startupReport = startupReport;
+        state = State.READY;
+        LOG.info("Embedded Keycloak ready in {} ms", duration);
+        eventPublisher.publishEvent(new EmbeddedKeycloakReadyEvent(this, duration, startupReport));
+        readiness.complete(null);
+    }
+
+    public void failed(Throwable cause) {
+        state = State.FAILED;
+        LOG.error("Embedded Keycloak bootstrap failed", cause);
+        readiness.completeExceptionally(cause);
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.grizzlysoftware.service.adapter.embedded.util;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakBulkheadProperties;
+import pl.grizzlysoftware.service.embedded.keycloak.web.KeycloakEndpointFamily;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded executors keycloak requests run on, one per group of endpoint families: token(token, userinfo), login(login, account),
+ * admin and discovery(.well-known, certs). Requests of other families(i.e. static resources) run on servlet container's threads.
+ * Executor's queue is bounded, tasks beyond it are rejected right away. Meters are tagged with pool name:
+ * keycloak.bulkhead.active, keycloak.bulkhead.queued, keycloak.bulkhead.utilization, keycloak.bulkhead.rejected
+ */
+public class EmbeddedKeycloakBulkhead implements AutoCloseable {
+    public static final String ACTIVE = "keycloak.bulkhead.active";
+    public static final String QUEUED = "keycloak.bulkhead.queued";
+    public static final String UTILIZATION = "keycloak.bulkhead.utilization";
+    public static final String REJECTED = "keycloak.bulkhead.rejected";
+
+    private final Map<KeycloakEndpointFamily, Pool> families = new EnumMap<>(KeycloakEndpointFamily.class);
+    private final List<Pool> pools = new ArrayList<>();
+
+    public EmbeddedKeycloakBulkhead(EmbeddedKeycloakBulkheadProperties properties) {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        pool(new Pool("token", properties.token, classLoader), KeycloakEndpointFamily.TOKEN, KeycloakEndpointFamily.USERINFO);
+        pool(new Pool("login", properties.login, classLoader), KeycloakEndpointFamily.LOGIN, KeycloakEndpointFamily.ACCOUNT);
+        pool(new Pool("admin", properties.admin, classLoader), KeycloakEndpointFamily.ADMIN);
+        pool(new Pool("discovery", properties.discovery, classLoader), KeycloakEndpointFamily.DISCOVERY, KeycloakEndpointFamily.CERTS);
+    }
+
+    private void pool(Pool pool, KeycloakEndpointFamily... families) {
+        pools.add(pool);
+        for (KeycloakEndpointFamily family : families) {
+            this.families.put(family, pool);
+        }
+    }
+
+    /**
+     * @return whether requests of given family run on one of bulkhead's executors
+     */
+    public boolean isolates(KeycloakEndpointFamily family) {
+        return families.containsKey(family);
+    }
+
+    /**
+     * runs task on executor of given family
+     *
+     * @throws RejectedExecutionException when all executor's threads are busy and its queue is full
+     */
+    public void execute(KeycloakEndpointFamily family, Runnable task) {
+        Pool pool = families.get(family);
+        if (pool == null) {
+            throw new IllegalArgumentException("Keycloak endpoint family is not isolated: " + family);
+        }
+        try {
+            pool.executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            pool.rejected.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * counts request rejected after it waited in queue for too long
+     */
+    public void expired(KeycloakEndpointFamily family) {
+        Pool pool = families.get(family);
+        if (pool != null) {
+            pool.expired.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return share of busy threads of given family's executor, 0 when family is not isolated
+     */
+    public double utilization(KeycloakEndpointFamily family) {
+        Pool pool = families.get(family);
+        return pool == null ? 0 : pool.utilization();
+    }
+
+    public List<String> getPoolNames() {
+        List<String> names = new ArrayList<>();
+        for (Pool pool : pools) {
+            names.add(pool.name);
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * not a MeterBinder on purpose - it's a bean, actuator would bind it while creating the registry it's bound to
+     */
+    public void bindTo(MeterRegistry registry) {
+        for (Pool pool : pools) {
+            Gauge.builder(ACTIVE, pool.executor, ThreadPoolExecutor::getActiveCount)
+                    .description("Keycloak requests being processed")
+                    .tag("pool", pool.name)
+                    .register(registry);
+            Gauge.builder(QUEUED, pool.executor, e -> e.getQueue().size())
+                    .description("Keycloak requests waiting for a thread")
+                    .tag("pool", pool.name)
+                    .register(registry);
+            Gauge.builder(UTILIZATION, pool, Pool::utilization)
+                    .description("Share of busy threads")
+                    .tag("pool", pool.name)
+                    .register(registry);
+            FunctionCounter.builder(REJECTED, pool.rejected, AtomicLong::get)
+                    .description("Keycloak requests rejected with 503")
+                    .tags("pool", pool.name, "reason", "full")
+                    .register(registry);
+            FunctionCounter.builder(REJECTED, pool.expired, AtomicLong::get)
+                    .description("Keycloak requests rejected with 503")
+                    .tags("pool", pool.name, "reason", "expired")
+                    .register(registry);
+        }
+    }
+
+    /**
+     * stops accepting requests, requests already accepted are still processed
+     */
+    @Override
+    public void close() {
+        for (Pool pool : pools) {
+            pool.executor.shutdown();
+        }
+    }
+
+    private static class Pool {
+        private final String name;
+        private final ThreadPoolExecutor executor;
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong expired = new AtomicLong();
+
+        Pool(String name, EmbeddedKeycloakBulkheadProperties.Pool properties, ClassLoader classLoader) {
+            AtomicInteger threads = new AtomicInteger();
+            this.name = name;
+            this.executor = new ThreadPoolExecutor(properties.threads, properties.threads, 60, TimeUnit.SECONDS, queue(properties.queue), r -> {
+                Thread thread = new Thread(r, "keycloak-" + name + "-" + threads.incrementAndGet());
+                thread.setContextClassLoader(classLoader);
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.executor.allowCoreThreadTimeOut(true);
+        }
+
+        private static BlockingQueue<Runnable> queue(int capacity) {
+            return capacity > 0 ? new ArrayBlockingQueue<>(capacity) : new SynchronousQueue<>();
+        }
+
+        double utilization() {
+            return (double) executor.getActiveCount() / executor.getMaximumPoolSize();
+        }
+    }
+}
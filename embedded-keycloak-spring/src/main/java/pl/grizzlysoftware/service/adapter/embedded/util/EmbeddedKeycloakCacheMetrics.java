@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.adapter.embedded.util;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.stats.Stats;
+
+import java.util.Collection;
+import java.util.function.ToLongFunction;
+
+/**
+ * Micrometer meters of keycloak's infinispan caches, tagged with cache name:
+ * keycloak.cache.hits, keycloak.cache.misses, keycloak.cache.evictions, keycloak.cache.size
+ * caches have to collect statistics(keycloak.embedded.cache.statistics=true), otherwise all meters read 0
+ */
+public class EmbeddedKeycloakCacheMetrics implements MeterBinder {
+    public static final String HITS = "keycloak.cache.hits";
+    public static final String MISSES = "keycloak.cache.misses";
+    public static final String EVICTIONS = "keycloak.cache.evictions";
+    public static final String SIZE = "keycloak.cache.size";
+
+    private final EmbeddedCacheManager cacheManager;
+    private final Collection<String> cacheNames;
+
+    public EmbeddedKeycloakCacheMetrics(EmbeddedCacheManager cacheManager, Collection<String> cacheNames) {
+        this.cacheManager = cacheManager;
+        this.cacheNames = cacheNames;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (String cacheName : cacheNames) {
+            counter(registry, HITS, "Keycloak cache hits", cacheName, Stats::getHits);
+            counter(registry, MISSES, "Keycloak cache misses", cacheName, Stats::getMisses);
+            counter(registry, EVICTIONS, "Keycloak cache evictions", cacheName, Stats::getEvictions);
+            Gauge.builder(SIZE, this, m -> m.statistic(cacheName, Stats::getCurrentNumberOfEntries))
+                    .description("Keycloak cache entries")
+                    .tag("cache", cacheName)
+                    .register(registry);
+        }
+    }
+
+    /**
+     * @return statistics of cache or null when cache is not started yet
+     */
+    public Stats getStats(String cacheName) {
+        if (!cacheManager.getStatus().allowInvocations() || !cacheManager.isRunning(cacheName)) {
+            return null;
+        }
+        return cacheManager.getCache(cacheName, false).getAdvancedCache().getStats();
+    }
+
+    private void counter(MeterRegistry registry, String name, String description, String cacheName, ToLongFunction<Stats> statistic) {
+        FunctionCounter.builder(name, this, m -> m.statistic(cacheName, statistic))
+                .description(description)
+                .tag("cache", cacheName)
+                .register(registry);
+    }
+
+    private double statistic(String cacheName, ToLongFunction<Stats> statistic) {
+        Stats stats = getStats(cacheName);
+        return stats == null ? 0 : statistic.applyAsLong(stats);
+    }
+}
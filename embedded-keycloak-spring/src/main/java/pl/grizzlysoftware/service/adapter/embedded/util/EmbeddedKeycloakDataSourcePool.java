@@ -0,0 +1,202 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.adapter.embedded.util;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakDataSourcePoolProperties;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Holds the datasource used by embedded keycloak and exposes its connection pool metrics.
+ * Intentionally it is not a {@link DataSource} itself, so registering it as a bean does not replace application's datasource.
+ * <p>
+ * Metrics are available only for hikari pools - for any other datasource they return -1.
+ */
+public class EmbeddedKeycloakDataSourcePool implements AutoCloseable {
+    public static final String POOL_NAME = "embedded-keycloak";
+    /**
+     * names of open pools - every keycloak running in JVM needs its own pool MBean name
+     */
+    private static final Set<String> POOL_NAMES = ConcurrentHashMap.newKeySet();
+
+    private final boolean owned;
+    private final String poolName;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private DataSource dataSource;
+    private final AtomicLong acquiredCount = new AtomicLong();
+    private final AtomicLong acquireTimeNanos = new AtomicLong();
+    private final LongAccumulator maxAcquireTimeNanos = new LongAccumulator(Math::max, 0);
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    private EmbeddedKeycloakDataSourcePool(DataSource dataSource, boolean owned, String poolName) {
+        this.owned = owned;
+        this.dataSource = dataSource;
+        this.poolName = poolName;
+    }
+
+    /**
+     * wraps already existing datasource(i.e. application's datasource bean) - its lifecycle is not managed by this pool
+     */
+    public static EmbeddedKeycloakDataSourcePool of(DataSource dataSource) {
+        return new EmbeddedKeycloakDataSourcePool(dataSource, false, null);
+    }
+
+    /**
+     * creates hikari connection pool owned by embedded keycloak
+     */
+    public static EmbeddedKeycloakDataSourcePool create(String url, String username, String password, EmbeddedKeycloakDataSourcePoolProperties properties) {
+        String poolName = POOL_NAME;
+        for (int i = 2; !POOL_NAMES.add(poolName); i++) {
+            poolName = POOL_NAME + "-" + i;
+        }
+        EmbeddedKeycloakDataSourcePool pool = new EmbeddedKeycloakDataSourcePool(null, true, poolName);
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(poolName);
+        config.setJdbcUrl(url);
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setMaximumPoolSize(properties.maximumSize);
+        config.setMinimumIdle(properties.minimumIdle);
+        config.setConnectionTimeout(properties.connectionTimeout);
+        config.setIdleTimeout(properties.idleTimeout);
+        config.setMaxLifetime(properties.maxLifetime);
+        config.setRegisterMbeans(true);
+        if (properties.statementCacheSize > 0) {
+            if (url != null && url.startsWith("jdbc:h2:")) {
+                // h2 rejects unknown connection settings, it has its own per session statement cache
+                config.addDataSourceProperty("QUERY_CACHE_SIZE", properties.statementCacheSize);
+            } else {
+                config.addDataSourceProperty("cachePrepStmts", "true");
+                config.addDataSourceProperty("prepStmtCacheSize", properties.statementCacheSize);
+                config.addDataSourceProperty("preparedStatementCacheQueries", properties.statementCacheSize);
+            }
+        }
+
+        config.setMetricsTrackerFactory(pool.new AcquireTimeTrackerFactory());
+        try {
+            pool.dataSource = new HikariDataSource(config);
+        } catch (RuntimeException e) {
+            POOL_NAMES.remove(poolName);
+            throw e;
+        }
+        return pool;
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * @return name of pool MBean - {@link #POOL_NAME} unless other keycloak in JVM uses it already, null when pool is not owned
+     */
+    public String getPoolName() {
+        return poolName;
+    }
+
+    public int getActiveConnections() {
+        HikariPoolMXBean pool = poolMXBean();
+        return pool == null ? -1 : pool.getActiveConnections();
+    }
+
+    public int getIdleConnections() {
+        HikariPoolMXBean pool = poolMXBean();
+        return pool == null ? -1 : pool.getIdleConnections();
+    }
+
+    public int getTotalConnections() {
+        HikariPoolMXBean pool = poolMXBean();
+        return pool == null ? -1 : pool.getTotalConnections();
+    }
+
+    public int getPendingThreads() {
+        HikariPoolMXBean pool = poolMXBean();
+        return pool == null ? -1 : pool.getThreadsAwaitingConnection();
+    }
+
+    public long getAcquiredCount() {
+        return acquiredCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public double getAverageAcquireTimeMillis() {
+        long count = acquiredCount.get();
+        return count == 0 ? 0 : acquireTimeNanos.get() / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getMaxAcquireTimeMillis() {
+        return maxAcquireTimeNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private HikariPoolMXBean poolMXBean() {
+        try {
+            if (dataSource != null && dataSource.isWrapperFor(HikariDataSource.class)) {
+                return dataSource.unwrap(HikariDataSource.class).getHikariPoolMXBean();
+            }
+        } catch (SQLException e) {
+            //NOOP - not a hikari pool
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        if (owned && dataSource instanceof HikariDataSource) {
+            ((HikariDataSource) dataSource).close();
+        }
+        if (poolName != null && closed.compareAndSet(false, true)) {
+            POOL_NAMES.remove(poolName);
+        }
+    }
+
+    private class AcquireTimeTrackerFactory implements MetricsTrackerFactory {
+        @Override
+        public IMetricsTracker create(String poolName, PoolStats poolStats) {
+            return new IMetricsTracker() {
+                @Override
+                public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                    acquiredCount.incrementAndGet();
+                    acquireTimeNanos.addAndGet(elapsedAcquiredNanos);
+                    maxAcquireTimeNanos.accumulate(elapsedAcquiredNanos);
+                }
+
+                @Override
+                public void recordConnectionTimeout() {
+                    timeoutCount.incrementAndGet();
+                }
+            };
+        }
+    }
+}
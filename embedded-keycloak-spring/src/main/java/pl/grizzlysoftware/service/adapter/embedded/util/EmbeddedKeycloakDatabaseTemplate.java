@@ -0,0 +1,230 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.grizzlysoftware.service.adapter.embedded.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakDataSourceTemplateProperties;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot of fully bootstrapped H2 keycloak database(schema, master realm, admin user, imported realms) kept as compressed H2 script
+ * in template directory. Every run gets its own database - in memory or in a file of run directory - restored from the template, when
+ * there's one, before keycloak starts. Otherwise keycloak bootstraps the database and the template is created once it's ready.
+ * <p>
+ * Templates are keyed by keycloak version and realm configuration, see {@link #key}. Disabled template uses configured database as is.
+ */
+public class EmbeddedKeycloakDatabaseTemplate implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddedKeycloakDatabaseTemplate.class);
+    private static final String H2_URL_PREFIX = "jdbc:h2:";
+
+    private final String url;
+    private final Path template;
+    private final Path runDatabase;
+    private String username;
+    private String password;
+    private volatile boolean restored;
+
+    private EmbeddedKeycloakDatabaseTemplate(String url, Path template, Path runDatabase) {
+        this.url = url;
+        this.template = template;
+        this.runDatabase = runDatabase;
+    }
+
+    public static EmbeddedKeycloakDatabaseTemplate disabled(String url) {
+        return new EmbeddedKeycloakDatabaseTemplate(url, null, null);
+    }
+
+    /**
+     * @param url configured H2 database url - its settings(following ';') apply to database of this run as well
+     * @param key see {@link #key}
+     */
+    public static EmbeddedKeycloakDatabaseTemplate of(EmbeddedKeycloakDataSourceTemplateProperties properties, String url, String key) {
+        if (!supports(url)) {
+            throw new IllegalArgumentException("Database template requires H2 database, url: " + url);
+        }
+
+        String name = "keycloak-" + UUID.randomUUID();
+        String settings = url.indexOf(';') < 0 ? "" : url.substring(url.indexOf(';'));
+        Path template = Paths.get(properties.directory).toAbsolutePath().normalize().resolve("keycloak-" + key + ".zip");
+        if (EmbeddedKeycloakDataSourceTemplateProperties.MODE_MEMORY.equals(properties.mode)) {
+            String closeDelay = settings.toUpperCase(Locale.ROOT).contains("DB_CLOSE_DELAY") ? "" : ";DB_CLOSE_DELAY=-1";
+            return new EmbeddedKeycloakDatabaseTemplate(H2_URL_PREFIX + "mem:" + name + settings + closeDelay, template, null);
+        }
+        if (EmbeddedKeycloakDataSourceTemplateProperties.MODE_FILE.equals(properties.mode)) {
+            Path runDatabase = Paths.get(properties.runDirectory).toAbsolutePath().normalize().resolve(name);
+            return new EmbeddedKeycloakDatabaseTemplate(H2_URL_PREFIX + runDatabase + settings, template, runDatabase);
+        }
+        throw new IllegalArgumentException("Unknown database template mode: " + properties.mode);
+    }
+
+    public static boolean supports(String url) {
+        return url != null && url.startsWith(H2_URL_PREFIX);
+    }
+
+    /**
+     * @param parts anything the bootstrapped database depends on besides keycloak version, i.e. realm configuration digests and admin credentials
+     * @return SHA-256 based key of template
+     */
+    public static String key(String keycloakVersion, Collection<String> parts) {
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        sha256.update(keycloakVersion.getBytes(StandardCharsets.UTF_8));
+        for (String part : parts) {
+            sha256.update((byte) 0);
+            sha256.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+        }
+
+        StringBuilder hex = new StringBuilder();
+        byte[] digest = sha256.digest();
+        for (int i = 0; i < 16; i++) {
+            hex.append(String.format("%02x", digest[i]));
+        }
+        return hex.toString();
+    }
+
+    public boolean isEnabled() {
+        return template != null;
+    }
+
+    /**
+     * @return url of database of this run
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    public Path getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return whether database of this run has been restored from template, so it is already bootstrapped
+     */
+    public boolean isRestored() {
+        return restored;
+    }
+
+    /**
+     * restores database of this run from template when it exists
+     *
+     * @return whether it has been restored
+     */
+    public boolean restore(String username, String password) throws SQLException {
+        this.username = username;
+        this.password = password;
+        if (template == null || !Files.exists(template)) {
+            return false;
+        }
+
+        long start = System.nanoTime();
+        try (Connection connection = DriverManager.getConnection(url, username, password); Statement statement = connection.createStatement()) {
+            statement.execute("RUNSCRIPT FROM '" + escape(template) + "' COMPRESSION ZIP");
+        }
+        restored = true;
+        LOG.info("Keycloak database restored from template: {} in {} ms", template, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return true;
+    }
+
+    /**
+     * creates template from bootstrapped keycloak database unless it has been restored from one - template is written to temporary file first,
+     * so concurrently starting runs never restore half written template
+     */
+    public void store(DataSource dataSource) throws SQLException, IOException {
+        if (template == null || restored || Files.exists(template)) {
+            return;
+        }
+
+        Files.createDirectories(template.getParent());
+        Path script = Files.createTempFile(template.getParent(), template.getFileName().toString(), ".tmp");
+        try {
+            try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+                statement.execute("SCRIPT TO '" + escape(script) + "' COMPRESSION ZIP");
+            }
+            try {
+                Files.move(script, template, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(script, template, StandardCopyOption.REPLACE_EXISTING);
+            }
+            LOG.info("Keycloak database template created: {}", template);
+        } finally {
+            Files.deleteIfExists(script);
+        }
+    }
+
+    /**
+     * drops database of this run - it has to be called once keycloak's connection pool is closed
+     */
+    @Override
+    public void close() {
+        if (template == null) {
+            return;
+        }
+
+        if (runDatabase == null) {
+            if (username == null) {
+                return;
+            }
+            try (Connection connection = DriverManager.getConnection(url, username, password); Statement statement = connection.createStatement()) {
+                statement.execute("SHUTDOWN");
+            } catch (SQLException e) {
+                LOG.debug("Unable to shut keycloak database down: {}", url, e);
+            }
+            return;
+        }
+
+        if (!Files.isDirectory(runDatabase.getParent())) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(runDatabase.getParent(), runDatabase.getFileName() + ".*")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to delete keycloak database: {}", runDatabase, e);
+        }
+    }
+
+    private static String escape(Path path) {
+        return path.toString().replace("'", "''");
+    }
+}
@@ -18,21 +18,74 @@
 
 package pl.grizzlysoftware.service.adapter.embedded.util;
 
+import org.infinispan.manager.EmbeddedCacheManager;
+
 import javax.naming.*;
+import javax.naming.spi.NamingManager;
 import javax.sql.DataSource;
 
+/**
+ * JNDI context keycloak looks its datasource and cache container up from. Initial context factory builder can be set only once per JVM,
+ * so there's a single instance shared by all embedded keycloaks in JVM.
+ * <p>
+ * Each keycloak binds its own resources to the thread bootstrapping it(see {@link #bind}) - keycloak looks them up only during its bootstrap,
+ * so several keycloaks can start side by side. Lookups from unbound threads get resources set last(see {@link #setDataSource}).
+ */
 public class EmbeddedKeycloakInitialContext extends InitialContext {
+    /**
+     * names keycloak looks up - see keycloak-server.conf
+     */
+    public static final String DATASOURCE_NAME = "spring/datasource";
+    public static final String CACHE_CONTAINER_NAME = "spring/infinispan";
 
     protected DataSource dataSource;
+    protected EmbeddedCacheManager cacheManager;
+    private final ThreadLocal<Binding> binding = new ThreadLocal<>();
 
     public EmbeddedKeycloakInitialContext(DataSource dataSource) throws NamingException {
+        this(dataSource, null);
+    }
+
+    public EmbeddedKeycloakInitialContext(DataSource dataSource, EmbeddedCacheManager cacheManager) throws NamingException {
         this.dataSource = dataSource;
+        this.cacheManager = cacheManager;
+    }
+
+    /**
+     * installs initial context factory builder returning shared instance, unless it's already installed - then resources of shared instance are replaced
+     *
+     * @return shared instance
+     */
+    public static synchronized EmbeddedKeycloakInitialContext install(DataSource dataSource, EmbeddedCacheManager cacheManager) throws NamingException {
+        if (NamingManager.hasInitialContextFactoryBuilder()) {
+            EmbeddedKeycloakInitialContext initialContext = (EmbeddedKeycloakInitialContext) NamingManager.getInitialContext(null);
+            initialContext.setDataSource(dataSource);
+            initialContext.setCacheManager(cacheManager);
+            return initialContext;
+        }
+
+        EmbeddedKeycloakInitialContext initialContext = new EmbeddedKeycloakInitialContext(dataSource, cacheManager);
+        NamingManager.setInitialContextFactoryBuilder((env) -> environment -> initialContext);
+        return initialContext;
+    }
+
+    /**
+     * binds resources to current thread until returned binding is closed - previous binding of the thread is restored then
+     */
+    public Binding bind(DataSource dataSource, EmbeddedCacheManager cacheManager) {
+        Binding current = new Binding(dataSource, cacheManager, binding.get());
+        binding.set(current);
+        return current;
     }
 
     public void setDataSource(DataSource dataSource) {
         this.dataSource = dataSource;
     }
 
+    public void setCacheManager(EmbeddedCacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
     @Override
     public Object lookup(Name name) {
         return lookup(name.toString());
@@ -40,8 +93,12 @@ public class EmbeddedKeycloakInitialContext extends InitialContext {
 
     @Override
     public Object lookup(String name) {
-        if ("spring/datasource".equals(name)) {
-            return dataSource;
+        Binding current = binding.get();
+        if (DATASOURCE_NAME.equals(name)) {
+            return current != null ? current.dataSource : dataSource;
+        }
+        if (CACHE_CONTAINER_NAME.equals(name)) {
+            return current != null ? current.cacheManager : cacheManager;
         }
 
         return null;
@@ -56,4 +113,25 @@ public class EmbeddedKeycloakInitialContext extends InitialContext {
     public void close() {
         //NOOP
     }
+
+    public class Binding implements AutoCloseable {
+        private final DataSource dataSource;
+        private final EmbeddedCacheManager cacheManager;
+        private final Binding previous;
+
+        private Binding(DataSource dataSource, EmbeddedCacheManager cacheManager, Binding previous) {
+            this.dataSource = dataSource;
+            this.cacheManager = cacheManager;
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (previous == null) {
+                binding.remove();
+            } else {
+                binding.set(previous);
+            }
+        }
+    }
 }
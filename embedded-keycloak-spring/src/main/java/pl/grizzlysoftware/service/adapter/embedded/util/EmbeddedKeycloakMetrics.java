@@ -0,0 +1,202 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.adapter.embedded.util;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import pl.grizzlysoftware.service.embedded.keycloak.events.EmbeddedKeycloakEventQueue;
+import pl.grizzlysoftware.service.embedded.keycloak.instrumentation.EmbeddedKeycloakInstrumentation;
+import pl.grizzlysoftware.service.embedded.keycloak.web.KeycloakEndpointFamily;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Micrometer meters of embedded keycloak:
+ * keycloak.requests - request latency tagged with endpoint family, http method and status
+ * keycloak.sessions.open - number of keycloak sessions currently open
+ * keycloak.transactions - number of committed and rolled back keycloak transactions
+ * keycloak.bootstrap, keycloak.bootstrap.allocated - duration of keycloak bootstrap phases and bytes allocated by them
+ * keycloak.events.queued, keycloak.events.written, keycloak.events.dropped, keycloak.events.lag - asynchronous events store, when it's used
+ * <p>
+ * Every meter registered through {@link #getRegistry()} is tagged with keycloak instance name(embedded-keycloak, embedded-keycloak-2, ...),
+ * so keycloaks running in one JVM don't share meters of the application's registry.
+ * Nothing is registered until keycloak reports to it - sessions and transactions meters are registered by {@link #bind()}.
+ * It's not a MeterBinder on purpose - actuator would bind it while creating the registry it depends on.
+ */
+public class EmbeddedKeycloakMetrics implements EmbeddedKeycloakInstrumentation, AutoCloseable {
+    public static final String INSTANCE_TAG = "keycloak";
+    public static final String REQUESTS = "keycloak.requests";
+    public static final String SESSIONS_OPEN = "keycloak.sessions.open";
+    public static final String TRANSACTIONS = "keycloak.transactions";
+    public static final String BOOTSTRAP = "keycloak.bootstrap";
+    public static final String BOOTSTRAP_ALLOCATED = "keycloak.bootstrap.allocated";
+    public static final String EVENTS_QUEUED = "keycloak.events.queued";
+    public static final String EVENTS_WRITTEN = "keycloak.events.written";
+    public static final String EVENTS_DROPPED = "keycloak.events.dropped";
+    public static final String EVENTS_LAG = "keycloak.events.lag";
+
+    private static final String INSTANCE_NAME = "embedded-keycloak";
+    private static final Set<String> INSTANCE_NAMES = ConcurrentHashMap.newKeySet();
+
+    private final MeterRegistry applicationRegistry;
+    private final CompositeMeterRegistry registry;
+    private final String instance;
+    private final boolean percentileHistogram;
+    private final AtomicInteger openSessions = new AtomicInteger();
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong rollbacks = new AtomicLong();
+
+    public EmbeddedKeycloakMetrics(MeterRegistry registry, boolean percentileHistogram) {
+        String instance = INSTANCE_NAME;
+        for (int i = 2; !INSTANCE_NAMES.add(instance); i++) {
+            instance = INSTANCE_NAME + "-" + i;
+        }
+        this.instance = instance;
+        this.applicationRegistry = registry;
+        this.registry = new CompositeMeterRegistry(registry.config().clock(), Collections.singleton(registry));
+        this.registry.config().commonTags(INSTANCE_TAG, instance);
+        this.percentileHistogram = percentileHistogram;
+    }
+
+    /**
+     * @return registry which tags meters with this keycloak's instance name and registers them in application's registry
+     */
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    public String getInstance() {
+        return instance;
+    }
+
+    public void bind() {
+        Gauge.builder(SESSIONS_OPEN, openSessions, AtomicInteger::get)
+                .description("Keycloak sessions currently open")
+                .register(registry);
+        FunctionCounter.builder(TRANSACTIONS, commits, AtomicLong::get)
+                .description("Keycloak transactions")
+                .tag("result", "commit")
+                .register(registry);
+        FunctionCounter.builder(TRANSACTIONS, rollbacks, AtomicLong::get)
+                .description("Keycloak transactions")
+                .tag("result", "rollback")
+                .register(registry);
+    }
+
+    public void request(KeycloakEndpointFamily family, String method, int status, long durationNanos) {
+        Timer.builder(REQUESTS)
+                .description("Keycloak request latency")
+                .tags(Tags.of("family", family.tag, "method", method, "status", String.valueOf(status)))
+                .publishPercentileHistogram(percentileHistogram)
+                .register(registry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void bootstrapPhase(String phase, long durationNanos) {
+        Timer.builder(BOOTSTRAP)
+                .description("Keycloak bootstrap phase duration")
+                .tag("phase", phase)
+                .register(registry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void bootstrapPhase(String phase, long durationNanos, long allocatedBytes) {
+        bootstrapPhase(phase, durationNanos);
+        if (allocatedBytes >= 0) {
+            DistributionSummary.builder(BOOTSTRAP_ALLOCATED)
+                    .description("Bytes allocated by keycloak bootstrap phase")
+                    .baseUnit("bytes")
+                    .tag("phase", phase)
+                    .register(registry)
+                    .record(allocatedBytes);
+        }
+    }
+
+    @Override
+    public void sessionOpened() {
+        openSessions.incrementAndGet();
+    }
+
+    @Override
+    public void sessionClosed() {
+        openSessions.decrementAndGet();
+    }
+
+    @Override
+    public void transactionCommitted() {
+        commits.incrementAndGet();
+    }
+
+    @Override
+    public void transactionRolledBack() {
+        rollbacks.incrementAndGet();
+    }
+
+    @Override
+    public void eventQueue(EmbeddedKeycloakEventQueue queue) {
+        Gauge.builder(EVENTS_QUEUED, queue, EmbeddedKeycloakEventQueue::getQueued)
+                .description("Keycloak events waiting for being stored")
+                .register(registry);
+        FunctionCounter.builder(EVENTS_WRITTEN, queue, EmbeddedKeycloakEventQueue::getWritten)
+                .description("Keycloak events stored")
+                .register(registry);
+        FunctionCounter.builder(EVENTS_DROPPED, queue, EmbeddedKeycloakEventQueue::getDropped)
+                .description("Keycloak events lost")
+                .tag("reason", "overflow")
+                .register(registry);
+        FunctionCounter.builder(EVENTS_DROPPED, queue, EmbeddedKeycloakEventQueue::getFailed)
+                .description("Keycloak events lost")
+                .tag("reason", "error")
+                .register(registry);
+        TimeGauge.builder(EVENTS_LAG, queue, TimeUnit.MILLISECONDS, EmbeddedKeycloakEventQueue::getLag)
+                .description("Time oldest event of last stored batch waited in queue")
+                .register(registry);
+    }
+
+    public int getOpenSessions() {
+        return openSessions.get();
+    }
+
+    /**
+     * removes this keycloak's meters from application's registry and releases its instance name
+     */
+    @Override
+    public void close() {
+        for (Meter meter : applicationRegistry.getMeters()) {
+            if (instance.equals(meter.getId().getTag(INSTANCE_TAG))) {
+                applicationRegistry.remove(meter);
+            }
+        }
+        INSTANCE_NAMES.remove(instance);
+    }
+}
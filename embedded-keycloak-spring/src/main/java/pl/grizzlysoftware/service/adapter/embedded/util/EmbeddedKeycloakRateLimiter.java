@@ -0,0 +1,197 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.grizzlysoftware.service.adapter.embedded.util;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakRateLimitProperties;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets of token endpoint's rate limiting, keyed by client id and by remote address.
+ * Bucket is a single atomic "theoretical arrival time"(generic cell rate algorithm) - admitting request moves it forward by one refill
+ * interval with compare and set, so no locks are involved. Request is rejected when it would move it further than bucket's capacity ahead.
+ * Bucket whose time has passed is full again and holds no state, so it's evicted once it has been idle for idle timeout.
+ * Once max buckets are held, idle buckets are evicted on demand(at most once per second) - when none of them is idle,
+ * clients or addresses without a bucket share one overflow bucket of the same limit, so made up client ids or addresses never
+ * switch limiting off.
+ * Meters are tagged with limit name: keycloak.rate-limit.rejected, keycloak.rate-limit.overflow, keycloak.rate-limit.buckets
+ */
+public class EmbeddedKeycloakRateLimiter {
+    public static final String REJECTED = "keycloak.rate-limit.rejected";
+    public static final String OVERFLOW = "keycloak.rate-limit.overflow";
+    public static final String BUCKETS = "keycloak.rate-limit.buckets";
+
+    /**
+     * minimal time between idle buckets evictions done on demand, when max buckets are held
+     */
+    private static final long FULL_EVICTION_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private final LongSupplier nanoTime;
+    private final Limit client;
+    private final Limit address;
+
+    public EmbeddedKeycloakRateLimiter(EmbeddedKeycloakRateLimitProperties properties) {
+        this(properties, System::nanoTime);
+    }
+
+    public EmbeddedKeycloakRateLimiter(EmbeddedKeycloakRateLimitProperties properties, LongSupplier nanoTime) {
+        this.nanoTime = nanoTime;
+        long idleTimeout = TimeUnit.MILLISECONDS.toNanos(properties.idleTimeout);
+        this.client = new Limit("client", properties.client, properties.maxBuckets, idleTimeout, nanoTime.getAsLong());
+        this.address = new Limit("address", properties.address, properties.maxBuckets, idleTimeout, nanoTime.getAsLong());
+    }
+
+    public boolean limitsClients() {
+        return client.enabled;
+    }
+
+    /**
+     * @return 0 when request of given client is admitted, otherwise time(in nanoseconds) after which next request can be admitted
+     */
+    public long acquireClient(String clientId) {
+        return client.acquire(clientId, nanoTime.getAsLong());
+    }
+
+    /**
+     * @return 0 when request from given address is admitted, otherwise time(in nanoseconds) after which next request can be admitted
+     */
+    public long acquireAddress(String remoteAddress) {
+        return address.acquire(remoteAddress, nanoTime.getAsLong());
+    }
+
+    public int getClientBuckets() {
+        return client.buckets.size();
+    }
+
+    public int getAddressBuckets() {
+        return address.buckets.size();
+    }
+
+    /**
+     * not a MeterBinder on purpose - it's a bean, actuator would bind it while creating the registry it's bound to
+     */
+    public void bindTo(MeterRegistry registry) {
+        for (Limit limit : new Limit[]{client, address}) {
+            FunctionCounter.builder(REJECTED, limit.rejected, AtomicLong::get)
+                    .description("Token requests rejected with 429")
+                    .tag("limit", limit.name)
+                    .register(registry);
+            FunctionCounter.builder(OVERFLOW, limit.overflowed, AtomicLong::get)
+                    .description("Token requests limited by shared overflow bucket, since max buckets were held")
+                    .tag("limit", limit.name)
+                    .register(registry);
+            Gauge.builder(BUCKETS, limit.buckets, ConcurrentMap::size)
+                    .description("Rate limit buckets held in memory")
+                    .tag("limit", limit.name)
+                    .register(registry);
+        }
+    }
+
+    private static class Limit {
+        private final String name;
+        private final boolean enabled;
+        private final long interval;
+        private final long burst;
+        private final int maxBuckets;
+        private final long idleTimeout;
+        private final ConcurrentMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong overflowed = new AtomicLong();
+        private final AtomicLong overflow;
+        private final AtomicLong nextEviction;
+        private final AtomicLong lastFullEviction;
+
+        Limit(String name, EmbeddedKeycloakRateLimitProperties.Limit limit, int maxBuckets, long idleTimeout, long now) {
+            this.name = name;
+            this.enabled = limit.isEnabled();
+            this.interval = enabled ? TimeUnit.MINUTES.toNanos(1) / limit.refillPerMinute : 0;
+            this.burst = interval * limit.capacity;
+            this.maxBuckets = maxBuckets;
+            this.idleTimeout = idleTimeout;
+            this.overflow = new AtomicLong(now);
+            this.nextEviction = new AtomicLong(now + idleTimeout);
+            this.lastFullEviction = new AtomicLong(now - FULL_EVICTION_INTERVAL);
+        }
+
+        long acquire(String key, long now) {
+            if (!enabled || key == null) {
+                return 0;
+            }
+            evictIdle(now);
+
+            AtomicLong bucket = buckets.get(key);
+            if (bucket == null) {
+                if (buckets.size() >= maxBuckets) {
+                    evictIdleWhenFull(now);
+                }
+                if (buckets.size() < maxBuckets) {
+                    bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+                } else {
+                    overflowed.incrementAndGet();
+                    bucket = overflow;
+                }
+            }
+            while (true) {
+                long arrival = bucket.get();
+                long next = Math.max(arrival, now) + interval;
+                long wait = next - now - burst;
+                if (wait > 0) {
+                    rejected.incrementAndGet();
+                    return wait;
+                }
+                if (bucket.compareAndSet(arrival, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        /**
+         * only one of concurrent requests sweeps buckets, at most once per idle timeout
+         */
+        private void evictIdle(long now) {
+            long eviction = nextEviction.get();
+            if (now - eviction < 0 || !nextEviction.compareAndSet(eviction, now + idleTimeout)) {
+                return;
+            }
+            removeIdle(now);
+        }
+
+        /**
+         * only one of concurrent requests sweeps buckets, at most once per second - sweep is not repeated for every request
+         * while none of buckets is idle
+         */
+        private void evictIdleWhenFull(long now) {
+            long eviction = lastFullEviction.get();
+            if (now - eviction < FULL_EVICTION_INTERVAL || !lastFullEviction.compareAndSet(eviction, now)) {
+                return;
+            }
+            removeIdle(now);
+        }
+
+        private void removeIdle(long now) {
+            buckets.values().removeIf(bucket -> now - bucket.get() >= idleTimeout);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.adapter.embedded.util;
+
+import org.springframework.context.ApplicationEvent;
+import pl.grizzlysoftware.service.embedded.keycloak.instrumentation.EmbeddedKeycloakStartupReport;
+
+/**
+ * Published once embedded keycloak has finished its bootstrap and serves requests
+ */
+public class EmbeddedKeycloakReadyEvent extends ApplicationEvent {
+    private static final long serialVersionUID = 1L;
+
+    private final long bootstrapDuration;
+    private final EmbeddedKeycloakStartupReport startupReport;
+
+    public EmbeddedKeycloakReadyEvent(EmbeddedKeycloakBootstrap source, long bootstrapDuration) {
+        this(source, bootstrapDuration, null);
+    }
+
+    public EmbeddedKeycloakReadyEvent(EmbeddedKeycloakBootstrap source, long bootstrapDuration, EmbeddedKeycloakStartupReport startupReport) {
+        super(source);
+        this.bootstrapDuration = bootstrapDuration;
+        this.startupReport = startupReport;
+    }
+
+    /**
+     * @return bootstrap duration in milliseconds
+     */
+    public long getBootstrapDuration() {
+        return bootstrapDuration;
+    }
+
+    /**
+     * @return timings and allocations of keycloak's bootstrap phases, null when keycloak didn't report them
+     */
+    public EmbeddedKeycloakStartupReport getStartupReport() {
+        return startupReport;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.adapter.embedded.web;
+
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakBootstrap;
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakInitialContext;
+import pl.grizzlysoftware.service.embedded.keycloak.instrumentation.EmbeddedKeycloakStartupReport;
+
+import javax.servlet.GenericServlet;
+import javax.servlet.Servlet;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/**
+ * Wraps keycloak's dispatcher servlet and reports its initialization(which is keycloak's bootstrap) to {@link EmbeddedKeycloakBootstrap}.
+ * In async mode initialization runs on a background thread, so it does not block application startup - requests have to be
+ * held off by {@link EmbeddedKeycloakReadinessFilter} until keycloak is ready.
+ * Keycloak's resources are bound to the thread initializing it, so keycloak looks up its own ones even when other keycloak starts at the same time.
+ */
+public class EmbeddedKeycloakBootstrapServlet extends GenericServlet {
+    private static final long serialVersionUID = 1L;
+
+    private final Servlet delegate;
+    private final EmbeddedKeycloakBootstrap bootstrap;
+    private final boolean async;
+    private final Supplier<EmbeddedKeycloakInitialContext.Binding> resources;
+
+    public EmbeddedKeycloakBootstrapServlet(Servlet delegate, EmbeddedKeycloakBootstrap bootstrap, boolean async) {
+        this(delegate, bootstrap, async, () -> null);
+    }
+
+    /**
+     * @param resources binds keycloak's datasource and cache container for the time of initialization
+     */
+    public EmbeddedKeycloakBootstrapServlet(Servlet delegate, EmbeddedKeycloakBootstrap bootstrap, boolean async, Supplier<EmbeddedKeycloakInitialContext.Binding> resources) {
+        this.delegate = delegate;
+        this.bootstrap = bootstrap;
+        this.async = async;
+        this.resources = resources;
+    }
+
+    @Override
+    public void init(ServletConfig config) throws ServletException {
+        super.init(config);
+        if (!async) {
+            initDelegate(config);
+            return;
+        }
+
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        Thread thread = new Thread(() -> {
+            try {
+                initDelegate(config);
+            } catch (ServletException e) {
+                //NOOP - already reported as failed bootstrap
+            }
+        }, "embedded-keycloak-bootstrap");
+        thread.setContextClassLoader(classLoader);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void initDelegate(ServletConfig config) throws ServletException {
+        EmbeddedKeycloakInitialContext.Binding binding = resources.get();
+        try {
+            delegate.init(config);
+            bootstrap.ready((EmbeddedKeycloakStartupReport) config.getServletContext().getAttribute(EmbeddedKeycloakStartupReport.class.getName()));
+        } catch (ServletException | RuntimeException e) {
+            //keycloak's constructor may have thrown after the report was started, it's never finished then
+            EmbeddedKeycloakStartupReport.detach();
+            bootstrap.failed(e);
+            throw e;
+        } finally {
+            if (binding != null) {
+                binding.close();
+            }
+        }
+    }
+
+    @Override
+    public void service(ServletRequest req, ServletResponse res) throws ServletException, IOException {
+        delegate.service(req, res);
+    }
+
+    @Override
+    public void destroy() {
+        if (bootstrap.isReady()) {
+            delegate.destroy();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.grizzlysoftware.service.adapter.embedded.web;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakBulkhead;
+import pl.grizzlysoftware.service.embedded.keycloak.web.KeycloakEndpointFamily;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves keycloak requests off servlet container's threads onto {@link EmbeddedKeycloakBulkhead}'s executors using servlet async.
+ * Container's filter chain can't be continued on another thread, so this filter has to be the last one before keycloak's session filter -
+ * executor's thread runs keycloak's session filter and keycloak's servlet itself. Requests are rejected with 503 and Retry-After header
+ * when executor is saturated or when they waited in its queue for too long.
+ */
+public class EmbeddedKeycloakBulkheadFilter implements Filter {
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddedKeycloakBulkheadFilter.class);
+
+    private final EmbeddedKeycloakBulkhead bulkhead;
+    private final Filter sessionFilter;
+    private final Servlet servlet;
+    private final long queueTimeoutNanos;
+    private final String retryAfter;
+
+    /**
+     * @param sessionFilter keycloak's session filter
+     * @param servlet       keycloak's servlet
+     * @param queueTimeout  time(in milliseconds) request may wait for executor's thread
+     */
+    public EmbeddedKeycloakBulkheadFilter(EmbeddedKeycloakBulkhead bulkhead, Filter sessionFilter, Servlet servlet, long queueTimeout, int retryAfter) {
+        this.bulkhead = bulkhead;
+        this.sessionFilter = sessionFilter;
+        this.servlet = servlet;
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeout);
+        this.retryAfter = String.valueOf(retryAfter);
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+        //NOOP
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        KeycloakEndpointFamily family = KeycloakEndpointFamily.of(httpRequest.getPathInfo());
+        if (!request.isAsyncSupported() || !bulkhead.isolates(family)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        AsyncContext asyncContext = request.startAsync(request, response);
+        //executor's task always completes the request, queue timeout bounds its waiting
+        asyncContext.setTimeout(0);
+        long queuedAt = System.nanoTime();
+        try {
+            bulkhead.execute(family, () -> process(family, asyncContext, httpRequest, (HttpServletResponse) response, queuedAt));
+        } catch (RejectedExecutionException e) {
+            reject((HttpServletResponse) response);
+            asyncContext.complete();
+        }
+    }
+
+    private void process(KeycloakEndpointFamily family, AsyncContext asyncContext, HttpServletRequest request, HttpServletResponse response, long queuedAt) {
+        try {
+            if (System.nanoTime() - queuedAt > queueTimeoutNanos) {
+                bulkhead.expired(family);
+                reject(response);
+                return;
+            }
+            sessionFilter.doFilter(new ExecutorRequest(request), response, servlet::service);
+        } catch (IOException | ServletException | RuntimeException e) {
+            LOG.error("Keycloak request failed: {} {}", request.getMethod(), request.getRequestURI(), e);
+            if (!response.isCommitted()) {
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+        } finally {
+            asyncContext.complete();
+        }
+    }
+
+    private void reject(HttpServletResponse response) {
+        response.setHeader("Retry-After", retryAfter);
+        response.setContentLength(0);
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+
+    @Override
+    public void destroy() {
+        //NOOP
+    }
+
+    /**
+     * request is processed to the end on executor's thread, so keycloak's session filter has to close its session there
+     * rather than wait for async completion on container's thread
+     */
+    private static class ExecutorRequest extends HttpServletRequestWrapper {
+        ExecutorRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public boolean isAsyncStarted() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.adapter.embedded.web;
+
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakMetrics;
+import pl.grizzlysoftware.service.embedded.keycloak.web.KeycloakEndpointFamily;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Measures latency of keycloak requests per endpoint family, async requests are measured until they complete
+ */
+public class EmbeddedKeycloakMetricsFilter implements Filter {
+    private final EmbeddedKeycloakMetrics metrics;
+
+    public EmbeddedKeycloakMetricsFilter(EmbeddedKeycloakMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+        //NOOP
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        KeycloakEndpointFamily family = KeycloakEndpointFamily.of(httpRequest.getPathInfo());
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            chain.doFilter(request, response);
+            failed = false;
+        } finally {
+            if (!failed && request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new CompletionListener(family, httpRequest.getMethod(), httpResponse, start));
+            } else {
+                int status = failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : httpResponse.getStatus();
+                metrics.request(family, httpRequest.getMethod(), status, System.nanoTime() - start);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        //NOOP
+    }
+
+    private class CompletionListener implements AsyncListener {
+        private final KeycloakEndpointFamily family;
+        private final String method;
+        private final HttpServletResponse response;
+        private final long start;
+
+        CompletionListener(KeycloakEndpointFamily family, String method, HttpServletResponse response, long start) {
+            this.family = family;
+            this.method = method;
+            this.response = response;
+            this.start = start;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            metrics.request(family, method, response.getStatus(), System.nanoTime() - start);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            //NOOP - completion follows
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            //NOOP - completion follows
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.grizzlysoftware.service.adapter.embedded.web;
+
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakRateLimiter;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rejects token endpoint requests(POST /realms/{realm}/protocol/{protocol}/token) beyond rate limits of their remote address
+ * and client with 429 and Retry-After header, before keycloak's session is opened.
+ * Client id is taken from basic authorization header or from form body - the body is read here and handed over to keycloak from memory,
+ * since keycloak reads form parameters from request's input stream itself.
+ */
+public class EmbeddedKeycloakRateLimitFilter implements Filter {
+    private static final String TOKEN = "/token";
+    private static final String PROTOCOL = "/protocol/";
+    private static final String REALMS = "/realms/";
+    private static final String BASIC = "basic ";
+    private static final String CLIENT_ID = "client_id=";
+    private static final String FORM = "application/x-www-form-urlencoded";
+    private static final int MAX_BODY_SIZE = 16384;
+    private static final byte[] REJECTED = "{\"error\":\"too_many_requests\",\"error_description\":\"Rate limit exceeded\"}".getBytes(StandardCharsets.US_ASCII);
+
+    private final EmbeddedKeycloakRateLimiter rateLimiter;
+
+    public EmbeddedKeycloakRateLimitFilter(EmbeddedKeycloakRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+        //NOOP
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        if (!"POST".equals(httpRequest.getMethod()) || !isTokenEndpoint(httpRequest.getPathInfo())) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        long wait = rateLimiter.acquireAddress(request.getRemoteAddr());
+        if (wait > 0) {
+            reject((HttpServletResponse) response, wait);
+            return;
+        }
+
+        if (rateLimiter.limitsClients()) {
+            String clientId = basicClientId(httpRequest.getHeader("Authorization"));
+            if (clientId == null && isForm(request)) {
+                byte[] body = read(request.getInputStream(), (int) request.getContentLengthLong());
+                httpRequest = new BufferedBodyRequest(httpRequest, body);
+                clientId = formClientId(body, charset(request));
+            }
+            wait = rateLimiter.acquireClient(clientId);
+            if (wait > 0) {
+                reject((HttpServletResponse) response, wait);
+                return;
+            }
+        }
+        chain.doFilter(httpRequest, response);
+    }
+
+    @Override
+    public void destroy() {
+        //NOOP
+    }
+
+    /**
+     * @param path request path relative to keycloak's context path, trailing slash is routed to token endpoint as well
+     */
+    public static boolean isTokenEndpoint(String path) {
+        if (path != null && path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        if (path == null || !path.startsWith(REALMS) || !path.endsWith(TOKEN)) {
+            return false;
+        }
+        int realmEnd = path.indexOf('/', REALMS.length());
+        if (realmEnd < 0 || !path.startsWith(PROTOCOL, realmEnd)) {
+            return false;
+        }
+        int protocolStart = realmEnd + PROTOCOL.length();
+        int protocolEnd = path.indexOf('/', protocolStart);
+        return protocolEnd > protocolStart && protocolEnd == path.length() - TOKEN.length();
+    }
+
+    private static void reject(HttpServletResponse response, long waitNanos) throws IOException {
+        response.setStatus(429);
+        response.setHeader("Retry-After", String.valueOf(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1))));
+        response.setContentType("application/json");
+        response.setContentLength(REJECTED.length);
+        response.getOutputStream().write(REJECTED);
+    }
+
+    /**
+     * client credentials of basic authorization header are form url encoded, see RFC 6749 2.3.1
+     */
+    static String basicClientId(String authorization) {
+        if (authorization == null || !authorization.regionMatches(true, 0, BASIC, 0, BASIC.length())) {
+            return null;
+        }
+        try {
+            String credentials = new String(Base64.getDecoder().decode(authorization.substring(BASIC.length()).trim()), StandardCharsets.UTF_8);
+            int separator = credentials.indexOf(':');
+            return separator < 0 ? null : URLDecoder.decode(credentials.substring(0, separator), StandardCharsets.UTF_8.name());
+        } catch (IllegalArgumentException | UnsupportedEncodingException e) {
+            return null;
+        }
+    }
+
+    static String formClientId(byte[] body, Charset charset) {
+        for (String parameter : new String(body, StandardCharsets.ISO_8859_1).split("&")) {
+            if (parameter.startsWith(CLIENT_ID)) {
+                try {
+                    return URLDecoder.decode(parameter.substring(CLIENT_ID.length()), charset.name());
+                } catch (IllegalArgumentException | UnsupportedEncodingException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * bodies of unknown or excessive length are left to keycloak, such requests are limited by their address only
+     */
+    private static boolean isForm(ServletRequest request) {
+        long length = request.getContentLengthLong();
+        String contentType = request.getContentType();
+        return length >= 0 && length <= MAX_BODY_SIZE && contentType != null && contentType.toLowerCase(Locale.ROOT).startsWith(FORM);
+    }
+
+    private static Charset charset(ServletRequest request) {
+        try {
+            return request.getCharacterEncoding() == null ? StandardCharsets.UTF_8 : Charset.forName(request.getCharacterEncoding());
+        } catch (IllegalArgumentException e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    private static byte[] read(InputStream input, int length) throws IOException {
+        byte[] body = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int count = input.read(body, read, length - read);
+            if (count < 0) {
+                return Arrays.copyOf(body, read);
+            }
+            read += count;
+        }
+        return body;
+    }
+
+    private static class BufferedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        BufferedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream input = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return input.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    throw new UnsupportedOperationException("Body has been read already");
+                }
+
+                @Override
+                public int read() {
+                    return input.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return input.read(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            return new BufferedReader(new InputStreamReader(getInputStream(), charset(this)));
+        }
+    }
+}
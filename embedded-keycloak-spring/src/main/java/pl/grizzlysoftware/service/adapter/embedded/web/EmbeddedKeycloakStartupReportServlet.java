@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.grizzlysoftware.service.adapter.embedded.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakBootstrap;
+import pl.grizzlysoftware.service.embedded.keycloak.instrumentation.EmbeddedKeycloakStartupReport;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Serves keycloak's startup report as json - state of bootstrap, its total duration and allocations and the same for each of its phases.
+ * Until keycloak is ready only state is reported with 503 status.
+ */
+public class EmbeddedKeycloakStartupReportServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    private final EmbeddedKeycloakBootstrap bootstrap;
+    private final ObjectMapper mapper;
+
+    public EmbeddedKeycloakStartupReportServlet(EmbeddedKeycloakBootstrap bootstrap, ObjectMapper mapper) {
+        this.bootstrap = bootstrap;
+        this.mapper = mapper;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("state", bootstrap.getState());
+        EmbeddedKeycloakStartupReport report = bootstrap.getStartupReport();
+        if (report != null) {
+            body.put("durationNanos", report.getDurationNanos());
+            body.put("allocatedBytes", report.getAllocatedBytes());
+            body.put("phases", report.getPhases());
+        }
+
+        response.setStatus(bootstrap.isReady() ? HttpServletResponse.SC_OK : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+        mapper.writeValue(response.getOutputStream(), body);
+    }
+}
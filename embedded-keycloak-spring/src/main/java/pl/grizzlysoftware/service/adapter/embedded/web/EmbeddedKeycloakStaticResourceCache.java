@@ -0,0 +1,163 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.adapter.embedded.web;
+
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakStaticResourcesProperties;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Bounded in-memory cache of keycloak's static resources.
+ * <p>
+ * Gzip variant and strong ETags are computed once, when resource is cached, so serving it costs no compression or hashing.
+ * Static resources are a finite set as long as they are keyed by decoded path only, so cache does not evict - resources are simply
+ * not cached once max size is reached.
+ */
+public class EmbeddedKeycloakStaticResourceCache {
+    private final ConcurrentMap<String, StaticResource> resources = new ConcurrentHashMap<>();
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final EmbeddedKeycloakStaticResourcesProperties properties;
+
+    public EmbeddedKeycloakStaticResourceCache(EmbeddedKeycloakStaticResourcesProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * @return cached resource or null
+     */
+    public StaticResource get(String key) {
+        StaticResource resource = resources.get(key);
+        (resource == null ? misses : hits).incrementAndGet();
+        return resource;
+    }
+
+    /**
+     * @return cached resource or null when it's too large or cache is full
+     */
+    public StaticResource put(String key, String contentType, String cacheControl, byte[] body) {
+        if (body.length > properties.maxEntrySize) {
+            return null;
+        }
+        StaticResource resource = new StaticResource(contentType, cacheControl, body, compress(body));
+        long current;
+        do {
+            current = size.get();
+            if (current + resource.size() > properties.maxSize) {
+                return null;
+            }
+        } while (!size.compareAndSet(current, current + resource.size()));
+
+        StaticResource previous = resources.putIfAbsent(key, resource);
+        if (previous != null) {
+            size.addAndGet(-resource.size());
+            return previous;
+        }
+        return resource;
+    }
+
+    public int getMaxEntrySize() {
+        return properties.maxEntrySize;
+    }
+
+    /**
+     * gzip variant is kept only when it's smaller
+     */
+    private byte[] compress(byte[] body) {
+        if (body.length < properties.compressionMinSize) {
+            return null;
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed.size() < body.length ? compressed.toByteArray() : null;
+    }
+
+    public void clear() {
+        resources.clear();
+        size.set(0);
+    }
+
+    public int getEntries() {
+        return resources.size();
+    }
+
+    /**
+     * @return bytes of all cached variants
+     */
+    public long getSize() {
+        return size.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public static final class StaticResource {
+        public final String contentType;
+        public final String cacheControl;
+        public final byte[] body;
+        /**
+         * null when resource is not worth compressing
+         */
+        public final byte[] gzipBody;
+        public final String etag;
+        public final String gzipEtag;
+
+        StaticResource(String contentType, String cacheControl, byte[] body, byte[] gzipBody) {
+            this.contentType = contentType;
+            this.cacheControl = cacheControl;
+            this.body = body;
+            this.gzipBody = gzipBody;
+            String digest = digest(body);
+            this.etag = "\"" + digest + "\"";
+            this.gzipEtag = "\"" + digest + "-gzip\"";
+        }
+
+        long size() {
+            return body.length + (gzipBody == null ? 0 : gzipBody.length);
+        }
+
+        private static String digest(byte[] body) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+                return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
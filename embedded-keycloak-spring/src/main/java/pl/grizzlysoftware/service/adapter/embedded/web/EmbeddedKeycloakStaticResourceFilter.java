@@ -0,0 +1,309 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.adapter.embedded.web;
+
+import pl.grizzlysoftware.service.adapter.embedded.web.EmbeddedKeycloakStaticResourceCache.StaticResource;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.Enumeration;
+
+/**
+ * Serves keycloak's static resources from {@link EmbeddedKeycloakStaticResourceCache} - cached resources never reach keycloak's servlet.
+ * <p>
+ * Resource is cached when keycloak serves it with 200 and Cache-Control which allows caching(driven by theme's staticMaxAge),
+ * the same Cache-Control is sent with cached resource. Conditional requests matching resource's ETag get 304.
+ * Resources are cached by decoded and normalized path(servlet path and path info), so query string, path parameters
+ * and encoding of the request uri do not add cache entries.
+ */
+public class EmbeddedKeycloakStaticResourceFilter implements Filter {
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String CACHE_CONTROL = "Cache-Control";
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final String ETAG = "ETag";
+    private static final String IF_NONE_MATCH = "If-None-Match";
+
+    private final EmbeddedKeycloakStaticResourceCache cache;
+
+    public EmbeddedKeycloakStaticResourceFilter(EmbeddedKeycloakStaticResourceCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+        //NOOP
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        boolean head = "HEAD".equals(httpRequest.getMethod());
+        if (!head && !"GET".equals(httpRequest.getMethod())) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        String key = key(httpRequest);
+        StaticResource resource = cache.get(key);
+        if (resource != null) {
+            serve(httpRequest, httpResponse, resource, head);
+            return;
+        }
+
+        CapturingResponse captured = new CapturingResponse(httpResponse, cache.getMaxEntrySize());
+        chain.doFilter(new IdentityEncodingRequest(httpRequest), captured);
+        if (!head && captured.isBuffered() && isCacheable(captured)) {
+            resource = cache.put(key, captured.getContentType(), captured.getHeader(CACHE_CONTROL), captured.getBody());
+            if (resource != null) {
+                httpResponse.setHeader(ETAG, resource.etag);
+                httpResponse.setHeader("Vary", ACCEPT_ENCODING);
+            }
+        }
+        captured.finish();
+    }
+
+    /**
+     * keycloak serves static resources by path alone - unlike request uri, servlet path and path info are decoded, normalized
+     * and stripped of path parameters(i.e. ;jsessionid) by servlet container
+     */
+    private static String key(HttpServletRequest request) {
+        String pathInfo = request.getPathInfo();
+        return pathInfo == null ? request.getServletPath() : request.getServletPath() + pathInfo;
+    }
+
+    /**
+     * only responses which can be stored by browsers are cached
+     */
+    private static boolean isCacheable(CapturingResponse response) {
+        String cacheControl = response.getHeader(CACHE_CONTROL);
+        return response.getStatus() == HttpServletResponse.SC_OK
+                && cacheControl != null && !cacheControl.contains("no-cache") && !cacheControl.contains("no-store") && !cacheControl.contains("private")
+                && response.getHeader(CONTENT_ENCODING) == null
+                && !response.containsHeader("Set-Cookie");
+    }
+
+    private static void serve(HttpServletRequest request, HttpServletResponse response, StaticResource resource, boolean head) throws IOException {
+        boolean gzip = resource.gzipBody != null && acceptsGzip(request);
+        String etag = gzip ? resource.gzipEtag : resource.etag;
+        response.setHeader(ETAG, etag);
+        response.setHeader("Vary", ACCEPT_ENCODING);
+        if (resource.cacheControl != null) {
+            response.setHeader(CACHE_CONTROL, resource.cacheControl);
+        }
+        if (matches(request.getHeader(IF_NONE_MATCH), resource)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        byte[] body = gzip ? resource.gzipBody : resource.body;
+        if (gzip) {
+            response.setHeader(CONTENT_ENCODING, "gzip");
+        }
+        if (resource.contentType != null) {
+            response.setContentType(resource.contentType);
+        }
+        response.setContentLength(body.length);
+        if (!head) {
+            response.getOutputStream().write(body);
+        }
+    }
+
+    /**
+     * If-None-Match uses weak comparison, so both variants of the resource match regardless of encoding requested this time
+     */
+    private static boolean matches(String ifNoneMatch, StaticResource resource) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(resource.etag) || tag.equals(resource.gzipEtag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        Enumeration<String> headers = request.getHeaders(ACCEPT_ENCODING);
+        while (headers != null && headers.hasMoreElements()) {
+            for (String coding : headers.nextElement().split(",")) {
+                String[] parts = coding.trim().split(";");
+                if ("gzip".equalsIgnoreCase(parts[0].trim()) && !(parts.length > 1 && parts[1].trim().matches("q=0(\\.0*)?"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void destroy() {
+        //NOOP
+    }
+
+    /**
+     * hides Accept-Encoding, so keycloak always responds with identity encoding which is compressed by cache
+     */
+    private static class IdentityEncodingRequest extends HttpServletRequestWrapper {
+
+        IdentityEncodingRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return ACCEPT_ENCODING.equalsIgnoreCase(name) ? null : super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            return ACCEPT_ENCODING.equalsIgnoreCase(name) ? Collections.emptyEnumeration() : super.getHeaders(name);
+        }
+    }
+
+    /**
+     * buffers response body up to given limit, larger body is streamed to the client as it's written
+     */
+    private static class CapturingResponse extends HttpServletResponseWrapper {
+        private final int limit;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+        private boolean buffered = true;
+
+        CapturingResponse(HttpServletResponse response, int limit) {
+            super(response);
+            this.limit = limit;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (outputStream == null) {
+                outputStream = new CapturingOutputStream();
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (!buffered) {
+                super.flushBuffer();
+            }
+        }
+
+        boolean isBuffered() {
+            if (writer != null) {
+                writer.flush();
+            }
+            return buffered;
+        }
+
+        byte[] getBody() {
+            return buffer.toByteArray();
+        }
+
+        /**
+         * writes buffered body to the client
+         */
+        void finish() throws IOException {
+            if (isBuffered() && buffer.size() > 0) {
+                buffer.writeTo(getResponse().getOutputStream());
+            }
+        }
+
+        private class CapturingOutputStream extends ServletOutputStream {
+
+            @Override
+            public void write(int b) throws IOException {
+                spillOver(1);
+                if (buffered) {
+                    buffer.write(b);
+                } else {
+                    getResponse().getOutputStream().write(b);
+                }
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                spillOver(length);
+                if (buffered) {
+                    buffer.write(bytes, offset, length);
+                } else {
+                    getResponse().getOutputStream().write(bytes, offset, length);
+                }
+            }
+
+            /**
+             * stops buffering once body would exceed the limit
+             */
+            private void spillOver(int length) throws IOException {
+                if (buffered && buffer.size() + length > limit) {
+                    buffered = false;
+                    buffer.writeTo(getResponse().getOutputStream());
+                    buffer.reset();
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (!buffered) {
+                    getResponse().getOutputStream().flush();
+                }
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                throw new UnsupportedOperationException("Static resources are written synchronously");
+            }
+        }
+    }
+}
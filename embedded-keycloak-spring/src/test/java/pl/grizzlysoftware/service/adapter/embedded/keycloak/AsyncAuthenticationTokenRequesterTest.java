@@ -0,0 +1,79 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.adapter.embedded.keycloak;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+import pl.grizzlysoftware.service.adapter.embedded.util.AsyncAuthenticationTokenRequester;
+import pl.grizzlysoftware.service.adapter.embedded.util.AuthenticationToken;
+import pl.grizzlysoftware.service.adapter.embedded.util.AuthenticationTokenRequester;
+import pl.grizzlysoftware.service.adapter.embedded.util.UserCredentials;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.springframework.test.web.client.ExpectedCount.times;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+public class AsyncAuthenticationTokenRequesterTest {
+    private static final String URL = "http://localhost/embedded-keycloak/realms/internal/protocol/openid-connect/token";
+
+    @Test
+    public void requestsTokensOfManyUsersWithBoundedConcurrency() throws Exception {
+        RestTemplate client = new RestTemplate();
+        MockRestServiceServer server = MockRestServiceServer.bindTo(client).ignoreExpectOrder(true).build();
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        server.expect(times(20), requestTo(URL)).andRespond(request -> {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            concurrent.decrementAndGet();
+            String body = "{\"access_token\":\"access\",\"expires_in\":300,\"refresh_expires_in\":1800,\"refresh_token\":\"refresh\",\"scope\":\"profile email\"}";
+            return withSuccess(body, MediaType.APPLICATION_JSON).createResponse(request);
+        });
+
+        List<UserCredentials> users = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            users.add(new UserCredentials("user-" + i, "password-" + i));
+        }
+
+        try (AsyncAuthenticationTokenRequester requester = new AsyncAuthenticationTokenRequester(new AuthenticationTokenRequester(client), 4)) {
+            List<AuthenticationToken> tokens = requester.getAll(URL, "example-client-frontend", users).get(10, TimeUnit.SECONDS);
+
+            Assert.assertEquals(20, tokens.size());
+            Assert.assertEquals("access", tokens.get(0).getAccessToken());
+            Assert.assertEquals("refresh", tokens.get(19).getRefreshToken());
+            Assert.assertEquals("profile email", tokens.get(19).getScope());
+            Assert.assertEquals(300, tokens.get(19).getExpiresIn());
+        }
+
+        Assert.assertTrue(maxConcurrent.get() <= 4);
+        server.verify();
+    }
+}
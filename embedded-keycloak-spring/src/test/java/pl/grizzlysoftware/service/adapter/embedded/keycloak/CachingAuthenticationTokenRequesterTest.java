@@ -0,0 +1,158 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.adapter.embedded.keycloak;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+import pl.grizzlysoftware.service.adapter.embedded.util.CachingAuthenticationTokenRequester;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.client.ExpectedCount.once;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.content;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+public class CachingAuthenticationTokenRequesterTest {
+    private static final String URL = "http://localhost/embedded-keycloak/realms/internal/protocol/openid-connect/token";
+
+    private MutableClock clock;
+    private MockRestServiceServer server;
+    private CachingAuthenticationTokenRequester requester;
+
+    @BeforeEach
+    void setUp() {
+        RestTemplate client = new RestTemplate();
+        server = MockRestServiceServer.bindTo(client).build();
+        clock = new MutableClock();
+        requester = new CachingAuthenticationTokenRequester(client, Duration.ofSeconds(30), 100, clock);
+    }
+
+    @Test
+    public void reusesTokenAndRenewsItWithRefreshToken() {
+        server.expect(once(), requestTo(URL))
+                .andExpect(method(HttpMethod.POST))
+                .andExpect(content().string(containsString("grant_type=password")))
+                .andRespond(withSuccess(token("access-1", "refresh-1"), MediaType.APPLICATION_JSON));
+        server.expect(once(), requestTo(URL))
+                .andExpect(content().string(containsString("grant_type=refresh_token")))
+                .andExpect(content().string(containsString("refresh_token=refresh-1")))
+                .andRespond(withSuccess(token("access-2", "refresh-2"), MediaType.APPLICATION_JSON));
+
+        Assert.assertEquals("access-1", requester.get(URL, "example-client-frontend", "admin", "a"));
+        clock.advance(Duration.ofSeconds(200));
+        Assert.assertEquals("access-1", requester.get(URL, "example-client-frontend", "admin", "a"));
+        clock.advance(Duration.ofSeconds(80));
+        Assert.assertEquals("access-2", requester.get(URL, "example-client-frontend", "admin", "a"));
+
+        server.verify();
+    }
+
+    @Test
+    public void collapsesConcurrentRequestsForSameCredentials() throws Exception {
+        server.expect(once(), requestTo(URL))
+                .andRespond(request -> {
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return withSuccess(token("access-1", "refresh-1"), MediaType.APPLICATION_JSON).createResponse(request);
+                });
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> tokens = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                tokens.add(executor.submit(() -> requester.get(URL, "example-client-frontend", "admin", "a")));
+            }
+            for (Future<String> token : tokens) {
+                Assert.assertEquals("access-1", token.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        server.verify();
+    }
+
+    @Test
+    public void clearsCacheWhenPurgingExpiredTokensIsNotEnough() {
+        RestTemplate client = new RestTemplate();
+        server = MockRestServiceServer.bindTo(client).build();
+        requester = new CachingAuthenticationTokenRequester(client, Duration.ofSeconds(30), 2, clock);
+        for (int i = 0; i < 3; i++) {
+            server.expect(once(), requestTo(URL)).andRespond(withSuccess(token("access-" + i, "refresh-" + i), MediaType.APPLICATION_JSON));
+        }
+
+        requester.get(URL, "example-client-frontend", "user-0", "a");
+        requester.get(URL, "example-client-frontend", "user-1", "a");
+        Assert.assertEquals(2, requester.size());
+        requester.get(URL, "example-client-frontend", "user-2", "a");
+        Assert.assertEquals(0, requester.size());
+
+        server.verify();
+    }
+
+    private static String token(String accessToken, String refreshToken) {
+        return "{\"access_token\":\"" + accessToken + "\",\"expires_in\":300,\"refresh_expires_in\":1800,"
+                + "\"refresh_token\":\"" + refreshToken + "\",\"token_type\":\"bearer\",\"not-before-policy\":0,"
+                + "\"session_state\":\"c2a7f5c1\",\"scope\":\"profile email\"}";
+    }
+
+    private static class MutableClock extends Clock {
+        private volatile Instant now = Instant.now();
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
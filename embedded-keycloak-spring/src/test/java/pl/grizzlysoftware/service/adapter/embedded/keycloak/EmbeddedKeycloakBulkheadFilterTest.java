@@ -0,0 +1,159 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.grizzlysoftware.service.adapter.embedded.keycloak;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakBulkhead;
+import pl.grizzlysoftware.service.adapter.embedded.web.EmbeddedKeycloakBulkheadFilter;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakBulkheadProperties;
+import pl.grizzlysoftware.service.embedded.keycloak.web.KeycloakEndpointFamily;
+
+import javax.servlet.Filter;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class EmbeddedKeycloakBulkheadFilterTest {
+    private static final String TOKEN_PATH = "/realms/internal/protocol/openid-connect/token";
+
+    @Test
+    public void runsKeycloakRequestsOnExecutorOfTheirFamily() throws Exception {
+        AtomicReference<String> sessionThread = new AtomicReference<>();
+        AtomicReference<Boolean> asyncStarted = new AtomicReference<>();
+        Filter sessionFilter = (request, response, chain) -> {
+            sessionThread.set(Thread.currentThread().getName());
+            asyncStarted.set(request.isAsyncStarted());
+            chain.doFilter(request, response);
+        };
+        try (EmbeddedKeycloakBulkhead bulkhead = new EmbeddedKeycloakBulkhead(new EmbeddedKeycloakBulkheadProperties())) {
+            EmbeddedKeycloakBulkheadFilter filter = new EmbeddedKeycloakBulkheadFilter(bulkhead, sessionFilter, servlet(null), 10000, 1);
+
+            MockHttpServletRequest request = request(TOKEN_PATH);
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            MockFilterChain chain = new MockFilterChain();
+            filter.doFilter(request, response, chain);
+            awaitCompletion(request);
+
+            Assert.assertEquals(204, response.getStatus());
+            Assert.assertNull(chain.getRequest());
+            Assert.assertEquals("keycloak-token-1", sessionThread.get());
+            Assert.assertFalse(asyncStarted.get());
+        }
+    }
+
+    @Test
+    public void passesRequestsOfOtherFamiliesToFilterChain() throws Exception {
+        try (EmbeddedKeycloakBulkhead bulkhead = new EmbeddedKeycloakBulkhead(new EmbeddedKeycloakBulkheadProperties())) {
+            EmbeddedKeycloakBulkheadFilter filter = new EmbeddedKeycloakBulkheadFilter(bulkhead, (request, response, chain) -> Assert.fail(), servlet(null), 10000, 1);
+
+            MockHttpServletRequest request = request("/resources/4.0/login/keycloak/css/login.css");
+            MockFilterChain chain = new MockFilterChain();
+            filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+            Assert.assertFalse(request.isAsyncStarted());
+            Assert.assertNotNull(chain.getRequest());
+        }
+    }
+
+    @Test
+    public void rejectsRequestsWhenExecutorIsSaturated() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        EmbeddedKeycloakBulkheadProperties.Pool pool = new EmbeddedKeycloakBulkheadProperties.Pool(1, 1);
+        EmbeddedKeycloakBulkheadProperties properties = new EmbeddedKeycloakBulkheadProperties(true, 50, 3, pool, pool, pool, pool);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        try (EmbeddedKeycloakBulkhead bulkhead = new EmbeddedKeycloakBulkhead(properties)) {
+            bulkhead.bindTo(registry);
+            EmbeddedKeycloakBulkheadFilter filter = new EmbeddedKeycloakBulkheadFilter(bulkhead, (request, response, chain) -> chain.doFilter(request, response), servlet(() -> {
+                started.countDown();
+                await(release);
+            }), 50, 3);
+
+            MockHttpServletRequest processed = request(TOKEN_PATH);
+            MockHttpServletResponse processedResponse = new MockHttpServletResponse();
+            filter.doFilter(processed, processedResponse, new MockFilterChain());
+            await(started);
+            MockHttpServletRequest queued = request(TOKEN_PATH);
+            MockHttpServletResponse queuedResponse = new MockHttpServletResponse();
+            filter.doFilter(queued, queuedResponse, new MockFilterChain());
+            MockHttpServletRequest rejected = request(TOKEN_PATH);
+            MockHttpServletResponse rejectedResponse = new MockHttpServletResponse();
+            filter.doFilter(rejected, rejectedResponse, new MockFilterChain());
+
+            Assert.assertEquals(503, rejectedResponse.getStatus());
+            Assert.assertEquals("3", rejectedResponse.getHeader("Retry-After"));
+            Assert.assertFalse(rejected.isAsyncStarted());
+            Assert.assertEquals(1.0, bulkhead.utilization(KeycloakEndpointFamily.TOKEN), 0.0);
+            Assert.assertEquals(0.0, bulkhead.utilization(KeycloakEndpointFamily.ADMIN), 0.0);
+
+            Thread.sleep(100);
+            release.countDown();
+            awaitCompletion(processed);
+            awaitCompletion(queued);
+
+            Assert.assertEquals(204, processedResponse.getStatus());
+            Assert.assertEquals(503, queuedResponse.getStatus());
+            Assert.assertEquals(1.0, registry.get(EmbeddedKeycloakBulkhead.REJECTED).tags("pool", "token", "reason", "full").functionCounter().count(), 0.0);
+            Assert.assertEquals(1.0, registry.get(EmbeddedKeycloakBulkhead.REJECTED).tags("pool", "token", "reason", "expired").functionCounter().count(), 0.0);
+        }
+    }
+
+    private static MockHttpServletRequest request(String pathInfo) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/embedded-keycloak" + pathInfo);
+        request.setServletPath("/embedded-keycloak");
+        request.setPathInfo(pathInfo);
+        request.setAsyncSupported(true);
+        return request;
+    }
+
+    private static HttpServlet servlet(Runnable work) {
+        return new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) {
+                if (work != null) {
+                    work.run();
+                }
+                resp.setStatus(HttpServletResponse.SC_NO_CONTENT);
+            }
+        };
+    }
+
+    private static void awaitCompletion(MockHttpServletRequest request) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (request.isAsyncStarted() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        Assert.assertFalse(request.isAsyncStarted());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
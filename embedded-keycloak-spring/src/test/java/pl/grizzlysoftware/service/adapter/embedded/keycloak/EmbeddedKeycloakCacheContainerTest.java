@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.adapter.embedded.keycloak;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.infinispan.Cache;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakCacheMetrics;
+import pl.grizzlysoftware.service.embedded.keycloak.infinispan.EmbeddedKeycloakCacheContainer;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakCacheProperties;
+
+import java.util.Properties;
+
+public class EmbeddedKeycloakCacheContainerTest {
+
+    @Test
+    public void limitsCacheSizeAndCollectsStatistics() {
+        Properties props = new Properties();
+        props.setProperty("keycloak.embedded.cache.realms.max-entries", "10");
+        props.setProperty("keycloak.embedded.cache.users.max-idle", "60000");
+        EmbeddedKeycloakCacheProperties properties = new EmbeddedKeycloakCacheProperties(props);
+
+        EmbeddedCacheManager cacheManager = EmbeddedKeycloakCacheContainer.create(properties);
+        try {
+            Assert.assertEquals(10, cacheManager.getCacheConfiguration(EmbeddedKeycloakCacheContainer.REALM_CACHE).memory().size());
+            Assert.assertEquals(60000, cacheManager.getCacheConfiguration(EmbeddedKeycloakCacheContainer.USER_CACHE).expiration().maxIdle());
+            Assert.assertEquals(-1, cacheManager.getCacheConfiguration(EmbeddedKeycloakCacheContainer.SESSION_CACHE).memory().size());
+            Assert.assertNotNull(cacheManager.getCacheConfiguration(EmbeddedKeycloakCacheContainer.ACTION_TOKEN_CACHE));
+
+            SimpleMeterRegistry registry = new SimpleMeterRegistry();
+            new EmbeddedKeycloakCacheMetrics(cacheManager, EmbeddedKeycloakCacheContainer.CONFIGURABLE_CACHES).bindTo(registry);
+
+            Cache<String, String> realms = cacheManager.getCache(EmbeddedKeycloakCacheContainer.REALM_CACHE);
+            for (int i = 0; i < 20; i++) {
+                realms.put("realm-" + i, "realm");
+            }
+            realms.get("realm-19");
+            realms.get("missing");
+
+            Assert.assertTrue(realms.size() <= 10);
+            Assert.assertEquals(1, registry.get(EmbeddedKeycloakCacheMetrics.HITS).tag("cache", "realms").functionCounter().count(), 0);
+            Assert.assertEquals(1, registry.get(EmbeddedKeycloakCacheMetrics.MISSES).tag("cache", "realms").functionCounter().count(), 0);
+            Assert.assertEquals(10, registry.get(EmbeddedKeycloakCacheMetrics.EVICTIONS).tag("cache", "realms").functionCounter().count(), 0);
+            Assert.assertEquals(0, registry.get(EmbeddedKeycloakCacheMetrics.HITS).tag("cache", "users").functionCounter().count(), 0);
+        } finally {
+            cacheManager.stop();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.adapter.embedded.keycloak;
+
+import org.infinispan.Cache;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import pl.grizzlysoftware.service.embedded.keycloak.infinispan.EmbeddedKeycloakCacheContainer;
+import pl.grizzlysoftware.service.embedded.keycloak.infinispan.EmbeddedKeycloakClusterChannel;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakCacheProperties;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakClusterProperties;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+public class EmbeddedKeycloakClusterTest {
+
+    @Test
+    public void resolvesMembersFromListAndFile() throws Exception {
+        Path membersFile = Files.createTempFile("keycloak-cluster-members", ".txt");
+        try {
+            Files.write(membersFile, Arrays.asList("# members", "10.0.0.3[7900]", "", "10.0.0.4"));
+            EmbeddedKeycloakClusterProperties cluster = new EmbeddedKeycloakClusterProperties(true, "test", "node", "127.0.0.1", 7800, 0, "10.0.0.1[7801], 10.0.0.2:7802", membersFile.toString(), 2, false);
+
+            List<InetSocketAddress> members = EmbeddedKeycloakClusterChannel.members(cluster);
+
+            Assert.assertEquals(Arrays.asList(
+                    new InetSocketAddress("10.0.0.1", 7801),
+                    new InetSocketAddress("10.0.0.2", 7802),
+                    new InetSocketAddress("10.0.0.3", 7900),
+                    new InetSocketAddress("10.0.0.4", 7800)
+            ), members);
+        } finally {
+            Files.deleteIfExists(membersFile);
+        }
+    }
+
+    @Test
+    public void nodesOnLocalhostShareSessionsAndInvalidateRealms() {
+        EmbeddedCacheManager node1 = EmbeddedKeycloakCacheContainer.create(new EmbeddedKeycloakCacheProperties(), cluster("node-1"));
+        EmbeddedCacheManager node2 = EmbeddedKeycloakCacheContainer.create(new EmbeddedKeycloakCacheProperties(), cluster("node-2"));
+        try {
+            Cache<String, String> sessions1 = node1.getCache(EmbeddedKeycloakCacheContainer.SESSION_CACHE);
+            Cache<String, String> sessions2 = node2.getCache(EmbeddedKeycloakCacheContainer.SESSION_CACHE);
+            Assert.assertEquals(2, node1.getMembers().size());
+
+            sessions1.put("session", "user");
+            Assert.assertEquals("user", sessions2.get("session"));
+
+            Cache<String, String> realms1 = node1.getCache(EmbeddedKeycloakCacheContainer.REALM_CACHE);
+            Cache<String, String> realms2 = node2.getCache(EmbeddedKeycloakCacheContainer.REALM_CACHE);
+            realms2.put("realm", "old");
+            realms1.put("realm", "new");
+            Assert.assertNull(realms2.get("realm"));
+        } finally {
+            node2.stop();
+            node1.stop();
+        }
+    }
+
+    private static EmbeddedKeycloakClusterProperties cluster(String nodeName) {
+        return new EmbeddedKeycloakClusterProperties(true, "embedded-keycloak-test", nodeName, "127.0.0.1", 7900, 10, "127.0.0.1[7900],127.0.0.1[7901]", null, 2, false);
+    }
+}
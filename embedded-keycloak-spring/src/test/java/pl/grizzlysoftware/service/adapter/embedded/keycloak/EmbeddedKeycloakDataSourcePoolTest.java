@@ -0,0 +1,61 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.adapter.embedded.keycloak;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakDataSourcePool;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakDataSourcePoolProperties;
+
+import java.sql.Connection;
+
+public class EmbeddedKeycloakDataSourcePoolTest {
+
+    @Test
+    public void poolReusesConnectionsAndRecordsMetrics() throws Exception {
+        EmbeddedKeycloakDataSourcePoolProperties properties = new EmbeddedKeycloakDataSourcePoolProperties(2, 1, 1000, 600000, 1800000, 16);
+        try (EmbeddedKeycloakDataSourcePool pool = EmbeddedKeycloakDataSourcePool.create("jdbc:h2:mem:pool-test", "sa", "", properties)) {
+            try (Connection connection = pool.getDataSource().getConnection()) {
+                Assert.assertEquals(1, pool.getActiveConnections());
+            }
+            try (Connection connection = pool.getDataSource().getConnection()) {
+                Assert.assertTrue(connection.isValid(1));
+            }
+
+            Assert.assertEquals(0, pool.getActiveConnections());
+            Assert.assertTrue(pool.getTotalConnections() <= 2);
+            Assert.assertEquals(2, pool.getAcquiredCount());
+            Assert.assertEquals(0, pool.getPendingThreads());
+        }
+    }
+
+    @Test
+    public void poolsOfKeycloaksRunningSideBySideHaveOwnNames() {
+        EmbeddedKeycloakDataSourcePoolProperties properties = new EmbeddedKeycloakDataSourcePoolProperties(1, 0, 1000, 600000, 1800000, 0);
+        try (EmbeddedKeycloakDataSourcePool first = EmbeddedKeycloakDataSourcePool.create("jdbc:h2:mem:pool-first", "sa", "", properties);
+             EmbeddedKeycloakDataSourcePool second = EmbeddedKeycloakDataSourcePool.create("jdbc:h2:mem:pool-second", "sa", "", properties)) {
+            Assert.assertNotEquals(first.getPoolName(), second.getPoolName());
+            Assert.assertTrue(second.getPoolName().startsWith(EmbeddedKeycloakDataSourcePool.POOL_NAME));
+        }
+
+        try (EmbeddedKeycloakDataSourcePool pool = EmbeddedKeycloakDataSourcePool.create("jdbc:h2:mem:pool-third", "sa", "", properties)) {
+            Assert.assertEquals(EmbeddedKeycloakDataSourcePool.POOL_NAME, pool.getPoolName());
+        }
+    }
+}
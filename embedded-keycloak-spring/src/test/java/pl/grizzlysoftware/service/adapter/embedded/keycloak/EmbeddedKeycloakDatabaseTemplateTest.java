@@ -0,0 +1,118 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.grizzlysoftware.service.adapter.embedded.keycloak;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakDatabaseTemplate;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakDataSourceTemplateProperties;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+public class EmbeddedKeycloakDatabaseTemplateTest {
+    private static final String URL = "jdbc:h2:./data/keycloak;DB_CLOSE_ON_EXIT=FALSE";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void bootstrappedDatabaseIsRestoredFromTemplate() throws Exception {
+        EmbeddedKeycloakDataSourceTemplateProperties properties = properties(EmbeddedKeycloakDataSourceTemplateProperties.MODE_MEMORY);
+        String key = EmbeddedKeycloakDatabaseTemplate.key("6.0.0", Arrays.asList("realm.json:digest", "admin", "admin"));
+
+        EmbeddedKeycloakDatabaseTemplate first = EmbeddedKeycloakDatabaseTemplate.of(properties, URL, key);
+        Assert.assertTrue(first.getUrl().startsWith("jdbc:h2:mem:keycloak-"));
+        Assert.assertTrue(first.getUrl().endsWith(";DB_CLOSE_ON_EXIT=FALSE;DB_CLOSE_DELAY=-1"));
+        Assert.assertFalse(first.restore("sa", ""));
+        execute(first.getUrl(), "create table REALM (ID varchar(36) primary key, NAME varchar(255))", "insert into REALM values ('1', 'master')");
+        first.store(dataSource(first.getUrl()));
+        first.close();
+        Assert.assertTrue(Files.exists(first.getTemplate()));
+
+        EmbeddedKeycloakDatabaseTemplate second = EmbeddedKeycloakDatabaseTemplate.of(properties, URL, key);
+        Assert.assertNotEquals(first.getUrl(), second.getUrl());
+        Assert.assertTrue(second.restore("sa", ""));
+        Assert.assertTrue(second.isRestored());
+        Assert.assertEquals("master", queryString(second.getUrl(), "select NAME from REALM where ID = '1'"));
+        second.close();
+    }
+
+    @Test
+    public void fileDatabaseOfRunIsDeletedOnClose() throws Exception {
+        EmbeddedKeycloakDataSourceTemplateProperties properties = properties(EmbeddedKeycloakDataSourceTemplateProperties.MODE_FILE);
+        EmbeddedKeycloakDatabaseTemplate template = EmbeddedKeycloakDatabaseTemplate.of(properties, URL, EmbeddedKeycloakDatabaseTemplate.key("6.0.0", Arrays.asList("a")));
+        Assert.assertFalse(template.restore("sa", ""));
+        execute(template.getUrl(), "create table REALM (ID varchar(36) primary key)");
+        Assert.assertEquals(1, runFiles());
+
+        template.close();
+        Assert.assertEquals(0, runFiles());
+    }
+
+    @Test
+    public void templateKeyDependsOnKeycloakVersionAndParts() {
+        String key = EmbeddedKeycloakDatabaseTemplate.key("6.0.0", Arrays.asList("realm.json:digest", "admin"));
+
+        Assert.assertEquals(32, key.length());
+        Assert.assertEquals(key, EmbeddedKeycloakDatabaseTemplate.key("6.0.0", Arrays.asList("realm.json:digest", "admin")));
+        Assert.assertNotEquals(key, EmbeddedKeycloakDatabaseTemplate.key("6.0.1", Arrays.asList("realm.json:digest", "admin")));
+        Assert.assertNotEquals(key, EmbeddedKeycloakDatabaseTemplate.key("6.0.0", Arrays.asList("realm.json:other", "admin")));
+    }
+
+    private EmbeddedKeycloakDataSourceTemplateProperties properties(String mode) {
+        return new EmbeddedKeycloakDataSourceTemplateProperties(true, mode, dir.resolve("templates").toString(), dir.resolve("runs").toString());
+    }
+
+    private long runFiles() throws Exception {
+        try (Stream<Path> files = Files.list(dir.resolve("runs"))) {
+            return files.count();
+        }
+    }
+
+    private static JdbcDataSource dataSource(String url) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL(url);
+        dataSource.setUser("sa");
+        return dataSource;
+    }
+
+    private static void execute(String url, String... statements) throws SQLException {
+        try (Connection connection = dataSource(url).getConnection(); Statement statement = connection.createStatement()) {
+            for (String sql : statements) {
+                statement.execute(sql);
+            }
+        }
+    }
+
+    private static String queryString(String url, String sql) throws SQLException {
+        try (Connection connection = dataSource(url).getConnection(); Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(sql)) {
+            Assert.assertTrue(result.next());
+            return result.getString(1);
+        }
+    }
+}
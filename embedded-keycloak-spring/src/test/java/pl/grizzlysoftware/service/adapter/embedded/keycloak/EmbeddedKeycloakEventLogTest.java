@@ -0,0 +1,188 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.adapter.embedded.keycloak;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.keycloak.Config;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventListenerProvider;
+import org.keycloak.events.EventType;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.AuthDetails;
+import org.keycloak.events.admin.OperationType;
+import org.keycloak.events.admin.ResourceType;
+import org.mockito.Mockito;
+import pl.grizzlysoftware.service.embedded.keycloak.events.EmbeddedKeycloakEventLogListenerProviderFactory;
+import pl.grizzlysoftware.service.embedded.keycloak.events.EmbeddedKeycloakEventLogReader;
+import pl.grizzlysoftware.service.embedded.keycloak.events.EventLogRecord;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class EmbeddedKeycloakEventLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void loggedEventsAreReplayedInOrderAcrossSegments() {
+        EmbeddedKeycloakEventLogListenerProviderFactory factory = factory(512, 0);
+        EventListenerProvider listener = factory.create(null);
+        for (int i = 0; i < 20; i++) {
+            listener.onEvent(event("user-" + i));
+        }
+        listener.onEvent(adminEvent(), true);
+        listener.onEvent(adminEvent(), false);
+        factory.close();
+
+        EmbeddedKeycloakEventLogReader reader = new EmbeddedKeycloakEventLogReader(directory);
+        Assert.assertTrue(reader.getSegments().size() > 1);
+
+        List<EventLogRecord> records = new ArrayList<>();
+        reader.forEach(records::add);
+        Assert.assertEquals(22, records.size());
+        for (int i = 0; i < 20; i++) {
+            Event event = records.get(i).getEvent();
+            Assert.assertEquals("user-" + i, event.getUserId());
+            Assert.assertEquals(EventType.LOGIN, event.getType());
+            Assert.assertEquals("\u017C\u00F3\u0142\u0107", event.getDetails().get("username"));
+            Assert.assertNull(event.getError());
+        }
+        AdminEvent adminEvent = records.get(20).getAdminEvent();
+        Assert.assertEquals(OperationType.UPDATE, adminEvent.getOperationType());
+        Assert.assertEquals(ResourceType.USER, adminEvent.getResourceType());
+        Assert.assertEquals("admin", adminEvent.getAuthDetails().getUserId());
+        Assert.assertEquals("{\"enabled\":true}", adminEvent.getRepresentation());
+        Assert.assertNull(records.get(21).getAdminEvent().getRepresentation());
+
+        EventListenerProvider replayed = Mockito.mock(EventListenerProvider.class);
+        Assert.assertEquals(22, reader.replay(replayed));
+        Mockito.verify(replayed, Mockito.times(20)).onEvent(Mockito.any(Event.class));
+        Mockito.verify(replayed).onEvent(Mockito.any(AdminEvent.class), Mockito.eq(true));
+        Mockito.verify(replayed).onEvent(Mockito.any(AdminEvent.class), Mockito.eq(false));
+    }
+
+    @Test
+    public void everyRunStartsNewSegmentAndOldestSegmentsAreDeleted() {
+        for (int run = 0; run < 4; run++) {
+            EmbeddedKeycloakEventLogListenerProviderFactory factory = factory(4096, 2);
+            factory.create(null).onEvent(event("run-" + run));
+            factory.close();
+        }
+
+        EmbeddedKeycloakEventLogReader reader = new EmbeddedKeycloakEventLogReader(directory);
+        Assert.assertEquals(2, reader.getSegments().size());
+        List<String> users = new ArrayList<>();
+        reader.forEach(record -> users.add(record.getEvent().getUserId()));
+        Assert.assertEquals(Arrays.asList("run-2", "run-3"), users);
+    }
+
+    @Test
+    public void logIsOpenedOnFirstUseInDirectoryOfItsOwn() {
+        Path events = directory.resolve("events");
+        EmbeddedKeycloakEventLogListenerProviderFactory first = factory(events, 4096, 2);
+        EmbeddedKeycloakEventLogListenerProviderFactory second = factory(events, 4096, 2);
+        Assert.assertNull(first.getDirectory());
+        Assert.assertNull(first.getQueue());
+        Assert.assertFalse(Files.exists(events));
+
+        first.create(null).onEvent(event("first"));
+        second.create(null).onEvent(event("second"));
+        first.close();
+        second.close();
+
+        Assert.assertEquals(events.toAbsolutePath().normalize(), first.getDirectory());
+        Assert.assertEquals(directory.resolve("events-2").toAbsolutePath().normalize(), second.getDirectory());
+        List<String> users = new ArrayList<>();
+        new EmbeddedKeycloakEventLogReader(second.getDirectory()).forEach(record -> users.add(record.getEvent().getUserId()));
+        Assert.assertEquals(Collections.singletonList("second"), users);
+    }
+
+    @Test
+    public void readerSkipsRestOfSegmentAfterCorruptedRecord() throws Exception {
+        EmbeddedKeycloakEventLogListenerProviderFactory factory = factory(4096, 0);
+        EventListenerProvider listener = factory.create(null);
+        listener.onEvent(event("first"));
+        listener.onEvent(event("second"));
+        factory.close();
+
+        EmbeddedKeycloakEventLogReader reader = new EmbeddedKeycloakEventLogReader(directory);
+        List<EventLogRecord> records = new ArrayList<>();
+        reader.forEach(records::add);
+        EventLogRecord second = records.get(1);
+        try (RandomAccessFile file = new RandomAccessFile(second.getSegment().toFile(), "rw")) {
+            file.seek(second.getOffset() + 20);
+            file.write(file.read() ^ 0xFF);
+        }
+
+        List<String> users = new ArrayList<>();
+        reader.forEach(record -> users.add(record.getEvent().getUserId()));
+        Assert.assertEquals(Collections.singletonList("first"), users);
+    }
+
+    private EmbeddedKeycloakEventLogListenerProviderFactory factory(int segmentSize, int maxSegments) {
+        return factory(directory, segmentSize, maxSegments);
+    }
+
+    private static EmbeddedKeycloakEventLogListenerProviderFactory factory(Path directory, int segmentSize, int maxSegments) {
+        Config.Scope config = Mockito.mock(Config.Scope.class, invocation -> invocation.getArguments().length > 1 ? invocation.getArgument(1) : null);
+        Mockito.doReturn(directory.toString()).when(config).get(Mockito.eq("dir"), Mockito.anyString());
+        Mockito.doReturn(segmentSize).when(config).getInt(Mockito.eq("segment-size"), Mockito.anyInt());
+        Mockito.doReturn(maxSegments).when(config).getInt(Mockito.eq("max-segments"), Mockito.anyInt());
+
+        EmbeddedKeycloakEventLogListenerProviderFactory factory = new EmbeddedKeycloakEventLogListenerProviderFactory();
+        factory.init(config);
+        factory.postInit(null);
+        return factory;
+    }
+
+    private static Event event(String userId) {
+        Event event = new Event();
+        event.setTime(System.currentTimeMillis());
+        event.setType(EventType.LOGIN);
+        event.setRealmId("internal");
+        event.setClientId("example-client-frontend");
+        event.setUserId(userId);
+        event.setIpAddress("127.0.0.1");
+        event.setDetails(Collections.singletonMap("username", "\u017C\u00F3\u0142\u0107"));
+        return event;
+    }
+
+    private static AdminEvent adminEvent() {
+        AuthDetails authDetails = new AuthDetails();
+        authDetails.setRealmId("master");
+        authDetails.setUserId("admin");
+        AdminEvent event = new AdminEvent();
+        event.setTime(System.currentTimeMillis());
+        event.setRealmId("internal");
+        event.setOperationType(OperationType.UPDATE);
+        event.setResourceType(ResourceType.USER);
+        event.setAuthDetails(authDetails);
+        event.setResourcePath("users/1");
+        event.setRepresentation("{\"enabled\":true}");
+        return event;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.adapter.embedded.keycloak;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Assert;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.AuthDetails;
+import org.keycloak.events.admin.OperationType;
+import pl.grizzlysoftware.service.embedded.keycloak.events.EmbeddedKeycloakEventQueue;
+import pl.grizzlysoftware.service.embedded.keycloak.events.EventOverflowPolicy;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+public class EmbeddedKeycloakEventQueueTest {
+    private JdbcDataSource dataSource;
+
+    /**
+     * columns of keycloak's EVENT_ENTITY and ADMIN_EVENT_ENTITY written by the queue, as created by keycloak's liquibase changelog
+     * - EmbeddedKeycloakEventsStoreTest checks the queue against the real schema
+     */
+    @BeforeEach
+    public void createTables() throws SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:events-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("create table EVENT_ENTITY (ID varchar(36) primary key, EVENT_TIME bigint, TYPE varchar(255), REALM_ID varchar(255), CLIENT_ID varchar(255),"
+                    + " USER_ID varchar(255), SESSION_ID varchar(255), IP_ADDRESS varchar(255), ERROR varchar(255), DETAILS_JSON varchar(2550))");
+            statement.execute("create table ADMIN_EVENT_ENTITY (ID varchar(36) primary key, ADMIN_EVENT_TIME bigint, REALM_ID varchar(255), OPERATION_TYPE varchar(255),"
+                    + " RESOURCE_TYPE varchar(64), AUTH_REALM_ID varchar(255), AUTH_CLIENT_ID varchar(255), AUTH_USER_ID varchar(255), IP_ADDRESS varchar(255),"
+                    + " RESOURCE_PATH varchar(2550), REPRESENTATION text, ERROR varchar(255))");
+        }
+    }
+
+    @Test
+    public void queuedEventsAreWrittenInBatches() throws SQLException {
+        EmbeddedKeycloakEventQueue queue = new EmbeddedKeycloakEventQueue(dataSource, null, 100, 10, 10, 5000, EventOverflowPolicy.DROP);
+        queue.start();
+        for (int i = 0; i < 25; i++) {
+            Assert.assertTrue(queue.add(event(EventType.LOGIN, "user-" + i)));
+        }
+        queue.add(adminEvent(), true);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (queue.getWritten() < 26 && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        queue.close();
+
+        Assert.assertEquals(26, queue.getWritten());
+        Assert.assertEquals(0, queue.getQueued());
+        Assert.assertEquals(25, count("select count(*) from EVENT_ENTITY where TYPE = 'LOGIN' and DETAILS_JSON like '%redirect_uri%'"));
+        Assert.assertEquals(1, count("select count(*) from ADMIN_EVENT_ENTITY where REPRESENTATION = '{}' and AUTH_USER_ID = 'admin'"));
+    }
+
+    @Test
+    public void closeDrainsQueue() throws SQLException {
+        EmbeddedKeycloakEventQueue queue = new EmbeddedKeycloakEventQueue(dataSource, null, 1000, 500, 60000, 5000, EventOverflowPolicy.DROP);
+        queue.start();
+        for (int i = 0; i < 100; i++) {
+            queue.add(event(EventType.LOGIN, "user-" + i));
+        }
+        Assert.assertEquals(100, queue.getQueued());
+
+        queue.close();
+
+        Assert.assertEquals(0, queue.getQueued());
+        Assert.assertEquals(100, count("select count(*) from EVENT_ENTITY"));
+        Assert.assertTrue(queue.add(event(EventType.LOGIN, "late")));
+        Assert.assertEquals(1, queue.getDropped());
+    }
+
+    @Test
+    public void newEventsAreDroppedWhenQueueIsFull() throws SQLException {
+        EmbeddedKeycloakEventQueue queue = new EmbeddedKeycloakEventQueue(dataSource, null, 2, 500, 60000, 5000, EventOverflowPolicy.DROP);
+        queue.start();
+        queue.add(event(EventType.LOGIN, "first"));
+        queue.add(event(EventType.LOGIN, "second"));
+        Assert.assertTrue(queue.add(event(EventType.LOGIN, "third")));
+        queue.close();
+
+        Assert.assertEquals(1, queue.getDropped());
+        Assert.assertEquals(Arrays.asList("first", "second"), users());
+    }
+
+    @Test
+    public void oldestEventsAreDroppedWhenQueueIsFull() throws SQLException {
+        EmbeddedKeycloakEventQueue queue = new EmbeddedKeycloakEventQueue(dataSource, null, 2, 500, 60000, 5000, EventOverflowPolicy.DROP_OLDEST);
+        queue.start();
+        queue.add(event(EventType.LOGIN, "first"));
+        queue.add(event(EventType.LOGIN, "second"));
+        Assert.assertTrue(queue.add(event(EventType.LOGIN, "third")));
+        queue.close();
+
+        Assert.assertEquals(1, queue.getDropped());
+        Assert.assertEquals(Arrays.asList("second", "third"), users());
+    }
+
+    @Test
+    public void callerWritesEventWhenQueueIsFullInSynchronousMode() {
+        EmbeddedKeycloakEventQueue queue = new EmbeddedKeycloakEventQueue(dataSource, null, 1, 500, 60000, 5000, EventOverflowPolicy.SYNCHRONOUS);
+        queue.start();
+        Assert.assertTrue(queue.add(event(EventType.LOGIN, "first")));
+        Assert.assertFalse(queue.add(event(EventType.LOGIN, "second")));
+        queue.close();
+
+        Assert.assertEquals(0, queue.getDropped());
+        Assert.assertEquals(1, queue.getWritten());
+    }
+
+    private static Event event(EventType type, String userId) {
+        Event event = new Event();
+        event.setTime(System.currentTimeMillis());
+        event.setType(type);
+        event.setRealmId("internal");
+        event.setClientId("example-client-frontend");
+        event.setUserId(userId);
+        event.setIpAddress("127.0.0.1");
+        event.setDetails(Collections.singletonMap("redirect_uri", "http://localhost"));
+        return event;
+    }
+
+    private static AdminEvent adminEvent() {
+        AuthDetails authDetails = new AuthDetails();
+        authDetails.setRealmId("master");
+        authDetails.setUserId("admin");
+        AdminEvent event = new AdminEvent();
+        event.setTime(System.currentTimeMillis());
+        event.setRealmId("internal");
+        event.setOperationType(OperationType.CREATE);
+        event.setAuthDetails(authDetails);
+        event.setResourcePath("users/1");
+        event.setRepresentation("{}");
+        return event;
+    }
+
+    private long count(String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement(); ResultSet result = statement.executeQuery(sql)) {
+            result.next();
+            return result.getLong(1);
+        }
+    }
+
+    private List<String> users() throws SQLException {
+        List<String> users = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("select USER_ID from EVENT_ENTITY order by USER_ID")) {
+            while (result.next()) {
+                users.add(result.getString(1));
+            }
+        }
+        return users;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.adapter.embedded.keycloak;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventStoreProvider;
+import org.keycloak.events.EventType;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakDataSourcePool;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Events are written by embedded-async events store into EVENT_ENTITY created by keycloak's own liquibase changelog,
+ * and read back through keycloak's jpa events store
+ */
+@SpringBootTest(classes = StartupTestConfiguration.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "keycloak.eventsStore.provider=embedded-async")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+@ExtendWith(SpringExtension.class)
+public class EmbeddedKeycloakEventsStoreTest extends KeycloakSecurityTestHelper {
+    private static final String EVENTS_STORE_PROVIDER = "keycloak.eventsStore.provider";
+    private static final long FLUSH_TIMEOUT = 10000;
+
+    @Autowired
+    private EmbeddedKeycloakDataSourcePool dataSourcePool;
+
+    @Override
+    void initialize() {
+        super.clientId = "example-client-frontend";
+        super.realm = "internal";
+        super.protocol = "openid-connect";
+    }
+
+    /**
+     * keycloak-server.conf is resolved against system properties, embedded-async store runs with its default settings then -
+     * the property set in {@link SpringBootTest} only keeps this test's context apart from contexts cached by other tests
+     */
+    @BeforeAll
+    public static void enableAsyncEventsStore() {
+        System.setProperty(EVENTS_STORE_PROVIDER, "embedded-async");
+    }
+
+    @AfterAll
+    public static void restoreEventsStore() {
+        System.clearProperty(EVENTS_STORE_PROVIDER);
+    }
+
+    @Test
+    public void storesLoginEventsInKeycloakSchema() throws Exception {
+        String realmId = enableEvents();
+
+        getToken("admin", "a");
+
+        Assert.assertTrue("LOGIN event was not flushed to EVENT_ENTITY", awaitLoginEvents(realmId));
+        List<Event> events = queryLoginEvents(realmId);
+        Assert.assertFalse(events.isEmpty());
+        Event event = events.get(0);
+        Assert.assertEquals(EventType.LOGIN, event.getType());
+        Assert.assertEquals(realmId, event.getRealmId());
+        Assert.assertEquals(clientId, event.getClientId());
+        Assert.assertTrue(event.getTime() > 0);
+    }
+
+    private String enableEvents() {
+        AtomicReference<String> realmId = new AtomicReference<>();
+        KeycloakModelUtils.runJobInTransaction(sessionFactory(), session -> {
+            RealmModel realmModel = session.realms().getRealmByName(realm);
+            realmModel.setEventsEnabled(true);
+            realmId.set(realmModel.getId());
+        });
+        return realmId.get();
+    }
+
+    private boolean awaitLoginEvents(String realmId) throws Exception {
+        long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT;
+        while (System.currentTimeMillis() < deadline) {
+            if (countLoginEvents(realmId) > 0) {
+                return true;
+            }
+            Thread.sleep(100);
+        }
+        return false;
+    }
+
+    private int countLoginEvents(String realmId) throws Exception {
+        try (Connection connection = dataSourcePool.getDataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM EVENT_ENTITY WHERE REALM_ID = ? AND TYPE = ? AND EVENT_TIME > 0")) {
+            statement.setString(1, realmId);
+            statement.setString(2, EventType.LOGIN.name());
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getInt(1);
+            }
+        }
+    }
+
+    private List<Event> queryLoginEvents(String realmId) {
+        AtomicReference<List<Event>> events = new AtomicReference<>();
+        KeycloakModelUtils.runJobInTransaction(sessionFactory(), session -> events.set(session.getProvider(EventStoreProvider.class)
+                .createQuery()
+                .realm(realmId)
+                .type(EventType.LOGIN)
+                .getResultList()));
+        return events.get();
+    }
+
+    private KeycloakSessionFactory sessionFactory() {
+        return (KeycloakSessionFactory) servletContext.getAttribute(KeycloakSessionFactory.class.getName());
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.grizzlysoftware.service.adapter.embedded.keycloak;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakInitialContext;
+
+import javax.sql.DataSource;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class EmbeddedKeycloakInitialContextTest {
+
+    @Test
+    public void keycloaksBootstrappingSideBySideLookTheirOwnDataSourcesUp() throws Exception {
+        DataSource shared = new JdbcDataSource();
+        DataSource first = new JdbcDataSource();
+        DataSource second = new JdbcDataSource();
+        EmbeddedKeycloakInitialContext initialContext = new EmbeddedKeycloakInitialContext(shared);
+        CountDownLatch bothBound = new CountDownLatch(2);
+
+        CompletableFuture<Object> firstLookup = CompletableFuture.supplyAsync(() -> lookupWhileBound(initialContext, first, bothBound));
+        CompletableFuture<Object> secondLookup = CompletableFuture.supplyAsync(() -> lookupWhileBound(initialContext, second, bothBound));
+
+        Assert.assertSame(first, firstLookup.get(5, TimeUnit.SECONDS));
+        Assert.assertSame(second, secondLookup.get(5, TimeUnit.SECONDS));
+        Assert.assertSame(shared, initialContext.lookup(EmbeddedKeycloakInitialContext.DATASOURCE_NAME));
+    }
+
+    @Test
+    public void closedBindingRestoresPreviousOne() throws Exception {
+        DataSource shared = new JdbcDataSource();
+        DataSource outer = new JdbcDataSource();
+        DataSource inner = new JdbcDataSource();
+        EmbeddedKeycloakInitialContext initialContext = new EmbeddedKeycloakInitialContext(shared);
+
+        try (EmbeddedKeycloakInitialContext.Binding outerBinding = initialContext.bind(outer, null)) {
+            try (EmbeddedKeycloakInitialContext.Binding innerBinding = initialContext.bind(inner, null)) {
+                Assert.assertSame(inner, initialContext.lookup(EmbeddedKeycloakInitialContext.DATASOURCE_NAME));
+            }
+            Assert.assertSame(outer, initialContext.lookup(EmbeddedKeycloakInitialContext.DATASOURCE_NAME));
+        }
+        Assert.assertSame(shared, initialContext.lookup(EmbeddedKeycloakInitialContext.DATASOURCE_NAME));
+    }
+
+    private static Object lookupWhileBound(EmbeddedKeycloakInitialContext initialContext, DataSource dataSource, CountDownLatch bothBound) {
+        try (EmbeddedKeycloakInitialContext.Binding binding = initialContext.bind(dataSource, null)) {
+            bothBound.countDown();
+            bothBound.await(5, TimeUnit.SECONDS);
+            return initialContext.lookup(EmbeddedKeycloakInitialContext.DATASOURCE_NAME);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
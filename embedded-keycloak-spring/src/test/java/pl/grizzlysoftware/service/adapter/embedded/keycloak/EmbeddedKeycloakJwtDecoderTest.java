@@ -0,0 +1,244 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.adapter.embedded.keycloak;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.common.util.Time;
+import org.keycloak.crypto.AsymmetricSignatureSignerContext;
+import org.keycloak.crypto.KeyStatus;
+import org.keycloak.crypto.KeyUse;
+import org.keycloak.crypto.KeyWrapper;
+import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.util.TokenUtil;
+import org.mockito.Mockito;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtException;
+import pl.grizzlysoftware.service.adapter.embedded.security.EmbeddedKeycloakJwtDecoder;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakJwtProperties;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class EmbeddedKeycloakJwtDecoderTest {
+    private static final String ISSUER = "http://localhost:8080/auth/realms/internal";
+
+    private final List<KeyWrapper> realmKeys = new ArrayList<>();
+    private volatile int notBefore;
+    private KeycloakSession session;
+    private KeycloakSessionFactory sessionFactory;
+    private MutableClock clock;
+    private EmbeddedKeycloakJwtDecoder decoder;
+
+    @BeforeEach
+    void setUp() {
+        session = Mockito.mock(KeycloakSession.class, Mockito.RETURNS_DEEP_STUBS);
+        RealmModel realm = Mockito.mock(RealmModel.class);
+        when(realm.getNotBefore()).thenAnswer(invocation -> notBefore);
+        when(session.realms().getRealmByName("internal")).thenReturn(realm);
+        when(session.keys().getKeys(realm)).thenAnswer(invocation -> new ArrayList<>(realmKeys));
+        sessionFactory = Mockito.mock(KeycloakSessionFactory.class);
+        when(sessionFactory.create()).thenReturn(session);
+
+        clock = new MutableClock();
+        decoder = new EmbeddedKeycloakJwtDecoder(() -> sessionFactory, properties("internal"), clock);
+    }
+
+    @Test
+    public void decodesTokenAndCachesVerificationResult() throws Exception {
+        KeyPair keyPair = rsaKey("key-1");
+        String token = token(ISSUER, "key-1", keyPair, 300);
+
+        Jwt jwt = decoder.decode(token);
+        Assert.assertEquals("user-1", jwt.getSubject());
+        Assert.assertEquals("key-1", jwt.getHeaders().get("kid"));
+        Assert.assertEquals(token, jwt.getTokenValue());
+        Assert.assertNotNull(jwt.getExpiresAt());
+
+        Assert.assertSame(jwt, decoder.decode(token));
+        Assert.assertEquals(1, decoder.size());
+        verify(sessionFactory, times(1)).create();
+    }
+
+    @Test
+    public void rejectsTokensWithInvalidSignatureExpiredOrFromOtherRealm() throws Exception {
+        KeyPair keyPair = rsaKey("key-1");
+        KeyPair other = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+
+        assertRejected(token(ISSUER, "key-1", other, 300));
+        assertRejected(token(ISSUER, "key-1", keyPair, -10));
+        assertRejected(token(ISSUER, "key-2", keyPair, 300));
+        assertRejected("not-a-token");
+
+        EmbeddedKeycloakJwtDecoder restricted = new EmbeddedKeycloakJwtDecoder(() -> sessionFactory, properties("master"), clock);
+        try {
+            restricted.decode(token(ISSUER, "key-1", keyPair, 300));
+            Assert.fail("token of other realm accepted");
+        } catch (JwtException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void refusesToAcceptTokensOfAnyRealm() {
+        for (String realm : new String[]{null, " "}) {
+            try {
+                new EmbeddedKeycloakJwtDecoder(() -> sessionFactory, properties(realm), clock);
+                Assert.fail("decoder created without realm");
+            } catch (IllegalArgumentException e) {
+                //expected
+            }
+        }
+    }
+
+    @Test
+    public void picksUpRotatedKeysAndDropsRemovedOnes() throws Exception {
+        KeyPair oldKey = rsaKey("key-1");
+        String oldToken = token(ISSUER, "key-1", oldKey, 300);
+        decoder.decode(oldToken);
+
+        //new key is found as soon as token signed with it arrives
+        realmKeys.clear();
+        KeyPair newKey = rsaKey("key-2");
+        clock.advance(Duration.ofSeconds(2));
+        Assert.assertEquals("user-1", decoder.decode(token(ISSUER, "key-2", newKey, 300)).getSubject());
+
+        //cached token signed with removed key is rejected once keys are refreshed
+        clock.advance(Duration.ofSeconds(31));
+        assertRejected(oldToken);
+    }
+
+    @Test
+    public void rejectsCachedTokenIssuedBeforeNotBeforePolicy() throws Exception {
+        KeyPair keyPair = rsaKey("key-1");
+        String token = token(ISSUER, "key-1", keyPair, 300);
+        decoder.decode(token);
+
+        notBefore = Time.currentTime();
+        clock.advance(Duration.ofSeconds(31));
+        assertRejected(token);
+    }
+
+    @Test
+    public void rejectsTokensOfNonexistentRealmWithoutCachingThem() throws Exception {
+        KeyPair keyPair = rsaKey("key-1");
+        EmbeddedKeycloakJwtDecoder missing = new EmbeddedKeycloakJwtDecoder(() -> sessionFactory, properties("missing"), clock);
+        when(session.realms().getRealmByName("missing")).thenReturn(null);
+        try {
+            missing.decode(token("http://localhost:8080/auth/realms/missing", "key-1", keyPair, 300));
+            Assert.fail("token of nonexistent realm accepted");
+        } catch (JwtException e) {
+            Assert.assertEquals("Realm: missing does not exist", e.getMessage());
+        }
+        Assert.assertEquals(0, missing.size());
+    }
+
+    @Test
+    public void failsWhenKeycloakIsNotReady() throws Exception {
+        KeyPair keyPair = rsaKey("key-1");
+        EmbeddedKeycloakJwtDecoder notReady = new EmbeddedKeycloakJwtDecoder(() -> null, properties("internal"), clock);
+        try {
+            notReady.decode(token(ISSUER, "key-1", keyPair, 300));
+            Assert.fail("token accepted before keycloak started");
+        } catch (JwtException e) {
+            Assert.assertEquals("Embedded Keycloak is not ready", e.getMessage());
+        }
+    }
+
+    private void assertRejected(String token) {
+        try {
+            decoder.decode(token);
+            Assert.fail("token accepted: " + token);
+        } catch (JwtException e) {
+            //expected
+        }
+    }
+
+    private static EmbeddedKeycloakJwtProperties properties(String realm) {
+        return new EmbeddedKeycloakJwtProperties(true, realm, 100, 30000);
+    }
+
+    private KeyPair rsaKey(String kid) throws Exception {
+        KeyPair keyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        KeyWrapper key = new KeyWrapper();
+        key.setKid(kid);
+        key.setAlgorithm("RS256");
+        key.setType("RSA");
+        key.setUse(KeyUse.SIG);
+        key.setStatus(KeyStatus.ACTIVE);
+        key.setSignKey(keyPair.getPrivate());
+        key.setVerifyKey(keyPair.getPublic());
+        realmKeys.add(key);
+        return keyPair;
+    }
+
+    private static String token(String issuer, String kid, KeyPair keyPair, int expiresIn) throws Exception {
+        AccessToken token = new AccessToken();
+        token.id("token-" + System.nanoTime());
+        token.issuer(issuer);
+        token.subject("user-1");
+        token.type(TokenUtil.TOKEN_TYPE_BEARER);
+        token.issuedAt(Time.currentTime() - 1);
+        token.expiration(Time.currentTime() + expiresIn);
+        KeyWrapper signingKey = new KeyWrapper();
+        signingKey.setKid(kid);
+        signingKey.setAlgorithm("RS256");
+        signingKey.setSignKey(keyPair.getPrivate());
+        return new JWSBuilder().type("JWT").kid(kid).jsonContent(token).sign(new AsymmetricSignatureSignerContext(signingKey));
+    }
+
+    private static class MutableClock extends Clock {
+        private volatile Instant now = Instant.now();
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.adapter.embedded.keycloak;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakMetrics;
+import pl.grizzlysoftware.service.adapter.embedded.web.EmbeddedKeycloakMetricsFilter;
+import pl.grizzlysoftware.service.embedded.keycloak.web.KeycloakEndpointFamily;
+
+import java.util.concurrent.TimeUnit;
+
+public class EmbeddedKeycloakMetricsTest {
+
+    @Test
+    public void resolvesEndpointFamilies() {
+        Assert.assertEquals(KeycloakEndpointFamily.TOKEN, KeycloakEndpointFamily.of("/realms/internal/protocol/openid-connect/token"));
+        Assert.assertEquals(KeycloakEndpointFamily.TOKEN, KeycloakEndpointFamily.of("/realms/internal/protocol/openid-connect/token/introspect"));
+        Assert.assertEquals(KeycloakEndpointFamily.USERINFO, KeycloakEndpointFamily.of("/realms/internal/protocol/openid-connect/userinfo"));
+        Assert.assertEquals(KeycloakEndpointFamily.CERTS, KeycloakEndpointFamily.of("/realms/internal/protocol/openid-connect/certs"));
+        Assert.assertEquals(KeycloakEndpointFamily.DISCOVERY, KeycloakEndpointFamily.of("/realms/internal/.well-known/openid-configuration"));
+        Assert.assertEquals(KeycloakEndpointFamily.LOGIN, KeycloakEndpointFamily.of("/realms/internal/protocol/openid-connect/auth"));
+        Assert.assertEquals(KeycloakEndpointFamily.LOGIN, KeycloakEndpointFamily.of("/realms/internal/login-actions/authenticate"));
+        Assert.assertEquals(KeycloakEndpointFamily.ACCOUNT, KeycloakEndpointFamily.of("/realms/internal/account"));
+        Assert.assertEquals(KeycloakEndpointFamily.ADMIN, KeycloakEndpointFamily.of("/admin/realms/internal/users"));
+        Assert.assertEquals(KeycloakEndpointFamily.RESOURCES, KeycloakEndpointFamily.of("/resources/4.0/login/keycloak/css/login.css"));
+        Assert.assertEquals(KeycloakEndpointFamily.OTHER, KeycloakEndpointFamily.of("/realms/internal"));
+        Assert.assertEquals(KeycloakEndpointFamily.OTHER, KeycloakEndpointFamily.of(null));
+    }
+
+    @Test
+    public void measuresRequestsSessionsAndTransactions() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        EmbeddedKeycloakMetrics metrics = new EmbeddedKeycloakMetrics(registry, false);
+        metrics.bind();
+        EmbeddedKeycloakMetricsFilter filter = new EmbeddedKeycloakMetricsFilter(metrics);
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/embedded-keycloak/realms/internal/protocol/openid-connect/token");
+        request.setServletPath("/embedded-keycloak");
+        request.setPathInfo("/realms/internal/protocol/openid-connect/token");
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+
+        metrics.sessionOpened();
+        metrics.sessionOpened();
+        metrics.sessionClosed();
+        metrics.transactionCommitted();
+        metrics.transactionRolledBack();
+        metrics.bootstrapPhase("realm-import", TimeUnit.MILLISECONDS.toNanos(5));
+
+        Assert.assertEquals(1, registry.get(EmbeddedKeycloakMetrics.REQUESTS).tags("family", "token", "method", "POST", "status", "200").timer().count());
+        Assert.assertEquals(1, registry.get(EmbeddedKeycloakMetrics.SESSIONS_OPEN).gauge().value(), 0);
+        Assert.assertEquals(1, registry.get(EmbeddedKeycloakMetrics.TRANSACTIONS).tag("result", "commit").functionCounter().count(), 0);
+        Assert.assertEquals(1, registry.get(EmbeddedKeycloakMetrics.TRANSACTIONS).tag("result", "rollback").functionCounter().count(), 0);
+        Assert.assertEquals(5, registry.get(EmbeddedKeycloakMetrics.BOOTSTRAP).tag("phase", "realm-import").timer().totalTime(TimeUnit.MILLISECONDS), 0.001);
+        metrics.close();
+    }
+
+    @Test
+    public void tagsMetersPerInstanceAndRegistersNothingUntilBound() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        EmbeddedKeycloakMetrics first = new EmbeddedKeycloakMetrics(registry, false);
+        EmbeddedKeycloakMetrics second = new EmbeddedKeycloakMetrics(registry, false);
+        try {
+            Assert.assertTrue(registry.getMeters().isEmpty());
+
+            first.bind();
+            second.bind();
+            first.sessionOpened();
+            second.sessionOpened();
+            second.sessionOpened();
+
+            Assert.assertNotEquals(first.getInstance(), second.getInstance());
+            Assert.assertEquals(1, registry.get(EmbeddedKeycloakMetrics.SESSIONS_OPEN).tag(EmbeddedKeycloakMetrics.INSTANCE_TAG, first.getInstance()).gauge().value(), 0);
+            Assert.assertEquals(2, registry.get(EmbeddedKeycloakMetrics.SESSIONS_OPEN).tag(EmbeddedKeycloakMetrics.INSTANCE_TAG, second.getInstance()).gauge().value(), 0);
+
+            first.close();
+            Assert.assertNull(registry.find(EmbeddedKeycloakMetrics.SESSIONS_OPEN).tag(EmbeddedKeycloakMetrics.INSTANCE_TAG, first.getInstance()).gauge());
+            Assert.assertNotNull(registry.find(EmbeddedKeycloakMetrics.SESSIONS_OPEN).tag(EmbeddedKeycloakMetrics.INSTANCE_TAG, second.getInstance()).gauge());
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+}
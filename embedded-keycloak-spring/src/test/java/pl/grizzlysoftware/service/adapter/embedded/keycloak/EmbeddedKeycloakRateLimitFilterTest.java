@@ -0,0 +1,160 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.grizzlysoftware.service.adapter.embedded.keycloak;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.StreamUtils;
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakRateLimiter;
+import pl.grizzlysoftware.service.adapter.embedded.web.EmbeddedKeycloakRateLimitFilter;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakRateLimitProperties;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class EmbeddedKeycloakRateLimitFilterTest {
+    private static final String TOKEN_PATH = "/realms/internal/protocol/openid-connect/token";
+
+    @Test
+    public void admitsRequestsUpToCapacityAndRefillsBucketOverTime() {
+        AtomicLong clock = new AtomicLong();
+        EmbeddedKeycloakRateLimiter rateLimiter = new EmbeddedKeycloakRateLimiter(properties(100, 2, 60), clock::get);
+
+        Assert.assertEquals(0, rateLimiter.acquireAddress("10.0.0.1"));
+        Assert.assertEquals(0, rateLimiter.acquireAddress("10.0.0.1"));
+        Assert.assertEquals(TimeUnit.SECONDS.toNanos(1), rateLimiter.acquireAddress("10.0.0.1"));
+        Assert.assertEquals(0, rateLimiter.acquireAddress("10.0.0.2"));
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        Assert.assertEquals(0, rateLimiter.acquireAddress("10.0.0.1"));
+        Assert.assertTrue(rateLimiter.acquireAddress("10.0.0.1") > 0);
+    }
+
+    @Test
+    public void evictsIdleBucketsAndBoundsTheirNumber() {
+        AtomicLong clock = new AtomicLong();
+        EmbeddedKeycloakRateLimiter rateLimiter = new EmbeddedKeycloakRateLimiter(properties(2, 1, 60), clock::get);
+
+        Assert.assertEquals(0, rateLimiter.acquireAddress("10.0.0.1"));
+        Assert.assertEquals(0, rateLimiter.acquireAddress("10.0.0.2"));
+        Assert.assertEquals(0, rateLimiter.acquireAddress("10.0.0.3"));
+        Assert.assertTrue("addresses beyond max buckets share one bucket", rateLimiter.acquireAddress("10.0.0.4") > 0);
+        Assert.assertTrue("addresses holding a bucket are still limited", rateLimiter.acquireAddress("10.0.0.1") > 0);
+        Assert.assertEquals(2, rateLimiter.getAddressBuckets());
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(62));
+        Assert.assertEquals(0, rateLimiter.acquireAddress("10.0.0.5"));
+        Assert.assertEquals(1, rateLimiter.getAddressBuckets());
+    }
+
+    @Test
+    public void evictsIdleBucketsOnDemandWhenMaxBucketsAreHeld() {
+        AtomicLong clock = new AtomicLong(TimeUnit.SECONDS.toNanos(30));
+        EmbeddedKeycloakRateLimiter rateLimiter = new EmbeddedKeycloakRateLimiter(properties(2, 1, 60), clock::get);
+
+        Assert.assertEquals(0, rateLimiter.acquireClient("client-1"));
+        Assert.assertEquals(0, rateLimiter.acquireClient("client-2"));
+
+        //buckets are not idle yet, periodic eviction runs now and next one would run at 121s
+        clock.set(TimeUnit.SECONDS.toNanos(61));
+        Assert.assertEquals(0, rateLimiter.acquireClient("client-3"));
+        Assert.assertTrue("clients beyond max buckets share one bucket", rateLimiter.acquireClient("client-4") > 0);
+        Assert.assertEquals(2, rateLimiter.getClientBuckets());
+
+        clock.set(TimeUnit.SECONDS.toNanos(92));
+        Assert.assertEquals(0, rateLimiter.acquireClient("client-4"));
+        Assert.assertEquals(1, rateLimiter.getClientBuckets());
+    }
+
+    @Test
+    public void rejectsTokenRequestsOfClientBeyondItsLimit() throws Exception {
+        AtomicReference<String> body = new AtomicReference<>();
+        EmbeddedKeycloakRateLimiter rateLimiter = new EmbeddedKeycloakRateLimiter(properties(100, 1, 1), System::nanoTime);
+        EmbeddedKeycloakRateLimitFilter filter = new EmbeddedKeycloakRateLimitFilter(rateLimiter);
+        HttpServlet keycloak = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                body.set(StreamUtils.copyToString(req.getInputStream(), StandardCharsets.UTF_8));
+            }
+        };
+
+        MockHttpServletResponse admitted = new MockHttpServletResponse();
+        filter.doFilter(tokenRequest("10.0.0.1", "grant_type=password&client_id=example-client&username=admin"), admitted, new MockFilterChain(keycloak));
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        filter.doFilter(tokenRequest("10.0.0.2", "client_id=example-client&grant_type=password"), rejected, new MockFilterChain(keycloak));
+
+        Assert.assertEquals(200, admitted.getStatus());
+        Assert.assertEquals("grant_type=password&client_id=example-client&username=admin", body.get());
+        Assert.assertEquals(429, rejected.getStatus());
+        Assert.assertEquals("60", rejected.getHeader("Retry-After"));
+        Assert.assertTrue(rejected.getContentAsString().contains("too_many_requests"));
+    }
+
+    @Test
+    public void takesClientIdFromBasicAuthorization() throws Exception {
+        EmbeddedKeycloakRateLimiter rateLimiter = new EmbeddedKeycloakRateLimiter(properties(100, 1, 60), System::nanoTime);
+        EmbeddedKeycloakRateLimitFilter filter = new EmbeddedKeycloakRateLimitFilter(rateLimiter);
+        String authorization = "Basic " + Base64.getEncoder().encodeToString("service%20client:secret".getBytes(StandardCharsets.UTF_8));
+
+        MockHttpServletRequest first = tokenRequest("10.0.0.1", "grant_type=client_credentials");
+        first.addHeader("Authorization", authorization);
+        MockHttpServletResponse admitted = new MockHttpServletResponse();
+        filter.doFilter(first, admitted, new MockFilterChain());
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        filter.doFilter(tokenRequest("10.0.0.2", "grant_type=client_credentials&client_id=service+client"), rejected, new MockFilterChain());
+
+        Assert.assertEquals(200, admitted.getStatus());
+        Assert.assertEquals(429, rejected.getStatus());
+    }
+
+    @Test
+    public void limitsTokenEndpointOnly() {
+        Assert.assertTrue(EmbeddedKeycloakRateLimitFilter.isTokenEndpoint(TOKEN_PATH));
+        Assert.assertTrue(EmbeddedKeycloakRateLimitFilter.isTokenEndpoint(TOKEN_PATH + "/"));
+        Assert.assertTrue(EmbeddedKeycloakRateLimitFilter.isTokenEndpoint("/realms/master/protocol/saml/token"));
+        Assert.assertFalse(EmbeddedKeycloakRateLimitFilter.isTokenEndpoint("/realms/internal/protocol/openid-connect/token/introspect"));
+        Assert.assertFalse(EmbeddedKeycloakRateLimitFilter.isTokenEndpoint("/realms/internal/protocol/openid-connect/certs"));
+        Assert.assertFalse(EmbeddedKeycloakRateLimitFilter.isTokenEndpoint("/realms/internal/token"));
+        Assert.assertFalse(EmbeddedKeycloakRateLimitFilter.isTokenEndpoint(null));
+    }
+
+    private static EmbeddedKeycloakRateLimitProperties properties(int maxBuckets, int capacity, int refillPerMinute) {
+        EmbeddedKeycloakRateLimitProperties.Limit limit = new EmbeddedKeycloakRateLimitProperties.Limit(capacity, refillPerMinute);
+        return new EmbeddedKeycloakRateLimitProperties(true, maxBuckets, 60000, limit, limit);
+    }
+
+    private static MockHttpServletRequest tokenRequest(String remoteAddress, String body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/embedded-keycloak" + TOKEN_PATH);
+        request.setServletPath("/embedded-keycloak");
+        request.setPathInfo(TOKEN_PATH);
+        request.setRemoteAddr(remoteAddress);
+        request.setContentType("application/x-www-form-urlencoded");
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.adapter.embedded.keycloak;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakBootstrap;
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakReadyEvent;
+import pl.grizzlysoftware.service.adapter.embedded.web.EmbeddedKeycloakReadinessFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class EmbeddedKeycloakReadinessFilterTest {
+
+    @Test
+    public void holdsOffRequestsUntilKeycloakIsReady() throws Exception {
+        List<Object> events = new ArrayList<>();
+        EmbeddedKeycloakBootstrap bootstrap = new EmbeddedKeycloakBootstrap(events::add);
+        EmbeddedKeycloakReadinessFilter filter = new EmbeddedKeycloakReadinessFilter(bootstrap, 7);
+
+        MockHttpServletResponse starting = new MockHttpServletResponse();
+        MockFilterChain startingChain = new MockFilterChain();
+        filter.doFilter(new MockHttpServletRequest("GET", "/embedded-keycloak/realms/internal"), starting, startingChain);
+        Assert.assertEquals(503, starting.getStatus());
+        Assert.assertEquals("7", starting.getHeader("Retry-After"));
+        Assert.assertNull(startingChain.getRequest());
+
+        bootstrap.ready();
+
+        MockHttpServletResponse ready = new MockHttpServletResponse();
+        MockFilterChain readyChain = new MockFilterChain();
+        filter.doFilter(new MockHttpServletRequest("GET", "/embedded-keycloak/realms/internal"), ready, readyChain);
+        Assert.assertEquals(200, ready.getStatus());
+        Assert.assertNotNull(readyChain.getRequest());
+        Assert.assertTrue(bootstrap.readiness().isDone());
+        Assert.assertTrue(events.get(0) instanceof EmbeddedKeycloakReadyEvent);
+    }
+}
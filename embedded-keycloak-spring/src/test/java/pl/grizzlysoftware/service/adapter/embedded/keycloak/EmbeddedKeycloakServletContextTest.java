@@ -0,0 +1,42 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.adapter.embedded.keycloak;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockServletContext;
+import pl.grizzlysoftware.service.embedded.keycloak.web.EmbeddedKeycloakServletContext;
+
+public class EmbeddedKeycloakServletContextTest {
+
+    @Test
+    public void appendsKeycloakContextPathAndDelegatesEverythingElse() {
+        MockServletContext applicationContext = new MockServletContext();
+        applicationContext.setContextPath("/app");
+        applicationContext.setInitParameter("param", "value");
+
+        EmbeddedKeycloakServletContext keycloakContext = new EmbeddedKeycloakServletContext(applicationContext, "/embedded-keycloak");
+        keycloakContext.setAttribute("attribute", "value");
+
+        Assert.assertEquals("/app/embedded-keycloak", keycloakContext.getContextPath());
+        Assert.assertEquals("value", keycloakContext.getInitParameter("param"));
+        Assert.assertEquals("value", applicationContext.getAttribute("attribute"));
+        Assert.assertSame(applicationContext.getClassLoader(), keycloakContext.getClassLoader());
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.grizzlysoftware.service.adapter.embedded.keycloak;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletConfig;
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakBootstrap;
+import pl.grizzlysoftware.service.adapter.embedded.util.EmbeddedKeycloakReadyEvent;
+import pl.grizzlysoftware.service.adapter.embedded.web.EmbeddedKeycloakBootstrapServlet;
+import pl.grizzlysoftware.service.adapter.embedded.web.EmbeddedKeycloakStartupReportServlet;
+import pl.grizzlysoftware.service.embedded.keycloak.instrumentation.EmbeddedKeycloakStartupReport;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class EmbeddedKeycloakStartupReportTest {
+
+    @Test
+    public void recordsConsecutivePhases() throws Exception {
+        EmbeddedKeycloakStartupReport report = EmbeddedKeycloakStartupReport.start("providers");
+        Assert.assertSame(report, EmbeddedKeycloakStartupReport.current());
+
+        Thread.sleep(5);
+        report.phase("realm-import");
+        byte[][] allocations = new byte[64][];
+        for (int i = 0; i < allocations.length; i++) {
+            allocations[i] = new byte[16 * 1024];
+        }
+        report.finish();
+
+        List<EmbeddedKeycloakStartupReport.Phase> phases = report.getPhases();
+        Assert.assertEquals(2, phases.size());
+        Assert.assertEquals("providers", phases.get(0).name);
+        Assert.assertEquals("realm-import", phases.get(1).name);
+        Assert.assertTrue(phases.get(0).durationNanos >= 5_000_000);
+        Assert.assertEquals(phases.get(0).durationNanos, phases.get(1).startNanos);
+        Assert.assertEquals(phases.get(0).durationNanos + phases.get(1).durationNanos, report.getDurationNanos());
+        if (phases.get(1).allocatedBytes >= 0) {
+            Assert.assertTrue(phases.get(1).allocatedBytes >= allocations.length * 16 * 1024);
+        }
+        Assert.assertTrue(report.format().contains("realm-import"));
+    }
+
+    @Test
+    public void finishedReportIsDetachedFromThread() {
+        EmbeddedKeycloakStartupReport report = EmbeddedKeycloakStartupReport.start("providers");
+        report.finish();
+        report.finish();
+
+        Assert.assertNull(EmbeddedKeycloakStartupReport.current());
+        Assert.assertTrue(report.isFinished());
+        Assert.assertEquals(1, report.getPhases().size());
+        try {
+            report.phase("admin-user");
+            Assert.fail("phase started after report finished");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void reportOfFailedBootstrapIsDetachedFromThread() {
+        HttpServlet keycloak = new HttpServlet() {
+            @Override
+            public void init(ServletConfig config) throws ServletException {
+                EmbeddedKeycloakStartupReport.start("providers");
+                throw new ServletException("keycloak failed to start");
+            }
+        };
+        EmbeddedKeycloakBootstrap bootstrap = new EmbeddedKeycloakBootstrap(event -> {
+        });
+        EmbeddedKeycloakBootstrapServlet servlet = new EmbeddedKeycloakBootstrapServlet(keycloak, bootstrap, false);
+        try {
+            servlet.init(new MockServletConfig());
+            Assert.fail("failed bootstrap reported as successful");
+        } catch (ServletException e) {
+            //expected
+        }
+
+        Assert.assertNull(EmbeddedKeycloakStartupReport.current());
+    }
+
+    @Test
+    public void servesReportOnceKeycloakIsReady() throws Exception {
+        List<Object> events = new ArrayList<>();
+        EmbeddedKeycloakBootstrap bootstrap = new EmbeddedKeycloakBootstrap(events::add);
+        ObjectMapper mapper = new ObjectMapper();
+        EmbeddedKeycloakStartupReportServlet servlet = new EmbeddedKeycloakStartupReportServlet(bootstrap, mapper);
+
+        MockHttpServletResponse starting = new MockHttpServletResponse();
+        servlet.service(new MockHttpServletRequest("GET", "/keycloak-startup-report"), starting);
+        Assert.assertEquals(503, starting.getStatus());
+        Assert.assertEquals("STARTING", mapper.readTree(starting.getContentAsString()).get("state").asText());
+
+        EmbeddedKeycloakStartupReport report = new EmbeddedKeycloakStartupReport("providers");
+        report.phase("database-migration");
+        report.finish();
+        bootstrap.ready(report);
+
+        MockHttpServletResponse ready = new MockHttpServletResponse();
+        servlet.service(new MockHttpServletRequest("GET", "/keycloak-startup-report"), ready);
+        Assert.assertEquals(200, ready.getStatus());
+        Assert.assertEquals("application/json", ready.getContentType().split(";")[0]);
+        JsonNode body = mapper.readTree(ready.getContentAsString());
+        Assert.assertEquals("READY", body.get("state").asText());
+        Assert.assertEquals(report.getDurationNanos(), body.get("durationNanos").asLong());
+        List<String> phases = new ArrayList<>();
+        body.get("phases").forEach(phase -> phases.add(phase.get("name").asText()));
+        Assert.assertEquals(report.getPhases().stream().map(phase -> phase.name).collect(Collectors.toList()), phases);
+        Assert.assertSame(report, ((EmbeddedKeycloakReadyEvent) events.get(0)).getStartupReport());
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.adapter.embedded.keycloak;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import pl.grizzlysoftware.service.adapter.embedded.web.EmbeddedKeycloakStaticResourceCache;
+import pl.grizzlysoftware.service.adapter.embedded.web.EmbeddedKeycloakStaticResourceFilter;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakStaticResourcesProperties;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+public class EmbeddedKeycloakStaticResourceFilterTest {
+    private static final String SERVLET_PATH = "/embedded-keycloak";
+    private static final String PATH = SERVLET_PATH + "/resources/4rl5a/login/keycloak/css/login.css";
+    private static final String CSS = new String(new char[4096]).replace('\0', 'a');
+
+    private final AtomicInteger keycloakRequests = new AtomicInteger();
+    private final EmbeddedKeycloakStaticResourceCache cache = new EmbeddedKeycloakStaticResourceCache(new EmbeddedKeycloakStaticResourcesProperties());
+    private final EmbeddedKeycloakStaticResourceFilter filter = new EmbeddedKeycloakStaticResourceFilter(cache);
+
+    @Test
+    public void cachedResourceIsServedWithoutReachingKeycloak() throws Exception {
+        MockHttpServletResponse first = get(PATH, "max-age=2592000", null, null);
+        Assert.assertEquals(200, first.getStatus());
+        Assert.assertEquals(CSS, first.getContentAsString());
+        Assert.assertNotNull(first.getHeader("ETag"));
+
+        MockHttpServletResponse second = get(PATH, "max-age=2592000", null, null);
+        Assert.assertEquals(1, keycloakRequests.get());
+        Assert.assertEquals(CSS, second.getContentAsString());
+        Assert.assertEquals("text/css", second.getContentType());
+        Assert.assertEquals("max-age=2592000", second.getHeader("Cache-Control"));
+        Assert.assertEquals(first.getHeader("ETag"), second.getHeader("ETag"));
+        Assert.assertEquals(1, cache.getEntries());
+    }
+
+    @Test
+    public void compressedVariantIsServedWhenClientAcceptsGzip() throws Exception {
+        get(PATH, "max-age=2592000", null, null);
+
+        MockHttpServletResponse compressed = get(PATH, "max-age=2592000", "gzip, deflate, br", null);
+        Assert.assertEquals("gzip", compressed.getHeader("Content-Encoding"));
+        Assert.assertEquals("Accept-Encoding", compressed.getHeader("Vary"));
+        Assert.assertTrue(compressed.getContentAsByteArray().length < CSS.length());
+        Assert.assertEquals(compressed.getContentAsByteArray().length, compressed.getContentLength());
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed.getContentAsByteArray()))) {
+            Assert.assertEquals(CSS, new String(readAll(gzip), "UTF-8"));
+        }
+
+        MockHttpServletResponse refused = get(PATH, "max-age=2592000", "gzip;q=0", null);
+        Assert.assertNull(refused.getHeader("Content-Encoding"));
+        Assert.assertNotEquals(compressed.getHeader("ETag"), refused.getHeader("ETag"));
+    }
+
+    @Test
+    public void conditionalRequestGetsNotModified() throws Exception {
+        String etag = get(PATH, "max-age=2592000", null, null).getHeader("ETag");
+
+        MockHttpServletResponse notModified = get(PATH, "max-age=2592000", "gzip", "W/\"other\", " + etag);
+        Assert.assertEquals(304, notModified.getStatus());
+        Assert.assertEquals(0, notModified.getContentAsByteArray().length);
+        Assert.assertEquals("max-age=2592000", notModified.getHeader("Cache-Control"));
+        Assert.assertEquals(1, keycloakRequests.get());
+
+        MockHttpServletResponse changed = get(PATH, "max-age=2592000", null, "\"other\"");
+        Assert.assertEquals(200, changed.getStatus());
+    }
+
+    @Test
+    public void queryStringDoesNotAddCacheEntries() throws Exception {
+        get(PATH, "max-age=2592000", null, null);
+        for (int i = 0; i < 10; i++) {
+            MockHttpServletRequest request = request(PATH);
+            request.setQueryString("v=" + i);
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            filter.doFilter(request, response, new MockFilterChain(keycloak("max-age=2592000")));
+            Assert.assertEquals(CSS, response.getContentAsString());
+        }
+
+        Assert.assertEquals(1, keycloakRequests.get());
+        Assert.assertEquals(1, cache.getEntries());
+    }
+
+    @Test
+    public void encodingAndPathParametersDoNotAddCacheEntries() throws Exception {
+        get(PATH, "max-age=2592000", null, null);
+        //servlet container decodes and strips path parameters from servlet path and path info, request uri is left as sent
+        for (String requestUri : new String[]{
+                SERVLET_PATH + "/resources/4rl5a;x=1/login/keycloak/css/login.css",
+                PATH + ";jsessionid=F00",
+                SERVLET_PATH + "/resources/4rl5a/login/keycloak/css/%6Cogin.css"}) {
+            MockHttpServletRequest request = request(PATH);
+            request.setRequestURI(requestUri);
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            filter.doFilter(request, response, new MockFilterChain(keycloak("max-age=2592000")));
+            Assert.assertEquals(CSS, response.getContentAsString());
+        }
+
+        Assert.assertEquals(1, keycloakRequests.get());
+        Assert.assertEquals(1, cache.getEntries());
+    }
+
+    @Test
+    public void resourcesWhichMustNotBeStoredAreNotCached() throws Exception {
+        get("/embedded-keycloak/js/keycloak.js", "no-cache", null, null);
+        MockHttpServletResponse second = get("/embedded-keycloak/js/keycloak.js", "no-cache", null, null);
+
+        Assert.assertEquals(2, keycloakRequests.get());
+        Assert.assertEquals(CSS, second.getContentAsString());
+        Assert.assertNull(second.getHeader("ETag"));
+        Assert.assertEquals(0, cache.getEntries());
+    }
+
+    @Test
+    public void resourcesLargerThanMaxEntrySizeAreStreamedThrough() throws Exception {
+        EmbeddedKeycloakStaticResourceCache smallCache = new EmbeddedKeycloakStaticResourceCache(new EmbeddedKeycloakStaticResourcesProperties(true, 1024 * 1024, 1024, 512));
+        EmbeddedKeycloakStaticResourceFilter smallFilter = new EmbeddedKeycloakStaticResourceFilter(smallCache);
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        smallFilter.doFilter(request(PATH), response, new MockFilterChain(keycloak("max-age=2592000")));
+
+        Assert.assertEquals(CSS, response.getContentAsString());
+        Assert.assertEquals(0, smallCache.getEntries());
+    }
+
+    private MockHttpServletResponse get(String path, String cacheControl, String acceptEncoding, String ifNoneMatch) throws Exception {
+        MockHttpServletRequest request = request(path);
+        if (acceptEncoding != null) {
+            request.addHeader("Accept-Encoding", acceptEncoding);
+        }
+        if (ifNoneMatch != null) {
+            request.addHeader("If-None-Match", ifNoneMatch);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain(keycloak(cacheControl)));
+        return response;
+    }
+
+    /**
+     * request mapped to keycloak's servlet, like servlet container maps it
+     */
+    private static MockHttpServletRequest request(String path) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        request.setServletPath(SERVLET_PATH);
+        request.setPathInfo(path.substring(SERVLET_PATH.length()));
+        return request;
+    }
+
+    /**
+     * responds like keycloak's theme resource - never compressed, since accept encoding is hidden from it
+     */
+    private HttpServlet keycloak(String cacheControl) {
+        return new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                keycloakRequests.incrementAndGet();
+                Assert.assertNull(request.getHeader("Accept-Encoding"));
+                response.setContentType("text/css");
+                response.setHeader("Cache-Control", cacheControl);
+                response.getOutputStream().write(CSS.getBytes("UTF-8"));
+            }
+        };
+    }
+
+    private static byte[] readAll(GZIPInputStream stream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package pl.grizzlysoftware.service.adapter.embedded.keycloak;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.keycloak.events.EventStoreProvider;
+import org.keycloak.events.EventType;
+import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.representations.AccessTokenResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import pl.grizzlysoftware.service.adapter.embedded.util.AuthenticationToken;
+import pl.grizzlysoftware.service.embedded.keycloak.model.EmbeddedKeycloakServerProperties;
+import pl.grizzlysoftware.service.embedded.keycloak.token.EmbeddedKeycloakTokens;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tokens issued in process are compared with tokens issued by token endpoint for the same user and client
+ */
+@SpringBootTest(classes = StartupTestConfiguration.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+@ExtendWith(SpringExtension.class)
+public class EmbeddedKeycloakTokensTest extends KeycloakSecurityTestHelper {
+    private static final String INTROSPECTION_CLIENT = "tokens-test-introspection";
+    private static final String INTROSPECTION_SECRET = "tokens-test-secret";
+    /**
+     * claims differing between any two tokens - time of issue, token id and user session
+     */
+    private static final Set<String> PER_TOKEN_CLAIMS = new HashSet<>(Arrays.asList("exp", "iat", "nbf", "auth_time", "jti", "session_state"));
+
+    @Autowired
+    private EmbeddedKeycloakServerProperties properties;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Override
+    void initialize() {
+        super.clientId = "example-client-frontend";
+        super.realm = "internal";
+        super.protocol = "openid-connect";
+    }
+
+    @Test
+    public void issuesTokenWithTheSameClaimsAsTokenEndpoint() throws Exception {
+        Map<String, Object> overHttp = claims(authTokenRequester.get(tokenUrl(), clientId, "admin", "a"));
+        Map<String, Object> inProcess = claims(issueToken("admin"));
+
+        Assert.assertEquals(overHttp.get("iss"), inProcess.get("iss"));
+        Assert.assertEquals(overHttp.get("aud"), inProcess.get("aud"));
+        Assert.assertEquals(overHttp.get("realm_access"), inProcess.get("realm_access"));
+        Assert.assertEquals(overHttp.get("resource_access"), inProcess.get("resource_access"));
+        Assert.assertEquals(overHttp.get("preferred_username"), inProcess.get("preferred_username"));
+
+        //everything else, protocol mappers' claims included, is the same as well
+        overHttp.keySet().removeAll(PER_TOKEN_CLAIMS);
+        inProcess.keySet().removeAll(PER_TOKEN_CLAIMS);
+        Assert.assertEquals(overHttp, inProcess);
+    }
+
+    @Test
+    public void refreshesTokenIssuedInProcessOverHttp() throws Exception {
+        AccessTokenResponse issued = keycloakTokens.user(realm, clientId, "admin");
+
+        AuthenticationToken refreshed = authTokenRequester.refreshToken(tokenUrl(), clientId, issued.getRefreshToken());
+        Assert.assertNotNull(refreshed.getAccessToken());
+        Assert.assertNotEquals(issued.getToken(), refreshed.getAccessToken());
+        Assert.assertEquals(claims(issued.getToken()).get("sub"), claims(refreshed.getAccessToken()).get("sub"));
+        Assert.assertEquals(claims(issued.getToken()).get("session_state"), claims(refreshed.getAccessToken()).get("session_state"));
+    }
+
+    @Test
+    public void introspectsTokenIssuedInProcessOverHttp() throws Exception {
+        addIntrospectionClient();
+        String token = issueToken("admin");
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+        MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+        form.add("token", token);
+        ResponseEntity<String> response = client.withBasicAuth(INTROSPECTION_CLIENT, INTROSPECTION_SECRET)
+                .postForEntity(tokenUrl() + "/introspect", new HttpEntity<>(form, headers), String.class);
+
+        Assert.assertEquals(HttpStatus.OK, response.getStatusCode());
+        JsonNode introspection = mapper.readTree(response.getBody());
+        Assert.assertTrue(introspection.path("active").asBoolean());
+        Assert.assertEquals("admin", introspection.path("username").asText());
+        Assert.assertEquals(clientId, introspection.path("client_id").asText());
+    }
+
+    @Test
+    public void sendsNoEventsWhenDisabled() {
+        String realmId = enableEvents();
+        EmbeddedKeycloakTokens silentTokens = new EmbeddedKeycloakTokens(this::sessionFactory, () -> URI.create(baseUrl()), false);
+        int events = countLoginEvents(realmId);
+
+        Assert.assertNotNull(silentTokens.user(realm, clientId, "admin").getToken());
+        Assert.assertEquals(events, countLoginEvents(realmId));
+
+        Assert.assertNotNull(issueToken("admin"));
+        Assert.assertEquals(events + 1, countLoginEvents(realmId));
+    }
+
+    /**
+     * token endpoint reached at the same url in-process tokens' issuer is derived from
+     */
+    private String tokenUrl() {
+        return baseUrl() + "/realms/" + realm + "/protocol/" + protocol + "/token";
+    }
+
+    private String baseUrl() {
+        return "http://localhost:" + localServerPort + servletContext.getContextPath() + properties.serverContextPath;
+    }
+
+    /**
+     * public clients may not introspect tokens, so a confidential one is added
+     */
+    private void addIntrospectionClient() {
+        KeycloakModelUtils.runJobInTransaction(sessionFactory(), session -> {
+            RealmModel realmModel = session.realms().getRealmByName(realm);
+            if (realmModel.getClientByClientId(INTROSPECTION_CLIENT) == null) {
+                ClientModel introspectionClient = realmModel.addClient(INTROSPECTION_CLIENT);
+                introspectionClient.setEnabled(true);
+                introspectionClient.setPublicClient(false);
+                introspectionClient.setProtocol("openid-connect");
+                introspectionClient.setClientAuthenticatorType(KeycloakModelUtils.getDefaultClientAuthenticatorType());
+                introspectionClient.setSecret(INTROSPECTION_SECRET);
+            }
+        });
+    }
+
+    /**
+     * @return id of the realm, whose events are stored by keycloak's jpa events store now
+     */
+    private String enableEvents() {
+        AtomicReference<String> realmId = new AtomicReference<>();
+        KeycloakModelUtils.runJobInTransaction(sessionFactory(), session -> {
+            RealmModel realmModel = session.realms().getRealmByName(realm);
+            realmModel.setEventsEnabled(true);
+            realmId.set(realmModel.getId());
+        });
+        return realmId.get();
+    }
+
+    private int countLoginEvents(String realmId) {
+        AtomicInteger count = new AtomicInteger();
+        KeycloakModelUtils.runJobInTransaction(sessionFactory(), session -> count.set(session.getProvider(EventStoreProvider.class)
+                .createQuery()
+                .realm(realmId)
+                .type(EventType.LOGIN)
+                .maxResults(Integer.MAX_VALUE)
+                .getResultList()
+                .size()));
+        return count.get();
+    }
+
+    private KeycloakSessionFactory sessionFactory() {
+        return (KeycloakSessionFactory) servletContext.getAttribute(KeycloakSessionFactory.class.getName());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> claims(String token) throws Exception {
+        return new JWSInput(token).readJsonContent(Map.class);
+    }
+}
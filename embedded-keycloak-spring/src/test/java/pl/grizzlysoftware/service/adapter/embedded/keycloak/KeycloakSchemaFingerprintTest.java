@@ -0,0 +1,100 @@
+/*
+ * Copyright 2019 Grizzly Software, https://grizzlysoftware.pl
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and
+ * to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.grizzlysoftware.service.adapter.embedded.keycloak;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Assert;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pl.grizzlysoftware.service.embedded.keycloak.schema.KeycloakSchemaFingerprint;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+
+public class KeycloakSchemaFingerprintTest {
+    private JdbcDataSource dataSource;
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    public void createChangelogTable() throws SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:schema-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        execute("create table DATABASECHANGELOG (ID varchar(255) not null, AUTHOR varchar(255) not null, FILENAME varchar(255) not null)");
+        execute("insert into DATABASECHANGELOG values ('1.0.0.Final-KEYCLOAK-5461', 'sthorger@redhat.com', 'META-INF/jpa-changelog-1.0.0.Final.xml')");
+    }
+
+    @Test
+    public void matchesOnlyOnceStored() throws Exception {
+        KeycloakSchemaFingerprint fingerprint = KeycloakSchemaFingerprint.of("6.0.0", changelog("<databaseChangeLog/>"));
+
+        try (Connection connection = dataSource.getConnection()) {
+            Assert.assertFalse(fingerprint.matches(connection, null));
+            fingerprint.store(connection, null);
+            Assert.assertTrue(fingerprint.matches(connection, null));
+            fingerprint.store(connection, null);
+            Assert.assertTrue(fingerprint.matches(connection, null));
+        }
+    }
+
+    @Test
+    public void doesNotMatchOtherKeycloakVersionOrChangelog() throws Exception {
+        KeycloakSchemaFingerprint fingerprint = KeycloakSchemaFingerprint.of("6.0.0", changelog("<databaseChangeLog/>"));
+        try (Connection connection = dataSource.getConnection()) {
+            fingerprint.store(connection, null);
+
+            Assert.assertFalse(KeycloakSchemaFingerprint.of("6.0.1", changelog("<databaseChangeLog/>")).matches(connection, null));
+            Assert.assertFalse(KeycloakSchemaFingerprint.of("6.0.0", changelog("<databaseChangeLog><include/></databaseChangeLog>")).matches(connection, null));
+            Assert.assertTrue(KeycloakSchemaFingerprint.of("6.0.0", changelog("<databaseChangeLog/>")).matches(connection, null));
+        }
+    }
+
+    @Test
+    public void doesNotMatchWhenChangesetsChanged() throws Exception {
+        KeycloakSchemaFingerprint fingerprint = KeycloakSchemaFingerprint.of("6.0.0", changelog("<databaseChangeLog/>"));
+        try (Connection connection = dataSource.getConnection()) {
+            fingerprint.store(connection, null);
+            execute("insert into DATABASECHANGELOG values ('custom-1', 'admin', 'META-INF/custom-changelog.xml')");
+
+            Assert.assertFalse(fingerprint.matches(connection, null));
+        }
+    }
+
+    private Map<String, URL> changelog(String content) throws IOException {
+        Path file = Files.createTempFile(dir, "changelog", ".xml");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return Collections.singletonMap(KeycloakSchemaFingerprint.MASTER_CHANGELOG, file.toUri().toURL());
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
@@ -8,6 +8,8 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import pl.grizzlysoftware.service.adapter.embedded.util.AuthenticationTokenRequester;
+import pl.grizzlysoftware.service.adapter.embedded.util.CachingAuthenticationTokenRequester;
+import pl.grizzlysoftware.service.embedded.keycloak.token.EmbeddedKeycloakTokens;
 
 import javax.annotation.PostConstruct;
 import javax.servlet.ServletContext;
@@ -28,6 +30,9 @@ public abstract class KeycloakSecurityTestHelper {
     @Autowired
     protected TestRestTemplate client;
 
+    @Autowired
+    protected EmbeddedKeycloakTokens keycloakTokens;
+
     protected AuthenticationTokenRequester authTokenRequester;
 
     protected String clientId;
@@ -44,7 +49,7 @@ public abstract class KeycloakSecurityTestHelper {
 
     @PostConstruct
     void postConstruct() {
-        this.authTokenRequester = new AuthenticationTokenRequester(client.getRestTemplate());
+        this.authTokenRequester = new CachingAuthenticationTokenRequester(client.getRestTemplate());
     }
 
     protected String apiUrl() {
@@ -64,6 +69,13 @@ public abstract class KeycloakSecurityTestHelper {
         return authTokenRequester.get(url, clientId, username, password);
     }
 
+    /**
+     * issues token in process - no token endpoint call, user's password is not checked
+     */
+    protected String issueToken(String username) {
+        return keycloakTokens.user(realm, clientId, username).getToken();
+    }
+
     protected ResponseEntity<String> httpGet(String endpoint) {
         return invokeGet(endpoint, null);
     }